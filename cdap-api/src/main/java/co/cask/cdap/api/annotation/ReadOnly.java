@@ -17,6 +17,7 @@
 package co.cask.cdap.api.annotation;
 
 import co.cask.cdap.api.dataset.Dataset;
+import co.cask.cdap.api.service.http.HttpServiceHandler;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -25,6 +26,22 @@ import java.lang.annotation.Target;
 
 /**
  * Annotation to denote if a {@link Dataset} constructor or method only performs read operations.
+ *
+ * It can also be used on a handler method of a {@link HttpServiceHandler} to denote that the endpoint only reads
+ * from datasets. Such a method is executed with a transaction snapshot that is shared and periodically refreshed,
+ * instead of in a new transaction, hence it does not pay for starting and committing a transaction.
+ * The data it reads can be slightly stale, and any write to datasets fails the request.
+ * The method must return {@code void}.
+ *
+ * <pre><code>
+ * {@literal @}GET
+ * {@literal @}Path("/lookup/{key}")
+ * {@literal @}ReadOnly
+ * public void lookup(HttpServiceRequest request, HttpServiceResponder responder,
+ *                    {@literal @}PathParam("key") String key) {
+ *   ...
+ * }
+ * </code></pre>
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.CONSTRUCTOR, ElementType.METHOD})
@@ -66,6 +66,17 @@ public interface PartitionedFileSet extends Dataset, InputFormatProvider, Output
    */
   void addPartition(PartitionKey key, String path, Map<String, String> metadata);
 
+  /**
+   * Add multiple partitions, each stored at the given path (relative to the file set's base path). This is more
+   * efficient than calling {@link #addPartition(PartitionKey, String)} for each partition. Either all partitions
+   * are validated and added, or none of them is added if any of them is invalid.
+   *
+   * @param partitions a map from partition key to the path of the partition
+   * @throws PartitionAlreadyExistsException if a partition for any of the keys already exists
+   * @throws IllegalArgumentException if any partition key does not match the partitioning of the dataset
+   */
+  void addPartitions(Map<PartitionKey, String> partitions);
+
   /**
    * Adds a new metadata entry for a particular partition.
    * Note that existing entries cannot be updated.
@@ -19,7 +19,10 @@ package co.cask.cdap.api.dataset.lib;
 import co.cask.cdap.api.annotation.Beta;
 import co.cask.cdap.api.dataset.table.TableProperties;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -38,6 +41,11 @@ public class PartitionedFileSetProperties extends FileSetProperties {
    */
   public static final String PARTITIONING_FIELD_PREFIX = "partitioning.field.";
 
+  /**
+   * The property name for the list of partitioning field names that have a secondary index.
+   */
+  public static final String INDEXED_FIELDS = "partitioning.indexed.fields";
+
   /**
    * Read the partitioning for a PartitionedFileSet from its properties.
    *
@@ -71,6 +79,26 @@ public class PartitionedFileSetProperties extends FileSetProperties {
     return builder.build();
   }
 
+  /**
+   * Read the names of the partitioning fields that have a secondary index from the properties.
+   *
+   * @param properties the dataset properties
+   * @return the set of indexed field names, or an empty set if no field is indexed.
+   */
+  public static Set<String> getIndexedFields(Map<String, String> properties) {
+    String fieldList = properties.get(INDEXED_FIELDS);
+    if (fieldList == null || fieldList.trim().isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> fields = new LinkedHashSet<>();
+    for (String field : fieldList.split(",")) {
+      if (!field.trim().isEmpty()) {
+        fields.add(field.trim());
+      }
+    }
+    return Collections.unmodifiableSet(fields);
+  }
+
   /**
    * @return a properties builder
    */
@@ -105,6 +133,22 @@ public class PartitionedFileSetProperties extends FileSetProperties {
       return this;
     }
 
+    /**
+     * Sets the partitioning fields that should have a secondary index. Queries with a condition on an indexed
+     * field use the index instead of scanning all partitions. The indexed fields cannot be changed after the
+     * dataset is created.
+     */
+    public Builder setIndexedFields(String... fieldNames) {
+      StringBuilder builder = new StringBuilder();
+      String sep = "";
+      for (String fieldName : fieldNames) {
+        builder.append(sep).append(fieldName);
+        sep = ",";
+      }
+      add(INDEXED_FIELDS, builder.toString());
+      return this;
+    }
+
     /**
      * Set the table permissions as a map from user name to a permission string.
      */
@@ -0,0 +1,291 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.api.dataset.lib.partitioned;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.dataset.lib.Partition;
+import co.cask.cdap.api.dataset.lib.PartitionConsumerState;
+import co.cask.cdap.api.dataset.lib.PartitionDetail;
+import co.cask.cdap.api.dataset.lib.PartitionKey;
+import co.cask.cdap.api.dataset.lib.PartitionedFileSet;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link PartitionConsumer} that supports multiple instances consuming the same set of partitions, similar to
+ * {@link ConcurrentPartitionConsumer}. Instead of keeping the whole working set in a single state row, every partition
+ * of the working set is kept in its own row of a {@link KeyValueTable}, which acts as a claim on the partition.
+ * Consumers that claim and release different partitions write to different rows, hence their transactions
+ * don't conflict with each other. Only adding new partitions to the working set writes to a row shared by all
+ * consumers, which only happens when the available partitions of the working set are exhausted.
+ *
+ * To reduce the chance of multiple consumers claiming the same partition at the same time, each call starts looking
+ * for available partitions at a random position in the working set. Partitions are therefore not necessarily consumed
+ * in the order they were added to the {@link PartitionedFileSet}.
+ *
+ * All consumers of the same set of partitions must use the same {@link KeyValueTable} and key prefix.
+ */
+public class ClaimingPartitionConsumer implements PartitionConsumer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ClaimingPartitionConsumer.class);
+  private static final Gson GSON =
+    new GsonBuilder().registerTypeAdapter(PartitionKey.class, new PartitionKeyCodec()).create();
+
+  private final PartitionedFileSet partitionedFileSet;
+  private final KeyValueTable stateTable;
+  private final ConsumerConfiguration configuration;
+  private final byte[] markerKey;
+  private final byte[] claimKeyPrefix;
+
+  public ClaimingPartitionConsumer(PartitionedFileSet partitionedFileSet, KeyValueTable stateTable, String keyPrefix) {
+    this(partitionedFileSet, stateTable, keyPrefix, ConsumerConfiguration.DEFAULT);
+  }
+
+  /**
+   * Creates an instance of ClaimingPartitionConsumer.
+   *
+   * @param partitionedFileSet the PartitionedFileSet to consume from
+   * @param stateTable the table to store the state of the consumers
+   * @param keyPrefix prefix of the keys in the state table used by the consumers
+   * @param configuration the ConsumerConfiguration, defining parameters of consumption
+   */
+  public ClaimingPartitionConsumer(PartitionedFileSet partitionedFileSet, KeyValueTable stateTable, String keyPrefix,
+                                   ConsumerConfiguration configuration) {
+    this.partitionedFileSet = partitionedFileSet;
+    this.stateTable = stateTable;
+    this.configuration = configuration;
+    // the marker key sorts before all claim keys, which are prefixed with the key prefix, \0 and 'p'
+    this.markerKey = Bytes.concat(Bytes.toBytes(keyPrefix), new byte[] { 0, 'm' });
+    this.claimKeyPrefix = Bytes.concat(Bytes.toBytes(keyPrefix), new byte[] { 0, 'p', 0 });
+  }
+
+  @Override
+  public PartitionConsumerResult consumePartitions() {
+    return consumePartitions(Integer.MAX_VALUE);
+  }
+
+  @Override
+  public PartitionConsumerResult consumePartitions(int limit) {
+    return consumePartitions(new PartitionAcceptor.Limit(limit));
+  }
+
+  @Override
+  public PartitionConsumerResult consumePartitions(PartitionAcceptor acceptor) {
+    long now = System.currentTimeMillis();
+    long expiryBorder = now - TimeUnit.SECONDS.toMillis(configuration.getTimeout());
+    List<PartitionDetail> toConsume = new ArrayList<>();
+    List<PartitionDetail> discarded = new ArrayList<>();
+
+    List<DefaultConsumablePartition> claims = readClaims();
+    int workingSetSize = claims.size();
+    int offset = claims.isEmpty() ? 0 : ThreadLocalRandom.current().nextInt(claims.size());
+    boolean stopped = false;
+
+    for (int i = 0; i < claims.size() && !stopped; i++) {
+      DefaultConsumablePartition claim = claims.get((offset + i) % claims.size());
+      if (claim.getProcessState() == ProcessState.IN_PROGRESS && claim.getTimestamp() < expiryBorder) {
+        LOG.warn("Expiring in progress partition: {}", claim.getPartitionKey());
+        if (claim.getNumFailures() < configuration.getMaxRetries()) {
+          claim.retry();
+        } else {
+          claim.discard();
+        }
+        writeClaim(claim);
+      }
+
+      if (claim.getProcessState() == ProcessState.DISCARDED) {
+        PartitionDetail partition = partitionedFileSet.getPartition(claim.getPartitionKey());
+        if (partition != null) {
+          discarded.add(partition);
+        }
+        deleteClaim(claim.getPartitionKey());
+        workingSetSize--;
+        continue;
+      }
+      if (claim.getProcessState() != ProcessState.AVAILABLE) {
+        continue;
+      }
+
+      PartitionDetail partition = partitionedFileSet.getPartition(claim.getPartitionKey());
+      if (partition == null) {
+        // no longer exists, so skip it and remove it from the working set
+        deleteClaim(claim.getPartitionKey());
+        workingSetSize--;
+        continue;
+      }
+      stopped = !offer(acceptor, partition, claim, now, toConsume);
+    }
+
+    // Only add new partitions to the working set if the available ones are exhausted, since it updates the
+    // marker row that is shared by all consumers
+    if (!stopped && workingSetSize < configuration.getMaxWorkingSetSize()) {
+      byte[] marker = stateTable.read(markerKey);
+      PartitionConsumerState markerState = marker == null
+        ? PartitionConsumerState.FROM_BEGINNING : PartitionConsumerState.fromBytes(marker);
+      co.cask.cdap.api.dataset.lib.PartitionConsumerResult result =
+        partitionedFileSet.consumePartitions(markerState, configuration.getMaxWorkingSetSize() - workingSetSize,
+                                             configuration.getPartitionPredicate());
+      for (PartitionDetail partition : result.getPartitions()) {
+        DefaultConsumablePartition claim = new DefaultConsumablePartition(partition.getPartitionKey());
+        if (!stopped) {
+          stopped = !offer(acceptor, partition, claim, now, toConsume);
+        }
+        writeClaim(claim);
+      }
+      // The marker only needs to move forward if new partitions were added to the working set. Otherwise, the next
+      // call scans the same range again, which has no new partitions. The end of the range moves with every
+      // transaction, hence writing it on every call would make all consumers conflict on the marker row.
+      if (marker == null || !result.getPartitions().isEmpty()) {
+        stateTable.write(markerKey, result.getPartitionConsumerState().toBytes());
+      }
+    }
+
+    return new PartitionConsumerResult(toConsume, discarded);
+  }
+
+  @Override
+  public void onFinish(List<? extends Partition> partitions, boolean succeeded) {
+    onFinishWithKeys(toKeys(partitions), succeeded);
+  }
+
+  @Override
+  public void onFinishWithKeys(List<? extends PartitionKey> partitionKeys, boolean succeeded) {
+    List<PartitionKey> discardedPartitions = new ArrayList<>();
+    for (PartitionKey key : partitionKeys) {
+      DefaultConsumablePartition claim = readClaim(key);
+      assertInProgress(claim);
+      if (succeeded) {
+        deleteClaim(key);
+        continue;
+      }
+      // either reset its processState, or discard it, depending on how many tries it already has
+      if (claim.getNumFailures() < configuration.getMaxRetries()) {
+        claim.retry();
+      } else {
+        claim.discard();
+        discardedPartitions.add(key);
+      }
+      writeClaim(claim);
+    }
+    if (!discardedPartitions.isEmpty()) {
+      LOG.warn("Discarded keys due to being retried {} times: {}",
+               configuration.getMaxRetries(), discardedPartitions);
+    }
+  }
+
+  @Override
+  public void untake(List<? extends Partition> partitions) {
+    untakeWithKeys(toKeys(partitions));
+  }
+
+  @Override
+  public void untakeWithKeys(List<? extends PartitionKey> partitionKeys) {
+    for (PartitionKey key : partitionKeys) {
+      DefaultConsumablePartition claim = readClaim(key);
+      // don't need to assertInProgress because untake() already does that
+      claim.untake();
+      writeClaim(claim);
+    }
+  }
+
+  /**
+   * Offers the given partition to the acceptor, and claims the partition if it is accepted.
+   *
+   * @return {@code false} if the acceptor doesn't want any more partitions
+   */
+  private boolean offer(PartitionAcceptor acceptor, PartitionDetail partition,
+                        DefaultConsumablePartition claim, long now, List<PartitionDetail> toConsume) {
+    switch (acceptor.accept(partition)) {
+      case ACCEPT:
+        claim.take();
+        claim.setTimestamp(now);
+        writeClaim(claim);
+        toConsume.add(partition);
+        return true;
+      case SKIP:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void assertInProgress(ConsumablePartition consumablePartition) {
+    if (consumablePartition.getProcessState() != ProcessState.IN_PROGRESS) {
+      throw new IllegalStateException(String.format("Partition not in progress: %s",
+                                                    consumablePartition.getPartitionKey()));
+    }
+  }
+
+  private List<DefaultConsumablePartition> readClaims() {
+    List<DefaultConsumablePartition> claims = new ArrayList<>();
+    try (CloseableIterator<KeyValue<byte[], byte[]>> iterator =
+           stateTable.scan(claimKeyPrefix, Bytes.stopKeyForPrefix(claimKeyPrefix))) {
+      while (iterator.hasNext()) {
+        claims.add(DefaultConsumablePartition.fromBytes(iterator.next().getValue()));
+      }
+    }
+    return claims;
+  }
+
+  private DefaultConsumablePartition readClaim(PartitionKey key) {
+    byte[] bytes = stateTable.read(getClaimKey(key));
+    if (bytes == null) {
+      throw new IllegalArgumentException("PartitionKey not found: " + key);
+    }
+    return DefaultConsumablePartition.fromBytes(bytes);
+  }
+
+  private void writeClaim(DefaultConsumablePartition claim) {
+    stateTable.write(getClaimKey(claim.getPartitionKey()), claim.toBytes());
+  }
+
+  private void deleteClaim(PartitionKey key) {
+    stateTable.delete(getClaimKey(key));
+  }
+
+  /**
+   * Returns the key of the claim row of the given partition. The fields are sorted by name, so that the same
+   * partition always maps to the same row, regardless of the order of fields in the {@link PartitionKey}.
+   */
+  private byte[] getClaimKey(PartitionKey key) {
+    PartitionKey.Builder builder = PartitionKey.builder();
+    for (Map.Entry<String, Comparable> field : new TreeMap<>(key.getFields()).entrySet()) {
+      builder.addField(field.getKey(), field.getValue());
+    }
+    return Bytes.concat(claimKeyPrefix, Bytes.toBytes(GSON.toJson(builder.build(), PartitionKey.class)));
+  }
+
+  private List<PartitionKey> toKeys(List<? extends Partition> partitions) {
+    List<PartitionKey> keys = new ArrayList<>(partitions.size());
+    for (Partition partition : partitions) {
+      keys.add(partition.getPartitionKey());
+    }
+    return keys;
+  }
+}
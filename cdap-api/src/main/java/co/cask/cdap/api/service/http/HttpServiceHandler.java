@@ -17,9 +17,11 @@
 package co.cask.cdap.api.service.http;
 
 import co.cask.cdap.api.ProgramLifecycle;
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.TransactionControl;
 import co.cask.cdap.api.annotation.TransactionPolicy;
 
+import java.util.concurrent.CompletionStage;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -76,6 +78,22 @@ import javax.ws.rs.Path;
  *        }
  * </p>
  *
+ * To avoid tying up a request handling thread while waiting for slow operations, such as calls to other services,
+ * a handler method can return a {@link CompletionStage}. The response sent through the
+ * {@link HttpServiceResponder} is only delivered to the client when the returned stage completes, and a failure
+ * response is sent if the stage completes exceptionally. Until then, the handler instance is reserved for the
+ * request and the thread is free to serve other requests. The transaction of the handler method only covers the
+ * method invocation itself. Code that runs after the method returned and before the stage completes
+ * is not executed in a transaction. It can use {@link HttpServiceContext#execute} to access datasets transactionally.
+ * Such a method cannot be annotated with {@link ReadOnly}.
+ * <p>
+ *        {@literal @}GET
+ *        {@literal @}Path("/lookup")
+ *        public CompletionStage&lt;Void&gt; lookup(HttpServiceRequest request, HttpServiceResponder responder) {
+ *          return remoteClient.get(...).thenAccept(result -&gt; responder.sendString(result));
+ *        }
+ * </p>
+ *
  * @see HttpContentConsumer
  * @see HttpContentProducer
  */
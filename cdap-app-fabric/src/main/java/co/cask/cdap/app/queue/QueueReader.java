@@ -40,4 +40,16 @@ public interface QueueReader<T> {
    * @throws InterruptedException If dequeue is interrupted.
    */
   InputDatum<T> dequeue(long timeout, TimeUnit timeoutUnit) throws IOException, InterruptedException;
+
+  /**
+   * Checks if there may be input available to dequeue. This method can be called outside of a transaction.
+   * It may return {@code true} even if {@link #dequeue(long, TimeUnit)} would return an empty input, but it
+   * never returns {@code false} if there is input available.
+   *
+   * @return {@code false} if there is no input available, {@code true} otherwise.
+   * @throws IOException If fails to check for input.
+   */
+  default boolean hasInput() throws IOException {
+    return true;
+  }
 }
@@ -34,11 +34,14 @@ import org.slf4j.LoggerFactory;
 import java.lang.management.ManagementFactory;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -103,11 +106,27 @@ public class OperationalStatsHttpHandler extends AbstractHttpHandler {
       MBeanInfo mBeanInfo = mbs.getMBeanInfo(name);
       Map<String, Object> stats = new HashMap<>();
       for (MBeanAttributeInfo attributeInfo : mBeanInfo.getAttributes()) {
-        stats.put(attributeInfo.getName(), mbs.getAttribute(name, attributeInfo.getName()));
+        stats.put(attributeInfo.getName(), toStatValue(mbs.getAttribute(name, attributeInfo.getName())));
       }
       result.put(group, stats);
       LOG.trace("Found stats of group {} as {}", group, stats);
     }
     return result;
   }
+
+  /**
+   * Converts a {@link Map} attribute, which is represented as {@link TabularData} by JMX, back to a {@link Map}
+   * so that it is serialized as a JSON object. Other attribute values are returned as is.
+   */
+  private static Object toStatValue(Object value) {
+    if (!(value instanceof TabularData)) {
+      return value;
+    }
+    Map<Object, Object> map = new LinkedHashMap<>();
+    for (Object row : ((TabularData) value).values()) {
+      CompositeData entry = (CompositeData) row;
+      map.put(entry.get("key"), entry.get("value"));
+    }
+    return map;
+  }
 }
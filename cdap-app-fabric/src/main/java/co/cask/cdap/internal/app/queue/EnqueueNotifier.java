@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.queue;
+
+import co.cask.cdap.common.queue.QueueName;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.twill.common.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Notifies listeners within the same process when entries are committed to a queue. It allows queue
+ * consumers to react on new entries right away instead of polling the queue periodically.
+ * Producers and consumers in different processes are not notified, hence consumers shouldn't rely
+ * on notifications alone for discovering new entries.
+ */
+@Singleton
+public final class EnqueueNotifier {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EnqueueNotifier.class);
+
+  private final ConcurrentMap<QueueName, Set<Runnable>> listeners;
+
+  @Inject
+  EnqueueNotifier() {
+    this.listeners = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Adds a listener to be called when entries are committed to the given queue. The listener is called
+   * from the thread that committed the entries, hence it should return quickly.
+   *
+   * @param queueName name of the queue to listen to
+   * @param listener the listener to call
+   * @return a {@link Cancellable} to remove the listener
+   */
+  public Cancellable addListener(QueueName queueName, final Runnable listener) {
+    Set<Runnable> queueListeners = listeners.get(queueName);
+    if (queueListeners == null) {
+      queueListeners = new CopyOnWriteArraySet<>();
+      Set<Runnable> existing = listeners.putIfAbsent(queueName, queueListeners);
+      if (existing != null) {
+        queueListeners = existing;
+      }
+    }
+    queueListeners.add(listener);
+
+    final Set<Runnable> finalListeners = queueListeners;
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        finalListeners.remove(listener);
+      }
+    };
+  }
+
+  /**
+   * Notifies all listeners of the given queue that new entries were committed.
+   */
+  public void notifyEnqueued(QueueName queueName) {
+    Set<Runnable> queueListeners = listeners.get(queueName);
+    if (queueListeners == null) {
+      return;
+    }
+    for (Runnable listener : queueListeners) {
+      try {
+        listener.run();
+      } catch (Throwable t) {
+        LOG.warn("Exception raised from enqueue listener of queue {}", queueName, t);
+      }
+    }
+  }
+}
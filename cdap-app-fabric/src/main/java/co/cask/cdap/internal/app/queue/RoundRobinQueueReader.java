@@ -18,10 +18,12 @@ package co.cask.cdap.internal.app.queue;
 
 import co.cask.cdap.app.queue.InputDatum;
 import co.cask.cdap.app.queue.QueueReader;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -36,10 +38,25 @@ import java.util.concurrent.TimeUnit;
 public final class RoundRobinQueueReader<T> extends TimeTrackingQueueReader<T> {
 
   private final InputDatum<T> nullInput = new NullInputDatum<>();
+  private final List<QueueReader<T>> readerList;
   private final Iterator<QueueReader<T>> readers;
 
   public RoundRobinQueueReader(Iterable<QueueReader<T>> readers) {
-    this.readers = Iterables.cycle(readers).iterator();
+    this.readerList = ImmutableList.copyOf(readers);
+    this.readers = Iterables.cycle(readerList).iterator();
+  }
+
+  @Override
+  public boolean hasInput() throws IOException {
+    if (readerList.isEmpty()) {
+      return true;
+    }
+    for (QueueReader<T> reader : readerList) {
+      if (reader.hasInput()) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -53,4 +53,9 @@ public final class SingleQueue2Reader<T> extends TimeTrackingQueueReader<T> {
     QueueConsumer consumer = consumerSupplier.get();
     return new BasicInputDatum<>(consumer.getQueueName(), consumer.dequeue(batchSize), decoder);
   }
+
+  @Override
+  public boolean hasInput() throws IOException {
+    return consumerSupplier.get().hasData();
+  }
 }
@@ -72,4 +72,9 @@ public final class StreamQueueReader<T> implements QueueReader<T> {
     return new BasicInputDatum<>(QueueName.fromStream(consumer.getStreamId()),
                                  consumer.poll(batchSize, timeout, timeoutUnit), eventTransform);
   }
+
+  @Override
+  public boolean hasInput() throws IOException {
+    return consumerSupplier.get().hasData();
+  }
 }
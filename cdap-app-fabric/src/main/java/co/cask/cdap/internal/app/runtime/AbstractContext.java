@@ -68,6 +68,7 @@ import co.cask.cdap.data2.dataset2.DynamicDatasetCache;
 import co.cask.cdap.data2.dataset2.MultiThreadDatasetCache;
 import co.cask.cdap.data2.dataset2.SingleThreadDatasetCache;
 import co.cask.cdap.data2.metadata.lineage.AccessType;
+import co.cask.cdap.data2.transaction.AbstractTransactionContext;
 import co.cask.cdap.data2.transaction.RetryingShortTransactionSystemClient;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.internal.app.preview.DataTracerFactoryProvider;
@@ -96,6 +97,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.derby.iapi.services.i18n.MessageService;
 import org.apache.tephra.RetryStrategies;
+import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionConflictException;
 import org.apache.tephra.TransactionFailureException;
 import org.apache.tephra.TransactionSystemClient;
@@ -574,6 +576,26 @@ public abstract class AbstractContext extends AbstractServiceDiscoverer
     }
   }
 
+  /**
+   * Run some code with the context class loader combined from the program class loader and the system class loader,
+   * using the given transaction for reading datasets. The transaction is not committed, and the execution fails
+   * if any dataset is modified.
+   *
+   * @param tx the transaction to read with. It is owned by the caller and will not be committed nor aborted.
+   * @param runnable the code to run
+   */
+  public void executeReadOnly(Transaction tx, ThrowingRunnable runnable) throws Exception {
+    AbstractTransactionContext txContext = datasetCache.newTransactionContext();
+    txContext.startReadOnly(tx);
+    try {
+      execute(runnable);
+    } catch (Throwable t) {
+      // Abort will always throw with the TransactionFailureException.
+      txContext.abort(new TransactionFailureException("Failed to execute in read-only transaction", t));
+    }
+    txContext.finish();
+  }
+
   /**
    * Run some code with the context class loader combined from the program class loader and the system class loader.
    */
@@ -0,0 +1,497 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime;
+
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.apache.twill.common.Threads;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * A cache for artifacts that are generated for launching programs, such as job jars, launcher jars and
+ * copies of the program jar. Artifacts are addressed by a key computed from the content they are generated from,
+ * hence a program run can reuse the artifact generated by an earlier run as long as the inputs haven't changed.
+ *
+ * The cache has a local tier under the local data directory and an optional remote tier on the
+ * distributed file system. Cached artifacts are immutable. An artifact is reused for at most one period, after which
+ * a new copy is generated on demand. Old copies are removed once at least one full period has passed since they were
+ * last used for launching a program run, unless they are still referenced by a live program run.
+ *
+ * Each program run that uses a cache entry leaves a reference marker in the entry directory. The marker is refreshed
+ * periodically while the run is alive and is removed when the cache is closed at the end of the run. Markers that
+ * haven't been refreshed for one full period are left behind by runs that are gone and do not prevent eviction.
+ */
+public final class LaunchArtifactCache implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LaunchArtifactCache.class);
+  private static final String REFERENCE_PREFIX = ".ref-";
+
+  private final Location localDir;
+  private final Location remoteDir;
+  private final long periodMillis;
+  private final LongSupplier clock;
+  private final String runId;
+  private final Set<Location> references;
+  private ScheduledExecutorService refresher;
+  private boolean closed;
+
+  /**
+   * Creates a {@link LaunchArtifactCache} based on the configuration.
+   *
+   * @param cConf the configuration
+   * @param remoteDir the base directory on the distributed file system for the remote tier of the cache
+   *                  or {@code null} if only the local tier should be used
+   * @param runId the id of the program run using the cache, which holds references to the cache entries it uses
+   *              until the cache is closed
+   * @return a new {@link LaunchArtifactCache} or {@code null} if the cache is disabled
+   */
+  @Nullable
+  public static LaunchArtifactCache create(CConfiguration cConf, @Nullable Location remoteDir, String runId) {
+    if (!cConf.getBoolean(Constants.AppFabric.LAUNCH_CACHE_ENABLED)) {
+      return null;
+    }
+    String cacheDir = cConf.get(Constants.AppFabric.LAUNCH_CACHE_DIR);
+    Location localDir = Locations.toLocation(new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR), cacheDir)
+                                               .getAbsoluteFile());
+    long periodMillis = TimeUnit.HOURS.toMillis(cConf.getLong(Constants.AppFabric.LAUNCH_CACHE_PERIOD_HOURS));
+    return new LaunchArtifactCache(localDir, remoteDir == null ? null : remoteDir.append(cacheDir),
+                                   periodMillis, System::currentTimeMillis, runId);
+  }
+
+  /**
+   * Returns a new {@link KeyBuilder} for computing the key of a cached artifact.
+   */
+  public static KeyBuilder keyBuilder() {
+    return new KeyBuilder();
+  }
+
+  @VisibleForTesting
+  LaunchArtifactCache(Location localDir, @Nullable Location remoteDir, long periodMillis,
+                      LongSupplier clock, String runId) {
+    Preconditions.checkArgument(periodMillis > 0, "Cache period must be > 0");
+    this.localDir = localDir;
+    this.remoteDir = remoteDir;
+    this.periodMillis = periodMillis;
+    this.clock = clock;
+    this.runId = runId;
+    this.references = Collections.newSetFromMap(new ConcurrentHashMap<Location, Boolean>());
+  }
+
+  /**
+   * Returns a local {@link File} of the artifact with the given key and name. If the artifact is not in the local tier
+   * of the cache, it is copied from the remote tier if it exists there, or otherwise generated and also published to
+   * the remote tier.
+   *
+   * @param key the key of the artifact computed from the content it is generated from
+   * @param name the file name of the artifact
+   * @param generator the {@link Generator} for generating the artifact
+   * @return the cached artifact
+   * @throws IOException if failed to generate the artifact
+   */
+  public File getFile(String key, String name, Generator generator) throws IOException {
+    long period = currentPeriod();
+    Location location = get(localDir, key, period, name, target -> {
+      Location remote = remoteDir == null ? null : find(remoteDir, key, period, name);
+      if (remote != null) {
+        copy(remote, target);
+        return;
+      }
+      generator.generate(target);
+      if (remoteDir != null) {
+        try {
+          get(remoteDir, key, period, name, remoteTarget -> copy(target, remoteTarget));
+        } catch (IOException e) {
+          // The remote tier is only an optimization, hence just log and continue
+          LOG.warn("Failed to publish launch artifact {} to {}", name, remoteDir, e);
+        }
+      }
+    });
+    return new File(location.toURI());
+  }
+
+  /**
+   * Returns a {@link Location} of the artifact with the given key and name on the distributed file system.
+   * If the remote tier is not available, it behaves the same as {@link #getFile(String, String, Generator)}.
+   *
+   * @param key the key of the artifact computed from the content it is generated from
+   * @param name the file name of the artifact
+   * @param generator the {@link Generator} for generating the artifact
+   * @return the cached artifact
+   * @throws IOException if failed to generate the artifact
+   */
+  public Location getLocation(String key, String name, Generator generator) throws IOException {
+    if (remoteDir == null) {
+      return Locations.toLocation(getFile(key, name, generator));
+    }
+    return get(remoteDir, key, currentPeriod(), name, generator);
+  }
+
+  /**
+   * Releases all the references to cache entries held by the program run of this cache.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (refresher != null) {
+      refresher.shutdownNow();
+    }
+    for (Location marker : references) {
+      Locations.deleteQuietly(marker);
+    }
+    references.clear();
+  }
+
+  private long currentPeriod() {
+    return clock.getAsLong() / periodMillis;
+  }
+
+  /**
+   * Returns the cached artifact in the given cache directory or generates it if it is missing.
+   */
+  private Location get(Location cacheDir, String key, long period,
+                       String name, Generator generator) throws IOException {
+    Location entryDir = cacheDir.append(key + "-" + period);
+
+    // Only entries of the current period are used, which are never evicted, hence there is no race between
+    // adding the reference and eviction done by other program runs
+    Location cached = find(cacheDir, key, period, name);
+    if (cached != null) {
+      addReference(entryDir);
+      LOG.debug("Reusing cached launch artifact {}", cached);
+      return cached;
+    }
+
+    Location target = entryDir.append(name);
+    Locations.mkdirsIfNotExists(entryDir);
+    addReference(entryDir);
+
+    // Generate to a temporary location and then rename it to make the artifact visible atomically
+    long startTime = System.currentTimeMillis();
+    Location tmpLocation = entryDir.append("." + name + "." + UUID.randomUUID() + ".tmp");
+    try {
+      generator.generate(tmpLocation);
+      if (tmpLocation.renameTo(target) == null && !target.exists()) {
+        throw new IOException("Failed to rename " + tmpLocation + " to " + target);
+      }
+    } finally {
+      Locations.deleteQuietly(tmpLocation);
+    }
+    LOG.info("Created launch artifact {} in {} ms", target, System.currentTimeMillis() - startTime);
+
+    evict(cacheDir, period);
+    return target;
+  }
+
+  /**
+   * Returns the cached artifact in the given cache directory or {@code null} if it doesn't exist.
+   */
+  @Nullable
+  private Location find(Location cacheDir, String key, long period, String name) throws IOException {
+    Location location = cacheDir.append(key + "-" + period).append(name);
+    return location.exists() ? location : null;
+  }
+
+  /**
+   * Adds a reference marker of the program run to the given cache entry directory.
+   */
+  private synchronized void addReference(Location entryDir) throws IOException {
+    Preconditions.checkState(!closed, "Launch artifact cache is already closed");
+    Location marker = entryDir.append(REFERENCE_PREFIX + runId);
+    if (!references.add(marker)) {
+      return;
+    }
+    writeReference(marker);
+    if (refresher == null) {
+      refresher = Executors.newSingleThreadScheduledExecutor(
+        Threads.createDaemonThreadFactory("launch-artifact-cache-refresher"));
+      long interval = Math.max(1L, periodMillis / 4);
+      refresher.scheduleWithFixedDelay(this::refreshReferences, interval, interval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Rewrites all reference markers held by the program run with the current time.
+   */
+  @VisibleForTesting
+  synchronized void refreshReferences() {
+    if (closed) {
+      return;
+    }
+    for (Location marker : references) {
+      try {
+        writeReference(marker);
+      } catch (IOException e) {
+        LOG.warn("Failed to refresh launch artifact reference {}", marker, e);
+      }
+    }
+  }
+
+  private void writeReference(Location marker) throws IOException {
+    try (OutputStream os = marker.getOutputStream()) {
+      os.write(Long.toString(clock.getAsLong()).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Returns {@code true} if the given cache entry directory has a reference marker that was refreshed within the
+   * last period. Markers that cannot be read are treated as live references.
+   */
+  private boolean isReferenced(Location entryDir, long now) {
+    try {
+      for (Location location : entryDir.list()) {
+        if (!location.getName().startsWith(REFERENCE_PREFIX)) {
+          continue;
+        }
+        try (InputStream is = location.getInputStream()) {
+          String content = new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8).trim();
+          if (now - Long.parseLong(content) < periodMillis) {
+            return true;
+          }
+        } catch (IOException | NumberFormatException e) {
+          LOG.debug("Failed to read launch artifact reference {}", location, e);
+          return true;
+        }
+      }
+      return false;
+    } catch (IOException e) {
+      LOG.debug("Failed to list launch artifact references in {}", entryDir, e);
+      return true;
+    }
+  }
+
+  /**
+   * Removes cache entries that can no longer be used by new program runs for at least one full period and
+   * are not referenced by any live program run.
+   */
+  private void evict(Location cacheDir, long currentPeriod) {
+    long now = clock.getAsLong();
+    try {
+      for (Location entryDir : cacheDir.list()) {
+        String entryName = entryDir.getName();
+        int idx = entryName.lastIndexOf('-');
+        if (idx < 0) {
+          continue;
+        }
+        try {
+          if (Long.parseLong(entryName.substring(idx + 1)) < currentPeriod - 1 && !isReferenced(entryDir, now)) {
+            LOG.debug("Removing expired launch artifacts {}", entryDir);
+            Locations.deleteQuietly(entryDir, true);
+          }
+        } catch (NumberFormatException e) {
+          // Not a cache entry, just ignore it
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to remove expired launch artifacts from {}", cacheDir, e);
+    }
+  }
+
+  private static void copy(Location source, Location target) throws IOException {
+    try (InputStream is = source.getInputStream(); OutputStream os = target.getOutputStream()) {
+      ByteStreams.copy(is, os);
+    }
+  }
+
+  /**
+   * Generates the content of an artifact.
+   */
+  public interface Generator {
+
+    /**
+     * Generates the artifact to the given {@link Location}.
+     */
+    void generate(Location target) throws IOException;
+  }
+
+  /**
+   * Builder for computing the cache key from the inputs that an artifact is generated from.
+   * For local files, the key is computed from their content. Jar files are fingerprinted by the name, CRC and
+   * size of their entries, which is available without decompressing the jar. Class path entries are only
+   * fingerprinted by their path, size and modification time, which doesn't require reading them.
+   */
+  public static final class KeyBuilder {
+
+    private final Hasher hasher = Hashing.sha256().newHasher();
+
+    private KeyBuilder() {
+    }
+
+    /**
+     * Adds the given string to the key.
+     */
+    public KeyBuilder add(String value) {
+      hasher.putString(value).putChar('\0');
+      return this;
+    }
+
+    /**
+     * Adds the given {@link Location} to the key by its URI, size and modification time. It should only be used for
+     * locations that are never modified in place, such as artifacts in the artifact repository.
+     */
+    public KeyBuilder add(Location location) throws IOException {
+      add(location.toURI().toString());
+      hasher.putLong(location.length()).putLong(location.lastModified());
+      return this;
+    }
+
+    /**
+     * Adds the content of the given file or directory to the key. The name of the given file is not part of the key,
+     * so that the same content localized to different directories results in the same key.
+     */
+    public KeyBuilder add(File file) throws IOException {
+      addContent(file);
+      return this;
+    }
+
+    /**
+     * Adds all the urls to the key. For file urls, the path, size and modification time of the file are added.
+     * For directories, the same is added for all the files under it.
+     */
+    public KeyBuilder addClassPath(Iterable<URL> urls) {
+      for (URL url : urls) {
+        add(url.toString());
+        if (!"file".equals(url.getProtocol())) {
+          continue;
+        }
+        try {
+          addStatus(new File(url.toURI()));
+        } catch (URISyntaxException e) {
+          addStatus(new File(url.getPath()));
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Returns the key.
+     */
+    public String build() {
+      return hasher.hash().toString();
+    }
+
+    private void addStatus(File file) {
+      if (file.isDirectory()) {
+        String[] names = file.list();
+        if (names == null) {
+          hasher.putLong(-1L);
+          return;
+        }
+        Arrays.sort(names);
+        hasher.putInt(names.length);
+        for (String name : names) {
+          add(name);
+          addStatus(new File(file, name));
+        }
+        return;
+      }
+      hasher.putLong(file.length()).putLong(file.lastModified());
+    }
+
+    private void addContent(File file) throws IOException {
+      if (file.isDirectory()) {
+        String[] names = file.list();
+        if (names == null) {
+          throw new IOException("Failed to list directory " + file);
+        }
+        Arrays.sort(names);
+        hasher.putInt(names.length);
+        for (String name : names) {
+          add(name);
+          addContent(new File(file, name));
+        }
+        return;
+      }
+      if (!file.isFile()) {
+        hasher.putLong(-1L);
+        return;
+      }
+      if (file.getName().endsWith(".jar") && addJarEntries(file)) {
+        return;
+      }
+      hasher.putLong(file.length());
+      try (InputStream is = new FileInputStream(file)) {
+        byte[] buffer = new byte[65536];
+        int len = is.read(buffer);
+        while (len >= 0) {
+          hasher.putBytes(buffer, 0, len);
+          len = is.read(buffer);
+        }
+      }
+    }
+
+    /**
+     * Adds the entries of the given jar file to the key.
+     *
+     * @return {@code true} if the file was read as a jar file, {@code false} otherwise
+     */
+    private boolean addJarEntries(File file) throws IOException {
+      List<ZipEntry> entries = new ArrayList<>();
+      try (ZipFile zipFile = new ZipFile(file)) {
+        Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        while (enumeration.hasMoreElements()) {
+          entries.add(enumeration.nextElement());
+        }
+      } catch (ZipException e) {
+        return false;
+      }
+      Collections.sort(entries, (e1, e2) -> e1.getName().compareTo(e2.getName()));
+      hasher.putInt(entries.size());
+      for (ZipEntry entry : entries) {
+        add(entry.getName());
+        hasher.putLong(entry.getCrc()).putLong(entry.getSize());
+      }
+      return true;
+    }
+  }
+}
@@ -71,6 +71,9 @@ public final class SystemArguments {
   public static final String SERVICE_THREADS = "system.service.threads";
   public static final String SERVICE_THREAD_KEEPALIVE_SECS = "system.service.thread.keepalive.secs";
 
+  // Keys for flowlet
+  public static final String FLOWLET_BATCHES_PER_TX = "system.flowlet.batches.per.tx";
+
   /**
    * Extracts log level settings from the given arguments. It extracts arguments prefixed with key
    * {@link #LOG_LEVEL} + {@code .}, with the remaining part of the key as the logger name, with the argument value
@@ -311,6 +314,22 @@ public final class SystemArguments {
     return builder;
   }
 
+  /**
+   * Returns the maximum number of dequeued batches that a flowlet processes and commits in one transaction.
+   *
+   * @param args the arguments to use for looking up the number of batches
+   * @param cConf the configuration that provides the default, which is {@code 1} if not set or invalid
+   * @return the integer value of the argument system.flowlet.batches.per.tx, or if that is not given in the
+   *         arguments, the value for {@link Constants.AppFabric#FLOWLET_BATCHES_PER_TX} from the CConfiguration.
+   */
+  public static int getFlowletBatchesPerTx(Map<String, String> args, CConfiguration cConf) {
+    Integer batches = getPositiveInt(args, FLOWLET_BATCHES_PER_TX, "flowlet batches per transaction");
+    if (batches != null) {
+      return batches;
+    }
+    return Math.max(1, cConf.getInt(Constants.AppFabric.FLOWLET_BATCHES_PER_TX, 1));
+  }
+
   /**
    * Gets a positive integer value from the given map using the given key.
    * If there is no such key or if the value is not positive, returns {@code null}.
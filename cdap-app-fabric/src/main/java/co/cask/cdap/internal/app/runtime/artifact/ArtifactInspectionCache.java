@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.internal.app.runtime.artifact;
+
+import co.cask.cdap.api.artifact.ArtifactClasses;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.ProjectInfo;
+import co.cask.cdap.internal.app.runtime.LaunchArtifactCache;
+import co.cask.cdap.internal.io.SchemaTypeAdapter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of {@link ArtifactInspector} results on the local file system, so that artifacts that haven't changed
+ * don't need to be inspected again, for example when system artifacts are added on every master start.
+ * Results are keyed by the content of the artifact jar, the CDAP version and the content of the parent artifacts
+ * used for the inspection. Only results of successful inspections of system artifacts are cached, and entries that
+ * were not used while adding the system artifacts are pruned afterwards, so that the cache doesn't grow with every
+ * changed jar.
+ */
+final class ArtifactInspectionCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ArtifactInspectionCache.class);
+  private static final Gson GSON = new GsonBuilder()
+    .registerTypeAdapter(Schema.class, new SchemaTypeAdapter())
+    .create();
+
+  private final Path cacheDir;
+  // keys of the entries read or written since the last call to pruneUnused
+  private final Set<String> usedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  // content hashes of parent artifact locations, keyed by location URI, size and modification time
+  private final ConcurrentMap<String, String> parentHashes = new ConcurrentHashMap<>();
+
+  /**
+   * Creates an {@link ArtifactInspectionCache} based on the configuration.
+   *
+   * @return a new {@link ArtifactInspectionCache} or {@code null} if the cache is disabled
+   */
+  @Nullable
+  static ArtifactInspectionCache create(CConfiguration cConf) {
+    if (!cConf.getBoolean(Constants.AppFabric.ARTIFACT_INSPECTION_CACHE_ENABLED)) {
+      return null;
+    }
+    return new ArtifactInspectionCache(new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
+                                                cConf.get(Constants.AppFabric.ARTIFACT_INSPECTION_CACHE_DIR))
+                                         .getAbsoluteFile().toPath());
+  }
+
+  @VisibleForTesting
+  ArtifactInspectionCache(Path cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Computes the cache key of the inspection result of the given artifact file.
+   *
+   * @param artifactFile the artifact jar file
+   * @param parentLocations locations of the parent artifacts used for inspecting plugins in the artifact
+   * @return the cache key
+   * @throws IOException if failed to read the artifact file or the parent locations
+   */
+  String getKey(File artifactFile, List<Location> parentLocations) throws IOException {
+    LaunchArtifactCache.KeyBuilder keyBuilder = LaunchArtifactCache.keyBuilder()
+      .add(ProjectInfo.getVersion().toString())
+      .add(artifactFile);
+    // parents are added by content, since snapshot artifacts are written to a new location every time they are added
+    for (Location parentLocation : parentLocations) {
+      keyBuilder.add(getContentHash(parentLocation));
+    }
+    return keyBuilder.build();
+  }
+
+  /**
+   * Returns the hash of the content of the given location. Hashes are remembered until the next call to
+   * {@link #pruneUnused()}, since many artifacts usually share the same parent.
+   */
+  private String getContentHash(Location location) throws IOException {
+    String statusKey = location.toURI() + ":" + location.length() + ":" + location.lastModified();
+    String hash = parentHashes.get(statusKey);
+    if (hash != null) {
+      return hash;
+    }
+    Hasher hasher = Hashing.sha256().newHasher();
+    try (InputStream is = location.getInputStream()) {
+      byte[] buffer = new byte[65536];
+      int len = is.read(buffer);
+      while (len >= 0) {
+        hasher.putBytes(buffer, 0, len);
+        len = is.read(buffer);
+      }
+    }
+    hash = hasher.hash().toString();
+    parentHashes.put(statusKey, hash);
+    return hash;
+  }
+
+  /**
+   * Returns the cached inspection result of the given key or {@code null} if it is not in the cache.
+   */
+  @Nullable
+  ArtifactClasses get(String key) {
+    Path path = cacheDir.resolve(key + ".json");
+    try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      ArtifactClasses artifactClasses = GSON.fromJson(reader, ArtifactClasses.class);
+      usedKeys.add(key);
+      return artifactClasses;
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | JsonParseException e) {
+      // Treat it as a cache miss, the entry will be overwritten with a new inspection result
+      LOG.warn("Failed to read cached artifact inspection result from {}", path, e);
+      return null;
+    }
+  }
+
+  /**
+   * Adds the inspection result of the given key to the cache. Failure to write to the cache is logged and ignored.
+   */
+  void put(String key, ArtifactClasses artifactClasses) {
+    Path path = cacheDir.resolve(key + ".json");
+    // Write to a temporary file and then rename it to make the entry visible atomically
+    Path tmpPath = cacheDir.resolve("." + key + "." + UUID.randomUUID() + ".tmp");
+    try {
+      Files.createDirectories(cacheDir);
+      try (Writer writer = Files.newBufferedWriter(tmpPath, StandardCharsets.UTF_8)) {
+        GSON.toJson(artifactClasses, writer);
+      }
+      Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      usedKeys.add(key);
+    } catch (IOException e) {
+      LOG.warn("Failed to cache artifact inspection result to {}", path, e);
+    } finally {
+      try {
+        Files.deleteIfExists(tmpPath);
+      } catch (IOException e) {
+        LOG.debug("Failed to delete temporary file {}", tmpPath, e);
+      }
+    }
+  }
+
+  /**
+   * Deletes all entries that were not read or written since the last call to this method. Failure to delete an entry
+   * is logged and ignored.
+   */
+  void pruneUnused() {
+    parentHashes.clear();
+    if (!Files.isDirectory(cacheDir)) {
+      usedKeys.clear();
+      return;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*.json")) {
+      for (Path path : stream) {
+        String fileName = path.getFileName().toString();
+        if (usedKeys.contains(fileName.substring(0, fileName.length() - ".json".length()))) {
+          continue;
+        }
+        try {
+          Files.deleteIfExists(path);
+          LOG.debug("Deleted unused artifact inspection result {}", path);
+        } catch (IOException e) {
+          LOG.warn("Failed to delete unused artifact inspection result {}", path, e);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to prune artifact inspection cache directory {}", cacheDir, e);
+    }
+    usedKeys.clear();
+  }
+}
@@ -40,7 +40,6 @@ import co.cask.cdap.common.ArtifactAlreadyExistsException;
 import co.cask.cdap.common.ArtifactNotFoundException;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.namespace.NamespacedLocationFactory;
-import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
 import co.cask.cdap.data2.datafabric.dataset.DatasetsUtil;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
@@ -82,16 +81,23 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BinaryOperator;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -168,6 +174,19 @@ import javax.annotation.Nullable;
  *
  * With this schema we can perform a scan to look up AppClasses, a scan to look up plugins that extend a specific
  * artifact, and a scan to look up artifacts.
+ *
+ * Since plugins are looked up much more often than artifacts are changed, the plugin rows are also kept decoded
+ * in memory. The version of the plugin rows is stored in rowkey v:plugins. Every change to the plugin rows writes
+ * a new random value to the column of the artifact changed, so that writes of different artifacts don't conflict
+ * with each other:
+ *
+ * rowkey=v:plugins, column={artifact-namespace}:{artifact-name}:{artifact-version}, value=random long
+ *
+ * Deleting an artifact removes its column from the version row.
+ *
+ * Plugin lookups only read the version row and use the in-memory copy if it was loaded with the same version,
+ * otherwise it is reloaded from the table. The in-memory copy is updated in place after artifacts are written or
+ * deleted through this store.
  */
 public class ArtifactStore {
   private static final String ARTIFACTS_PATH = "artifacts";
@@ -175,6 +194,7 @@ public class ArtifactStore {
   private static final String PLUGIN_PREFIX = "p";
   private static final String UNIVERSAL_PLUGIN_PREFIX = "u";
   private static final String APPCLASS_PREFIX = "a";
+  private static final byte[] PLUGINS_VERSION_ROW = Bytes.toBytes("v:plugins");
   private static final DatasetId META_ID = NamespaceId.SYSTEM.dataset("artifact.meta");
   private static final DatasetProperties META_PROPERTIES =
     TableProperties.builder().setConflictDetection(ConflictDetection.COLUMN).build();
@@ -190,6 +210,8 @@ public class ArtifactStore {
   private final Transactional transactional;
   private final Impersonator impersonator;
 
+  private volatile PluginCatalog pluginCatalog;
+
   @Inject
   ArtifactStore(DatasetFramework datasetFramework,
                 NamespacedLocationFactory namespacedLocationFactory,
@@ -498,18 +520,16 @@ public class ArtifactStore {
       SortedMap<ArtifactDescriptor, Set<PluginClass>> plugins = getPluginsInArtifact(
         metaTable, parentArtifactId, input -> type == null || type.equals(input.getType()));
 
-      List<Scan> scans = Arrays.asList(
-        scanPlugins(parentArtifactId, type),
-        scanUniversalPlugin(namespace.getNamespace(), type),
-        scanUniversalPlugin(NamespaceId.SYSTEM.getNamespace(), type)
+      PluginCatalog catalog = getPluginCatalog(metaTable);
+      List<String> prefixes = Arrays.asList(
+        getPluginsPrefix(parentArtifactId, type),
+        getUniversalPluginsPrefix(namespace.getNamespace(), type),
+        getUniversalPluginsPrefix(NamespaceId.SYSTEM.getNamespace(), type)
       );
 
-      for (Scan scan : scans) {
-        try (Scanner scanner = metaTable.scan(scan)) {
-          Row row;
-          while ((row = scanner.next()) != null) {
-            addPluginsToMap(namespace, parentArtifactId, plugins, row);
-          }
+      for (String prefix : prefixes) {
+        for (Map<Id.Artifact, PluginEntry> row : catalog.getRows(prefix)) {
+          addPluginsToMap(namespace, parentArtifactId, plugins, row);
         }
       }
 
@@ -593,20 +613,17 @@ public class ArtifactStore {
       }
 
       // Add all plugins that extends from the given set of parents
+      PluginCatalog catalog = getPluginCatalog(metaTable);
       PluginKey pluginKey = new PluginKey(parentArtifactRange.getNamespace(),
                                           parentArtifactRange.getName(), type, name);
-      Row row = metaTable.get(pluginKey.getRowKey());
-      if (!row.isEmpty()) {
-        addPluginsInRangeToMap(namespace, parentArtifacts, row.getColumns(), plugins, pluginRange, limit);
-      }
+      addPluginsInRangeToMap(namespace, parentArtifacts, catalog.getRow(pluginKey.getKey()), plugins,
+                             pluginRange, limit);
 
       // Add all universal plugins
       for (String ns : Arrays.asList(namespace.getNamespace(), NamespaceId.SYSTEM.getNamespace())) {
         UniversalPluginKey universalPluginKey = new UniversalPluginKey(ns, type, name);
-        row = metaTable.get(universalPluginKey.getRowKey());
-        if (!row.isEmpty()) {
-          addPluginsInRangeToMap(namespace, parentArtifacts, row.getColumns(), plugins, pluginRange, limit);
-        }
+        addPluginsInRangeToMap(namespace, parentArtifacts, catalog.getRow(universalPluginKey.getKey()), plugins,
+                               pluginRange, limit);
       }
 
       return Collections.unmodifiableSortedMap(plugins);
@@ -687,6 +704,7 @@ public class ArtifactStore {
     }
 
     // now try and write the metadata for the artifact
+    AtomicReference<PluginCatalogChange> catalogChange = new AtomicReference<>();
     try {
       transactional.execute(context -> {
         // we have to check that the metadata doesn't exist again since somebody else may have written
@@ -700,15 +718,18 @@ public class ArtifactStore {
         }
 
         ArtifactData data = new ArtifactData(destination, artifactMeta);
+        PluginCatalogChange change = startPluginCatalogChange(metaTable, artifactId);
         // cleanup existing metadata if it exists and this is a snapshot
         // if we are overwriting a previous snapshot, need to clean up the old snapshot data
         // this means cleaning up the old jar, and deleting plugin and app rows.
         if (existingMetaBytes != null) {
-          deleteMeta(metaTable, artifactId, existingMetaBytes);
+          change.removedRows.addAll(deleteMeta(metaTable, artifactId, existingMetaBytes));
         }
         // write artifact metadata
-        writeMeta(metaTable, artifactId, data);
+        change.addedRows.putAll(writeMeta(metaTable, artifactId, data));
+        catalogChange.set(change);
       });
+      updatePluginCatalog(catalogChange.get());
 
       return new ArtifactDetail(new ArtifactDescriptor(artifactId.toArtifactId(), destination), artifactMeta);
     } catch (TransactionConflictException e) {
@@ -749,7 +770,7 @@ public class ArtifactStore {
   public void delete(final Id.Artifact artifactId) throws ArtifactNotFoundException, IOException {
 
     // delete everything in a transaction
-    Transactionals.execute(transactional, context -> {
+    PluginCatalogChange change = Transactionals.execute(transactional, context -> {
       // first look up details to get plugins and apps in the artifact
       ArtifactCell artifactCell = new ArtifactCell(artifactId);
       Table metaTable = getMetaTable(context);
@@ -757,8 +778,11 @@ public class ArtifactStore {
       if (detailBytes == null) {
         throw new ArtifactNotFoundException(artifactId.toEntityId());
       }
-      deleteMeta(metaTable, artifactId, detailBytes);
+      PluginCatalogChange catalogChange = startPluginCatalogRemoval(metaTable, artifactId);
+      catalogChange.removedRows.addAll(deleteMeta(metaTable, artifactId, detailBytes));
+      return catalogChange;
     }, IOException.class, ArtifactNotFoundException.class);
+    updatePluginCatalog(change);
   }
 
   /**
@@ -775,6 +799,13 @@ public class ArtifactStore {
     Transactionals.execute(transactional, context -> {
       // delete all rows about artifacts in the namespace
       Table metaTable = getMetaTable(context);
+      Map<String, Long> pluginsVersion = getPluginsVersion(metaTable);
+      for (String changeKey : pluginsVersion.keySet()) {
+        if (changeKey.startsWith(namespace.getNamespace() + ":")) {
+          metaTable.delete(PLUGINS_VERSION_ROW, Bytes.toBytes(changeKey));
+        }
+      }
+      changePluginsVersion(metaTable, pluginsVersion, "clear:" + namespace.getNamespace());
       Row row;
       try (Scanner scanner = metaTable.scan(scanArtifacts(namespace))) {
         while ((row = scanner.next()) != null) {
@@ -828,8 +859,9 @@ public class ArtifactStore {
     }, IOException.class);
   }
 
-  // write a new artifact snapshot and clean up the old snapshot data
-  private void writeMeta(Table table, Id.Artifact artifactId, ArtifactData data) throws IOException {
+  // write a new artifact snapshot and clean up the old snapshot data. Returns the plugin rows written.
+  private Map<String, PluginData> writeMeta(Table table, Id.Artifact artifactId,
+                                            ArtifactData data) throws IOException {
     ArtifactCell artifactCell = new ArtifactCell(artifactId);
     table.put(artifactCell.rowkey, artifactCell.column, Bytes.toBytes(GSON.toJson(data)));
 
@@ -840,39 +872,49 @@ public class ArtifactStore {
     ArtifactClasses classes = data.meta.getClasses();
     Location artifactLocation = Locations.getLocationFromAbsolutePath(locationFactory, data.getLocationPath());
     // write pluginClass metadata
-    for (PluginClass pluginClass : classes.getPlugins()) {
-      // write metadata for each artifact this plugin extends
+    Map<String, PluginData> pluginRows = getPluginRows(artifactId, data);
+    for (Map.Entry<String, PluginData> pluginRow : pluginRows.entrySet()) {
+      table.put(Bytes.toBytes(pluginRow.getKey()), artifactColumn, Bytes.toBytes(GSON.toJson(pluginRow.getValue())));
+    }
+
+    // write appClass metadata
+    for (ApplicationClass appClass : classes.getApps()) {
+      // a:{namespace}:{classname}
+      AppClassKey appClassKey = new AppClassKey(artifactId.getNamespace().toEntityId(), appClass.getClassName());
+      byte[] appDataBytes = Bytes.toBytes(GSON.toJson(new AppData(appClass, artifactLocation)));
+      table.put(appClassKey.getRowKey(), artifactColumn, appDataBytes);
+    }
+    return pluginRows;
+  }
+
+  /**
+   * Returns the keys of the plugin rows of the given artifact, with the plugin data stored in each row.
+   */
+  private Map<String, PluginData> getPluginRows(Id.Artifact artifactId, ArtifactData data) {
+    Map<String, PluginData> pluginRows = new LinkedHashMap<>();
+    Location artifactLocation = Locations.getLocationFromAbsolutePath(locationFactory, data.getLocationPath());
+    for (PluginClass pluginClass : data.meta.getClasses().getPlugins()) {
+      // metadata for each artifact this plugin extends
       for (ArtifactRange artifactRange : data.meta.getUsableBy()) {
         // p:{namespace}:{type}:{name}
         PluginKey pluginKey = new PluginKey(artifactRange.getNamespace(),
                                             artifactRange.getName(), pluginClass.getType(), pluginClass.getName());
-
-        byte[] pluginDataBytes = Bytes.toBytes(
-          GSON.toJson(new PluginData(pluginClass, artifactLocation, artifactRange)));
-        table.put(pluginKey.getRowKey(), artifactColumn, pluginDataBytes);
+        pluginRows.put(pluginKey.getKey(), new PluginData(pluginClass, artifactLocation, artifactRange));
       }
 
       // If the artifact is deployed without any parent, add a special row to indicate that it can be used
       // by any other artifact in the same namespace.
       if (data.meta.getUsableBy().isEmpty()) {
-        // Write a special entry for plugin that doesn't have parent, which means any artifact can use it
         UniversalPluginKey pluginKey = new UniversalPluginKey(artifactId.getNamespace().getId(),
                                                               pluginClass.getType(), pluginClass.getName());
-        byte[] pluginDataBytes = Bytes.toBytes(GSON.toJson(new PluginData(pluginClass, artifactLocation, null)));
-        table.put(pluginKey.getRowKey(), artifactColumn, pluginDataBytes);
+        pluginRows.put(pluginKey.getKey(), new PluginData(pluginClass, artifactLocation, null));
       }
     }
-
-    // write appClass metadata
-    for (ApplicationClass appClass : classes.getApps()) {
-      // a:{namespace}:{classname}
-      AppClassKey appClassKey = new AppClassKey(artifactId.getNamespace().toEntityId(), appClass.getClassName());
-      byte[] appDataBytes = Bytes.toBytes(GSON.toJson(new AppData(appClass, artifactLocation)));
-      table.put(appClassKey.getRowKey(), artifactColumn, appDataBytes);
-    }
+    return pluginRows;
   }
 
-  private void deleteMeta(Table table, Id.Artifact artifactId, byte[] oldData) throws IOException {
+  // delete the artifact metadata. Returns the keys of the plugin rows the artifact is deleted from.
+  private Set<String> deleteMeta(Table table, Id.Artifact artifactId, byte[] oldData) throws IOException {
     // delete old artifact data
     ArtifactCell artifactCell = new ArtifactCell(artifactId);
     table.delete(artifactCell.rowkey, artifactCell.column);
@@ -881,21 +923,9 @@ public class ArtifactStore {
     final ArtifactData oldMeta = GSON.fromJson(Bytes.toString(oldData), ArtifactData.class);
     byte[] artifactColumn = new ArtifactColumn(artifactId).getColumn();
 
-    for (PluginClass pluginClass : oldMeta.meta.getClasses().getPlugins()) {
-      // delete metadata for each artifact this plugin extends
-      for (ArtifactRange artifactRange : oldMeta.meta.getUsableBy()) {
-        // p:{namespace}:{type}:{name}
-        PluginKey pluginKey = new PluginKey(artifactRange.getNamespace(),
-                                            artifactRange.getName(), pluginClass.getType(), pluginClass.getName());
-        table.delete(pluginKey.getRowKey(), artifactColumn);
-      }
-
-      // Delete the universal plugin row
-      if (oldMeta.meta.getUsableBy().isEmpty()) {
-        UniversalPluginKey pluginKey = new UniversalPluginKey(artifactId.getNamespace().getId(),
-                                                              pluginClass.getType(), pluginClass.getName());
-        table.delete(pluginKey.getRowKey(), artifactColumn);
-      }
+    Set<String> pluginRows = getPluginRows(artifactId, oldMeta).keySet();
+    for (String pluginRow : pluginRows) {
+      table.delete(Bytes.toBytes(pluginRow), artifactColumn);
     }
 
     // delete old appclass metadata
@@ -920,6 +950,139 @@ public class ArtifactStore {
       // this should not happen
       throw Throwables.propagate(e);
     }
+    return pluginRows;
+  }
+
+  /**
+   * Returns the version of the plugin rows. Used only in unit tests.
+   */
+  @VisibleForTesting
+  Map<String, Long> getPluginsVersion() {
+    return Transactionals.execute(transactional, context -> {
+      return getPluginsVersion(getMetaTable(context));
+    });
+  }
+
+  /**
+   * Returns the version of the plugin rows, which is a map from the key of each change to the random value
+   * written by the latest change.
+   */
+  private Map<String, Long> getPluginsVersion(Table table) {
+    Map<String, Long> version = new TreeMap<>();
+    for (Map.Entry<byte[], byte[]> column : table.get(PLUGINS_VERSION_ROW).getColumns().entrySet()) {
+      version.put(Bytes.toString(column.getKey()), Bytes.toLong(column.getValue()));
+    }
+    return version;
+  }
+
+  /**
+   * Records a change to the plugin rows by writing a new random value to the given column of the version row.
+   *
+   * @return the version of the plugin rows after the change
+   */
+  private Map<String, Long> changePluginsVersion(Table table, Map<String, Long> previousVersion, String changeKey) {
+    long value = ThreadLocalRandom.current().nextLong();
+    table.put(PLUGINS_VERSION_ROW, Bytes.toBytes(changeKey), Bytes.toBytes(value));
+    Map<String, Long> version = new TreeMap<>(previousVersion);
+    version.put(changeKey, value);
+    return version;
+  }
+
+  private PluginCatalogChange startPluginCatalogChange(Table table, Id.Artifact artifactId) {
+    Map<String, Long> previousVersion = getPluginsVersion(table);
+    String changeKey = Bytes.toString(new ArtifactColumn(artifactId).getColumn());
+    return new PluginCatalogChange(artifactId, previousVersion,
+                                   changePluginsVersion(table, previousVersion, changeKey));
+  }
+
+  /**
+   * Starts the change of deleting an artifact, which removes the column of the artifact from the version row.
+   * The resulting version is different from any version that includes the plugins of the artifact.
+   */
+  private PluginCatalogChange startPluginCatalogRemoval(Table table, Id.Artifact artifactId) {
+    Map<String, Long> previousVersion = getPluginsVersion(table);
+    String changeKey = Bytes.toString(new ArtifactColumn(artifactId).getColumn());
+    if (!previousVersion.containsKey(changeKey)) {
+      // artifact written before the version row existed, hence the version doesn't reflect its plugins
+      return new PluginCatalogChange(artifactId, previousVersion,
+                                     changePluginsVersion(table, previousVersion, changeKey));
+    }
+    table.delete(PLUGINS_VERSION_ROW, Bytes.toBytes(changeKey));
+    Map<String, Long> version = new TreeMap<>(previousVersion);
+    version.remove(changeKey);
+    return new PluginCatalogChange(artifactId, previousVersion, version);
+  }
+
+  /**
+   * Returns the in-memory copy of the plugin rows, reloading it from the table if it is not of the current version.
+   */
+  private PluginCatalog getPluginCatalog(Table table) {
+    Map<String, Long> version = getPluginsVersion(table);
+    PluginCatalog catalog = pluginCatalog;
+    if (catalog != null && catalog.version.equals(version)) {
+      return catalog;
+    }
+
+    NavigableMap<String, Map<Id.Artifact, PluginEntry>> rows = new TreeMap<>();
+    for (String prefix : Arrays.asList(PLUGIN_PREFIX, UNIVERSAL_PLUGIN_PREFIX)) {
+      byte[] startRow = Bytes.toBytes(prefix + ":");
+      try (Scanner scanner = table.scan(new Scan(startRow, Bytes.stopKeyForPrefix(startRow)))) {
+        Row row;
+        while ((row = scanner.next()) != null) {
+          // column is the artifact namespace, name, and version. value is the serialized PluginData
+          Map<Id.Artifact, PluginEntry> entries = new HashMap<>();
+          for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+            Id.Artifact artifactId = ArtifactColumn.parse(column.getKey()).artifactId;
+            PluginData pluginData = GSON.fromJson(Bytes.toString(column.getValue()), PluginData.class);
+            entries.put(artifactId, createPluginEntry(artifactId, pluginData));
+          }
+          rows.put(Bytes.toString(row.getRow()), entries);
+        }
+      }
+    }
+
+    catalog = new PluginCatalog(version, rows);
+    pluginCatalog = catalog;
+    return catalog;
+  }
+
+  /**
+   * Applies a committed change to the in-memory copy of the plugin rows. If the in-memory copy is not of the version
+   * the change is made on, it is left untouched and will be reloaded on the next lookup.
+   */
+  private synchronized void updatePluginCatalog(PluginCatalogChange change) {
+    PluginCatalog catalog = pluginCatalog;
+    if (catalog == null || !catalog.version.equals(change.previousVersion)) {
+      return;
+    }
+
+    NavigableMap<String, Map<Id.Artifact, PluginEntry>> rows = new TreeMap<>(catalog.rows);
+    for (String rowKey : change.removedRows) {
+      Map<Id.Artifact, PluginEntry> entries = rows.get(rowKey);
+      if (entries != null && entries.containsKey(change.artifactId)) {
+        entries = new HashMap<>(entries);
+        entries.remove(change.artifactId);
+        if (entries.isEmpty()) {
+          rows.remove(rowKey);
+        } else {
+          rows.put(rowKey, entries);
+        }
+      }
+    }
+    for (Map.Entry<String, PluginData> addedRow : change.addedRows.entrySet()) {
+      Map<Id.Artifact, PluginEntry> entries = rows.get(addedRow.getKey());
+      entries = entries == null ? new HashMap<>() : new HashMap<>(entries);
+      entries.put(change.artifactId, createPluginEntry(change.artifactId, addedRow.getValue()));
+      rows.put(addedRow.getKey(), entries);
+    }
+    pluginCatalog = new PluginCatalog(change.version, rows);
+  }
+
+  private PluginEntry createPluginEntry(Id.Artifact artifactId, PluginData pluginData) {
+    ArtifactDescriptor artifactDescriptor = new ArtifactDescriptor(
+      artifactId.toArtifactId(),
+      Locations.getLocationFromAbsolutePath(locationFactory, pluginData.getArtifactLocationPath()));
+    return new PluginEntry(artifactId, pluginData, artifactDescriptor);
   }
 
   private SortedMap<ArtifactDescriptor, Set<PluginClass>> getPluginsInArtifact(Table table, Id.Artifact artifactId,
@@ -952,49 +1115,34 @@ public class ArtifactStore {
   // if so, information about the plugin artifact and the plugin details are added to the given map.
   private void addPluginsToMap(NamespaceId namespace, Id.Artifact parentArtifactId,
                                SortedMap<ArtifactDescriptor, Set<PluginClass>> map,
-                               Row row) throws IOException {
-    // column is the artifact namespace, name, and version. value is the serialized PluginData
-    for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
-      ImmutablePair<ArtifactDescriptor, PluginClass> pluginEntry = getPluginEntry(namespace, parentArtifactId, column);
-      if (pluginEntry != null) {
-        ArtifactDescriptor artifactDescriptor = pluginEntry.getFirst();
+                               Map<Id.Artifact, PluginEntry> row) {
+    for (PluginEntry pluginEntry : row.values()) {
+      if (isPluginUsable(namespace, parentArtifactId, pluginEntry)) {
+        ArtifactDescriptor artifactDescriptor = pluginEntry.artifactDescriptor;
         if (!map.containsKey(artifactDescriptor)) {
           map.put(artifactDescriptor, Sets.<PluginClass>newHashSet());
         }
-        map.get(artifactDescriptor).add(pluginEntry.getSecond());
+        map.get(artifactDescriptor).add(pluginEntry.pluginData.pluginClass);
       }
     }
   }
 
   /**
-   * Decode the PluginClass from the table column if it is from an artifact in the given namespace and
-   * extends the given parent artifact. If the plugin's artifact is not in the given namespace, or it does not
-   * extend the given parent artifact, return null.
+   * Returns whether the plugin is from an artifact in the given namespace or the system namespace and
+   * extends the given parent artifact.
    */
-  private ImmutablePair<ArtifactDescriptor, PluginClass> getPluginEntry(NamespaceId namespace,
-                                                                        Id.Artifact parentArtifactId,
-                                                                        Map.Entry<byte[], byte[]> column) {
-    // column is the artifact namespace, name, and version. value is the serialized PluginData
-    ArtifactColumn artifactColumn = ArtifactColumn.parse(column.getKey());
-    Id.Namespace artifactNamespace = artifactColumn.artifactId.getNamespace();
+  private boolean isPluginUsable(NamespaceId namespace, Id.Artifact parentArtifactId, PluginEntry pluginEntry) {
+    Id.Namespace artifactNamespace = pluginEntry.artifactId.getNamespace();
     // filter out plugins whose artifacts are not in the system namespace and not in this namespace
     if (!Id.Namespace.SYSTEM.equals(artifactNamespace) && !artifactNamespace.equals(namespace.toId())) {
-      return null;
+      return false;
     }
-    PluginData pluginData = GSON.fromJson(Bytes.toString(column.getValue()), PluginData.class);
-
     // filter out plugins that don't extend this version of the parent artifact
-    if (pluginData.isUsableBy(parentArtifactId.toEntityId())) {
-      ArtifactDescriptor artifactDescriptor = new ArtifactDescriptor(
-        artifactColumn.artifactId.toArtifactId(),
-        Locations.getLocationFromAbsolutePath(locationFactory, pluginData.getArtifactLocationPath()));
-      return ImmutablePair.of(artifactDescriptor, pluginData.pluginClass);
-    }
-    return null;
+    return pluginEntry.pluginData.isUsableBy(parentArtifactId.toEntityId());
   }
 
   private void addPluginsInRangeToMap(final NamespaceId namespace, List<Id.Artifact> parentArtifacts,
-                                      Map<byte[], byte[]> columns,
+                                      Map<Id.Artifact, PluginEntry> row,
                                       SortedMap<ArtifactDescriptor, PluginClass> plugins,
                                       @Nullable Predicate<co.cask.cdap.proto.id.ArtifactId> range,
                                       int limit) {
@@ -1004,22 +1152,16 @@ public class ArtifactStore {
       ? range
       : input -> NamespaceId.SYSTEM.equals(input.getParent()) || input.getParent().equals(namespace);
 
-    for (Map.Entry<byte[], byte[]> column : columns.entrySet()) {
-      // column is the artifact namespace, name, and version. value is the serialized PluginData
-      ArtifactColumn artifactColumn = ArtifactColumn.parse(column.getKey());
-
-      if (!range.test(artifactColumn.artifactId.toEntityId())) {
+    for (PluginEntry pluginEntry : row.values()) {
+      if (!range.test(pluginEntry.artifactId.toEntityId())) {
         continue;
       }
-      PluginData pluginData = GSON.fromJson(Bytes.toString(column.getValue()), PluginData.class);
+      PluginData pluginData = pluginEntry.pluginData;
 
       // filter out plugins that don't extend this version of the parent artifact
       for (Id.Artifact parentArtifactId : parentArtifacts) {
         if (pluginData.isUsableBy(parentArtifactId.toEntityId())) {
-          plugins.put(new ArtifactDescriptor(
-            artifactColumn.artifactId.toArtifactId(),
-            Locations.getLocationFromAbsolutePath(locationFactory, pluginData.getArtifactLocationPath())),
-                      pluginData.pluginClass);
+          plugins.put(pluginEntry.artifactDescriptor, pluginData.pluginClass);
           break;
         }
       }
@@ -1034,15 +1176,17 @@ public class ArtifactStore {
     return new Scan(startRow, Bytes.stopKeyForPrefix(startRow));
   }
 
-  private Scan scanPlugins(Id.Artifact parentArtifactId, @Nullable String type) {
-    byte[] startRow = Bytes.toBytes(Joiner.on(":").skipNulls().join(PLUGIN_PREFIX,
-                                                                    parentArtifactId.getNamespace().getId(),
-                                                                    parentArtifactId.getName(), type) + ":");
-    return new Scan(startRow, Bytes.stopKeyForPrefix(startRow));
+  private String getPluginsPrefix(Id.Artifact parentArtifactId, @Nullable String type) {
+    return Joiner.on(":").skipNulls().join(PLUGIN_PREFIX, parentArtifactId.getNamespace().getId(),
+                                           parentArtifactId.getName(), type) + ":";
+  }
+
+  private String getUniversalPluginsPrefix(String namespace, @Nullable String type) {
+    return Joiner.on(":").skipNulls().join(UNIVERSAL_PLUGIN_PREFIX, namespace, type) + ":";
   }
 
   private Scan scanUniversalPlugin(String namespace, @Nullable String type) {
-    byte[] startRow = Bytes.toBytes(Joiner.on(":").skipNulls().join(UNIVERSAL_PLUGIN_PREFIX, namespace, type) + ":");
+    byte[] startRow = Bytes.toBytes(getUniversalPluginsPrefix(namespace, type));
     return new Scan(startRow, Bytes.stopKeyForPrefix(startRow));
   }
 
@@ -1079,9 +1223,8 @@ public class ArtifactStore {
     }
 
     // p:system:etlbatch:sink:table
-    private byte[] getRowKey() {
-      return Bytes.toBytes(
-        Joiner.on(':').join(PLUGIN_PREFIX, parentArtifactNamespace, parentArtifactName, type, name));
+    private String getKey() {
+      return Joiner.on(':').join(PLUGIN_PREFIX, parentArtifactNamespace, parentArtifactName, type, name);
     }
   }
 
@@ -1096,10 +1239,66 @@ public class ArtifactStore {
       this.name = name;
     }
 
-    byte[] getRowKey() {
-      return Bytes.toBytes(
-        Joiner.on(":").join(UNIVERSAL_PLUGIN_PREFIX, namespace, type, name)
-      );
+    String getKey() {
+      return Joiner.on(":").join(UNIVERSAL_PLUGIN_PREFIX, namespace, type, name);
+    }
+  }
+
+  /**
+   * An immutable in-memory copy of the plugin rows, from row key to the plugins in the row,
+   * together with the version of the plugin rows it was loaded from.
+   */
+  private static final class PluginCatalog {
+    private final Map<String, Long> version;
+    private final NavigableMap<String, Map<Id.Artifact, PluginEntry>> rows;
+
+    private PluginCatalog(Map<String, Long> version, NavigableMap<String, Map<Id.Artifact, PluginEntry>> rows) {
+      this.version = version;
+      this.rows = rows;
+    }
+
+    private Map<Id.Artifact, PluginEntry> getRow(String rowKey) {
+      Map<Id.Artifact, PluginEntry> row = rows.get(rowKey);
+      return row == null ? Collections.emptyMap() : row;
+    }
+
+    private Collection<Map<Id.Artifact, PluginEntry>> getRows(String prefix) {
+      // same as Bytes.stopKeyForPrefix, prefixes always end with ':'
+      String stopKey = prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+      return rows.subMap(prefix, stopKey).values();
+    }
+  }
+
+  /**
+   * A decoded plugin column, together with the descriptor of the artifact containing the plugin.
+   */
+  private static final class PluginEntry {
+    private final Id.Artifact artifactId;
+    private final PluginData pluginData;
+    private final ArtifactDescriptor artifactDescriptor;
+
+    private PluginEntry(Id.Artifact artifactId, PluginData pluginData, ArtifactDescriptor artifactDescriptor) {
+      this.artifactId = artifactId;
+      this.pluginData = pluginData;
+      this.artifactDescriptor = artifactDescriptor;
+    }
+  }
+
+  /**
+   * The change made to the plugin rows by writing or deleting an artifact.
+   */
+  private static final class PluginCatalogChange {
+    private final Id.Artifact artifactId;
+    private final Map<String, Long> previousVersion;
+    private final Map<String, Long> version;
+    private final Set<String> removedRows = new HashSet<>();
+    private final Map<String, PluginData> addedRows = new HashMap<>();
+
+    private PluginCatalogChange(Id.Artifact artifactId, Map<String, Long> previousVersion,
+                                Map<String, Long> version) {
+      this.artifactId = artifactId;
+      this.previousVersion = previousVersion;
+      this.version = version;
     }
   }
 
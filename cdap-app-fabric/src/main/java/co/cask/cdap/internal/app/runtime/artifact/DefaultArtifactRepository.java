@@ -60,7 +60,9 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
+import org.apache.twill.common.Threads;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,6 +77,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.Nullable;
 
 /**
@@ -86,6 +92,8 @@ public class DefaultArtifactRepository implements ArtifactRepository {
   private final ArtifactStore artifactStore;
   private final ArtifactClassLoaderFactory artifactClassLoaderFactory;
   private final ArtifactInspector artifactInspector;
+  private final ArtifactInspectionCache inspectionCache;
+  private final int systemArtifactLoadThreads;
   private final Set<File> systemArtifactDirs;
   private final ArtifactConfigReader configReader;
   private final MetadataStore metadataStore;
@@ -99,6 +107,8 @@ public class DefaultArtifactRepository implements ArtifactRepository {
     this.artifactStore = artifactStore;
     this.artifactClassLoaderFactory = new ArtifactClassLoaderFactory(cConf, programRunnerFactory);
     this.artifactInspector = new ArtifactInspector(cConf, artifactClassLoaderFactory);
+    this.inspectionCache = ArtifactInspectionCache.create(cConf);
+    this.systemArtifactLoadThreads = cConf.getInt(Constants.AppFabric.SYSTEM_ARTIFACTS_LOAD_THREADS);
     this.systemArtifactDirs = new HashSet<>();
     String systemArtifactsDir = cConf.get(Constants.AppFabric.SYSTEM_ARTIFACTS_DIR);
     if (!Strings.isNullOrEmpty(systemArtifactsDir)) {
@@ -253,28 +263,25 @@ public class DefaultArtifactRepository implements ArtifactRepository {
     }
 
     parentArtifacts = parentArtifacts == null ? Collections.emptySet() : parentArtifacts;
-    CloseableClassLoader parentClassLoader = null;
+    List<Location> parentLocations = Collections.emptyList();
     EntityImpersonator entityImpersonator = new EntityImpersonator(artifactId.toEntityId(),
                                                                    impersonator);
     if (!parentArtifacts.isEmpty()) {
       validateParentSet(artifactId, parentArtifacts);
-      parentClassLoader = createParentClassLoader(artifactId, parentArtifacts, entityImpersonator);
-    }
-    try {
-      ArtifactClasses artifactClasses = inspectArtifact(artifactId, artifactFile, additionalPlugins, parentClassLoader);
-      ArtifactMeta meta = new ArtifactMeta(artifactClasses, parentArtifacts, properties);
-      ArtifactDetail artifactDetail =
-        artifactStore.write(artifactId, meta, Files.newInputStreamSupplier(artifactFile), entityImpersonator);
-      ArtifactDescriptor descriptor = artifactDetail.getDescriptor();
-      // info hides some fields that are available in detail, such as the location of the artifact
-      ArtifactInfo artifactInfo = new ArtifactInfo(descriptor.getArtifactId(), artifactDetail.getMeta().getClasses(),
-                                                   artifactDetail.getMeta().getProperties());
-      // add system metadata for artifacts
-      writeSystemMetadata(artifactId.toEntityId(), artifactInfo);
-      return artifactDetail;
-    } finally {
-      Closeables.closeQuietly(parentClassLoader);
+      parentLocations = getParentLocations(artifactId, parentArtifacts);
     }
+    ArtifactClasses artifactClasses = inspectArtifact(artifactId, artifactFile, additionalPlugins,
+                                                      parentLocations, entityImpersonator);
+    ArtifactMeta meta = new ArtifactMeta(artifactClasses, parentArtifacts, properties);
+    ArtifactDetail artifactDetail =
+      artifactStore.write(artifactId, meta, Files.newInputStreamSupplier(artifactFile), entityImpersonator);
+    ArtifactDescriptor descriptor = artifactDetail.getDescriptor();
+    // info hides some fields that are available in detail, such as the location of the artifact
+    ArtifactInfo artifactInfo = new ArtifactInfo(descriptor.getArtifactId(), artifactDetail.getMeta().getClasses(),
+                                                 artifactDetail.getMeta().getProperties());
+    // add system metadata for artifacts
+    writeSystemMetadata(artifactId.toEntityId(), artifactInfo);
+    return artifactDetail;
   }
 
   @Override
@@ -384,29 +391,76 @@ public class DefaultArtifactRepository implements ArtifactRepository {
       }
     }
 
-    // loop until there is no change
-    boolean nochange = false;
-    while (!remainingArtifacts.isEmpty() && !nochange) {
-      // add all artifacts that don't have any more parents
-      Set<Id.Artifact> addedArtifacts = new HashSet<>();
-      for (Id.Artifact remainingArtifact : remainingArtifacts) {
-        if (!childToParents.containsKey(remainingArtifact)) {
-          addSystemArtifact(systemArtifacts.get(remainingArtifact));
-          addedArtifacts.add(remainingArtifact);
-          for (Id.Artifact child : parentToChildren.get(remainingArtifact)) {
-            childToParents.remove(child, remainingArtifact);
+    // loop until there is no change. Artifacts that don't have any more parents don't depend on each other,
+    // hence they are added in parallel.
+    long startTime = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(systemArtifactLoadThreads, remainingArtifacts.size())),
+      Threads.createDaemonThreadFactory("system-artifact-loader-%d"));
+    try {
+      boolean nochange = false;
+      while (!remainingArtifacts.isEmpty() && !nochange) {
+        // add all artifacts that don't have any more parents
+        Set<Id.Artifact> addedArtifacts = new HashSet<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Id.Artifact remainingArtifact : remainingArtifacts) {
+          if (!childToParents.containsKey(remainingArtifact)) {
+            SystemArtifactInfo systemArtifactInfo = systemArtifacts.get(remainingArtifact);
+            futures.add(executor.submit(() -> {
+              addSystemArtifact(systemArtifactInfo);
+              return null;
+            }));
+            addedArtifacts.add(remainingArtifact);
           }
         }
+        waitForAll(futures);
+
+        for (Id.Artifact addedArtifact : addedArtifacts) {
+          for (Id.Artifact child : parentToChildren.get(addedArtifact)) {
+            childToParents.remove(child, addedArtifact);
+          }
+        }
+        remainingArtifacts.removeAll(addedArtifacts);
+        nochange = addedArtifacts.isEmpty();
       }
-      remainingArtifacts.removeAll(addedArtifacts);
-      nochange = addedArtifacts.isEmpty();
+    } finally {
+      executor.shutdownNow();
     }
+    if (inspectionCache != null) {
+      // remove the inspection results of system artifacts that are no longer there or have changed
+      inspectionCache.pruneUnused();
+    }
+    LOG.info("Processed {} system artifacts in {} ms",
+             systemArtifacts.size() - remainingArtifacts.size(), System.currentTimeMillis() - startTime);
 
     if (!remainingArtifacts.isEmpty()) {
       LOG.warn("Unable to add system artifacts {} due to cyclic dependencies", Joiner.on(",").join(remainingArtifacts));
     }
   }
 
+  /**
+   * Waits for all the given futures to complete. If any of them failed, the first failure is rethrown after all
+   * of them completed, with the other failures added as suppressed exceptions.
+   */
+  private void waitForAll(List<Future<?>> futures) throws Exception {
+    Exception failure = null;
+    for (Future<?> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException e) {
+        Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
   @Override
   public void deleteArtifact(Id.Artifact artifactId) throws Exception {
     // delete the artifact first and then privileges. Not the other way to avoid orphan artifact
@@ -467,10 +521,29 @@ public class DefaultArtifactRepository implements ArtifactRepository {
 
   private ArtifactClasses inspectArtifact(Id.Artifact artifactId, File artifactFile,
                                           @Nullable Set<PluginClass> additionalPlugins,
-                                          @Nullable ClassLoader parentClassLoader) throws IOException,
+                                          List<Location> parentLocations,
+                                          EntityImpersonator entityImpersonator) throws IOException,
     InvalidArtifactException {
-    ArtifactClasses artifactClasses = artifactInspector.inspectArtifact(artifactId, artifactFile, parentClassLoader);
-    validatePluginSet(artifactClasses.getPlugins());
+    // only system artifacts are cached, since user artifacts are rarely added again with the same content
+    String cacheKey = inspectionCache == null || !Id.Namespace.SYSTEM.equals(artifactId.getNamespace())
+      ? null : inspectionCache.getKey(artifactFile, parentLocations);
+    ArtifactClasses artifactClasses = cacheKey == null ? null : inspectionCache.get(cacheKey);
+    if (artifactClasses != null) {
+      LOG.debug("Using cached inspection result of artifact {}", artifactId);
+    } else {
+      // the parent classloader is only needed for inspecting plugins, hence only created if it is not cached
+      CloseableClassLoader parentClassLoader = parentLocations.isEmpty()
+        ? null : artifactClassLoaderFactory.createClassLoader(parentLocations.iterator(), entityImpersonator);
+      try {
+        artifactClasses = artifactInspector.inspectArtifact(artifactId, artifactFile, parentClassLoader);
+      } finally {
+        Closeables.closeQuietly(parentClassLoader);
+      }
+      validatePluginSet(artifactClasses.getPlugins());
+      if (cacheKey != null) {
+        inspectionCache.put(cacheKey, artifactClasses);
+      }
+    }
     if (additionalPlugins == null || additionalPlugins.isEmpty()) {
       return artifactClasses;
     } else {
@@ -511,17 +584,17 @@ public class DefaultArtifactRepository implements ArtifactRepository {
   }
 
   /**
-   * Create a parent classloader using an artifact from one of the artifacts in the specified parents.
+   * Returns the locations for creating a parent classloader using an artifact from one of the artifacts in the
+   * specified parents. The first location is the parent artifact, followed by its parent if it has one.
    *
    * @param artifactId the id of the artifact to create the parent classloader for
    * @param parentArtifacts the ranges of parents to create the classloader from
-   * @return a classloader based off a parent artifact
+   * @return the locations of the parent artifact and the grandparent artifact
    * @throws ArtifactRangeNotFoundException if none of the parents could be found
    * @throws InvalidArtifactException if one of the parents also has parents
    * @throws IOException if there was some error reading from the store
    */
-  private CloseableClassLoader createParentClassLoader(Id.Artifact artifactId, Set<ArtifactRange> parentArtifacts,
-                                                       EntityImpersonator entityImpersonator)
+  private List<Location> getParentLocations(Id.Artifact artifactId, Set<ArtifactRange> parentArtifacts)
     throws ArtifactRangeNotFoundException, IOException, InvalidArtifactException {
 
     List<ArtifactDetail> parents = new ArrayList<>();
@@ -582,7 +655,7 @@ public class DefaultArtifactRepository implements ArtifactRepository {
     if (grandparentLocation != null) {
       parentLocations.add(grandparentLocation);
     }
-    return artifactClassLoaderFactory.createClassLoader(parentLocations.iterator(), entityImpersonator);
+    return parentLocations;
   }
 
   private void addAppSummaries(List<ApplicationClassSummary> summaries, NamespaceId namespace) {
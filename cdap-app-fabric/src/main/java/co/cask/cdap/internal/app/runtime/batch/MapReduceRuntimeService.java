@@ -44,6 +44,7 @@ import co.cask.cdap.data2.metadata.lineage.AccessType;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.data2.transaction.stream.StreamAdmin;
 import co.cask.cdap.data2.util.hbase.HBaseTableUtilFactory;
+import co.cask.cdap.internal.app.runtime.LaunchArtifactCache;
 import co.cask.cdap.internal.app.runtime.LocalizationUtils;
 import co.cask.cdap.internal.app.runtime.ProgramRunners;
 import co.cask.cdap.internal.app.runtime.SystemArguments;
@@ -120,6 +121,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -249,6 +251,13 @@ final class MapReduceRuntimeService extends AbstractExecutionThreadService {
       Location tempLocation = createTempLocationDirectory();
       cleanupTask = createCleanupTask(cleanupTask, tempLocation);
 
+      // Cache for the launch artifacts that can be reused across runs. It is only needed in distributed mode.
+      LaunchArtifactCache launchCache = MapReduceTaskContextProvider.isLocal(mapredConf)
+        ? null
+        : LaunchArtifactCache.create(cConf, locationFactory.get(context.getProgram().getId().getNamespaceId()),
+                                     context.getRunId().getId());
+      cleanupTask = createCleanupTask(cleanupTask, launchCache);
+
       // For local mode, everything is in the configuration classloader already, hence no need to create new jar
       if (!MapReduceTaskContextProvider.isLocal(mapredConf)) {
         // After calling initialize, we know what plugins are needed for the program, hence construct the proper
@@ -273,18 +282,18 @@ final class MapReduceRuntimeService extends AbstractExecutionThreadService {
       RawComparatorWrapper.KeyComparatorWrapper.wrap(job);
 
       // packaging job jar which includes cdap classes with dependencies
-      File jobJar = buildJobJar(job, tempDir);
+      File jobJar = buildJobJar(job, tempDir, launchCache);
       job.setJar(jobJar.toURI().toString());
 
       Location programJar = programJarLocation;
       String hbaseDDLExecutorDirectory = null;
       if (!MapReduceTaskContextProvider.isLocal(mapredConf)) {
         // Copy and localize the program jar in distributed mode
-        programJar = copyProgramJar(tempLocation);
+        programJar = copyProgramJar(tempLocation, launchCache);
         job.addCacheFile(programJar.toURI());
 
         // Generate and localize the launcher jar to control the classloader of MapReduce containers processes
-        Location launcherJar = createLauncherJar(tempLocation);
+        Location launcherJar = createLauncherJar(tempLocation, launchCache);
         job.addCacheFile(launcherJar.toURI());
 
         // Launcher.jar should be the first one in the classpath
@@ -849,10 +858,13 @@ final class MapReduceRuntimeService extends AbstractExecutionThreadService {
 
   /**
    * Creates a jar that contains everything that are needed for running the MapReduce program by Hadoop.
+   * If the {@link LaunchArtifactCache} is provided, the job jar built by an earlier run is reused as long as
+   * the classes and the classpath it is built from are the same.
    *
-   * @return a new {@link File} containing the job jar
+   * @return a {@link File} containing the job jar
    */
-  private File buildJobJar(Job job, File tempDir) throws IOException, URISyntaxException {
+  private File buildJobJar(Job job, File tempDir,
+                           @Nullable LaunchArtifactCache launchCache) throws IOException, URISyntaxException {
     File jobJar = new File(tempDir, "job.jar");
     LOG.debug("Creating Job jar: {}", jobJar);
 
@@ -924,16 +936,34 @@ final class MapReduceRuntimeService extends AbstractExecutionThreadService {
       LOG.warn("Not including HBaseTableUtil classes in submitted Job Jar since they are not available");
     }
 
-    ClassLoader oldCLassLoader = ClassLoaders.setContextClassLoader(getClass().getClassLoader());
+    LaunchArtifactCache.Generator generator = target -> {
+      ClassLoader oldCLassLoader = ClassLoaders.setContextClassLoader(getClass().getClassLoader());
+      try {
+        appBundler.createBundle(target, classes);
+      } finally {
+        ClassLoaders.setContextClassLoader(oldCLassLoader);
+      }
+    };
 
-    try {
-      appBundler.createBundle(Locations.toLocation(jobJar), classes);
-    } finally {
-      ClassLoaders.setContextClassLoader(oldCLassLoader);
+    if (launchCache == null) {
+      generator.generate(Locations.toLocation(jobJar));
+      LOG.debug("Built MapReduce Job Jar at {}", jobJar.toURI());
+      return jobJar;
     }
 
-    LOG.debug("Built MapReduce Job Jar at {}", jobJar.toURI());
-    return jobJar;
+    // The job jar content is determined by the classes being traced and the classpath of their ClassLoaders
+    Set<String> classNames = new TreeSet<>();
+    Set<URL> classPath = ClassLoaders.getClassLoaderURLs(getClass().getClassLoader(), new LinkedHashSet<URL>());
+    for (Class<?> cls : classes) {
+      classNames.add(cls.getName());
+      if (cls.getClassLoader() != null) {
+        ClassLoaders.getClassLoaderURLs(cls.getClassLoader(), classPath);
+      }
+    }
+    String key = LaunchArtifactCache.keyBuilder().add(classNames.toString()).addClassPath(classPath).build();
+    File cachedJobJar = launchCache.getFile(key, jobJar.getName(), generator);
+    LOG.debug("Using MapReduce Job Jar at {}", cachedJobJar.toURI());
+    return cachedJobJar;
   }
 
   /**
@@ -1102,14 +1132,24 @@ final class MapReduceRuntimeService extends AbstractExecutionThreadService {
   }
 
   /**
-   * Creates a temp copy of the program jar.
+   * Creates a temp copy of the program jar. If the {@link LaunchArtifactCache} is provided, the copy is shared
+   * by all runs of programs from the same program jar.
    *
-   * @return a new {@link Location} which contains the same content as the program jar
+   * @return a {@link Location} which contains the same content as the program jar
    */
-  private Location copyProgramJar(Location targetDir) throws IOException {
-    Location programJarCopy = targetDir.append("program.jar");
-
-    ByteStreams.copy(Locations.newInputSupplier(programJarLocation), Locations.newOutputSupplier(programJarCopy));
+  private Location copyProgramJar(Location targetDir, @Nullable LaunchArtifactCache launchCache) throws IOException {
+    LaunchArtifactCache.Generator generator = target ->
+      ByteStreams.copy(Locations.newInputSupplier(programJarLocation), Locations.newOutputSupplier(target));
+
+    Location programJarCopy;
+    if (launchCache == null) {
+      programJarCopy = targetDir.append("program.jar");
+      generator.generate(programJarCopy);
+    } else {
+      // The program jar is never modified in place, hence it is keyed by the location instead of the content
+      String key = LaunchArtifactCache.keyBuilder().add(programJarLocation).build();
+      programJarCopy = launchCache.getLocation(key, "program.jar", generator);
+    }
     LOG.debug("Copied Program Jar to {}, source: {}", programJarCopy, programJarLocation);
     return programJarCopy;
   }
@@ -1121,14 +1161,24 @@ final class MapReduceRuntimeService extends AbstractExecutionThreadService {
    * @see MapReduceContainerLauncher
    * @see ContainerLauncherGenerator
    */
-  private Location createLauncherJar(Location targetDir) throws IOException {
-    Location launcherJar = targetDir.append("launcher.jar");
+  private Location createLauncherJar(Location targetDir,
+                                     @Nullable LaunchArtifactCache launchCache) throws IOException {
+    List<String> mainClassNames = Arrays.asList("org.apache.hadoop.mapreduce.v2.app.MRAppMaster",
+                                                "org.apache.hadoop.mapred.YarnChild");
+    LaunchArtifactCache.Generator generator = target -> ContainerLauncherGenerator.generateLauncherJar(
+      mainClassNames, MapReduceContainerLauncher.class, Locations.newOutputSupplier(target));
+
+    URL launcherClassPath = ClassLoaders.getClassPathURL(MapReduceContainerLauncher.class);
+    if (launchCache != null && launcherClassPath != null) {
+      String key = LaunchArtifactCache.keyBuilder()
+        .add(mainClassNames.toString())
+        .addClassPath(Collections.singleton(launcherClassPath))
+        .build();
+      return launchCache.getLocation(key, "launcher.jar", generator);
+    }
 
-    ContainerLauncherGenerator.generateLauncherJar(
-      Arrays.asList(
-        "org.apache.hadoop.mapreduce.v2.app.MRAppMaster",
-        "org.apache.hadoop.mapred.YarnChild"
-      ), MapReduceContainerLauncher.class, Locations.newOutputSupplier(launcherJar));
+    Location launcherJar = targetDir.append("launcher.jar");
+    generator.generate(launcherJar);
     return launcherJar;
   }
 
@@ -18,7 +18,7 @@ package co.cask.cdap.internal.app.runtime.flow;
 
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.flow.flowlet.OutputEmitter;
-import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.ByteArrayBinaryEncoder;
 import co.cask.cdap.common.io.DatumWriter;
 import co.cask.cdap.data2.queue.QueueEntry;
 import co.cask.cdap.data2.queue.QueueProducer;
@@ -28,7 +28,6 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
 import javax.annotation.Nullable;
@@ -43,6 +42,8 @@ public final class DatumOutputEmitter<T> implements OutputEmitter<T> {
   private final Supplier<QueueProducer> producerSupplier;
   private final byte[] schemaHash;
   private final DatumWriter<T> writer;
+  // Size of the last encoded entry, used as the initial buffer size for the next one
+  private volatile int lastSize = 256;
 
   public DatumOutputEmitter(Supplier<QueueProducer> producerSupplier, Schema schema, DatumWriter<T> writer) {
     this.producerSupplier = producerSupplier;
@@ -63,11 +64,12 @@ public final class DatumOutputEmitter<T> implements OutputEmitter<T> {
   @Override
   public void emit(T data, Map<String, Object> partitions) {
     try {
-      ByteArrayOutputStream output = new ByteArrayOutputStream();
-      output.write(schemaHash);
-      writer.encode(data, new BinaryEncoder(output));
+      ByteArrayBinaryEncoder encoder = new ByteArrayBinaryEncoder(lastSize);
+      encoder.writeRaw(schemaHash);
+      writer.encode(data, encoder);
+      lastSize = encoder.size();
       producerSupplier.get().enqueue(new QueueEntry(Maps.transformValues(partitions, PARTITION_MAP_TRANSFORMER),
-                                                    output.toByteArray()));
+                                                    encoder.toByteArray()));
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
@@ -27,6 +27,7 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.logging.LoggingContext;
 import co.cask.cdap.common.logging.LoggingContextAccessor;
 import co.cask.cdap.common.queue.QueueName;
+import co.cask.cdap.internal.app.queue.EnqueueNotifier;
 import co.cask.cdap.internal.app.queue.SingleItemQueueReader;
 import co.cask.cdap.internal.app.runtime.DataFabricFacade;
 import co.cask.cdap.security.spi.authorization.UnauthorizedException;
@@ -41,19 +42,25 @@ import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.tephra.TransactionContext;
 import org.apache.tephra.TransactionFailureException;
+import org.apache.twill.common.Cancellable;
 import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class responsible invoking process methods of a {@link Flowlet}.
@@ -67,18 +74,35 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   private final Callback txCallback;
   private final LoggingContext loggingContext;
   private final PriorityQueue<FlowletProcessEntry<?>> processQueue;
-
+  private final EnqueueNotifier enqueueNotifier;
+  private final Set<QueueName> inputQueueNames;
+  private final Lock inputLock;
+  private final Condition inputCondition;
+  private final List<Cancellable> enqueueListenerCancellables;
+  private final int batchesPerTx;
+
+  // Set to true when there are new entries enqueued to any of the input queues. Guarded by inputLock.
+  private boolean inputAvailable;
   private Thread runThread;
   private ExecutorService processExecutor;
 
   FlowletProcessDriver(BasicFlowletContext flowletContext,
                        DataFabricFacade dataFabricFacade,
                        Callback txCallback,
-                       Collection<? extends ProcessSpecification<?>> processSpecifications) {
+                       Collection<? extends ProcessSpecification<?>> processSpecifications,
+                       EnqueueNotifier enqueueNotifier,
+                       Set<QueueName> inputQueueNames,
+                       int batchesPerTx) {
     this.flowletContext = flowletContext;
     this.dataFabricFacade = dataFabricFacade;
     this.txCallback = txCallback;
     this.loggingContext = flowletContext.getLoggingContext();
+    this.enqueueNotifier = enqueueNotifier;
+    this.inputQueueNames = inputQueueNames;
+    this.inputLock = new ReentrantLock();
+    this.inputCondition = inputLock.newCondition();
+    this.enqueueListenerCancellables = new ArrayList<>();
+    this.batchesPerTx = batchesPerTx;
 
     processQueue = new PriorityQueue<>(processSpecifications.size());
     for (ProcessSpecification<?> spec : processSpecifications) {
@@ -99,6 +123,12 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.loggingContext = other.loggingContext;
     this.processQueue = new PriorityQueue<>(other.processQueue.size());
     Iterables.addAll(processQueue, other.processQueue);
+    this.enqueueNotifier = other.enqueueNotifier;
+    this.inputQueueNames = other.inputQueueNames;
+    this.inputLock = new ReentrantLock();
+    this.inputCondition = inputLock.newCondition();
+    this.enqueueListenerCancellables = new ArrayList<>();
+    this.batchesPerTx = other.batchesPerTx;
   }
 
   @Override
@@ -111,10 +141,30 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     runThread = Thread.currentThread();
     processExecutor = Executors.newSingleThreadExecutor(
       Threads.createDaemonThreadFactory(getServiceName() + "-executor"));
+
+    // Get notified when new entries are enqueued to input queues by producers in the same process
+    Runnable inputListener = new Runnable() {
+      @Override
+      public void run() {
+        inputLock.lock();
+        try {
+          inputAvailable = true;
+          inputCondition.signal();
+        } finally {
+          inputLock.unlock();
+        }
+      }
+    };
+    for (QueueName queueName : inputQueueNames) {
+      enqueueListenerCancellables.add(enqueueNotifier.addListener(queueName, inputListener));
+    }
   }
 
   @Override
   protected void shutDown() throws Exception {
+    for (Cancellable cancellable : enqueueListenerCancellables) {
+      cancellable.cancel();
+    }
     processExecutor.shutdown();
   }
 
@@ -132,9 +182,10 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     Runnable processRunner = createProcessRunner(processQueue, processList,
                                                  flowletContext.getProgramInvocationClassLoader());
     while (isRunning()) {
+      boolean inputNotified;
       try {
-        // If the queue head need to wait, we had to wait.
-        processQueue.peek().await();
+        // If the queue head need to wait, we had to wait, unless new input is enqueued.
+        inputNotified = awaitNext(processQueue.peek());
       } catch (InterruptedException e) {
         // Triggered by shutdown, simply continue and let the isRunning() check to deal with that.
         continue;
@@ -144,6 +195,15 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       // Drain the process queue so that all entries in the queue will be inspected to see if it's time to process
       drainQueue(processQueue, processList);
 
+      // If new input is enqueued, wake up all entries that are backing off from reading the input queues
+      if (inputNotified) {
+        for (FlowletProcessEntry<?> entry : processList) {
+          if (!entry.isTick()) {
+            entry.wakeUp();
+          }
+        }
+      }
+
       // Execute the process method and block until it finished.
       Future<?> processFuture = processExecutor.submit(processRunner);
       while (!processFuture.isDone()) {
@@ -171,6 +231,26 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     }
   }
 
+  /**
+   * Waits until it is time to process the given entry or until new entries are enqueued to the input queues.
+   *
+   * @return {@code true} if new entries were enqueued to the input queues since the last call
+   */
+  private boolean awaitNext(FlowletProcessEntry<?> entry) throws InterruptedException {
+    inputLock.lock();
+    try {
+      long waitNanos = entry.getNextDeque() - System.nanoTime();
+      while (!inputAvailable && waitNanos > 0) {
+        waitNanos = inputCondition.awaitNanos(waitNanos);
+      }
+      boolean notified = inputAvailable;
+      inputAvailable = false;
+      return notified;
+    } finally {
+      inputLock.unlock();
+    }
+  }
+
   private void drainQueue(PriorityQueue<FlowletProcessEntry<?>> queue,
                           List<? super FlowletProcessEntry<?>> collection) {
     FlowletProcessEntry<?> entry = queue.poll();
@@ -221,6 +301,11 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
     ProcessMethod<T> processMethod = entry.getProcessSpec().getProcessMethod();
     if (processMethod.needsInput()) {
+      // Only start a transaction to dequeue if there may be input available
+      if (!hasInput(entry)) {
+        entry.backOff();
+        return false;
+      }
       flowletContext.getProgramMetrics().increment("process.tuples.attempt.read", 1);
     }
 
@@ -244,7 +329,11 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         // Call the process method and commit the transaction. The current process entry will put
         // back to queue in the postProcess method (either a retry copy or itself).
         ProcessMethod.ProcessResult<?> result = processMethod.invoke(input);
-        postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result);
+        if (batchesPerTx > 1 && result.isSuccess() && entry.canCommitWithOthers()) {
+          processMoreAndCommit(processQueue, entry, txContext, input, result);
+        } else {
+          postProcess(processMethodCallback(processQueue, entry, input, true), txContext, input, result);
+        }
         return true;
 
       } catch (Throwable t) {
@@ -268,6 +357,86 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     return false;
   }
 
+  /**
+   * Keeps dequeuing and processing inputs in the same transaction as the given input, which was already processed
+   * successfully, and commits all of them together. It stops when the number of batches reaches the configured
+   * limit, when there is no more input, or when half of the transaction timeout has passed.
+   *
+   * If processing of a subsequent input fails, the transaction is aborted and the failure is handled the same way
+   * as if the input was processed in its own transaction. Inputs processed earlier in the same transaction are
+   * rolled back and will be dequeued again. If the commit fails, all inputs are rolled back and the entry is set to
+   * commit the same number of upcoming inputs individually, so that failures are handled for each input by the
+   * flowlet callback.
+   */
+  private <T> void processMoreAndCommit(PriorityQueue<FlowletProcessEntry<?>> processQueue,
+                                        FlowletProcessEntry<T> entry, TransactionContext txContext,
+                                        InputDatum<T> firstInput,
+                                        ProcessMethod.ProcessResult<?> firstResult) throws Exception {
+    ProcessSpecification<T> processSpec = entry.getProcessSpec();
+    ProcessMethod<T> processMethod = processSpec.getProcessMethod();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(flowletContext.getDefaultTxTimeout()) / 2;
+
+    List<InputDatum<T>> inputs = new ArrayList<>();
+    List<ProcessMethod.ProcessResult<?>> results = new ArrayList<>();
+    inputs.add(firstInput);
+    results.add(firstResult);
+
+    while (inputs.size() < batchesPerTx && deadline - System.nanoTime() > 0) {
+      flowletContext.getProgramMetrics().increment("process.tuples.attempt.read", 1);
+      InputDatum<T> input = processSpec.getQueueReader().dequeue(0, TimeUnit.MILLISECONDS);
+      if (!input.needProcess()) {
+        break;
+      }
+      ProcessMethod.ProcessResult<?> result = processMethod.invoke(input);
+      if (!result.isSuccess()) {
+        // This will abort the transaction, which rolls back all inputs processed in it.
+        postProcess(processMethodCallback(processQueue, entry, input, true), txContext, input, result);
+        return;
+      }
+      inputs.add(input);
+      results.add(result);
+    }
+
+    try {
+      txContext.finish();
+    } catch (Throwable t) {
+      LOG.warn("Failed to commit {} inputs processed in one transaction. They will be processed again: {}",
+               inputs.size(), flowletContext, t);
+      try {
+        txContext.abort();
+      } catch (Throwable e) {
+        LOG.error("Fail to abort transaction: {}", flowletContext, e);
+      }
+      entry.commitIndividually(inputs.size());
+      processQueue.offer(entry);
+      return;
+    }
+
+    for (int i = 0; i < inputs.size(); i++) {
+      InputDatum<T> input = inputs.get(i);
+      try {
+        processMethodCallback(processQueue, entry, input, false).onSuccess(results.get(i).getEvent(),
+                                                                           input.getInputContext());
+      } catch (Throwable t) {
+        LOG.error("Failed to invoke callback.", t);
+      }
+    }
+    processQueue.offer(entry);
+  }
+
+  /**
+   * Checks if there may be input available for the given entry without starting a transaction.
+   */
+  private boolean hasInput(FlowletProcessEntry<?> entry) {
+    try {
+      return entry.getProcessSpec().getQueueReader().hasInput();
+    } catch (Throwable t) {
+      // Let the dequeue in transaction to deal with the failure
+      LOG.debug("Failed to check for input availability: {}", flowletContext, t);
+      return true;
+    }
+  }
+
   private void startTx(TransactionContext txContext) throws TransactionFailureException {
     txContext.start(flowletContext.getDefaultTxTimeout());
   }
@@ -334,7 +503,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
   private <T> ProcessMethodCallback processMethodCallback(final PriorityQueue<FlowletProcessEntry<?>> processQueue,
                                                           final FlowletProcessEntry<T> processEntry,
-                                                          final InputDatum<T> input) {
+                                                          final InputDatum<T> input,
+                                                          final boolean enqueueOnSuccess) {
     // If it is generator flowlet, processCount is 1.
     final int processedCount = processEntry.getProcessSpec().getProcessMethod().needsInput() ? input.size() : 1;
 
@@ -356,7 +526,9 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         } catch (Throwable t) {
           LOG.error("Exception on onSuccess call: {}", flowletContext, t);
         } finally {
-          enqueueEntry();
+          if (enqueueOnSuccess) {
+            enqueueEntry();
+          }
         }
       }
 
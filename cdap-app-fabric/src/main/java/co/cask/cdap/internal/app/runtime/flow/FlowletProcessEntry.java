@@ -50,6 +50,11 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
   private long nextDeque;
   private long currentBackOff = BACKOFF_MIN;
 
+  /**
+   * Number of upcoming process calls that must be committed in their own transactions.
+   */
+  private int individualCommits;
+
   static <T> FlowletProcessEntry<T> create(ProcessSpecification<T> processSpec) {
     long nextDeque;
     try {
@@ -81,13 +86,6 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
     return retrySpec != null;
   }
 
-  public void await() throws InterruptedException {
-    long waitTime = nextDeque - System.nanoTime();
-    if (waitTime > 0) {
-      TimeUnit.NANOSECONDS.sleep(waitTime);
-    }
-  }
-
   public boolean shouldProcess() {
     return nextDeque - System.nanoTime() <= 0;
   }
@@ -102,6 +100,15 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
     currentBackOff = BACKOFF_MIN;
   }
 
+  /**
+   * Makes this entry to be processed immediately, with the back-off time reset to the minimum.
+   * It is called when new input is known to be available.
+   */
+  public void wakeUp() {
+    nextDeque = System.nanoTime();
+    currentBackOff = BACKOFF_MIN;
+  }
+
   public void backOff() {
     nextDeque = System.nanoTime() + currentBackOff;
     if (currentBackOff < BACKOFF_EXP_START) {
@@ -111,6 +118,25 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
     }
   }
 
+  /**
+   * Requests the given number of upcoming process calls to be committed in their own transactions.
+   */
+  public void commitIndividually(int count) {
+    individualCommits = count;
+  }
+
+  /**
+   * Returns {@code true} if the current process call can be committed in the same transaction as the
+   * subsequent ones. Each call to this method counts as one process call.
+   */
+  public boolean canCommitWithOthers() {
+    if (individualCommits > 0) {
+      individualCommits--;
+      return false;
+    }
+    return !isRetry() && !isTick;
+  }
+
   public ProcessSpecification<T> getProcessSpec() {
     return retrySpec == null ? processSpec : retrySpec;
   }
@@ -48,7 +48,8 @@ import co.cask.cdap.app.runtime.ProgramRunner;
 import co.cask.cdap.common.async.ExecutorUtils;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
-import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.ByteBufferBinaryDecoder;
+import co.cask.cdap.common.io.DatumReader;
 import co.cask.cdap.common.lang.InstantiatorFactory;
 import co.cask.cdap.common.lang.PropertyFieldSetter;
 import co.cask.cdap.common.queue.QueueName;
@@ -66,6 +67,7 @@ import co.cask.cdap.data2.queue.QueueConsumer;
 import co.cask.cdap.data2.registry.RuntimeUsageRegistry;
 import co.cask.cdap.data2.transaction.queue.QueueMetrics;
 import co.cask.cdap.data2.transaction.stream.StreamConsumer;
+import co.cask.cdap.internal.app.queue.EnqueueNotifier;
 import co.cask.cdap.internal.app.queue.QueueReaderFactory;
 import co.cask.cdap.internal.app.queue.RoundRobinQueueReader;
 import co.cask.cdap.internal.app.queue.SimpleQueueSpecificationGenerator;
@@ -76,8 +78,9 @@ import co.cask.cdap.internal.app.runtime.DataSetFieldSetter;
 import co.cask.cdap.internal.app.runtime.MetricsFieldSetter;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.runtime.ProgramRunners;
+import co.cask.cdap.internal.app.runtime.SystemArguments;
+import co.cask.cdap.internal.io.DatumReaderFactory;
 import co.cask.cdap.internal.io.DatumWriterFactory;
-import co.cask.cdap.internal.io.ReflectionDatumReader;
 import co.cask.cdap.internal.io.SchemaGenerator;
 import co.cask.cdap.internal.lang.Reflections;
 import co.cask.cdap.internal.specification.FlowletMethod;
@@ -88,7 +91,6 @@ import co.cask.cdap.proto.id.FlowletId;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.cdap.proto.id.ProgramRunId;
 import co.cask.cdap.proto.id.StreamId;
-import co.cask.common.io.ByteBufferInputStream;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
@@ -136,6 +138,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
   private final CConfiguration cConf;
   private final SchemaGenerator schemaGenerator;
   private final DatumWriterFactory datumWriterFactory;
+  private final DatumReaderFactory datumReaderFactory;
   private final DataFabricFacadeFactory dataFabricFacadeFactory;
   private final StreamCoordinatorClient streamCoordinatorClient;
   private final QueueReaderFactory queueReaderFactory;
@@ -147,11 +150,13 @@ public final class FlowletProgramRunner implements ProgramRunner {
   private final SecureStore secureStore;
   private final SecureStoreManager secureStoreManager;
   private final MessagingService messageService;
+  private final EnqueueNotifier enqueueNotifier;
 
   @Inject
   public FlowletProgramRunner(CConfiguration cConfiguration,
                               SchemaGenerator schemaGenerator,
                               DatumWriterFactory datumWriterFactory,
+                              DatumReaderFactory datumReaderFactory,
                               DataFabricFacadeFactory dataFabricFacadeFactory,
                               StreamCoordinatorClient streamCoordinatorClient,
                               QueueReaderFactory queueReaderFactory,
@@ -162,10 +167,12 @@ public final class FlowletProgramRunner implements ProgramRunner {
                               RuntimeUsageRegistry runtimeUsageRegistry,
                               SecureStore secureStore,
                               SecureStoreManager secureStoreManager,
-                              MessagingService messagingService) {
+                              MessagingService messagingService,
+                              EnqueueNotifier enqueueNotifier) {
     this.cConf = cConfiguration;
     this.schemaGenerator = schemaGenerator;
     this.datumWriterFactory = datumWriterFactory;
+    this.datumReaderFactory = datumReaderFactory;
     this.dataFabricFacadeFactory = dataFabricFacadeFactory;
     this.streamCoordinatorClient = streamCoordinatorClient;
     this.queueReaderFactory = queueReaderFactory;
@@ -177,6 +184,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
     this.secureStore = secureStore;
     this.secureStoreManager = secureStoreManager;
     this.messageService = messagingService;
+    this.enqueueNotifier = enqueueNotifier;
   }
 
   @SuppressWarnings("unchecked")
@@ -275,7 +283,10 @@ public final class FlowletProgramRunner implements ProgramRunner {
       Service serviceHook = createServiceHook(flowletName, consumerSuppliers, controllerRef);
       FlowletRuntimeService driver = new FlowletRuntimeService(flowlet, flowletContext, processSpecs,
                                                              createCallback(flowlet, flowletDef.getFlowletSpec()),
-                                                             dataFabricFacade, serviceHook);
+                                                             dataFabricFacade, serviceHook,
+                                                             enqueueNotifier, getQueueNames(consumerSuppliers),
+                                                             SystemArguments.getFlowletBatchesPerTx(
+                                                               flowletContext.getRuntimeArguments(), cConf));
 
       FlowletProgramController controller = new FlowletProgramController(flowletName,
                                                                          flowletContext, driver,
@@ -520,7 +531,9 @@ public final class FlowletProgramRunner implements ProgramRunner {
                   Constants.Metrics.Tag.CONSUMER, consumer);
               }});
 
-          // create a queue metrics emitter that emit to all of the above collectors
+          // create a queue metrics emitter that emit to all of the above collectors.
+          // It is called after the enqueue is committed, hence also used to notify consumers of the queue.
+          final QueueName producerQueueName = queueName;
           ProducerSupplier producerSupplier = new ProducerSupplier(queueName, queueClientFactory, new QueueMetrics() {
             @Override
             public void emitEnqueue(int count) {
@@ -528,6 +541,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
               for (MetricsContext collector : consumerMetrics) {
                 collector.increment("queue.pending", count);
               }
+              enqueueNotifier.notifyEnqueued(producerQueueName);
             }
             @Override
             public void emitEnqueueBytes(int bytes) {
@@ -547,7 +561,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
     return new ProcessMethodFactory() {
       @Override
       public <T> ProcessMethod<T> create(Method method, int maxRetries) {
-        return ReflectionProcessMethod.create(flowlet, method, maxRetries);
+        return GeneratedProcessMethod.create(flowlet, method, maxRetries);
       }
     };
   }
@@ -622,19 +636,18 @@ public final class FlowletProgramRunner implements ProgramRunner {
 
   private <T> Function<ByteBuffer, T> createInputDatumDecoder(final TypeToken<T> dataType, final Schema schema,
                                                               final SchemaCache schemaCache) {
-    final ReflectionDatumReader<T> datumReader = new ReflectionDatumReader<>(schema, dataType);
-    final ByteBufferInputStream byteBufferInput = new ByteBufferInputStream(null);
-    final BinaryDecoder decoder = new BinaryDecoder(byteBufferInput);
+    final DatumReader<T> datumReader = datumReaderFactory.create(dataType, schema);
+    final ByteBufferBinaryDecoder decoder = new ByteBufferBinaryDecoder();
 
     return new Function<ByteBuffer, T>() {
       @Nullable
       @Override
       public T apply(ByteBuffer input) {
-        byteBufferInput.reset(input);
         try {
           final Schema sourceSchema = schemaCache.get(input);
           Preconditions.checkNotNull(sourceSchema, "Fail to find source schema.");
-          return datumReader.read(decoder, sourceSchema);
+          // Decode the data that follows the schema hash
+          return datumReader.read(decoder.reset(input), sourceSchema);
         } catch (IOException e) {
           throw Throwables.propagate(e);
         }
@@ -691,6 +704,17 @@ public final class FlowletProgramRunner implements ProgramRunner {
     return new SchemaCache(schemas.build(), program.getClassLoader());
   }
 
+  /**
+   * Returns the set of queue names consumed by the given consumer suppliers.
+   */
+  private Set<QueueName> getQueueNames(Iterable<ConsumerSupplier<?>> consumerSuppliers) {
+    Set<QueueName> queueNames = Sets.newHashSet();
+    for (ConsumerSupplier<?> consumerSupplier : consumerSuppliers) {
+      queueNames.add(consumerSupplier.getQueueName());
+    }
+    return queueNames;
+  }
+
   /**
    * Create a initializer to be executed during the flowlet driver initialization.
    */
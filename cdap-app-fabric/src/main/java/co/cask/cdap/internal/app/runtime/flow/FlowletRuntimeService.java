@@ -21,7 +21,9 @@ import co.cask.cdap.api.flow.flowlet.Callback;
 import co.cask.cdap.api.flow.flowlet.Flowlet;
 import co.cask.cdap.api.flow.flowlet.FlowletContext;
 import co.cask.cdap.common.logging.LoggingContextAccessor;
+import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.data2.transaction.Transactions;
+import co.cask.cdap.internal.app.queue.EnqueueNotifier;
 import co.cask.cdap.internal.app.runtime.DataFabricFacade;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.Service;
@@ -29,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Set;
 
 /**
  * This class represents lifecycle of a {@link Flowlet}, Start, Stop, Suspend and Resume.
@@ -43,26 +46,34 @@ final class FlowletRuntimeService extends AbstractIdleService {
   private final Callback txCallback;
   private final DataFabricFacade dataFabricFacade;
   private final Service serviceHook;
+  private final EnqueueNotifier enqueueNotifier;
+  private final Set<QueueName> inputQueueNames;
+  private final int batchesPerTx;
 
   private FlowletProcessDriver flowletProcessDriver;
 
   FlowletRuntimeService(Flowlet flowlet, BasicFlowletContext flowletContext,
                         Collection<? extends ProcessSpecification<?>> processSpecs,
                         Callback txCallback, DataFabricFacade dataFabricFacade,
-                        Service serviceHook) {
+                        Service serviceHook, EnqueueNotifier enqueueNotifier, Set<QueueName> inputQueueNames,
+                        int batchesPerTx) {
     this.flowlet = flowlet;
     this.flowletContext = flowletContext;
     this.processSpecs = processSpecs;
     this.txCallback = txCallback;
     this.dataFabricFacade = dataFabricFacade;
     this.serviceHook = serviceHook;
+    this.enqueueNotifier = enqueueNotifier;
+    this.inputQueueNames = inputQueueNames;
+    this.batchesPerTx = batchesPerTx;
   }
 
   @Override
   protected void startUp() throws Exception {
     LoggingContextAccessor.setLoggingContext(flowletContext.getLoggingContext());
     flowletContext.getProgramMetrics().increment("process.instance", 1);
-    flowletProcessDriver = new FlowletProcessDriver(flowletContext, dataFabricFacade, txCallback, processSpecs);
+    flowletProcessDriver = new FlowletProcessDriver(flowletContext, dataFabricFacade, txCallback, processSpecs,
+                                                    enqueueNotifier, inputQueueNames, batchesPerTx);
 
     serviceHook.startAndWait();
     initFlowlet();
@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.flow.flowlet.InputContext;
+
+import javax.annotation.Nullable;
+
+/**
+ * Calls a flowlet process method directly. Implementations are generated by {@link ProcessMethodInvokerGenerator}.
+ * It has to be public since the generated class is loaded by a different {@link ClassLoader}.
+ */
+public interface ProcessMethodInvoker {
+
+  /**
+   * Invokes the process method.
+   *
+   * @param flowlet the flowlet instance to invoke the process method on
+   * @param event the event or the {@link java.util.Iterator} of events to process; ignored if the process method
+   *              doesn't take parameter
+   * @param inputContext the {@link InputContext}; ignored if the process method doesn't take it
+   * @throws Exception if the process method throws exception
+   */
+  void invoke(Object flowlet, @Nullable Object event, InputContext inputContext) throws Exception;
+}
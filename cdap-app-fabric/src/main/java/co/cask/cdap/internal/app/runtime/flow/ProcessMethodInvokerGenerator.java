@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.flow.flowlet.InputContext;
+import co.cask.cdap.internal.asm.ClassDefinition;
+import co.cask.cdap.internal.asm.Methods;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * A bytecode generator for generating a {@link ProcessMethodInvoker} class that calls a flowlet process method
+ * directly, without going through {@link Method#invoke(Object, Object...)}.
+ *
+ * The generated class is loaded by a different {@link ClassLoader} than the flowlet class, hence it can only
+ * call public method of a public class, with all parameter types being public.
+ */
+final class ProcessMethodInvokerGenerator {
+
+  /**
+   * Returns {@code true} if an invoker can be generated for the given process method.
+   */
+  static boolean isSupported(Method method) {
+    int modifiers = method.getModifiers();
+    if (!Modifier.isPublic(modifiers) || Modifier.isStatic(modifiers)
+      || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+      return false;
+    }
+    for (Class<?> paramType : method.getParameterTypes()) {
+      if (!paramType.isPrimitive() && !Modifier.isPublic(paramType.getModifiers())) {
+        return false;
+      }
+    }
+    return method.getParameterTypes().length <= 2;
+  }
+
+  /**
+   * Generates a {@link ProcessMethodInvoker} class for the given process method. The generated class has a
+   * public default constructor and is stateless.
+   *
+   * @param method the process method to call
+   * @return A {@link ClassDefinition} containing information of the newly generated class.
+   */
+  ClassDefinition generate(Method method) {
+    Preconditions.checkArgument(isSupported(method), "Cannot generate invoker for process method %s", method);
+
+    Class<?> declaringClass = method.getDeclaringClass();
+    List<Class<?>> preservedClasses = Lists.newArrayList();
+    preservedClasses.add(declaringClass);
+    for (Class<?> paramType : method.getParameterTypes()) {
+      if (!paramType.isPrimitive()) {
+        preservedClasses.add(paramType);
+      }
+    }
+
+    ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+
+    String internalName = Type.getInternalName(declaringClass);
+    String className = internalName + Hashing.md5().hashString(method.toGenericString());
+
+    classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL, className, null,
+                      Type.getInternalName(Object.class),
+                      new String[] { Type.getInternalName(ProcessMethodInvoker.class) });
+
+    generateConstructor(classWriter);
+    generateInvoke(method, classWriter);
+
+    ClassDefinition classDefinition = new ClassDefinition(classWriter.toByteArray(), className, preservedClasses);
+    // DEBUG block. Uncomment for debug
+    // co.cask.cdap.internal.asm.Debugs.debugByteCode(classDefinition, new java.io.PrintWriter(System.out));
+    // End DEBUG block
+    return classDefinition;
+  }
+
+  /**
+   * Generates the default constructor.
+   */
+  private void generateConstructor(ClassWriter classWriter) {
+    org.objectweb.asm.commons.Method constructor = Methods.getMethod(void.class, "<init>");
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, classWriter);
+
+    // super();
+    mg.loadThis();
+    mg.invokeConstructor(Type.getType(Object.class), constructor);
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates the {@link ProcessMethodInvoker#invoke(Object, Object, InputContext)} method, which is
+   *
+   * <pre>{@code
+   *   public void invoke(Object flowlet, Object event, InputContext inputContext) throws Exception {
+   *     ((FlowletClass) flowlet).process((EventType) event, (InputContext) inputContext);
+   *   }
+   * }</pre>
+   */
+  private void generateInvoke(Method method, ClassWriter classWriter) {
+    org.objectweb.asm.commons.Method invoke = Methods.getMethod(void.class, "invoke", Object.class,
+                                                                Object.class, InputContext.class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, invoke, null,
+                                               new Type[] { Type.getType(Exception.class) }, classWriter);
+
+    Type flowletType = Type.getType(method.getDeclaringClass());
+    mg.loadArg(0);
+    mg.checkCast(flowletType);
+
+    Class<?>[] paramTypes = method.getParameterTypes();
+    for (int i = 0; i < paramTypes.length; i++) {
+      // The first parameter is the event and the second one is the InputContext
+      mg.loadArg(i + 1);
+      Type paramType = Type.getType(paramTypes[i]);
+      if (paramTypes[i].isPrimitive()) {
+        mg.unbox(paramType);
+      } else if (!paramTypes[i].equals(Object.class)) {
+        mg.checkCast(paramType);
+      }
+    }
+
+    org.objectweb.asm.commons.Method processMethod = org.objectweb.asm.commons.Method.getMethod(method);
+    if (method.getDeclaringClass().isInterface()) {
+      mg.invokeInterface(flowletType, processMethod);
+    } else {
+      mg.invokeVirtual(flowletType, processMethod);
+    }
+
+    // Discard the return value if there is any
+    Type returnType = processMethod.getReturnType();
+    if (returnType.getSize() == 2) {
+      mg.pop2();
+    } else if (returnType.getSize() == 1) {
+      mg.pop();
+    }
+
+    mg.returnValue();
+    mg.endMethod();
+  }
+}
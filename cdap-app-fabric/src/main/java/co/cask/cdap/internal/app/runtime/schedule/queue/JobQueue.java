@@ -31,11 +31,13 @@ public interface JobQueue {
 
   /**
    * Returns a {@link CloseableIterator} over all the jobs associated with the given schedule Id.
+   * The jobs don't contain their notifications, see {@link #getJobWithNotifications(JobKey)}.
    */
   CloseableIterator<Job> getJobsForSchedule(ScheduleId scheduleId);
 
   /**
    * Returns a stored Job, given the scheduleId and the creationTime of it.
+   * The job doesn't contain its notifications, see {@link #getJobWithNotifications(JobKey)}.
    *
    * @param jobKey the key for the requested Job
    * @return the stored Job, or null if there is no Job for the given key.
@@ -43,6 +45,17 @@ public interface JobQueue {
   @Nullable
   Job getJob(JobKey jobKey);
 
+  /**
+   * Returns a stored Job together with all of its notifications, given the scheduleId and the creationTime of it.
+   * Reading the notifications is expensive for jobs with many notifications, therefore the other reads of the queue
+   * don't return them. This should only be used where the notifications are needed, such as to launch the job.
+   *
+   * @param jobKey the key for the requested Job
+   * @return the stored Job with its notifications, or null if there is no Job for the given key.
+   */
+  @Nullable
+  Job getJobWithNotifications(JobKey jobKey);
+
   /**
    * Creates a new Job in the queue or updates an existing Job.
    *
@@ -91,7 +104,8 @@ public interface JobQueue {
   /**
    * @param partition the partition of the JobQueue to get Jobs from
    * @param lastJobProcessed the job to start the scan from (exclusive), or null to indicate scanning from the start
-   * @return A {@link CloseableIterator} over all the jobs in the given partition of the JobQueue
+   * @return A {@link CloseableIterator} over all the jobs in the given partition of the JobQueue. The jobs don't
+   *         contain their notifications, see {@link #getJobWithNotifications(JobKey)}.
    */
   CloseableIterator<Job> getJobs(int partition, @Nullable Job lastJobProcessed);
 }
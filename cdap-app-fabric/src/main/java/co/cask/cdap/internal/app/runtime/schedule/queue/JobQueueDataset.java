@@ -37,7 +37,6 @@ import co.cask.cdap.internal.app.runtime.schedule.trigger.TriggerCodec;
 import co.cask.cdap.internal.schedule.constraint.Constraint;
 import co.cask.cdap.proto.Notification;
 import co.cask.cdap.proto.id.ScheduleId;
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.hash.Hashing;
@@ -59,8 +58,19 @@ import javax.annotation.Nullable;
  *     'J':<partition_id>:<scheduleId>:<timestamp>
  *     The <partition_id> is a hash based upon the scheduleId
  *
+ *   For Notifications of a Job:
+ *     'N':<job_row_key><index>
+ *     The <index> is the position of the notification in the Job, as a four bytes integer
+ *
  *   For TMS MessageId:
  *     'M':<topic>
+ *
+ * The Job row contains the Job without its notifications, and the incremental trigger state of the Job, which
+ * is the number of notifications of the Job, followed by the state of the trigger as maintained by
+ * {@link SatisfiableTrigger#updateState(ProgramSchedule, Notification, long[], int)}. Adding a notification to a Job
+ * only writes the notification and the trigger state, hence it doesn't depend on the number of notifications
+ * that the Job already has. Jobs written before the trigger state was introduced have their notifications embedded
+ * in the Job instead, and are converted when a notification is added to them.
  */
 public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicMessageIdStore {
 
@@ -72,13 +82,15 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
       .registerTypeAdapter(Constraint.class, new ConstraintCodec())
       .create();
 
-  // simply serialize the entire Job into one column
+  // serialize the Job without its notifications into one column
   private static final byte[] COL = new byte[] {'C'};
+  private static final byte[] TRIGGER_STATE_COL = new byte[] {'S'};
   private static final byte[] TO_DELETE_COL = new byte[] {'D'};
   private static final byte[] IS_OBSOLETE_COL = new byte[] {'O'};
   private static final byte[] JOB_ROW_PREFIX = new byte[] {'J'};
   private static final byte[] ROW_KEY_SEPARATOR = new byte[] {':'};
   private static final byte[] MESSAGE_ID_ROW_PREFIX = new byte[] {'M'};
+  private static final byte[] NOTIFICATION_ROW_PREFIX = new byte[] {'N'};
 
   private static final int NUM_PARTITIONS = 16;
 
@@ -117,16 +129,34 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
 
   @Override
   public Job getJob(JobKey jobKey) {
+    return getJob(jobKey, false);
+  }
+
+  @Override
+  public Job getJobWithNotifications(JobKey jobKey) {
+    return getJob(jobKey, true);
+  }
+
+  @Nullable
+  private Job getJob(JobKey jobKey, boolean readNotifications) {
     Row row = table.get(getRowKey(jobKey.getScheduleId(), jobKey.getCreationTime()));
     if (row.isEmpty()) {
       return null;
     }
-    return fromRow(row);
+    return fromRow(row, readNotifications);
   }
 
   @Override
   public void put(Job job) {
-    table.put(toPut(job));
+    byte[] rowKey = getRowKey(job.getSchedule().getScheduleId(), job.getCreationTime());
+    List<Notification> notifications = job.getNotifications();
+    TriggerState triggerState = new TriggerState(job.getSchedule());
+    for (Notification notification : notifications) {
+      triggerState.addNotification(rowKey, notification);
+    }
+    table.put(new Put(rowKey)
+                .add(COL, toJson(job, job.getState()))
+                .add(TRIGGER_STATE_COL, triggerState.toBytes()));
   }
 
   @Override
@@ -135,7 +165,14 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     job.getState().checkTransition(state);
     Job newJob = new SimpleJob(job.getSchedule(), job.getCreationTime(), job.getNotifications(), state,
                                job.getScheduleLastUpdatedTime());
-    put(newJob);
+    byte[] rowKey = getRowKey(job.getSchedule().getScheduleId(), job.getCreationTime());
+    if (table.get(rowKey, TRIGGER_STATE_COL) == null) {
+      // the job has its notifications embedded. Rewrite it so that the notifications are stored separately
+      put(newJob);
+    } else {
+      // the notifications and the trigger state don't change, only the job itself needs to be rewritten
+      table.put(rowKey, COL, toJson(newJob, state));
+    }
     return newJob;
   }
 
@@ -157,9 +194,12 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     if (schedule.getTrigger() instanceof AbstractSatisfiableCompositeTrigger) {
       scheduleIds.add(getRowKeyPrefix(schedule.getScheduleId()));
     }
-    try (CloseableIterator<Job> jobs = getJobsForSchedule(schedule.getScheduleId())) {
-      while (jobs.hasNext()) {
-        Job job = jobs.next();
+    byte[] keyPrefix = getRowKeyPrefix(schedule.getScheduleId());
+    try (Scanner scanner = table.scan(keyPrefix, Bytes.stopKeyForPrefix(keyPrefix))) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        // the existing notifications of the job are not needed, since the trigger state is updated incrementally
+        Job job = fromRow(row, false);
         if (job.getState() == Job.State.PENDING_TRIGGER) {
           // only update the job's notifications if it is in PENDING_TRIGGER, so as to avoid conflict with the
           // ConstraintCheckerService
@@ -170,15 +210,13 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
           long scheduleLastUpdated = record.getMeta().getLastUpdated();
           if (job.getScheduleLastUpdatedTime() != scheduleLastUpdated) {
             // schedule has changed: this job is obsolete
-            table.put(getRowKey(job.getJobKey().getScheduleId(), job.getJobKey().getCreationTime()),
-                      IS_OBSOLETE_COL, Bytes.toBytes(System.currentTimeMillis()));
+            table.put(row.getRow(), IS_OBSOLETE_COL, Bytes.toBytes(System.currentTimeMillis()));
           } else if (System.currentTimeMillis() - job.getCreationTime() > job.getSchedule().getTimeoutMillis()) {
             // job has timed out; mark it obsolete
-            table.put(getRowKey(job.getJobKey().getScheduleId(), job.getJobKey().getCreationTime()),
-                      IS_OBSOLETE_COL, Bytes.toBytes(System.currentTimeMillis()));
+            table.put(row.getRow(), IS_OBSOLETE_COL, Bytes.toBytes(System.currentTimeMillis()));
           } else {
             jobExists = true;
-            addNotification(job, notification);
+            addNotification(row, job, notification);
             break;
           }
         }
@@ -194,18 +232,38 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     }
   }
 
-  private void addNotification(Job job, Notification notification) {
-    List<Notification> notifications = new ArrayList<>(job.getNotifications());
-    notifications.add(notification);
+  /**
+   * Adds a notification to the job stored in the given row, by writing the notification and the updated
+   * trigger state, without reading or rewriting the existing notifications of the job.
+   */
+  private void addNotification(Row row, Job job, Notification notification) {
+    byte[] rowKey = row.getRow();
+    byte[] triggerStateBytes = row.get(TRIGGER_STATE_COL);
+    TriggerState triggerState;
+    boolean rewriteJob = false;
+    if (triggerStateBytes == null) {
+      // the job has its notifications embedded. Move them to separate rows and rewrite the job without them.
+      triggerState = new TriggerState(job.getSchedule());
+      for (Notification existing : job.getNotifications()) {
+        triggerState.addNotification(rowKey, existing);
+      }
+      rewriteJob = true;
+    } else {
+      triggerState = new TriggerState(job.getSchedule(), triggerStateBytes);
+    }
+    triggerState.addNotification(rowKey, notification);
 
     Job.State newState = job.getState();
-    if (isTriggerSatisfied(job.getSchedule(), notifications)) {
+    if (triggerState.isSatisfied()) {
       newState = Job.State.PENDING_CONSTRAINT;
       job.getState().checkTransition(newState);
+      rewriteJob = true;
     }
-    Job newJob = new SimpleJob(job.getSchedule(), job.getCreationTime(), notifications, newState,
-                               job.getScheduleLastUpdatedTime());
-    put(newJob);
+    Put put = new Put(rowKey).add(TRIGGER_STATE_COL, triggerState.toBytes());
+    if (rewriteJob) {
+      put.add(COL, toJson(job, newState));
+    }
+    table.put(put);
   }
 
   private boolean isTriggerSatisfied(ProgramSchedule schedule, List<Notification> notifications) {
@@ -218,7 +276,7 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     Row row;
     try (Scanner scanner = table.scan(keyPrefix, Bytes.stopKeyForPrefix(keyPrefix))) {
       while ((row = scanner.next()) != null) {
-        Job job = fromRow(row);
+        Job job = fromRow(row, false);
         // only mark jobs that are not marked yet to avoid chance of conflict with concurrent delete
         if (job.getState() != Job.State.PENDING_LAUNCH && row.get(TO_DELETE_COL) == null) {
           // jobs that are pending launch will be deleted by the launcher anyway
@@ -230,7 +288,15 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
 
   @Override
   public void deleteJob(Job job) {
-    table.delete(getRowKey(job.getSchedule().getScheduleId(), job.getCreationTime()));
+    byte[] rowKey = getRowKey(job.getSchedule().getScheduleId(), job.getCreationTime());
+    table.delete(rowKey);
+    byte[] notificationRowPrefix = getNotificationRowPrefix(rowKey);
+    try (Scanner scanner = table.scan(notificationRowPrefix, Bytes.stopKeyForPrefix(notificationRowPrefix))) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        table.delete(row.getRow());
+      }
+    }
   }
 
   @Override
@@ -256,11 +322,15 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     return createCloseableIterator(table.scan(startKey, stopKey));
   }
 
-  // full scan of JobQueueDataset
+  // full scan of JobQueueDataset. The jobs don't contain their notifications, see getJobWithNotifications
   public CloseableIterator<Job> fullScan() {
     return createCloseableIterator(table.scan(JOB_ROW_PREFIX, Bytes.stopKeyForPrefix(JOB_ROW_PREFIX)));
   }
 
+  /**
+   * Creates an iterator over the jobs of the given scanner. Only the metadata of the jobs is read, since the checks
+   * done on the scanned jobs don't need their notifications.
+   */
   private CloseableIterator<Job> createCloseableIterator(final Scanner scanner) {
     return new AbstractCloseableIterator<Job>() {
       @Override
@@ -269,7 +339,7 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
         if (row == null) {
           return endOfData();
         }
-        return fromRow(row);
+        return fromRow(row, false);
       }
 
       @Override
@@ -279,9 +349,23 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     };
   }
 
-  private Job fromRow(Row row) {
+  /**
+   * Decodes a job from the given row.
+   *
+   * @param row the row of the job
+   * @param readNotifications whether to read the notifications of the job, which are stored in separate rows.
+   *                          If {@code false}, the job returned only contains the notifications embedded in the job.
+   */
+  private Job fromRow(Row row, boolean readNotifications) {
     String jobJsonString = Bytes.toString(row.get(COL));
     SimpleJob job = GSON.fromJson(jobJsonString, SimpleJob.class);
+    byte[] triggerStateBytes = row.get(TRIGGER_STATE_COL);
+    if (readNotifications && triggerStateBytes != null) {
+      // the trigger state starts with the number of notifications of the job
+      List<Notification> notifications = getNotifications(row.getRow(), Bytes.toInt(triggerStateBytes, 0));
+      job = new SimpleJob(job.getSchedule(), job.getCreationTime(), notifications, job.getState(),
+                          job.getScheduleLastUpdatedTime());
+    }
     Long toBeDeletedTime = row.getLong(TO_DELETE_COL);
     Long isObsoleteTime = row.getLong(IS_OBSOLETE_COL);
     Long timeToSet = toBeDeletedTime == null ? isObsoleteTime :
@@ -292,9 +376,41 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     return job;
   }
 
-  private Put toPut(Job job) {
-    ScheduleId scheduleId = job.getSchedule().getScheduleId();
-    return new Put(getRowKey(scheduleId, job.getCreationTime()), COL, GSON.toJson(job));
+  /**
+   * Returns the first given number of notifications of the job with the given row key.
+   */
+  private List<Notification> getNotifications(byte[] jobRowKey, int numNotifications) {
+    if (numNotifications == 0) {
+      return Collections.emptyList();
+    }
+    byte[] notificationRowPrefix = getNotificationRowPrefix(jobRowKey);
+    byte[] startKey = Bytes.add(notificationRowPrefix, Bytes.toBytes(0));
+    byte[] stopKey = Bytes.add(notificationRowPrefix, Bytes.toBytes(numNotifications));
+    List<Notification> notifications = new ArrayList<>(numNotifications);
+    try (Scanner scanner = table.scan(startKey, stopKey)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        notifications.add(GSON.fromJson(Bytes.toString(row.get(COL)), Notification.class));
+      }
+    }
+    return notifications;
+  }
+
+  /**
+   * Serializes the given job with the given state, without the notifications of the job.
+   */
+  private String toJson(Job job, Job.State state) {
+    SimpleJob jobToWrite = new SimpleJob(job.getSchedule(), job.getCreationTime(),
+                                         Collections.<Notification>emptyList(), state,
+                                         job.getScheduleLastUpdatedTime());
+    if (job.getDeleteTimeMillis() != null) {
+      jobToWrite.setToBeDeleted(job.getDeleteTimeMillis());
+    }
+    return GSON.toJson(jobToWrite);
+  }
+
+  private byte[] getNotificationRowPrefix(byte[] jobRowKey) {
+    return Bytes.concat(NOTIFICATION_ROW_PREFIX, ROW_KEY_SEPARATOR, jobRowKey);
   }
 
   private byte[] getJobRowPrefix(int bucket) {
@@ -307,8 +423,10 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
     return Bytes.concat(getJobRowPrefix(getPartition(scheduleId)), scheduleIdBytes, ROW_KEY_SEPARATOR);
   }
 
-  @VisibleForTesting
-  int getPartition(ScheduleId scheduleId) {
+  /**
+   * Returns the partition of the job queue that contains the jobs of the given schedule.
+   */
+  public int getPartition(ScheduleId scheduleId) {
     // Similar to ScheduleId#hashCode, but that is not consistent across runtimes due to how Enum#hashCode works.
     // Ensure that the hash won't change across runtimes:
     int hash = Hashing.murmur3_32().newHasher()
@@ -339,4 +457,62 @@ public class JobQueueDataset extends AbstractDataset implements JobQueue, TopicM
   private byte[] getRowKey(String topic) {
     return Bytes.concat(MESSAGE_ID_ROW_PREFIX, ROW_KEY_SEPARATOR, Bytes.toBytes(topic));
   }
+
+  /**
+   * The incremental trigger state of a job. It consists of the number of notifications of the job, and the
+   * counters maintained by the trigger of the job's schedule.
+   */
+  private final class TriggerState {
+
+    private final ProgramSchedule schedule;
+    private final SatisfiableTrigger trigger;
+    private final long[] counters;
+    private int numNotifications;
+
+    /**
+     * Creates the state of a job that has no notifications.
+     */
+    TriggerState(ProgramSchedule schedule) {
+      this.schedule = schedule;
+      this.trigger = (SatisfiableTrigger) schedule.getTrigger();
+      this.counters = new long[trigger.getStateSize()];
+    }
+
+    /**
+     * Creates the state from the bytes produced by {@link #toBytes()}.
+     */
+    TriggerState(ProgramSchedule schedule, byte[] bytes) {
+      this(schedule);
+      Preconditions.checkArgument(bytes.length == Bytes.SIZEOF_INT + counters.length * Bytes.SIZEOF_LONG,
+                                  "Trigger state of size %s does not match with the trigger of schedule %s",
+                                  bytes.length, schedule.getScheduleId());
+      this.numNotifications = Bytes.toInt(bytes, 0);
+      for (int i = 0; i < counters.length; i++) {
+        counters[i] = Bytes.toLong(bytes, Bytes.SIZEOF_INT + i * Bytes.SIZEOF_LONG);
+      }
+    }
+
+    /**
+     * Updates the state with a new notification and writes the notification to the table.
+     */
+    void addNotification(byte[] jobRowKey, Notification notification) {
+      trigger.updateState(schedule, notification, counters, 0);
+      table.put(Bytes.add(getNotificationRowPrefix(jobRowKey), Bytes.toBytes(numNotifications)),
+                COL, Bytes.toBytes(GSON.toJson(notification)));
+      numNotifications++;
+    }
+
+    boolean isSatisfied() {
+      return trigger.isSatisfied(counters, 0);
+    }
+
+    byte[] toBytes() {
+      byte[] bytes = new byte[Bytes.SIZEOF_INT + counters.length * Bytes.SIZEOF_LONG];
+      Bytes.putInt(bytes, 0, numNotifications);
+      for (int i = 0; i < counters.length; i++) {
+        Bytes.putLong(bytes, Bytes.SIZEOF_INT + i * Bytes.SIZEOF_LONG, counters[i]);
+      }
+      return bytes;
+    }
+  }
 }
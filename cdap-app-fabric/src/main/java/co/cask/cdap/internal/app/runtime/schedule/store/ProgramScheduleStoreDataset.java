@@ -77,6 +77,8 @@ import javax.annotation.Nullable;
  *     triggered are stored in adjacent rows. The only column of trigger row is the trigger key (that is, the
  *     key that can be constructed from an event to look up the schedules that have a trigger for it), in column
  *     <code>tk</code> ({@link #TRIGGER_KEY_COLUMN}</li>.
+ *   <li>Version: a single row <code>$version</code> ({@link #VERSION_ROW}) that holds a counter which is incremented
+ *     by every transaction that adds, updates or deletes schedules (see {@link #getVersion()}).</li>
  * </ul>
  *
  * Lookup of schedules by trigger key is by first finding the all triggers for that event key (using the index),
@@ -92,12 +94,17 @@ public class ProgramScheduleStoreDataset extends AbstractDataset {
   private static final String TRIGGER_KEY_COLUMN = "tk"; // trigger key
   private static final char TRIGGER_SEPARATOR = '@';
   private static final String ROW_KEY_SEPARATOR = ":";
+  // namespace names cannot contain '$', hence this never collides with a schedule or trigger row key
+  private static final String VERSION_ROW = "$version";
+  private static final String VERSION_COLUMN = "v";
 
   private static final byte[] SCHEDULE_COLUMN_BYTES = Bytes.toBytes(SCHEDULE_COLUMN);
   private static final byte[] UPDATED_COLUMN_BYTES = Bytes.toBytes(UPDATED_COLUMN);
   private static final byte[] STATUS_COLUMN_BYTES = Bytes.toBytes(STATUS_COLUMN);
   private static final byte[] TRIGGER_KEY_COLUMN_BYTES = Bytes.toBytes(TRIGGER_KEY_COLUMN);
   private static final byte[] TRIGGER_SEPARATOR_BYTES = Bytes.toBytes("" + TRIGGER_SEPARATOR);
+  private static final byte[] VERSION_ROW_BYTES = Bytes.toBytes(VERSION_ROW);
+  private static final byte[] VERSION_COLUMN_BYTES = Bytes.toBytes(VERSION_COLUMN);
 
   // package visible for the dataset definition
   static final String EMBEDDED_TABLE_NAME = "it"; // indexed table
@@ -154,6 +161,7 @@ public class ProgramScheduleStoreDataset extends AbstractDataset {
       byte[] triggerRowKey = rowKeyBytesForTrigger(scheduleKey, count++);
       store.put(new Put(triggerRowKey, TRIGGER_KEY_COLUMN_BYTES, triggerKey));
     }
+    incrementVersion();
   }
 
   /**
@@ -186,6 +194,7 @@ public class ProgramScheduleStoreDataset extends AbstractDataset {
     updatePut.add(UPDATED_COLUMN_BYTES, currentTime); // record current time
     updatePut.add(STATUS_COLUMN_BYTES, newStatus.toString());
     store.put(updatePut);
+    incrementVersion();
     return currentTime;
   }
 
@@ -237,6 +246,7 @@ public class ProgramScheduleStoreDataset extends AbstractDataset {
           store.delete(row.getRow());
         }
       }
+      incrementVersion();
     }
   }
 
@@ -258,6 +268,9 @@ public class ProgramScheduleStoreDataset extends AbstractDataset {
         deleted.add(rowKeyToScheduleId(row.getRow()));
       }
     }
+    if (!deleted.isEmpty()) {
+      incrementVersion();
+    }
     return deleted;
   }
 
@@ -285,6 +298,9 @@ public class ProgramScheduleStoreDataset extends AbstractDataset {
         }
       }
     }
+    if (!deleted.isEmpty()) {
+      incrementVersion();
+    }
     return deleted;
   }
 
@@ -466,8 +482,27 @@ public class ProgramScheduleStoreDataset extends AbstractDataset {
     return schedulesFound.values();
   }
 
+  /**
+   * Returns the version of the schedules in this store. The version is changed by every transaction that adds,
+   * updates or deletes schedules or changes their status. It can be used to validate schedules cached in memory,
+   * for example by a {@link TriggerScheduleCache}, with a single read.
+   *
+   * @return the current version, or 0 if the schedules were never modified
+   */
+  public long getVersion() {
+    return store.get(new Get(VERSION_ROW_BYTES, VERSION_COLUMN_BYTES)).getLong(VERSION_COLUMN_BYTES, 0L);
+  }
+
   /*------------------- private helpers ---------------------*/
 
+  /**
+   * Increments the version of the schedules. Concurrent transactions that modify schedules conflict on the
+   * version row, hence two different sets of schedules can never have the same version.
+   */
+  private void incrementVersion() {
+    store.put(VERSION_ROW_BYTES, VERSION_COLUMN_BYTES, Bytes.toBytes(getVersion() + 1));
+  }
+
   /**
    * List schedules in a given application and if the programId is not null, only return the schedules
    * which can launch the given program
@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.schedule.store;
+
+import co.cask.cdap.internal.app.runtime.schedule.ProgramScheduleRecord;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * An in-memory cache of the schedules that are triggered by each trigger key. It allows looking up the schedules
+ * for an event without scanning the index of the {@link ProgramScheduleStoreDataset} and decoding every schedule
+ * found, for every event.
+ *
+ * The cached schedules belong to a version of the store (see {@link ProgramScheduleStoreDataset#getVersion()}).
+ * {@link #validate(ProgramScheduleStoreDataset)} must be called at the beginning of every transaction that uses
+ * this cache, which drops all cached schedules if the store was modified since they were read. Because the
+ * version and the schedules are read in the same transaction, the schedules returned by
+ * {@link #findSchedules(ProgramScheduleStoreDataset, String)} are always the same as the ones in the store.
+ *
+ * This class is meant to be used by a single thread that executes transactions one after another.
+ */
+@NotThreadSafe
+public final class TriggerScheduleCache {
+
+  private final Cache<String, Collection<ProgramScheduleRecord>> schedules;
+  private long version = -1L;
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxSize maximum number of trigger keys to cache the schedules for
+   */
+  public TriggerScheduleCache(int maxSize) {
+    this.schedules = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Validates the cached schedules against the version of the given store, and drops them if they are outdated.
+   * This must be called in the transaction that subsequently looks up schedules.
+   *
+   * @param store the schedule store used by the current transaction
+   */
+  public void validate(ProgramScheduleStoreDataset store) {
+    long storeVersion = store.getVersion();
+    if (storeVersion != version) {
+      schedules.invalidateAll();
+      version = storeVersion;
+    }
+  }
+
+  /**
+   * Finds all schedules that have a trigger with a given trigger key. The result is read from the store if it is
+   * not cached, and cached for subsequent lookups until the store is modified.
+   *
+   * @param store the schedule store used by the current transaction
+   * @param triggerKey the trigger key to look up
+   * @return an immutable collection of all schedules that are triggered by this key; never null
+   */
+  public Collection<ProgramScheduleRecord> findSchedules(ProgramScheduleStoreDataset store, String triggerKey) {
+    Collection<ProgramScheduleRecord> records = schedules.getIfPresent(triggerKey);
+    if (records == null) {
+      records = ImmutableList.copyOf(store.findSchedules(triggerKey));
+      schedules.put(triggerKey, records);
+    }
+    return records;
+  }
+}
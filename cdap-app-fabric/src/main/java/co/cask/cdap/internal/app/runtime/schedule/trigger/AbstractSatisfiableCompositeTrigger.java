@@ -54,6 +54,24 @@ public abstract class AbstractSatisfiableCompositeTrigger
     return triggerKeysBuilder.build();
   }
 
+  @Override
+  public int getStateSize() {
+    int size = 0;
+    for (SatisfiableTrigger trigger : getTriggers()) {
+      size += trigger.getStateSize();
+    }
+    return size;
+  }
+
+  @Override
+  public void updateState(ProgramSchedule schedule, Notification notification, long[] state, int offset) {
+    // The states of the internal triggers are laid out one after the other
+    for (SatisfiableTrigger trigger : getTriggers()) {
+      trigger.updateState(schedule, notification, state, offset);
+      offset += trigger.getStateSize();
+    }
+  }
+
   @Override
   public void updateLaunchArguments(ProgramSchedule schedule, List<Notification> notifications,
                                     Map<String, String> systemArgs, Map<String, String> userArgs) {
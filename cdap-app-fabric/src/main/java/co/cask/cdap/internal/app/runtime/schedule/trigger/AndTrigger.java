@@ -51,6 +51,17 @@ public class AndTrigger extends AbstractSatisfiableCompositeTrigger {
     return true;
   }
 
+  @Override
+  public boolean isSatisfied(long[] state, int offset) {
+    for (SatisfiableTrigger trigger : getTriggers()) {
+      if (!trigger.isSatisfied(state, offset)) {
+        return false;
+      }
+      offset += trigger.getStateSize();
+    }
+    return true;
+  }
+
   @Override
   public List<TriggerInfo> getTriggerInfos(TriggerInfoContext context) {
     return getUnitTriggerInfosAddRuntimeArgs(context);
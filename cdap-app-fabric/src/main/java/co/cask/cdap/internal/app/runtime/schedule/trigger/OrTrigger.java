@@ -49,6 +49,17 @@ public class OrTrigger extends AbstractSatisfiableCompositeTrigger {
     return false;
   }
 
+  @Override
+  public boolean isSatisfied(long[] state, int offset) {
+    for (SatisfiableTrigger trigger : getTriggers()) {
+      if (trigger.isSatisfied(state, offset)) {
+        return true;
+      }
+      offset += trigger.getStateSize();
+    }
+    return false;
+  }
+
   @Override
   public List<TriggerInfo> getTriggerInfos(TriggerInfoContext context) {
     return getUnitTriggerInfosAddRuntimeArgs(context);
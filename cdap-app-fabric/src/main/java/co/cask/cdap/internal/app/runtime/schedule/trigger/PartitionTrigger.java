@@ -43,24 +43,42 @@ public class PartitionTrigger extends ProtoTrigger.PartitionTrigger implements S
     return getPartitionsCount(notifications) >= numPartitions;
   }
 
+  @Override
+  public int getStateSize() {
+    return 1;
+  }
+
+  @Override
+  public void updateState(ProgramSchedule schedule, Notification notification, long[] state, int offset) {
+    // The state is the number of partitions added so far
+    state[offset] += getPartitionsCount(notification);
+  }
+
+  @Override
+  public boolean isSatisfied(long[] state, int offset) {
+    return state[offset] >= numPartitions;
+  }
+
   private int getPartitionsCount(List<Notification> notifications) {
     int partitionsCount = 0;
     for (Notification notification : notifications) {
-      if (!notification.getNotificationType().equals(Notification.Type.PARTITION)) {
-        continue;
-      }
-      String datasetId = notification.getProperties().get(Notification.DATASET_ID);
-      if (!dataset.toString().equals(datasetId)) {
-        continue;
-      }
-      String numPartitionsString = notification.getProperties().get(Notification.NUM_PARTITIONS);
-      if (numPartitionsString != null) {
-        partitionsCount += Integer.parseInt(numPartitionsString);
-      }
+      partitionsCount += getPartitionsCount(notification);
     }
     return partitionsCount;
   }
 
+  private int getPartitionsCount(Notification notification) {
+    if (!notification.getNotificationType().equals(Notification.Type.PARTITION)) {
+      return 0;
+    }
+    String datasetId = notification.getProperties().get(Notification.DATASET_ID);
+    if (!dataset.toString().equals(datasetId)) {
+      return 0;
+    }
+    String numPartitionsString = notification.getProperties().get(Notification.NUM_PARTITIONS);
+    return numPartitionsString == null ? 0 : Integer.parseInt(numPartitionsString);
+  }
+
   @Override
   public Set<String> getTriggerKeys() {
     return ImmutableSet.of(Schedulers.triggerKeyForPartition(dataset));
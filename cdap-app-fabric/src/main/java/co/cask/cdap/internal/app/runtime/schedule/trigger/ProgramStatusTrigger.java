@@ -66,6 +66,24 @@ public class ProgramStatusTrigger extends ProtoTrigger.ProgramStatusTrigger impl
     });
   }
 
+  @Override
+  public int getStateSize() {
+    return 1;
+  }
+
+  @Override
+  public void updateState(ProgramSchedule schedule, Notification notification, long[] state, int offset) {
+    // The state is a flag of whether a matching program status notification has been received
+    if (state[offset] == 0L && isSatisfied(schedule, Collections.singletonList(notification))) {
+      state[offset] = 1L;
+    }
+  }
+
+  @Override
+  public boolean isSatisfied(long[] state, int offset) {
+    return state[offset] != 0L;
+  }
+
   @Override
   public Set<String> getTriggerKeys() {
     return Schedulers.triggerKeysForProgramStatuses(programId, programStatuses);
@@ -41,6 +41,36 @@ public interface SatisfiableTrigger extends Trigger {
    */
   boolean isSatisfied(ProgramSchedule schedule, List<Notification> notifications);
 
+  /**
+   * Returns the number of counters needed to keep the incremental state of this trigger. The state allows
+   * checking whether the trigger is satisfied without going through all the notifications received so far.
+   *
+   * @see #updateState(ProgramSchedule, Notification, long[], int)
+   * @see #isSatisfied(long[], int)
+   */
+  int getStateSize();
+
+  /**
+   * Updates the incremental state of this trigger with a new notification. Updating the state with each of a list
+   * of notifications is equivalent to calling {@link #isSatisfied(ProgramSchedule, List)} with the whole list.
+   *
+   * @param schedule the schedule that this trigger belongs to
+   * @param notification the new notification
+   * @param state the array containing the state of this trigger
+   * @param offset the index in the state array where the state of this trigger starts. The state occupies
+   *               {@link #getStateSize()} elements starting from this index.
+   */
+  void updateState(ProgramSchedule schedule, Notification notification, long[] state, int offset);
+
+  /**
+   * Checks whether the given incremental state satisfies this trigger.
+   *
+   * @param state the array containing the state of this trigger
+   * @param offset the index in the state array where the state of this trigger starts
+   * @return {@code true} if this trigger is satisfied, {@code false} otherwise
+   */
+  boolean isSatisfied(long[] state, int offset);
+
   /**
    * Get all trigger keys which will be used to index the schedule containing this trigger, so that we can
    * do reverse lookup to get the schedule when events relevant to the trigger are received.
@@ -63,6 +63,24 @@ public class TimeTrigger extends ProtoTrigger.TimeTrigger implements Satisfiable
     return false;
   }
 
+  @Override
+  public int getStateSize() {
+    return 1;
+  }
+
+  @Override
+  public void updateState(ProgramSchedule schedule, Notification notification, long[] state, int offset) {
+    // The state is a flag of whether a matching time notification has been received
+    if (state[offset] == 0L && isSatisfied(schedule, notification)) {
+      state[offset] = 1L;
+    }
+  }
+
+  @Override
+  public boolean isSatisfied(long[] state, int offset) {
+    return state[offset] != 0L;
+  }
+
   @Override
   public Set<String> getTriggerKeys() {
     return ImmutableSet.of();
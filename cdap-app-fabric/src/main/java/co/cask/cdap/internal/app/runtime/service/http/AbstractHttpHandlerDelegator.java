@@ -16,6 +16,7 @@
 
 package co.cask.cdap.internal.app.runtime.service.http;
 
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.TransactionControl;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.service.http.HttpContentConsumer;
@@ -31,6 +32,10 @@ import co.cask.http.HttpResponder;
 import com.google.common.base.Preconditions;
 import io.netty.handler.codec.http.HttpRequest;
 import org.apache.twill.common.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletionStage;
 
 /**
  * An abstract base class for all {@link HttpHandler} generated through the {@link HttpHandlerGenerator}.
@@ -39,6 +44,8 @@ import org.apache.twill.common.Cancellable;
  */
 public abstract class AbstractHttpHandlerDelegator<T> implements HttpHandler {
 
+  private static final Logger LOG = LoggerFactory.getLogger(AbstractHttpHandlerDelegator.class);
+
   private final DelegatorContext<T> context;
   private MetricsContext metricsContext;
 
@@ -66,6 +73,19 @@ public abstract class AbstractHttpHandlerDelegator<T> implements HttpHandler {
     context.getServiceTaskExecutor().execute(runnable, transactional);
   }
 
+  /**
+   * Executes a given {@link ThrowingRunnable} in a read-only transaction.
+   * This method is called from handler class generated by {@link HttpHandlerGenerator} for handler methods
+   * annotated with {@link ReadOnly}.
+   *
+   * @param runnable the runnable to call
+   * @throws Exception if there is exception, either caused by the runnable or by the transaction system.
+   */
+  @SuppressWarnings("unused")
+  protected final void executeReadOnly(ThrowingRunnable runnable) throws Exception {
+    context.getServiceTaskExecutor().executeReadOnly(runnable);
+  }
+
   /**
    * Returns the user http service handler associated with the current thread.
    * This method is called from handler class generated by {@link HttpHandlerGenerator}.
@@ -131,4 +151,47 @@ public abstract class AbstractHttpHandlerDelegator<T> implements HttpHandler {
       new BodyProducerAdapter(contentProducer, txServiceContext, contextReleaser, defaultTxControl)
     ), consumer, taskExecutor, contextReleaser, defaultTxControl);
   }
+
+  /**
+   * Sends the response buffered in the given {@link DelayedHttpServiceResponder} when the given
+   * {@link CompletionStage} completes. If the stage completes exceptionally, a failure response is sent instead.
+   *
+   * IMPORTANT: This method will also capture the context associated with the current thread, hence after
+   * this method is called, no other methods on this class should be called from the current thread.
+   * The user service handler instance is not used for other requests until the response is sent.
+   *
+   * This method is called from handler class generated by {@link HttpHandlerGenerator}.
+   */
+  @SuppressWarnings("unused")
+  protected final void completeAsync(CompletionStage<?> stage, DelayedHttpServiceResponder responder,
+                                     TransactionControl defaultTxControl) {
+    Cancellable contextReleaser = context.capture();
+
+    stage.whenComplete((result, failure) -> {
+      DelayedHttpServiceResponder asyncResponder = null;
+      try {
+        // Transfer the captured context to the content producer if there is one
+        asyncResponder = new DelayedHttpServiceResponder(
+          responder, (contentProducer, taskExecutor) ->
+          new BodyProducerAdapter(contentProducer, taskExecutor, contextReleaser, defaultTxControl));
+        responder.close();
+
+        if (failure != null) {
+          asyncResponder.setFailure(failure);
+        } else if (!asyncResponder.hasBufferedResponse()) {
+          asyncResponder.setFailure(new IllegalStateException(
+            "Handler method completed without sending a response"));
+        }
+        asyncResponder.execute();
+      } catch (Throwable t) {
+        // Exceptions thrown from this callback are only captured in the stage returned by whenComplete,
+        // which nobody observes
+        LOG.error("Failed to send the response of an asynchronous handler method", t);
+      } finally {
+        if (asyncResponder == null || !asyncResponder.hasContentProducer()) {
+          contextReleaser.cancel();
+        }
+      }
+    });
+  }
 }
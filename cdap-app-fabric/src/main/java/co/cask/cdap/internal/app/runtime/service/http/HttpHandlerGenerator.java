@@ -16,6 +16,7 @@
 
 package co.cask.cdap.internal.app.runtime.service.http;
 
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.TransactionControl;
 import co.cask.cdap.api.annotation.TransactionPolicy;
 import co.cask.cdap.api.metrics.MetricsContext;
@@ -70,6 +71,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -121,12 +123,14 @@ final class HttpHandlerGenerator {
   );
 
   private static final Type TX_POLICY_TYPE = Type.getType(TransactionPolicy.class);
+  private static final Type READ_ONLY_TYPE = Type.getType(ReadOnly.class);
   private static final Type TX_CONTROL_TYPE = Type.getType(TransactionControl.class);
   private static final Type ATOMIC_REFERENCE_TYPE = Type.getType(AtomicReference.class);
   private static final Type THROWING_RUNNABLE_TYPE = Type.getType(ThrowingRunnable.class);
   private static final Type EXCEPTION_TYPE = Type.getType(Exception.class);
   private static final Type DELAYED_HTTP_SERVICE_RESPONDER_TYPE = Type.getType(DelayedHttpServiceResponder.class);
   private static final Type HTTP_CONTENT_CONSUMER_TYPE = Type.getType(HttpContentConsumer.class);
+  private static final Type COMPLETION_STAGE_TYPE = Type.getType(CompletionStage.class);
 
   // Method descriptor of the LambdaMetafactory.metafactory method.
   private static final String LAMBDA_META_FACTORY_METHOD_DESC =
@@ -411,10 +415,14 @@ final class HttpHandlerGenerator {
       // If any annotations of the method is one of those HttpMethod,
       // this is a handler process, hence need to copy.
       boolean handlerMethod = false;
+      boolean readOnly = false;
+      boolean explicitTx = false;
       TransactionControl txCtrl = defaultTxControl;
       for (AnnotationNode annotation : annotations) {
         if (isHandlerMethod(Type.getType(annotation.desc))) {
           handlerMethod = true;
+        } else if (READ_ONLY_TYPE.equals(Type.getType(annotation.desc))) {
+          readOnly = true;
         } else if (TX_POLICY_TYPE.equals(Type.getType(annotation.desc))) {
           List list = annotation.values;
           for (Iterator iter = list.iterator(); iter.hasNext(); ) {
@@ -424,6 +432,7 @@ final class HttpHandlerGenerator {
                 String[] values = (String[]) value;
                 if (values.length == 2 && TX_CONTROL_TYPE.equals(Type.getType(values[0]))) {
                   txCtrl = TransactionControl.valueOf(values[1]);
+                  explicitTx = txCtrl == TransactionControl.EXPLICIT;
                 }
               }
             }
@@ -452,31 +461,53 @@ final class HttpHandlerGenerator {
 
       preserveParameterClasses(argTypes);
 
+      // A read-only handler method always reads from a transaction snapshot and never consumes request body.
+      // This is checked against the declared return type, before it is rewritten below.
+      if (readOnly) {
+        if (returnType.getSort() == Type.OBJECT) {
+          throw new IllegalArgumentException("Handler method annotated with " + ReadOnly.class.getName()
+                                               + " must return void");
+        }
+        if (explicitTx) {
+          throw new IllegalArgumentException("Handler method annotated with " + ReadOnly.class.getName()
+                                               + " cannot have transaction policy " + TransactionControl.EXPLICIT);
+        }
+      }
+
       // If the return type is an instance of HttpContentConsumer, the generated method need to have
       // netty-http BodyConsumer as return type.
+      // If the return type is an instance of CompletionStage, the response is sent asynchronously
+      // and the generated method returns void.
       // Otherwise, the return type must be void
+      boolean async = false;
       if (returnType.getSort() == Type.OBJECT) {
         try {
           Class<?> returnClass = delegateType.getRawType().getClassLoader().loadClass(returnType.getClassName());
-          if (!HttpContentConsumer.class.isAssignableFrom(returnClass)) {
-            throw new IllegalArgumentException("Handler method must either return void or a "
-                                                 + HttpContentConsumer.class.getName());
+          if (HttpContentConsumer.class.isAssignableFrom(returnClass)) {
+            returnType = Type.getType(BodyConsumer.class);
+          } else if (CompletionStage.class.isAssignableFrom(returnClass)) {
+            returnType = Type.VOID_TYPE;
+            async = true;
+          } else {
+            throw new IllegalArgumentException("Handler method must either return void, a "
+                                                 + HttpContentConsumer.class.getName() + " or a "
+                                                 + CompletionStage.class.getName());
           }
-          returnType = Type.getType(BodyConsumer.class);
         } catch (ClassNotFoundException e) {
           // Shouldn't happen since the delegateType (user handler class) is already loaded and the method return
           // type should be loadable through the same classloader
           throw Throwables.propagate(e);
         }
       } else if (!returnType.equals(Type.VOID_TYPE)) {
-        throw new IllegalArgumentException("Handler method must either return void or a "
-                                             + HttpContentConsumer.class.getName());
+        throw new IllegalArgumentException("Handler method must either return void, a "
+                                             + HttpContentConsumer.class.getName() + " or a "
+                                             + CompletionStage.class.getName());
       }
 
       // Copy the method signature with the first two parameter types changed and return type changed
       String methodDesc = Type.getMethodDescriptor(returnType, argTypes);
       MethodVisitor methodVisitor = classWriter.visitMethod(access, name, methodDesc,
-                                                            rewriteMethodSignature(signature), exceptions);
+                                                            rewriteMethodSignature(signature, async), exceptions);
       GeneratorAdapter mg = new GeneratorAdapter(methodVisitor, access, name, methodDesc);
 
       // Replay all annotations before generating the body.
@@ -490,7 +521,7 @@ final class HttpHandlerGenerator {
       }
 
       // Generate the method body
-      generateDelegateBody(classWriter, mg, new Method(name, desc), txCtrl);
+      generateDelegateBody(classWriter, mg, new Method(name, desc), txCtrl, readOnly, async);
 
       super.visitEnd();
     }
@@ -529,8 +560,11 @@ final class HttpHandlerGenerator {
      * Rewrite the handler method signature to have the first two parameters rewritten from
      * {@link HttpServiceRequest} and {@link HttpServiceResponder} into
      * {@link HttpRequest} and {@link HttpResponder}.
+     *
+     * @param signature the handler method signature
+     * @param voidReturn if {@code true}, the return type is rewritten to {@code void}
      */
-    private String rewriteMethodSignature(String signature) {
+    private String rewriteMethodSignature(String signature, boolean voidReturn) {
       if (signature == null) {
         return null;
       }
@@ -549,6 +583,17 @@ final class HttpHandlerGenerator {
           }
           super.visitClassType(name);
         }
+
+        @Override
+        public SignatureVisitor visitReturnType() {
+          SignatureVisitor visitor = super.visitReturnType();
+          if (!voidReturn) {
+            return visitor;
+          }
+          visitor.visitBaseType('V');
+          // Discard the original return type
+          return new SignatureVisitor(Opcodes.ASM5) { };
+        }
       };
       reader.accept(writer);
 
@@ -572,6 +617,11 @@ final class HttpHandlerGenerator {
      * }
      * </pre>
      *
+     * For handler annotated with {@link ReadOnly}, it has the same form, except that it calls
+     * {@code executeReadOnly(context -> handler.handle(wrapRequest(request), wrappedResponder, ...))} instead,
+     * and {@link TransactionControl#EXPLICIT} is used as the default for any {@code HttpContentProducer}
+     * so that the response is streamed without transactions.
+     *
      * For handler that returns {@link HttpContentConsumer}, it has the following form:
      *
      * <pre>
@@ -593,13 +643,39 @@ final class HttpHandlerGenerator {
      *   }
      * }
      * </pre>
+     *
+     * For handler that returns {@link CompletionStage}, it has the following form:
+     *
+     * <pre>
+     * public void handle(HttpRequest request, HttpResponder responder, ...) {
+     *   T handler = getHandler();
+     *   DelayedHttpServiceResponder wrappedResponder = wrapResponder(responder, defaultTxControl);
+     *   AtomicReference stageRef = new AtomicReference();
+     *   try {
+     *     execute(context -> stageRef.set(handler.handle(wrapRequest(request), wrappedResponder, ...)), useTx);
+     *   } catch (Exception e) {
+     *     wrappedResponder.setFailure(e);
+     *     stageRef.set(null);
+     *   }
+     *   CompletionStage stage = (CompletionStage) stageRef.get();
+     *   if (stage == null) {
+     *     wrappedResponder.execute();
+     *   } else {
+     *     completeAsync(stage, wrappedResponder, defaultTxControl);
+     *   }
+     * }
+     * </pre>
      */
     private void generateDelegateBody(ClassWriter classWriter, GeneratorAdapter mg,
-                                      Method method, TransactionControl txControl) {
-      boolean useBodyConsumer = method.getReturnType().getSort() == Type.OBJECT;
+                                      Method method, TransactionControl txControl, boolean readOnly,
+                                      boolean async) {
+      // The value returned by the handler method is needed for HttpContentConsumer and CompletionStage
+      boolean useResultRef = method.getReturnType().getSort() == Type.OBJECT;
+      boolean useBodyConsumer = useResultRef && !async;
+      TransactionControl responderTxControl = readOnly ? TransactionControl.EXPLICIT : defaultTxControl;
 
       // Generate the synthetic static method for lambda invoke first
-      Method lambdaMethod = generateRunnableLambda(classWriter, method, useBodyConsumer);
+      Method lambdaMethod = generateRunnableLambda(classWriter, method, useResultRef);
 
       Type handlerType = Type.getType(delegateType.getRawType());
 
@@ -621,14 +697,14 @@ final class HttpHandlerGenerator {
       int wrappedResponder = mg.newLocal(DELAYED_HTTP_SERVICE_RESPONDER_TYPE);
       mg.loadThis();
       mg.loadArg(1);
-      mg.getStatic(TX_CONTROL_TYPE, defaultTxControl.name(), TX_CONTROL_TYPE);
+      mg.getStatic(TX_CONTROL_TYPE, responderTxControl.name(), TX_CONTROL_TYPE);
       mg.invokeVirtual(classType,
                        Methods.getMethod(DelayedHttpServiceResponder.class, "wrapResponder",
                                          HttpResponder.class, TransactionControl.class));
       mg.storeLocal(wrappedResponder, DELAYED_HTTP_SERVICE_RESPONDER_TYPE);
 
       int consumerRef = 0;
-      if (useBodyConsumer) {
+      if (useResultRef) {
         // AtomicReference<HttpContentConsumer> consumerRef = new AtomicReference<>();
         consumerRef = mg.newLocal(ATOMIC_REFERENCE_TYPE);
         mg.newInstance(ATOMIC_REFERENCE_TYPE);
@@ -653,7 +729,7 @@ final class HttpHandlerGenerator {
       mg.loadThis();
 
       // Populate the parameters needed for the lambda method. See generateRunnableLambda for the signature.
-      if (useBodyConsumer) {
+      if (useResultRef) {
         mg.loadLocal(consumerRef);
       }
       mg.loadLocal(handler);
@@ -685,10 +761,15 @@ final class HttpHandlerGenerator {
       mg.invokeDynamic("run", Type.getMethodDescriptor(THROWING_RUNNABLE_TYPE, lambdaMethod.getArgumentTypes()),
                        metaFactoryHandle, samMethodType, lambdaMethodHandle, samMethodType);
 
-      // Second argument to the execute method
-      mg.push(txControl == TransactionControl.IMPLICIT);
-      mg.invokeVirtual(classType, new Method("execute", Type.VOID_TYPE,
-                                             new Type[] { THROWING_RUNNABLE_TYPE, Type.BOOLEAN_TYPE }));
+      if (readOnly) {
+        mg.invokeVirtual(classType, new Method("executeReadOnly", Type.VOID_TYPE,
+                                               new Type[] { THROWING_RUNNABLE_TYPE }));
+      } else {
+        // Second argument to the execute method
+        mg.push(txControl == TransactionControl.IMPLICIT);
+        mg.invokeVirtual(classType, new Method("execute", Type.VOID_TYPE,
+                                               new Type[] { THROWING_RUNNABLE_TYPE, Type.BOOLEAN_TYPE }));
+      }
 
       mg.goTo(txTryEnd);
 
@@ -708,7 +789,7 @@ final class HttpHandlerGenerator {
       mg.invokeVirtual(DELAYED_HTTP_SERVICE_RESPONDER_TYPE,
                        Methods.getMethod(void.class, "setFailure", Throwable.class));
 
-      if (useBodyConsumer) {
+      if (useResultRef) {
         // consumerRef.set(null);
         mg.loadLocal(consumerRef);
         mg.visitInsn(Opcodes.ACONST_NULL);
@@ -759,6 +840,43 @@ final class HttpHandlerGenerator {
                                                       DelayedHttpServiceResponder.class,
                                                       TransactionControl.class));
         mg.returnValue();
+      } else if (async) {
+        // CompletionStage stage = consumerRef.get();
+        // if (stage == null) {
+        //   wrappedResponder.execute();
+        // } else {
+        //   completeAsync(stage, wrappedResponder, defaultTxControl);
+        // }
+        Label hasCompletionStage = mg.newLabel();
+
+        int stage = mg.newLocal(COMPLETION_STAGE_TYPE);
+        mg.loadLocal(consumerRef);
+        mg.invokeVirtual(ATOMIC_REFERENCE_TYPE, Methods.getMethod(Object.class, "get"));
+        mg.checkCast(COMPLETION_STAGE_TYPE);
+        mg.storeLocal(stage);
+
+        mg.loadLocal(stage);
+        mg.ifNonNull(hasCompletionStage);
+
+        //   wrappedResponder.execute();
+        //   return;
+        mg.loadLocal(wrappedResponder);
+        mg.invokeVirtual(DELAYED_HTTP_SERVICE_RESPONDER_TYPE, Methods.getMethod(void.class, "execute"));
+        mg.returnValue();
+
+        mg.mark(hasCompletionStage);
+
+        // IMPORTANT: Same as the body consumer case, calling completeAsync must be the last thing to do
+        // in this generated method since the current context will be captured
+        mg.loadThis();
+        mg.loadLocal(stage);
+        mg.loadLocal(wrappedResponder);
+        mg.getStatic(TX_CONTROL_TYPE, responderTxControl.name(), TX_CONTROL_TYPE);
+        mg.invokeVirtual(classType, Methods.getMethod(void.class, "completeAsync",
+                                                      CompletionStage.class,
+                                                      DelayedHttpServiceResponder.class,
+                                                      TransactionControl.class));
+        mg.returnValue();
       } else {
         // wrappedResponder.execute();
         mg.loadLocal(wrappedResponder);
@@ -770,7 +888,7 @@ final class HttpHandlerGenerator {
 
     /**
      * Generates a synthetic static method for lambda dynamic invocation.
-     * For handler method that doesn't return {@link HttpContentConsumer}, it has the following form:
+     * For handler method that returns void, it has the following form:
      *
      * <pre>
      *   private static [synthetic] void methodName(T handler, HttpServiceRequest request,
@@ -779,7 +897,8 @@ final class HttpHandlerGenerator {
      *   }
      * </pre>
      *
-     * For handler method that returns {@link HttpContentConsumer}, it has the following form:
+     * For handler method that returns {@link HttpContentConsumer} or {@link CompletionStage},
+     * it has the following form:
      *
      * <pre>
      *   private static [synthetic] void methodName(AtomicReference consumerRef, T handler, HttpServiceRequest request,
@@ -789,12 +908,12 @@ final class HttpHandlerGenerator {
      * </pre>
      *
      */
-    private Method generateRunnableLambda(ClassWriter classWriter, Method handlerMethod, boolean useBodyConsumer) {
+    private Method generateRunnableLambda(ClassWriter classWriter, Method handlerMethod, boolean useResultRef) {
       Type handlerType = Type.getType(delegateType.getRawType());
 
       // Setup the method argument types
       List<Type> argumentTypes = new ArrayList<>();
-      if (useBodyConsumer) {
+      if (useResultRef) {
         argumentTypes.add(ATOMIC_REFERENCE_TYPE);
       }
       argumentTypes.add(handlerType);
@@ -812,7 +931,7 @@ final class HttpHandlerGenerator {
       mg.loadArgs();
       mg.invokeVirtual(handlerType, handlerMethod);
 
-      if (useBodyConsumer) {
+      if (useResultRef) {
         // consumerRef.set([top_of_stack])
         mg.invokeVirtual(ATOMIC_REFERENCE_TYPE, Methods.getMethod(void.class, "set", Object.class));
       }
@@ -35,6 +35,16 @@ public interface ServiceTaskExecutor {
    */
   void execute(ThrowingRunnable runnable, boolean transactional) throws Exception;
 
+  /**
+   * Executes a given {@link ThrowingRunnable} in a read-only transaction. Implementations may read with a
+   * shared transaction snapshot instead of starting a new transaction, in which case no commit happens and
+   * the execution fails if any dataset is modified.
+   *
+   * @param runnable the runnable to call
+   * @throws Exception if there is exception, either caused by the runnable or by the transaction system.
+   */
+  void executeReadOnly(ThrowingRunnable runnable) throws Exception;
+
   /**
    * Executes a given {@link Callable} with or without a transaction.
    *
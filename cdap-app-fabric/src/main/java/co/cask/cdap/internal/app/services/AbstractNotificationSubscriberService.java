@@ -174,6 +174,14 @@ public abstract class AbstractNotificationSubscriberService extends AbstractIdle
      */
     protected abstract void persistMessageId(DatasetContext context, String lastFetchedMessageId);
 
+    /**
+     * Called after the notifications given to {@link #processNotifications(DatasetContext, NotificationIterator)}
+     * have been processed and the transaction is committed. By default it does nothing.
+     */
+    protected void postProcess() {
+      // no-op
+    }
+
     @Override
     public void run() {
       // Fetch the last processed message for the topic.
@@ -248,6 +256,7 @@ public abstract class AbstractNotificationSubscriberService extends AbstractIdle
           }
         });
         messageId = iterator.getLastMessageId() == null ? messageId : iterator.getLastMessageId();
+        postProcess();
 
         metricsContext.gauge("process.duration.ms", stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
         metricsContext.increment("process.notifications", iterator.getConsumedCount());
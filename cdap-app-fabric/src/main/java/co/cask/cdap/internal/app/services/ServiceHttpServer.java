@@ -32,10 +32,12 @@ import co.cask.cdap.api.service.http.HttpServiceHandlerSpecification;
 import co.cask.cdap.app.program.Program;
 import co.cask.cdap.app.runtime.ProgramOptions;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.lang.InstantiatorFactory;
 import co.cask.cdap.common.lang.PropertyFieldSetter;
 import co.cask.cdap.common.logging.LoggingContext;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
+import co.cask.cdap.data2.transaction.ReadOnlyTransactionCache;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.internal.app.runtime.DataSetFieldSetter;
 import co.cask.cdap.internal.app.runtime.MetricsFieldSetter;
@@ -51,13 +53,16 @@ import co.cask.cdap.proto.ProgramType;
 import co.cask.cdap.proto.id.ProgramId;
 import co.cask.http.NettyHttpService;
 import com.google.common.reflect.TypeToken;
+import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionSystemClient;
+import org.apache.tephra.TxConstants;
 import org.apache.twill.api.ServiceAnnouncer;
 import org.apache.twill.discovery.DiscoveryServiceClient;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
@@ -71,6 +76,7 @@ public class ServiceHttpServer extends AbstractServiceHttpServer<HttpServiceHand
   private final CConfiguration cConf;
   private final AtomicInteger instanceCount;
   private final BasicHttpServiceContextFactory contextFactory;
+  private final ReadOnlyTransactionCache readOnlyTxCache;
 
   public ServiceHttpServer(String host, Program program, ProgramOptions programOptions,
                            CConfiguration cConf, ServiceSpecification spec,
@@ -91,6 +97,28 @@ public class ServiceHttpServer extends AbstractServiceHttpServer<HttpServiceHand
                                                txClient, pluginInstantiator, secureStore, secureStoreManager,
                                                messagingService, artifactManager);
     this.context = contextFactory.create(null);
+    // The shared transaction is started with the default transaction timeout. Half of it leaves enough time
+    // for requests that acquired the transaction just before it reaches the maximum age.
+    long refreshMillis = cConf.getLong(Constants.AppFabric.SERVICE_READ_ONLY_TX_REFRESH_MILLIS);
+    long maxAgeMillis = TimeUnit.SECONDS.toMillis(cConf.getInt(TxConstants.Manager.CFG_TX_TIMEOUT)) / 2;
+    this.readOnlyTxCache = new ReadOnlyTransactionCache(txClient, refreshMillis,
+                                                        Math.max(refreshMillis, maxAgeMillis));
+  }
+
+  @Override
+  public void startUp() throws Exception {
+    // The read-only transaction needs to be available before any request can be served
+    readOnlyTxCache.startAndWait();
+    super.startUp();
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    try {
+      super.shutDown();
+    } finally {
+      readOnlyTxCache.stopAndWait();
+    }
   }
 
   @Override
@@ -206,6 +234,16 @@ public class ServiceHttpServer extends AbstractServiceHttpServer<HttpServiceHand
           }
         }
 
+        @Override
+        public void executeReadOnly(ThrowingRunnable runnable) throws Exception {
+          Transaction tx = readOnlyTxCache.acquire();
+          try {
+            context.executeReadOnly(tx, runnable);
+          } finally {
+            readOnlyTxCache.release(tx);
+          }
+        }
+
         @Override
         public <T> T execute(Callable<T> callable, boolean transactional) throws Exception {
           if (transactional) {
@@ -26,11 +26,15 @@ import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.utils.ProjectInfo;
 import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
+import co.cask.cdap.data2.dataset2.lib.table.MDSValueCodec;
 import co.cask.cdap.data2.dataset2.lib.table.MetadataStoreDataset;
 import co.cask.cdap.internal.app.ApplicationSpecificationAdapter;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.runtime.messaging.TopicMessageIdStore;
 import co.cask.cdap.internal.app.runtime.workflow.BasicWorkflowToken;
+import co.cask.cdap.internal.io.ASMDatumWriterFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.ReflectionDatumReaderFactory;
 import co.cask.cdap.proto.BasicThrowable;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.NamespaceMeta;
@@ -73,6 +77,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 
 import static com.google.common.base.Predicates.and;
@@ -83,6 +89,11 @@ import static com.google.common.base.Predicates.and;
 public class AppMetadataStore extends MetadataStoreDataset implements TopicMessageIdStore {
   private static final Logger LOG = LoggerFactory.getLogger(AppMetadataStore.class);
   private static final Gson GSON = ApplicationSpecificationAdapter.addTypeAdapters(new GsonBuilder()).create();
+  // Run records are stored in binary format, all other values as JSON
+  private static final MDSValueCodec VALUE_CODEC =
+    MDSValueCodec.builder(new ASMDatumWriterFactory(new ASMFieldAccessorFactory()), new ReflectionDatumReaderFactory())
+      .add(RunRecordMeta.class, RunRecordMeta.SCHEMAS)
+      .build();
   private static final Type MAP_STRING_STRING_TYPE = new TypeToken<Map<String, String>>() { }.getType();
   private static final Type BYTE_TYPE = new TypeToken<byte[]>() { }.getType();
   private static final String TYPE_APP_META = "appMeta";
@@ -95,6 +106,17 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
   private static final String TYPE_WORKFLOW_TOKEN = "wft";
   private static final String TYPE_NAMESPACE = "namespace";
   private static final String TYPE_MESSAGE = "msg";
+  private static final String TYPE_RUN_INTERVAL = "runInterval";
+  private static final String TYPE_RUN_INTERVAL_LONG = "runIntervalLong";
+  private static final String TYPE_RUN_INTERVAL_INDEX_STATE = "runIntervalIndexState";
+  // Sizes in seconds of the time buckets used by the run interval index. A run is added to the buckets of the
+  // smallest size for which it spans at most MAX_RUN_INTERVAL_BUCKETS buckets.
+  private static final long[] RUN_INTERVAL_BUCKET_SECS = {
+    TimeUnit.HOURS.toSeconds(1), TimeUnit.DAYS.toSeconds(1), TimeUnit.DAYS.toSeconds(7)
+  };
+  // Maximum number of index entries of a run. Runs spanning more of the largest buckets are kept in a separate
+  // index that is always fully scanned.
+  private static final int MAX_RUN_INTERVAL_BUCKETS = 2;
   private static final Map<ProgramRunStatus, String> STATUS_TYPE_MAP = ImmutableMap.<ProgramRunStatus, String>builder()
     .put(ProgramRunStatus.STARTING, TYPE_RUN_RECORD_STARTING)
     .put(ProgramRunStatus.RUNNING, TYPE_RUN_RECORD_STARTED)
@@ -149,27 +171,22 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     };
 
   public AppMetadataStore(Table table, CConfiguration cConf, AtomicBoolean upgradeComplete) {
-    super(table);
+    super(table, GSON, VALUE_CODEC);
     this.cConf = cConf;
     this.upgradeComplete = upgradeComplete;
   }
 
-  @Override
-  protected <T> byte[] serialize(T value) {
-    return Bytes.toBytes(GSON.toJson(value));
-  }
-
   @Override
   protected <T> T deserialize(MDSKey key, byte[] serialized, Type typeOfT) {
     if (RunRecordMeta.class.equals(typeOfT)) {
-      RunRecordMeta meta = GSON.fromJson(Bytes.toString(serialized), RunRecordMeta.class);
+      RunRecordMeta meta = super.deserialize(key, serialized, RunRecordMeta.class);
       meta = new RunRecordMeta(getProgramID(key).run(meta.getPid()), meta.getStartTs(), meta.getRunTs(),
                                meta.getStopTs(), meta.getStatus(), meta.getProperties(), meta.getSystemArgs(),
                                meta.getTwillRunId(), meta.getSourceId());
       //noinspection unchecked
       return (T) meta;
     } else {
-      return GSON.fromJson(Bytes.toString(serialized), typeOfT);
+      return super.deserialize(key, serialized, typeOfT);
     }
   }
 
@@ -580,9 +597,60 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
 
     key = builder.add(getInvertedTsKeyPart(existing.getStartTs())).add(pid).build();
     write(key, new RunRecordMeta(existing, stopTs, runStatus, sourceId));
+    addRunInterval(programId.run(pid), existing.getStartTs(), stopTs);
     return runStatus;
   }
 
+  /**
+   * Adds a completed program run to the run interval index. The run is added to every time bucket it overlaps, in
+   * the smallest bucket size for which these are at most {@link #MAX_RUN_INTERVAL_BUCKETS} buckets. If there is no
+   * such bucket size, it is added to the long running index instead.
+   */
+  private void addRunInterval(ProgramRunId programRunId, long startTs, long stopTs) {
+    RunInterval interval = new RunInterval(programRunId.getRun(), startTs, stopTs);
+    for (MDSKey key : getRunIntervalKeys(programRunId, startTs, stopTs)) {
+      write(key, interval);
+    }
+  }
+
+  private void deleteRunInterval(ProgramRunId programRunId, long startTs, long stopTs) {
+    for (MDSKey key : getRunIntervalKeys(programRunId, startTs, stopTs)) {
+      delete(key);
+    }
+  }
+
+  @VisibleForTesting
+  List<MDSKey> getRunIntervalKeys(ProgramRunId programRunId, long startTs, long stopTs) {
+    for (long bucketSecs : RUN_INTERVAL_BUCKET_SECS) {
+      long startBucket = getRunIntervalBucket(startTs, bucketSecs);
+      long stopBucket = getRunIntervalBucket(Math.max(startTs, stopTs), bucketSecs);
+      if ((stopBucket - startBucket) / bucketSecs >= MAX_RUN_INTERVAL_BUCKETS) {
+        continue;
+      }
+      List<MDSKey> keys = new ArrayList<>();
+      for (long bucket = startBucket; bucket <= stopBucket; bucket += bucketSecs) {
+        keys.add(new MDSKey.Builder()
+                   .add(TYPE_RUN_INTERVAL)
+                   .add(bucketSecs)
+                   .add(bucket)
+                   .add(programRunId.getNamespace())
+                   .add(programRunId.getApplication())
+                   .add(programRunId.getVersion())
+                   .add(programRunId.getType().name())
+                   .add(programRunId.getProgram())
+                   .add(programRunId.getRun())
+                   .build());
+      }
+      return keys;
+    }
+    return Collections.singletonList(getProgramKeyBuilder(TYPE_RUN_INTERVAL_LONG, programRunId)
+                                       .add(programRunId.getRun()).build());
+  }
+
+  private static long getRunIntervalBucket(long timeInSecs, long bucketSecs) {
+    return timeInSecs - (timeInSecs % bucketSecs);
+  }
+
   private List<RunRecordMeta> getRuns(ProgramId programId, String pid) {
     ImmutableSet.Builder<MDSKey> keySet = ImmutableSet.<MDSKey>builder().add(
       getProgramKeyBuilder(TYPE_RUN_RECORD_STARTING, programId).add(pid).build(),
@@ -1005,6 +1073,7 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
   }
 
   public void deleteProgramHistory(String namespaceId, String appId, String versionId) {
+    deleteRunIntervals(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId, appId, versionId).build());
     if (!upgradeComplete.get() && versionId.equals(ApplicationId.DEFAULT_VERSION)) {
       Predicate<MDSKey> keyPredicate = new AppVersionPredicate(ApplicationId.DEFAULT_VERSION);
       deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTING, namespaceId, appId).build(), keyPredicate);
@@ -1020,12 +1089,32 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
   }
 
   public void deleteProgramHistory(String namespaceId) {
+    deleteRunIntervals(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTING, namespaceId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_STARTED, namespaceId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED, namespaceId).build());
     deleteAll(new MDSKey.Builder().add(TYPE_RUN_RECORD_SUSPENDED, namespaceId).build());
   }
 
+  /**
+   * Removes the run interval index entries of all completed run records with the given key prefix.
+   */
+  private void deleteRunIntervals(MDSKey completedPrefix) {
+    final List<RunRecordMeta> completed = new ArrayList<>();
+    scan(completedPrefix, null, RunRecordMeta.class, new Function<KeyValue<RunRecordMeta>, Boolean>() {
+      @Override
+      public Boolean apply(KeyValue<RunRecordMeta> input) {
+        completed.add(input.getValue());
+        return true;
+      }
+    });
+    for (RunRecordMeta meta : completed) {
+      if (meta.getStopTs() != null) {
+        deleteRunInterval(meta.getProgramRunId(), meta.getStartTs(), meta.getStopTs());
+      }
+    }
+  }
+
   public void createNamespace(NamespaceMeta metadata) {
     write(getNamespaceKey(metadata.getName()), metadata);
   }
@@ -1092,8 +1181,22 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     LOG.trace("Scan timeout = {}ms", scanTimeoutMills);
 
     Set<RunId> runIds = new HashSet<>();
-    Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_COMPLETED, startTimeInSecs, endTimeInSecs,
-                                                        scanTimeoutMills));
+    if (isRunIntervalIndexComplete()) {
+      scanCompletedInRange(startTimeInSecs, endTimeInSecs, null, Integer.MAX_VALUE, runIds);
+    } else {
+      Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_COMPLETED, startTimeInSecs, endTimeInSecs,
+                                                          scanTimeoutMills));
+    }
+    runIds.addAll(getActiveInRange(startTimeInSecs, endTimeInSecs));
+    return runIds;
+  }
+
+  /**
+   * @return programs that were running between given start and end time and are not completed yet
+   */
+  Set<RunId> getActiveInRange(long startTimeInSecs, long endTimeInSecs) {
+    long scanTimeoutMills = TimeUnit.SECONDS.toMillis(cConf.getLong(TxConstants.Manager.CFG_TX_TIMEOUT)) / 2;
+    Set<RunId> runIds = new HashSet<>();
     Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_SUSPENDED, startTimeInSecs, endTimeInSecs,
                                                         scanTimeoutMills));
     Iterables.addAll(runIds, getRunningInRangeForStatus(TYPE_RUN_RECORD_STARTED, startTimeInSecs, endTimeInSecs,
@@ -1103,6 +1206,119 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     return runIds;
   }
 
+  /**
+   * Adds the ids of the completed program runs that were running between the given start and end time to the given
+   * set, using the run interval index. For each bucket size, only the buckets overlapping the given range are
+   * scanned, plus the long running index. At most {@code limit} index entries are read, so that large ranges can be
+   * scanned across multiple transactions.
+   *
+   * @param resumeKey the key returned by the previous call to continue the scan from, or {@code null} to start
+   * @param limit maximum number of index entries to read
+   * @param runIds the set to add the run ids to
+   * @return the key to continue the scan from, or {@code null} if the scan is complete
+   */
+  @Nullable
+  byte[] scanCompletedInRange(final long startTimeInSecs, final long endTimeInSecs, @Nullable byte[] resumeKey,
+                              final int limit, final Set<RunId> runIds) {
+    // The index ranges are sorted by key and don't overlap, since the bucket size comes before the bucket and
+    // the long running index type sorts after the bucketed index type
+    List<MDSKey[]> ranges = new ArrayList<>();
+    for (long bucketSecs : RUN_INTERVAL_BUCKET_SECS) {
+      long startBucket = getRunIntervalBucket(startTimeInSecs, bucketSecs);
+      long stopBucket = getRunIntervalBucket(Math.max(startTimeInSecs, endTimeInSecs - 1), bucketSecs);
+      ranges.add(new MDSKey[] {
+        new MDSKey.Builder().add(TYPE_RUN_INTERVAL).add(bucketSecs).add(startBucket).build(),
+        new MDSKey(Bytes.stopKeyForPrefix(
+          new MDSKey.Builder().add(TYPE_RUN_INTERVAL).add(bucketSecs).add(stopBucket).build().getKey()))
+      });
+    }
+    MDSKey longPrefix = new MDSKey.Builder().add(TYPE_RUN_INTERVAL_LONG).build();
+    ranges.add(new MDSKey[] { longPrefix, new MDSKey(Bytes.stopKeyForPrefix(longPrefix.getKey())) });
+
+    final AtomicInteger count = new AtomicInteger();
+    final AtomicReference<MDSKey> lastKey = new AtomicReference<>();
+    Function<KeyValue<RunInterval>, Boolean> collector = new Function<KeyValue<RunInterval>, Boolean>() {
+      @Override
+      public Boolean apply(KeyValue<RunInterval> input) {
+        RunInterval interval = input.getValue();
+        // Same condition as the time filter used in getRunningInRangeForStatus
+        if (interval.getStartTs() < endTimeInSecs && interval.getStopTs() >= startTimeInSecs) {
+          runIds.add(RunIds.fromString(interval.getRunId()));
+        }
+        if (count.incrementAndGet() >= limit) {
+          lastKey.set(input.getKey());
+          return false;
+        }
+        return true;
+      }
+    };
+
+    for (MDSKey[] range : ranges) {
+      MDSKey startKey = range[0];
+      if (resumeKey != null) {
+        if (Bytes.compareTo(resumeKey, range[1].getKey()) >= 0) {
+          continue;
+        }
+        if (Bytes.compareTo(resumeKey, startKey.getKey()) > 0) {
+          startKey = new MDSKey(resumeKey);
+        }
+      }
+      scan(startKey, range[1], RunInterval.class, collector);
+      if (lastKey.get() != null) {
+        return Bytes.stopKeyForPrefix(lastKey.get().getKey());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return true if the run interval index contains all completed run records
+   */
+  @VisibleForTesting
+  boolean isRunIntervalIndexComplete() {
+    RunIntervalIndexState state = get(new MDSKey.Builder().add(TYPE_RUN_INTERVAL_INDEX_STATE).build(),
+                                      RunIntervalIndexState.class);
+    return state != null && state.isComplete();
+  }
+
+  /**
+   * Adds completed run records written before the run interval index was introduced to the index.
+   * Progress is persisted, so that the index can be built across multiple transactions.
+   *
+   * @param maxRows maximum number of run records to be indexed in this call
+   * @return true if all completed run records are indexed
+   */
+  boolean buildRunIntervalIndex(int maxRows) {
+    MDSKey stateKey = new MDSKey.Builder().add(TYPE_RUN_INTERVAL_INDEX_STATE).build();
+    RunIntervalIndexState state = get(stateKey, RunIntervalIndexState.class);
+    if (state != null && state.isComplete()) {
+      return true;
+    }
+
+    MDSKey prefix = new MDSKey.Builder().add(TYPE_RUN_RECORD_COMPLETED).build();
+    MDSKey startKey = state == null ? prefix : new MDSKey(Bytes.stopKeyForPrefix(state.getLastKey()));
+    MDSKey stopKey = new MDSKey(Bytes.stopKeyForPrefix(prefix.getKey()));
+    Map<MDSKey, RunRecordMeta> records = listKV(startKey, stopKey, RunRecordMeta.class, maxRows,
+                                                Predicates.<RunRecordMeta>alwaysTrue());
+    MDSKey lastKey = null;
+    for (Map.Entry<MDSKey, RunRecordMeta> entry : records.entrySet()) {
+      RunRecordMeta meta = entry.getValue();
+      if (meta.getStopTs() != null) {
+        addRunInterval(meta.getProgramRunId(), meta.getStartTs(), meta.getStopTs());
+      }
+      lastKey = entry.getKey();
+    }
+
+    if (records.size() < maxRows) {
+      LOG.info("Run interval index is complete after indexing {} run records in the last batch", records.size());
+      write(stateKey, new RunIntervalIndexState(null, true));
+      return true;
+    }
+    LOG.debug("Indexed {} run records up to {}", records.size(), lastKey);
+    write(stateKey, new RunIntervalIndexState(lastKey.getKey(), false));
+    return false;
+  }
+
   /**
    * @return true if the row key is value is greater or than or equal to the expected version
    */
@@ -1425,6 +1641,54 @@ public class AppMetadataStore extends MetadataStoreDataset implements TopicMessa
     }
   }
 
+  /**
+   * Value stored in the run interval index.
+   */
+  private static final class RunInterval {
+    private final String runId;
+    private final long startTs;
+    private final long stopTs;
+
+    RunInterval(String runId, long startTs, long stopTs) {
+      this.runId = runId;
+      this.startTs = startTs;
+      this.stopTs = stopTs;
+    }
+
+    String getRunId() {
+      return runId;
+    }
+
+    long getStartTs() {
+      return startTs;
+    }
+
+    long getStopTs() {
+      return stopTs;
+    }
+  }
+
+  /**
+   * Progress of building the run interval index for existing run records.
+   */
+  private static final class RunIntervalIndexState {
+    private final byte[] lastKey;
+    private final boolean complete;
+
+    RunIntervalIndexState(@Nullable byte[] lastKey, boolean complete) {
+      this.lastKey = lastKey;
+      this.complete = complete;
+    }
+
+    byte[] getLastKey() {
+      return lastKey;
+    }
+
+    boolean isComplete() {
+      return complete;
+    }
+  }
+
   private static class ScanFunction implements Function<MetadataStoreDataset.KeyValue<RunRecordMeta>, Boolean> {
     private final Predicate<RunRecordMeta> filter;
     private final Stopwatch stopwatch;
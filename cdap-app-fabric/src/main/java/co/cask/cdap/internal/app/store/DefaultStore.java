@@ -88,6 +88,7 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -106,6 +107,8 @@ public class DefaultStore implements Store {
   private static final DatasetId APP_META_INSTANCE_ID = NamespaceId.SYSTEM.dataset(Constants.AppMetaStore.TABLE);
   private static final byte[] APP_VERSION_UPGRADE_KEY = Bytes.toBytes("version.default.store");
   private static final String NAME = DefaultStore.class.getSimpleName();
+  // Maximum number of run interval index entries read in one transaction
+  private static final int RUN_INTERVAL_SCAN_LIMIT = 10000;
 
   // mds is specific for metadata, we do not want to add workflow stats related information to the mds,
   // as it is not specifically metadata
@@ -697,13 +700,21 @@ public class DefaultStore implements Store {
   }
 
   /**
-   * Method to add version in DefaultStore.
+   * Method to add version in DefaultStore and to build the run interval index for existing run records.
    *
    * @throws InterruptedException
    * @throws IOException
    * @throws DatasetManagementException
    */
   public void upgrade() throws InterruptedException, IOException, DatasetManagementException {
+    upgradeVersionKeys();
+    // The run interval index is built from the upgraded keys, hence only after the version upgrade is done
+    if (isUpgradeComplete()) {
+      buildRunIntervalIndex();
+    }
+  }
+
+  private void upgradeVersionKeys() throws InterruptedException {
     // If upgrade is already complete, then simply return.
     if (isUpgradeComplete()) {
       LOG.info("{} is already upgraded.", NAME);
@@ -752,6 +763,40 @@ public class DefaultStore implements Store {
     LOG.info("Upgrade of {} is complete.", NAME);
   }
 
+  /**
+   * Builds the run interval index used by {@link #getRunningInRange(long, long)} for the existing run records,
+   * in batches of run records per transaction.
+   */
+  private void buildRunIntervalIndex() throws InterruptedException {
+    final AtomicInteger maxRows = new AtomicInteger(1000);
+    final AtomicBoolean indexComplete = new AtomicBoolean(false);
+
+    LOG.info("Starting to build the run interval index of {}.", NAME);
+    while (!indexComplete.get()) {
+      try {
+        transactional.execute(context -> {
+          indexComplete.set(getAppMetadataStore(context).buildRunIntervalIndex(maxRows.get()));
+        });
+      } catch (TransactionFailureException e) {
+        if (e instanceof TransactionConflictException) {
+          LOG.debug("Building run interval index faced Transaction Conflict exception. Retrying operation now.", e);
+        } else if (e instanceof TransactionNotInProgressException) {
+          if (maxRows.get() <= 10) {
+            LOG.warn("Could not complete building the run interval index of {}.", NAME);
+            return;
+          }
+          maxRows.set(maxRows.get() / 2);
+          LOG.debug("Building run interval index faced a Transaction Timeout exception. " +
+                      "Reducing the number of max rows to : {} and retrying the operation now.", maxRows.get(), e);
+        } else {
+          LOG.error("Building run interval index faced exception. Will retry operation after some delay.", e);
+          TimeUnit.SECONDS.sleep(60);
+        }
+      }
+    }
+    LOG.info("Run interval index of {} is complete.", NAME);
+  }
+
   private void truncate(DatasetAdmin admin) throws Exception {
     if (admin != null) {
       admin.truncate();
@@ -931,9 +976,32 @@ public class DefaultStore implements Store {
 
   @Override
   public Set<RunId> getRunningInRange(final long startTimeInSecs, final long endTimeInSecs) {
-    return Transactionals.execute(transactional, context -> {
-      return getAppMetadataStore(context).getRunningInRange(startTimeInSecs, endTimeInSecs);
+    // Runs that are not completed are read before the completed ones, so that a run that completes in between
+    // is found in the run interval index
+    Set<RunId> runIds = new HashSet<>();
+    boolean indexed = Transactionals.execute(transactional, context -> {
+      AppMetadataStore metaStore = getAppMetadataStore(context);
+      if (!metaStore.isRunIntervalIndexComplete()) {
+        runIds.addAll(metaStore.getRunningInRange(startTimeInSecs, endTimeInSecs));
+        return false;
+      }
+      runIds.addAll(metaStore.getActiveInRange(startTimeInSecs, endTimeInSecs));
+      return true;
     });
+    if (!indexed) {
+      return runIds;
+    }
+
+    // The run interval index is scanned in pages, each in its own transaction, to not exceed the transaction timeout
+    byte[] resumeKey = null;
+    do {
+      byte[] startKey = resumeKey;
+      resumeKey = Transactionals.execute(transactional, context -> {
+        return getAppMetadataStore(context).scanCompletedInRange(startTimeInSecs, endTimeInSecs, startKey,
+                                                                 RUN_INTERVAL_SCAN_LIMIT, runIds);
+      });
+    } while (resumeKey != null);
+    return runIds;
   }
 
   private static final class DefaultStoreUpgradeCacheLoader extends CacheLoader<byte[], Boolean> {
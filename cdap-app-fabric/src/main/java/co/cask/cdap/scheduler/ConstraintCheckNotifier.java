@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.scheduler;
+
+import co.cask.cdap.proto.id.ProgramId;
+import co.cask.cdap.proto.id.ScheduleId;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.twill.common.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Notifies the {@link ConstraintCheckerService} within the same process about changes that can affect the jobs
+ * in the job queue, so that the jobs are checked right away instead of waiting for a scan over the job queue.
+ * All notifications must be made after the corresponding changes are committed.
+ */
+@Singleton
+final class ConstraintCheckNotifier {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConstraintCheckNotifier.class);
+
+  /**
+   * Listener for the changes.
+   */
+  interface Listener {
+
+    /**
+     * Called when the jobs of the given schedule have changed, either by receiving new notifications,
+     * or by being marked for deletion.
+     */
+    void jobsChanged(ScheduleId scheduleId);
+
+    /**
+     * Called when the status of a run of the given program has changed.
+     */
+    void programStatusChanged(ProgramId programId);
+  }
+
+  private final Set<Listener> listeners;
+
+  @Inject
+  ConstraintCheckNotifier() {
+    this.listeners = new CopyOnWriteArraySet<>();
+  }
+
+  /**
+   * Adds a listener for the changes. The listener is called from the thread that made the changes, hence it
+   * should return quickly.
+   *
+   * @param listener the listener to call
+   * @return a {@link Cancellable} to remove the listener
+   */
+  Cancellable addListener(final Listener listener) {
+    listeners.add(listener);
+    return new Cancellable() {
+      @Override
+      public void cancel() {
+        listeners.remove(listener);
+      }
+    };
+  }
+
+  /**
+   * Notifies that the jobs of the given schedule have changed.
+   */
+  void jobsChanged(ScheduleId scheduleId) {
+    for (Listener listener : listeners) {
+      try {
+        listener.jobsChanged(scheduleId);
+      } catch (Throwable t) {
+        LOG.warn("Exception raised from listener when jobs of schedule {} changed", scheduleId, t);
+      }
+    }
+  }
+
+  /**
+   * Notifies that the status of a run of the given program has changed.
+   */
+  void programStatusChanged(ProgramId programId) {
+    for (Listener listener : listeners) {
+      try {
+        listener.programStatusChanged(programId);
+      } catch (Throwable t) {
+        LOG.warn("Exception raised from listener when status of program {} changed", programId, t);
+      }
+    }
+  }
+}
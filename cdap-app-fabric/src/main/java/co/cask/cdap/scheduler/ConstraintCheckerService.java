@@ -24,6 +24,7 @@ import co.cask.cdap.common.ApplicationNotFoundException;
 import co.cask.cdap.common.NamespaceNotFoundException;
 import co.cask.cdap.common.ProgramNotFoundException;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
 import co.cask.cdap.common.service.RetryStrategy;
 import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
@@ -33,17 +34,23 @@ import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.internal.app.runtime.schedule.ScheduleTaskRunner;
 import co.cask.cdap.internal.app.runtime.schedule.TaskExecutionException;
 import co.cask.cdap.internal.app.runtime.schedule.constraint.CheckableConstraint;
+import co.cask.cdap.internal.app.runtime.schedule.constraint.ConcurrencyConstraint;
 import co.cask.cdap.internal.app.runtime.schedule.constraint.ConstraintContext;
 import co.cask.cdap.internal.app.runtime.schedule.constraint.ConstraintResult;
 import co.cask.cdap.internal.app.runtime.schedule.queue.Job;
+import co.cask.cdap.internal.app.runtime.schedule.queue.JobKey;
 import co.cask.cdap.internal.app.runtime.schedule.queue.JobQueueDataset;
 import co.cask.cdap.internal.app.runtime.schedule.store.Schedulers;
 import co.cask.cdap.internal.app.services.ProgramLifecycleService;
 import co.cask.cdap.internal.app.services.PropertiesResolver;
 import co.cask.cdap.internal.schedule.constraint.Constraint;
 import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.ProgramId;
+import co.cask.cdap.proto.id.ScheduleId;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.SetMultimap;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -52,21 +59,36 @@ import com.google.inject.Inject;
 import org.apache.tephra.RetryStrategies;
 import org.apache.tephra.TransactionFailureException;
 import org.apache.tephra.TransactionSystemClient;
+import org.apache.twill.common.Cancellable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Polls the JobQueue, checks the jobs for constraint satisfaction, and launches them.
+ * Checks the jobs in the JobQueue for constraint satisfaction, and launches them.
+ *
+ * Jobs are checked when they change, as notified by the {@link ConstraintCheckNotifier}. A job that is not yet
+ * satisfied is kept in a {@link TimerWheel} until the time that its constraints are expected to be satisfied,
+ * or until it times out. Jobs with a {@link ConcurrencyConstraint} are also checked again when the status
+ * of their program changes. The JobQueue is scanned on startup and periodically afterwards, only for recovering
+ * jobs that were missed, for example due to failures.
  */
 class ConstraintCheckerService extends AbstractIdleService {
   private static final Logger LOG = LoggerFactory.getLogger(ConstraintCheckerService.class);
 
+  // Tick duration and number of slots of the timer wheels
+  private static final long TIMER_WHEEL_TICK_MILLIS = 100L;
+  private static final int TIMER_WHEEL_SLOTS = 1024;
+
   private final Transactional transactional;
   private final DatasetFramework datasetFramework;
   private final MultiThreadDatasetCache multiThreadDatasetCache;
@@ -75,8 +97,12 @@ class ConstraintCheckerService extends AbstractIdleService {
   private final PropertiesResolver propertiesResolver;
   private final NamespaceQueryAdmin namespaceQueryAdmin;
   private final CConfiguration cConf;
+  private final ConstraintCheckNotifier constraintCheckNotifier;
+  private final long fullScanIntervalMillis;
   private ScheduleTaskRunner taskRunner;
   private ListeningExecutorService taskExecutorService;
+  private List<ConstraintCheckerThread> checkerThreads;
+  private Cancellable cancelNotifierListener;
   private volatile boolean stopping = false;
 
   @Inject
@@ -85,7 +111,8 @@ class ConstraintCheckerService extends AbstractIdleService {
                            NamespaceQueryAdmin namespaceQueryAdmin,
                            CConfiguration cConf,
                            DatasetFramework datasetFramework,
-                           TransactionSystemClient txClient) {
+                           TransactionSystemClient txClient,
+                           ConstraintCheckNotifier constraintCheckNotifier) {
     this.store = store;
     this.lifecycleService = lifecycleService;
     this.propertiesResolver = propertiesResolver;
@@ -99,6 +126,8 @@ class ConstraintCheckerService extends AbstractIdleService {
       RetryStrategies.retryOnConflict(20, 100)
     );
     this.datasetFramework = datasetFramework;
+    this.constraintCheckNotifier = constraintCheckNotifier;
+    this.fullScanIntervalMillis = cConf.getLong(Constants.Scheduler.CONSTRAINT_CHECK_FULL_SCAN_INTERVAL_MILLIS);
   }
 
   @Override
@@ -109,9 +138,29 @@ class ConstraintCheckerService extends AbstractIdleService {
     taskRunner = new ScheduleTaskRunner(store, lifecycleService, propertiesResolver,
                                         taskExecutorService, namespaceQueryAdmin, cConf);
 
-    int numPartitions = Schedulers.getJobQueue(multiThreadDatasetCache, datasetFramework).getNumPartitions();
+    final JobQueueDataset jobQueue = Schedulers.getJobQueue(multiThreadDatasetCache, datasetFramework);
+    int numPartitions = jobQueue.getNumPartitions();
+    checkerThreads = new ArrayList<>(numPartitions);
     for (int partition = 0; partition < numPartitions; partition++) {
-      taskExecutorService.submit(new ConstraintCheckerThread(partition));
+      checkerThreads.add(new ConstraintCheckerThread(partition));
+    }
+    // Route the changes to the checker thread of the corresponding partition. Program status changes can affect
+    // jobs in any partition.
+    cancelNotifierListener = constraintCheckNotifier.addListener(new ConstraintCheckNotifier.Listener() {
+      @Override
+      public void jobsChanged(ScheduleId scheduleId) {
+        checkerThreads.get(jobQueue.getPartition(scheduleId)).addEvent(scheduleId);
+      }
+
+      @Override
+      public void programStatusChanged(ProgramId programId) {
+        for (ConstraintCheckerThread checkerThread : checkerThreads) {
+          checkerThread.addEvent(programId);
+        }
+      }
+    });
+    for (ConstraintCheckerThread checkerThread : checkerThreads) {
+      taskExecutorService.submit(checkerThread);
     }
     LOG.info("Started ConstraintCheckerService. state: " + state());
   }
@@ -120,6 +169,9 @@ class ConstraintCheckerService extends AbstractIdleService {
   protected void shutDown() throws Exception {
     stopping = true;
     LOG.info("Stopping ConstraintCheckerService.");
+    if (cancelNotifierListener != null) {
+      cancelNotifierListener.cancel();
+    }
     try {
       // Shutdown the executor and wait for all pending task to be completed for max of 5 seconds
       taskExecutorService.shutdown();
@@ -138,8 +190,19 @@ class ConstraintCheckerService extends AbstractIdleService {
     private final RetryStrategy scheduleStrategy;
     private final int partition;
     private final Deque<Job> readyJobs = new ArrayDeque<>();
+    // Changes from the ConstraintCheckNotifier, which are either ScheduleId or ProgramId
+    private final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+    // Events taken from the queue that are not yet processed successfully
+    private final List<Object> pendingEvents = new ArrayList<>();
+    // Jobs to be checked again, keyed by the time when they are expected to be satisfied or to time out
+    private final TimerWheel<JobKey> timerWheel;
+    // Jobs not satisfied because of a ConcurrencyConstraint, which are checked again when their program status changes
+    private final SetMultimap<ProgramId, JobKey> concurrencyLimitedJobs = HashMultimap.create();
     private JobQueueDataset jobQueue;
     private Job lastConsumed;
+    // Start with a full scan to recover jobs from before startup
+    private boolean scanning = true;
+    private long nextScanTime;
     private int failureCount;
 
     ConstraintCheckerThread(int partition) {
@@ -147,6 +210,14 @@ class ConstraintCheckerService extends AbstractIdleService {
       scheduleStrategy =
         co.cask.cdap.common.service.RetryStrategies.exponentialDelay(100, 30000, TimeUnit.MILLISECONDS);
       this.partition = partition;
+      this.timerWheel = new TimerWheel<>(TIMER_WHEEL_TICK_MILLIS, TIMER_WHEEL_SLOTS, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds an event for this thread to process. This method can be called from any thread.
+     */
+    void addEvent(Object event) {
+      events.add(event);
     }
 
     @Override
@@ -157,9 +228,12 @@ class ConstraintCheckerService extends AbstractIdleService {
       while (!stopping) {
         try {
           long sleepTime = checkJobQueue();
-          // Don't sleep if sleepTime returned is 0
+          // Don't sleep if sleepTime returned is 0. Otherwise, wait until the sleep time passed or a new event arrives
           if (sleepTime > 0) {
-            TimeUnit.MILLISECONDS.sleep(sleepTime);
+            Object event = events.poll(sleepTime, TimeUnit.MILLISECONDS);
+            if (event != null) {
+              pendingEvents.add(event);
+            }
           }
         } catch (InterruptedException e) {
           // sleep is interrupted, just exit without doing anything
@@ -168,16 +242,37 @@ class ConstraintCheckerService extends AbstractIdleService {
     }
 
     /**
-     * Check jobs in job queue for constraint satisfaction.
+     * Check jobs for constraint satisfaction. The jobs checked are the ones affected by new events, the ones that
+     * are due in the timer wheel, and the next batch of the full scan if it is in progress.
      *
-     * @return sleep time in milliseconds before next fetch
+     * @return sleep time in milliseconds before next check
      */
     private long checkJobQueue() {
-      boolean emptyFetch = false;
+      final long now = System.currentTimeMillis();
+      if (!scanning && now >= nextScanTime) {
+        scanning = true;
+      }
+      events.drainTo(pendingEvents);
+      final List<JobKey> dueJobs = timerWheel.expire(now);
       try {
-        emptyFetch = Transactionals.execute(transactional, context -> {
-          return checkJobConstraints();
-        });
+        // Only start a transaction if there is anything to check
+        if (scanning || !pendingEvents.isEmpty() || !dueJobs.isEmpty()) {
+          boolean scanCompleted = Transactionals.execute(transactional, context -> {
+            boolean completed = !scanning || scanJobQueue();
+            for (Object event : pendingEvents) {
+              processEvent(event);
+            }
+            for (JobKey jobKey : dueJobs) {
+              checkJob(jobKey);
+            }
+            return completed;
+          });
+          pendingEvents.clear();
+          if (scanning && scanCompleted) {
+            scanning = false;
+            nextScanTime = now + fullScanIntervalMillis;
+          }
+        }
 
         // run any ready jobs
         runReadyJobs();
@@ -185,40 +280,84 @@ class ConstraintCheckerService extends AbstractIdleService {
       } catch (Exception e) {
         LOG.warn("Failed to check Job constraints. Will retry in next run", e);
         failureCount++;
+        // The pending events are kept, and the due jobs are checked again in the next run
+        for (JobKey jobKey : dueJobs) {
+          timerWheel.add(jobKey, now);
+        }
       }
 
-      // If there is any failure, delay the next fetch based on the strategy
+      // If there is any failure, delay the next check based on the strategy
       if (failureCount > 0) {
         // Exponential strategy doesn't use the time component, so doesn't matter what we passed in as startTime
         return scheduleStrategy.nextRetry(failureCount, 0);
       }
+      if (scanning || !events.isEmpty()) {
+        return 0L;
+      }
 
-      // Sleep for 2 seconds if there's no jobs in the queue
-      return emptyFetch && readyJobs.isEmpty() ? 2000L : 0L;
+      // Sleep until the next full scan or until the earliest job in the timer wheel is due. Jobs that failed
+      // to launch are retried after one tick.
+      long sleepTime = Math.min(nextScanTime, timerWheel.getNextDeadline()) - System.currentTimeMillis();
+      if (!readyJobs.isEmpty()) {
+        sleepTime = Math.min(sleepTime, TIMER_WHEEL_TICK_MILLIS);
+      }
+      return Math.max(sleepTime, 0L);
     }
 
-    private boolean checkJobConstraints() throws Exception {
-      boolean emptyScan = true;
-
+    /**
+     * Checks the next batch of jobs of the full scan.
+     *
+     * @return {@code true} if the full scan has completed
+     */
+    private boolean scanJobQueue() throws Exception {
       try (CloseableIterator<Job> jobQueueIter = jobQueue.getJobs(partition, lastConsumed)) {
         Stopwatch stopWatch = new Stopwatch().start();
         // limit the batches of the scan to 1000ms
         while (!stopping && stopWatch.elapsedMillis() < 1000) {
           if (!jobQueueIter.hasNext()) {
             lastConsumed = null;
-            return emptyScan;
+            return true;
           }
           Job job = jobQueueIter.next();
           lastConsumed = job;
-          emptyScan = false;
           checkAndUpdateJob(jobQueue, job);
         }
       }
-      return emptyScan;
+      return false;
+    }
+
+    private void processEvent(Object event) {
+      if (event instanceof ScheduleId) {
+        // The jobs of the schedule have changed, check them all
+        try (CloseableIterator<Job> jobs = jobQueue.getJobsForSchedule((ScheduleId) event)) {
+          while (jobs.hasNext()) {
+            checkAndUpdateJob(jobQueue, jobs.next());
+          }
+        }
+      } else if (event instanceof ProgramId) {
+        // A run of the program may have finished, hence jobs limited by concurrency may be satisfied now
+        for (JobKey jobKey : concurrencyLimitedJobs.removeAll(event)) {
+          checkJob(jobKey);
+        }
+      }
+    }
+
+    private void checkJob(JobKey jobKey) {
+      Job job = jobQueue.getJob(jobKey);
+      if (job != null) {
+        checkAndUpdateJob(jobQueue, job);
+      }
     }
 
+    // The given job only contains its metadata, since neither the trigger state nor the constraints need the
+    // notifications of the job. They are only read when the job is launched, in runReadyJob.
     private void checkAndUpdateJob(JobQueueDataset jobQueue, Job job) {
       long now = System.currentTimeMillis();
+      JobKey jobKey = job.getJobKey();
+      // The job is added back to the timer wheel and to the concurrency limited jobs if it needs to be checked again
+      timerWheel.remove(jobKey);
+      concurrencyLimitedJobs.remove(job.getSchedule().getProgramId(), jobKey);
+
       if (job.isToBeDeleted()) {
         // only delete jobs that are pending trigger or pending constraint. If pending launch, the launcher will delete
         if ((job.getState() == Job.State.PENDING_CONSTRAINT ||
@@ -230,20 +369,33 @@ class ConstraintCheckerService extends AbstractIdleService {
           (job.getState() == Job.State.PENDING_TRIGGER &&
             now - job.getDeleteTimeMillis() > 2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS))) {
           jobQueue.deleteJob(job);
+        } else if (job.getState() == Job.State.PENDING_TRIGGER) {
+          // check again once the job can be deleted
+          timerWheel.add(jobKey, job.getDeleteTimeMillis() + 2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS + 1);
         }
         return;
       }
-      if (now - job.getCreationTime() >= job.getSchedule().getTimeoutMillis() +
-        2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS) {
+      long timeoutTime = job.getCreationTime() + job.getSchedule().getTimeoutMillis() +
+        2 * Schedulers.SUBSCRIBER_TX_TIMEOUT_MILLIS;
+      if (now >= timeoutTime) {
         LOG.info("Deleted job {}, due to timeout value of {}.", job.getJobKey(), job.getSchedule().getTimeoutMillis());
         jobQueue.deleteJob(job);
         return;
       }
       if (job.getState() != Job.State.PENDING_CONSTRAINT) {
+        if (job.getState() == Job.State.PENDING_TRIGGER) {
+          // Jobs pending trigger are checked again upon new notifications, or when they time out
+          timerWheel.add(jobKey, timeoutTime);
+        }
         return;
       }
-      ConstraintResult.SatisfiedState satisfiedState = constraintsSatisfied(job, now);
+      ConstraintResult result = constraintsSatisfied(job, now);
+      ConstraintResult.SatisfiedState satisfiedState = result.getSatisfiedState();
       if (satisfiedState == ConstraintResult.SatisfiedState.NOT_SATISFIED) {
+        timerWheel.add(jobKey, Math.min(result.getNextCheckTime(), timeoutTime));
+        if (hasConcurrencyConstraint(job)) {
+          concurrencyLimitedJobs.put(job.getSchedule().getProgramId(), jobKey);
+        }
         return;
       }
       if (satisfiedState == ConstraintResult.SatisfiedState.NEVER_SATISFIED) {
@@ -276,8 +428,9 @@ class ConstraintCheckerService extends AbstractIdleService {
     private boolean runReadyJob(Job job) throws Exception {
       // We should check the stored job's state (whether it actually is PENDING_LAUNCH), because
       // the schedule could have gotten deleted in the meantime or the transaction that marked it as PENDING_LAUNCH
-      // may have failed / rolled back.
-      Job storedJob = jobQueue.getJob(job.getJobKey());
+      // may have failed / rolled back. The jobs in readyJobs don't contain their notifications, so the stored job
+      // is read with its notifications, which are needed to launch it.
+      Job storedJob = jobQueue.getJobWithNotifications(job.getJobKey());
       if (storedJob == null) {
         return true;
       }
@@ -293,7 +446,7 @@ class ConstraintCheckerService extends AbstractIdleService {
       }
 
       try {
-        taskRunner.launch(job);
+        taskRunner.launch(storedJob);
       } catch (NamespaceNotFoundException | TaskExecutionException e) {
         if (e instanceof TaskExecutionException && !(e.getCause() instanceof ProgramNotFoundException
           || e.getCause() instanceof ApplicationNotFoundException)) {
@@ -313,8 +466,13 @@ class ConstraintCheckerService extends AbstractIdleService {
       return true;
     }
 
-    private ConstraintResult.SatisfiedState constraintsSatisfied(Job job, long now) {
+    /**
+     * Checks the constraints of the given job. If the job is not satisfied, the result contains the time when all
+     * the constraints are expected to be satisfied.
+     */
+    private ConstraintResult constraintsSatisfied(Job job, long now) {
       ConstraintResult.SatisfiedState satisfiedState = ConstraintResult.SatisfiedState.SATISFIED;
+      long nextCheckTime = now;
 
       ConstraintContext constraintContext = new ConstraintContext(job, now, store);
       for (Constraint constraint : job.getSchedule().getConstraints()) {
@@ -329,13 +487,25 @@ class ConstraintCheckerService extends AbstractIdleService {
         ConstraintResult result = abstractConstraint.check(job.getSchedule(), constraintContext);
         if (result.getSatisfiedState() == ConstraintResult.NEVER_SATISFIED.getSatisfiedState()) {
           // if any of the constraints are NEVER_SATISFIED, return NEVER_SATISFIED
-          return ConstraintResult.NEVER_SATISFIED.getSatisfiedState();
+          return ConstraintResult.NEVER_SATISFIED;
         }
         if (result.getSatisfiedState() == ConstraintResult.SatisfiedState.NOT_SATISFIED) {
           satisfiedState = ConstraintResult.SatisfiedState.NOT_SATISFIED;
+          // all the constraints need to be satisfied, hence the job can only be satisfied at the latest time
+          nextCheckTime = Math.max(nextCheckTime, result.getNextCheckTime());
+        }
+      }
+      return satisfiedState == ConstraintResult.SatisfiedState.SATISFIED
+        ? ConstraintResult.SATISFIED : new ConstraintResult(satisfiedState, nextCheckTime);
+    }
+
+    private boolean hasConcurrencyConstraint(Job job) {
+      for (Constraint constraint : job.getSchedule().getConstraints()) {
+        if (constraint instanceof ConcurrencyConstraint) {
+          return true;
         }
       }
-      return satisfiedState;
+      return false;
     }
 
   }
@@ -75,12 +75,14 @@ public class CoreSchedulerService extends AbstractIdleService implements Schedul
   private final Service internalService;
   private final DatasetFramework datasetFramework;
   private final TimeSchedulerService timeSchedulerService;
+  private final ConstraintCheckNotifier constraintCheckNotifier;
 
   @Inject
   CoreSchedulerService(TransactionSystemClient txClient, final DatasetFramework datasetFramework,
                        final TimeSchedulerService timeSchedulerService,
                        final ScheduleNotificationSubscriberService scheduleNotificationSubscriberService,
-                       final ConstraintCheckerService constraintCheckerService) {
+                       final ConstraintCheckerService constraintCheckerService,
+                       ConstraintCheckNotifier constraintCheckNotifier) {
     this.startedLatch = new CountDownLatch(1);
     this.datasetFramework = datasetFramework;
     final DynamicDatasetCache datasetCache =
@@ -90,6 +92,7 @@ public class CoreSchedulerService extends AbstractIdleService implements Schedul
     this.transactional = Transactions.createTransactionalWithRetry(
       Transactions.createTransactional(datasetCache), RetryStrategies.retryOnConflict(10, 100L));
     this.timeSchedulerService = timeSchedulerService;
+    this.constraintCheckNotifier = constraintCheckNotifier;
     // Use a retry on failure service to make it resilience to transient service unavailability during startup
     this.internalService = new RetryOnStartFailureService(() -> new AbstractIdleService() {
       @Override
@@ -279,6 +282,7 @@ public class CoreSchedulerService extends AbstractIdleService implements Schedul
         queue.markJobsForDeletion(scheduleId, System.currentTimeMillis());
         return null;
       }, Exception.class);
+      constraintCheckNotifier.jobsChanged(scheduleId);
     } catch (NotFoundException | ConflictException e) {
       throw e;
     } catch (SchedulerException e) {
@@ -332,34 +336,37 @@ public class CoreSchedulerService extends AbstractIdleService implements Schedul
       store.deleteSchedules(scheduleIds);
       return null;
     }, NotFoundException.class);
+    notifyJobsChanged(scheduleIds);
   }
 
   @Override
   public void deleteSchedules(final ApplicationId appId) {
     checkStarted();
-    execute((StoreAndQueueTxRunnable<Void, RuntimeException>) (store, queue) -> {
+    StoreAndQueueTxRunnable<List<ScheduleId>, RuntimeException> runnable = (store, queue) -> {
       long deleteTime = System.currentTimeMillis();
       deleteSchedulesInScheduler(store.listSchedules(appId));
       List<ScheduleId> deleted = store.deleteSchedules(appId);
       for (ScheduleId scheduleId : deleted) {
         queue.markJobsForDeletion(scheduleId, deleteTime);
       }
-      return null;
-    }, RuntimeException.class);
+      return deleted;
+    };
+    notifyJobsChanged(execute(runnable, RuntimeException.class));
   }
 
   @Override
   public void deleteSchedules(final ProgramId programId) {
     checkStarted();
-    execute((StoreAndQueueTxRunnable<Void, RuntimeException>) (store, queue) -> {
+    StoreAndQueueTxRunnable<List<ScheduleId>, RuntimeException> runnable = (store, queue) -> {
       long deleteTime = System.currentTimeMillis();
       deleteSchedulesInScheduler(store.listSchedules(programId));
       List<ScheduleId> deleted = store.deleteSchedules(programId);
       for (ScheduleId scheduleId : deleted) {
         queue.markJobsForDeletion(scheduleId, deleteTime);
       }
-      return null;
-    }, RuntimeException.class);
+      return deleted;
+    };
+    notifyJobsChanged(execute(runnable, RuntimeException.class));
   }
 
   @Override
@@ -414,6 +421,15 @@ public class CoreSchedulerService extends AbstractIdleService implements Schedul
     return execute(store -> store.findSchedules(triggerKey), RuntimeException.class);
   }
 
+  /**
+   * Notifies the {@link ConstraintCheckerService} that the jobs of the given schedules have been marked for deletion.
+   */
+  private void notifyJobsChanged(Iterable<? extends ScheduleId> scheduleIds) {
+    for (ScheduleId scheduleId : scheduleIds) {
+      constraintCheckNotifier.jobsChanged(scheduleId);
+    }
+  }
+
   private interface StoreTxRunnable<V, T extends Throwable> {
     V run(ProgramScheduleStoreDataset store) throws T;
   }
@@ -29,6 +29,7 @@ import co.cask.cdap.internal.app.runtime.schedule.ProgramScheduleRecord;
 import co.cask.cdap.internal.app.runtime.schedule.queue.JobQueueDataset;
 import co.cask.cdap.internal.app.runtime.schedule.store.ProgramScheduleStoreDataset;
 import co.cask.cdap.internal.app.runtime.schedule.store.Schedulers;
+import co.cask.cdap.internal.app.runtime.schedule.store.TriggerScheduleCache;
 import co.cask.cdap.internal.app.services.AbstractNotificationSubscriberService;
 import co.cask.cdap.messaging.MessagingService;
 import co.cask.cdap.proto.Notification;
@@ -45,7 +46,10 @@ import org.apache.tephra.TransactionSystemClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -60,16 +64,19 @@ public class ScheduleNotificationSubscriberService extends AbstractNotificationS
 
   private final CConfiguration cConf;
   private final DatasetFramework datasetFramework;
+  private final ConstraintCheckNotifier constraintCheckNotifier;
   private ExecutorService taskExecutorService;
 
   @Inject
   ScheduleNotificationSubscriberService(MessagingService messagingService, CConfiguration cConf,
                                         DatasetFramework datasetFramework, TransactionSystemClient txClient,
-                                        MetricsCollectionService metricsCollectionService) {
+                                        MetricsCollectionService metricsCollectionService,
+                                        ConstraintCheckNotifier constraintCheckNotifier) {
     super(messagingService, cConf, datasetFramework, txClient, metricsCollectionService);
 
     this.cConf = cConf;
     this.datasetFramework = datasetFramework;
+    this.constraintCheckNotifier = constraintCheckNotifier;
   }
 
   @Override
@@ -105,8 +112,16 @@ public class ScheduleNotificationSubscriberService extends AbstractNotificationS
    */
   private abstract class AbstractSchedulerSubscriberRunnable extends AbstractSubscriberRunnable {
 
+    // Schedules with changed jobs and programs with changed status in the current transaction. They are passed to
+    // the ConstraintCheckNotifier after the transaction is committed.
+    private final Set<ScheduleId> changedSchedules = new HashSet<>();
+    private final Set<ProgramId> changedPrograms = new HashSet<>();
+    // Schedules by trigger key, validated against the schedule store once per batch of notifications
+    private final TriggerScheduleCache triggerScheduleCache;
+
     AbstractSchedulerSubscriberRunnable(String name, String topic, int fetchSize, boolean transactionalFetch) {
       super(name, topic, cConf.getLong(Constants.Scheduler.EVENT_POLL_DELAY_MILLIS), fetchSize, transactionalFetch);
+      this.triggerScheduleCache = new TriggerScheduleCache(cConf.getInt(Constants.Scheduler.TRIGGER_CACHE_SIZE));
     }
 
     @Nullable
@@ -126,11 +141,52 @@ public class ScheduleNotificationSubscriberService extends AbstractNotificationS
       ProgramScheduleStoreDataset scheduleStore = getScheduleStore(context);
       JobQueueDataset jobQueue = getJobQueue(context);
 
+      // This method is called again if the transaction is retried
+      changedSchedules.clear();
+      changedPrograms.clear();
+      triggerScheduleCache.validate(scheduleStore);
       while (notifications.hasNext()) {
         processNotification(scheduleStore, jobQueue, notifications.next());
       }
     }
 
+    @Override
+    protected final void postProcess() {
+      for (ScheduleId scheduleId : changedSchedules) {
+        constraintCheckNotifier.jobsChanged(scheduleId);
+      }
+      for (ProgramId programId : changedPrograms) {
+        constraintCheckNotifier.programStatusChanged(programId);
+      }
+      changedSchedules.clear();
+      changedPrograms.clear();
+    }
+
+    /**
+     * Adds the notification to the job queue for the given schedule.
+     */
+    protected final void addNotification(JobQueueDataset jobQueue, ProgramScheduleRecord record,
+                                         Notification notification) {
+      jobQueue.addNotification(record, notification);
+      changedSchedules.add(record.getSchedule().getScheduleId());
+    }
+
+    /**
+     * Finds all schedules triggered by the given trigger key. Schedules are only read from the store for the first
+     * lookup of a trigger key, until the schedule store is modified.
+     */
+    protected final Collection<ProgramScheduleRecord> findSchedules(ProgramScheduleStoreDataset scheduleStore,
+                                                                    String triggerKey) {
+      return triggerScheduleCache.findSchedules(scheduleStore, triggerKey);
+    }
+
+    /**
+     * Records that the status of a run of the given program has changed.
+     */
+    protected final void programStatusChanged(ProgramId programId) {
+      changedPrograms.add(programId);
+    }
+
     /**
      * Processes a single {@link Notification}.
      */
@@ -183,7 +239,7 @@ public class ScheduleNotificationSubscriberService extends AbstractNotificationS
         LOG.warn("Ignore notification that doesn't have a schedule {} associated with, {}", scheduleId, notification);
         return;
       }
-      jobQueue.addNotification(record, notification);
+      addNotification(jobQueue, record, notification);
     }
   }
 
@@ -205,9 +261,9 @@ public class ScheduleNotificationSubscriberService extends AbstractNotificationS
       if (datasetIdString == null) {
         return;
       }
-      DatasetId datasetId = DatasetId.fromString(datasetIdString);
-      for (ProgramScheduleRecord schedule : scheduleStore.findSchedules(Schedulers.triggerKeyForPartition(datasetId))) {
-        jobQueue.addNotification(schedule, notification);
+      String triggerKey = Schedulers.triggerKeyForPartition(DatasetId.fromString(datasetIdString));
+      for (ProgramScheduleRecord schedule : findSchedules(scheduleStore, triggerKey)) {
+        addNotification(jobQueue, schedule, notification);
       }
     }
   }
@@ -244,10 +300,11 @@ public class ScheduleNotificationSubscriberService extends AbstractNotificationS
 
       ProgramRunId programRunId = GSON.fromJson(programRunIdString, ProgramRunId.class);
       ProgramId programId = programRunId.getParent();
+      programStatusChanged(programId);
       String triggerKeyForProgramStatus = Schedulers.triggerKeyForProgramStatus(programId, programStatus);
 
-      for (ProgramScheduleRecord schedule : scheduleStore.findSchedules(triggerKeyForProgramStatus)) {
-        jobQueue.addNotification(schedule, notification);
+      for (ProgramScheduleRecord schedule : findSchedules(scheduleStore, triggerKeyForProgramStatus)) {
+        addNotification(jobQueue, schedule, notification);
       }
     }
   }
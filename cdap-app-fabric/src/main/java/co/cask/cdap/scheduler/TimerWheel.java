@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.scheduler;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A hashed timer wheel that keeps items until a given time. Time is divided into ticks of a fixed duration, and
+ * each item is kept in the slot of the tick of its time, modulo the number of slots. Adding, removing and expiring
+ * an item take constant time, independent of the number of items in the wheel. Expiring items only visits the
+ * slots of the ticks that have passed, plus items that are due in later rounds of the wheel.
+ *
+ * Each item is kept at most once. Adding an item that is already in the wheel replaces its time.
+ *
+ * @param <T> type of the items
+ */
+@NotThreadSafe
+final class TimerWheel<T> {
+
+  private final long tickMillis;
+  private final List<Set<T>> slots;
+  private final Map<T, Long> times;
+  // The tick which is expired next. The slot of this tick may still contain items that are not yet due.
+  private long nextTick;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param tickMillis duration of a tick in milliseconds
+   * @param numSlots number of slots in the wheel
+   * @param startMillis the time in milliseconds where the wheel starts
+   */
+  TimerWheel(long tickMillis, int numSlots, long startMillis) {
+    Preconditions.checkArgument(tickMillis > 0, "Tick duration must be positive: %s", tickMillis);
+    Preconditions.checkArgument(numSlots > 0, "Number of slots must be positive: %s", numSlots);
+    this.tickMillis = tickMillis;
+    this.slots = new ArrayList<>(numSlots);
+    for (int i = 0; i < numSlots; i++) {
+      slots.add(new LinkedHashSet<T>());
+    }
+    this.times = new HashMap<>();
+    this.nextTick = startMillis / tickMillis;
+  }
+
+  /**
+   * Adds an item that will be returned by {@link #expire(long)} once the given time is reached. If the item is
+   * already in the wheel, its time is replaced.
+   *
+   * @param item the item to add
+   * @param timeMillis the time in milliseconds when the item is due
+   */
+  void add(T item, long timeMillis) {
+    remove(item);
+    long tick = timeMillis / tickMillis;
+    if (tick < nextTick) {
+      // Items that are already due go into the next slot to expire
+      tick = nextTick;
+    }
+    times.put(item, timeMillis);
+    getSlot(tick).add(item);
+  }
+
+  /**
+   * Removes an item from the wheel.
+   *
+   * @return {@code true} if the item was in the wheel
+   */
+  boolean remove(T item) {
+    Long time = times.remove(item);
+    if (time == null) {
+      return false;
+    }
+    // The item can be in the slot of its time or in the slot of nextTick if it was added when it was already due
+    long tick = time / tickMillis;
+    if (!getSlot(tick).remove(item)) {
+      getSlot(nextTick).remove(item);
+    }
+    return true;
+  }
+
+  /**
+   * Removes and returns all items with time smaller than or equal to the given time.
+   *
+   * @param nowMillis the current time in milliseconds
+   * @return the list of items that are due, in no particular order
+   */
+  List<T> expire(long nowMillis) {
+    long nowTick = nowMillis / tickMillis;
+    List<T> expired = new ArrayList<>();
+    if (times.isEmpty() || nowTick < nextTick) {
+      return expired;
+    }
+
+    // Visit each slot at most once, even if the wheel went around multiple times since the last call
+    long lastTick = Math.min(nowTick, nextTick + slots.size() - 1);
+    for (long tick = nextTick; tick <= lastTick; tick++) {
+      Iterator<T> iterator = getSlot(tick).iterator();
+      while (iterator.hasNext()) {
+        T item = iterator.next();
+        // Skip items that are due in later rounds of the wheel
+        if (times.get(item) <= nowMillis) {
+          iterator.remove();
+          times.remove(item);
+          expired.add(item);
+        }
+      }
+    }
+    // The slot of the current tick may still have items due later within the tick, hence it is visited again
+    nextTick = nowTick;
+    return expired;
+  }
+
+  /**
+   * Returns the earliest time of all the items in the wheel, or {@link Long#MAX_VALUE} if the wheel is empty.
+   * Only the slots up to the one of the earliest item are visited, unless all items are due in later rounds.
+   */
+  long getNextDeadline() {
+    if (times.isEmpty()) {
+      return Long.MAX_VALUE;
+    }
+    for (long tick = nextTick; tick < nextTick + slots.size(); tick++) {
+      // Items due in this round have time before the end of the tick. It also includes items that are
+      // already due, which are kept in the slot of nextTick.
+      long tickEndMillis = (tick + 1) * tickMillis;
+      long deadline = Long.MAX_VALUE;
+      for (T item : getSlot(tick)) {
+        long time = times.get(item);
+        if (time < tickEndMillis) {
+          deadline = Math.min(deadline, time);
+        }
+      }
+      if (deadline != Long.MAX_VALUE) {
+        return deadline;
+      }
+    }
+
+    // All items are due in later rounds of the wheel
+    long deadline = Long.MAX_VALUE;
+    for (long time : times.values()) {
+      deadline = Math.min(deadline, time);
+    }
+    return deadline;
+  }
+
+  /**
+   * Returns the number of items in the wheel.
+   */
+  int size() {
+    return times.size();
+  }
+
+  /**
+   * Returns {@code true} if there is no item in the wheel.
+   */
+  boolean isEmpty() {
+    return times.isEmpty();
+  }
+
+  private Set<T> getSlot(long tick) {
+    return slots.get((int) (tick % slots.size()));
+  }
+}
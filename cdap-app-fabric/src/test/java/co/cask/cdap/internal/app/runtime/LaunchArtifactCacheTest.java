@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime;
+
+import co.cask.cdap.common.io.Locations;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.twill.filesystem.Location;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Unit test for {@link LaunchArtifactCache}.
+ */
+public class LaunchArtifactCacheTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testReuse() throws IOException {
+    Location remoteDir = Locations.toLocation(TEMP_FOLDER.newFolder());
+    AtomicInteger generated = new AtomicInteger();
+    LaunchArtifactCache.Generator generator = target -> {
+      generated.incrementAndGet();
+      writeContent(target, "content");
+    };
+
+    LaunchArtifactCache cache = new LaunchArtifactCache(Locations.toLocation(TEMP_FOLDER.newFolder()), remoteDir,
+                                                        1000L, () -> 0L, "run");
+    File file = cache.getFile("key", "test.jar", generator);
+    Assert.assertEquals("test.jar", file.getName());
+    Assert.assertEquals("content", Files.toString(file, Charsets.UTF_8));
+    Assert.assertEquals(file, cache.getFile("key", "test.jar", generator));
+    Assert.assertEquals(1, generated.get());
+
+    // The artifact is published to the remote tier as well
+    Location location = cache.getLocation("key", "test.jar", generator);
+    Assert.assertTrue(location.toURI().getPath().startsWith(remoteDir.toURI().getPath()));
+    Assert.assertEquals(1, generated.get());
+
+    // A cache with an empty local tier should get the artifact from the remote tier
+    cache.close();
+    cache = new LaunchArtifactCache(Locations.toLocation(TEMP_FOLDER.newFolder()), remoteDir, 1000L, () -> 0L,
+                                    "run2");
+    file = cache.getFile("key", "test.jar", generator);
+    Assert.assertEquals("content", Files.toString(file, Charsets.UTF_8));
+    Assert.assertEquals(1, generated.get());
+
+    // Different key or name should generate a new artifact
+    cache.getLocation("key2", "test.jar", generator);
+    Assert.assertEquals(2, generated.get());
+    cache.getFile("key", "test2.jar", generator);
+    Assert.assertEquals(3, generated.get());
+    cache.close();
+  }
+
+  @Test
+  public void testExpiration() throws IOException {
+    AtomicLong time = new AtomicLong();
+    AtomicInteger generated = new AtomicInteger();
+    LaunchArtifactCache.Generator generator = target -> writeContent(target, "" + generated.incrementAndGet());
+
+    Location localDir = Locations.toLocation(TEMP_FOLDER.newFolder());
+    LaunchArtifactCache cache = new LaunchArtifactCache(localDir, null, 1000L, time::get, "run");
+    Location location1 = cache.getLocation("key", "test.jar", generator);
+    time.set(999L);
+    Assert.assertEquals(location1, cache.getLocation("key", "test.jar", generator));
+    cache.close();
+
+    // After one period, a new artifact is generated, but the old one is kept
+    cache = new LaunchArtifactCache(localDir, null, 1000L, time::get, "run2");
+    time.set(1500L);
+    Location location2 = cache.getLocation("key", "test.jar", generator);
+    Assert.assertNotEquals(location1, location2);
+    Assert.assertEquals(2, generated.get());
+    Assert.assertTrue(location1.exists());
+
+    // The old one is removed after one full period since it was last used
+    time.set(1999L);
+    cache.getLocation("key2", "test.jar", generator);
+    Assert.assertTrue(location1.exists());
+    time.set(2000L);
+    cache.getLocation("key3", "test.jar", generator);
+    Assert.assertFalse(location1.exists());
+    Assert.assertTrue(location2.exists());
+    cache.close();
+  }
+
+  @Test
+  public void testReferences() throws IOException {
+    // Use a long period so that references are only refreshed explicitly
+    long period = TimeUnit.HOURS.toMillis(1);
+    AtomicLong time = new AtomicLong();
+    LaunchArtifactCache.Generator generator = target -> writeContent(target, "content");
+
+    Location localDir = Locations.toLocation(TEMP_FOLDER.newFolder());
+    LaunchArtifactCache liveCache = new LaunchArtifactCache(localDir, null, period, time::get, "live");
+    Location liveLocation = liveCache.getLocation("key", "test.jar", generator);
+    LaunchArtifactCache crashedCache = new LaunchArtifactCache(localDir, null, period, time::get, "crashed");
+    Location crashedLocation = crashedCache.getLocation("key2", "test.jar", generator);
+
+    // An entry referenced by a live run is not evicted
+    time.set(period * 3);
+    liveCache.refreshReferences();
+    LaunchArtifactCache cache = new LaunchArtifactCache(localDir, null, period, time::get, "run");
+    cache.getLocation("key3", "test.jar", generator);
+    Assert.assertTrue(liveLocation.exists());
+
+    // An entry with a reference that is not refreshed for one period is evicted
+    Assert.assertFalse(crashedLocation.exists());
+
+    // Once the live run is gone, the entry is evicted
+    liveCache.close();
+    cache.getLocation("key4", "test.jar", generator);
+    Assert.assertFalse(liveLocation.exists());
+    cache.close();
+    crashedCache.close();
+  }
+
+  @Test
+  public void testKey() throws IOException {
+    File dir1 = TEMP_FOLDER.newFolder();
+    File dir2 = TEMP_FOLDER.newFolder();
+    for (File dir : new File[] { dir1, dir2 }) {
+      createJar(new File(dir, "lib.jar"), "class");
+      Files.write("file", new File(dir, "file.txt"), Charsets.UTF_8);
+    }
+
+    // Same content in different directories have the same key
+    Assert.assertEquals(LaunchArtifactCache.keyBuilder().add(dir1).build(),
+                        LaunchArtifactCache.keyBuilder().add(dir2).build());
+    Assert.assertEquals(LaunchArtifactCache.keyBuilder().add(new File(dir1, "lib.jar")).build(),
+                        LaunchArtifactCache.keyBuilder().add(new File(dir2, "lib.jar")).build());
+
+    // Changes in the content change the key
+    createJar(new File(dir2, "lib.jar"), "class2");
+    Assert.assertNotEquals(LaunchArtifactCache.keyBuilder().add(new File(dir1, "lib.jar")).build(),
+                           LaunchArtifactCache.keyBuilder().add(new File(dir2, "lib.jar")).build());
+    createJar(new File(dir2, "lib.jar"), "class");
+    Assert.assertEquals(LaunchArtifactCache.keyBuilder().add(dir1).build(),
+                        LaunchArtifactCache.keyBuilder().add(dir2).build());
+
+    Files.write("file2", new File(dir2, "file.txt"), Charsets.UTF_8);
+    Assert.assertNotEquals(LaunchArtifactCache.keyBuilder().add(dir1).build(),
+                           LaunchArtifactCache.keyBuilder().add(dir2).build());
+
+    // Class path entries are keyed by path, size and modification time
+    List<URL> classPath = Arrays.asList(dir1.toURI().toURL(), new File(dir2, "lib.jar").toURI().toURL());
+    String key = LaunchArtifactCache.keyBuilder().addClassPath(classPath).build();
+    Assert.assertEquals(key, LaunchArtifactCache.keyBuilder().addClassPath(classPath).build());
+
+    File file = new File(dir1, "file.txt");
+    Assert.assertTrue(file.setLastModified(file.lastModified() + 10000L));
+    String newKey = LaunchArtifactCache.keyBuilder().addClassPath(classPath).build();
+    Assert.assertNotEquals(key, newKey);
+
+    File jarFile = new File(dir2, "lib.jar");
+    Assert.assertTrue(jarFile.setLastModified(jarFile.lastModified() + 10000L));
+    Assert.assertNotEquals(newKey, LaunchArtifactCache.keyBuilder().addClassPath(classPath).build());
+  }
+
+  private void writeContent(Location target, String content) throws IOException {
+    try (OutputStream os = target.getOutputStream()) {
+      os.write(content.getBytes(Charsets.UTF_8));
+    }
+  }
+
+  private void createJar(File file, String content) throws IOException {
+    try (JarOutputStream jarOutput = new JarOutputStream(new FileOutputStream(file))) {
+      jarOutput.putNextEntry(new JarEntry("test.class"));
+      jarOutput.write(content.getBytes(Charsets.UTF_8));
+      jarOutput.closeEntry();
+    }
+  }
+}
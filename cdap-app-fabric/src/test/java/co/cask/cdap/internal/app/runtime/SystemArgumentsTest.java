@@ -152,4 +152,24 @@ public class SystemArgumentsTest {
 
     Assert.assertEquals(expected, SystemArguments.getLogLevels(args));
   }
+
+  @Test
+  public void testFlowletBatchesPerTx() {
+    CConfiguration cConf = CConfiguration.create();
+    Assert.assertEquals(1, SystemArguments.getFlowletBatchesPerTx(Collections.<String, String>emptyMap(), cConf));
+    Assert.assertEquals(5, SystemArguments.getFlowletBatchesPerTx(
+      ImmutableMap.of(SystemArguments.FLOWLET_BATCHES_PER_TX, "5"), cConf));
+
+    // Invalid values are ignored
+    Assert.assertEquals(1, SystemArguments.getFlowletBatchesPerTx(
+      ImmutableMap.of(SystemArguments.FLOWLET_BATCHES_PER_TX, "0"), cConf));
+    Assert.assertEquals(1, SystemArguments.getFlowletBatchesPerTx(
+      ImmutableMap.of(SystemArguments.FLOWLET_BATCHES_PER_TX, "abc"), cConf));
+
+    // The default comes from the configuration
+    cConf.setInt(Constants.AppFabric.FLOWLET_BATCHES_PER_TX, 3);
+    Assert.assertEquals(3, SystemArguments.getFlowletBatchesPerTx(Collections.<String, String>emptyMap(), cConf));
+    Assert.assertEquals(5, SystemArguments.getFlowletBatchesPerTx(
+      ImmutableMap.of(SystemArguments.FLOWLET_BATCHES_PER_TX, "5"), cConf));
+  }
 }
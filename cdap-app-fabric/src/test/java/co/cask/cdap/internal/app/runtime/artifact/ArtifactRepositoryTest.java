@@ -17,6 +17,7 @@
 package co.cask.cdap.internal.app.runtime.artifact;
 
 import co.cask.cdap.api.app.Application;
+import co.cask.cdap.api.artifact.ArtifactClasses;
 import co.cask.cdap.api.artifact.ArtifactId;
 import co.cask.cdap.api.artifact.ArtifactRange;
 import co.cask.cdap.api.artifact.ArtifactVersion;
@@ -78,6 +79,8 @@ import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -86,10 +89,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -98,6 +103,8 @@ import java.util.jar.Manifest;
  */
 public class ArtifactRepositoryTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ArtifactRepositoryTest.class);
+
   @ClassRule
   public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
 
@@ -286,6 +293,108 @@ public class ArtifactRepositoryTest {
     }
   }
 
+  @Test
+  public void testSystemArtifactsInspectionCache() throws Exception {
+    // write a parent artifact with a snapshot version, which is written to a new location on every call
+    Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.SYSTEM, "CachedParent", "1.0.0-SNAPSHOT");
+    File parentJar = createAppJar(PluginTestApp.class, new File(systemArtifactsDir1, "CachedParent-1.0.0-SNAPSHOT.jar"),
+                                  createManifest(ManifestFields.EXPORT_PACKAGE,
+                                                 PluginTestRunnable.class.getPackage().getName()));
+
+    // write a number of plugin artifacts with snapshot versions, which are added again on every call.
+    // half of them extend the parent artifact.
+    int numArtifacts = 10;
+    Manifest manifest = createManifest(ManifestFields.EXPORT_PACKAGE, TestPlugin.class.getPackage().getName());
+    List<File> pluginJars = new ArrayList<>();
+    List<File> configFiles = new ArrayList<>();
+    ArtifactConfig pluginConfig = new ArtifactConfig(
+      ImmutableSet.of(new ArtifactRange(NamespaceId.SYSTEM.getNamespace(), "CachedParent",
+                                        new ArtifactVersion("0.9.0"), new ArtifactVersion("2.0.0"))),
+      Collections.<PluginClass>emptySet(), Collections.<String, String>emptyMap());
+    for (int i = 0; i < numArtifacts; i++) {
+      pluginJars.add(createPluginJar(TestPlugin.class,
+                                     new File(systemArtifactsDir1, "CachedPlugin" + i + "-1.0.0-SNAPSHOT.jar"),
+                                     manifest));
+      if (i % 2 == 1) {
+        File configFile = new File(systemArtifactsDir1, "CachedPlugin" + i + "-1.0.0-SNAPSHOT.json");
+        try (BufferedWriter writer = Files.newWriter(configFile, Charsets.UTF_8)) {
+          writer.write(pluginConfig.toString());
+        }
+        configFiles.add(configFile);
+      }
+    }
+    Id.Artifact pluginArtifactId = Id.Artifact.from(Id.Namespace.SYSTEM, "CachedPlugin0", "1.0.0-SNAPSHOT");
+    Id.Artifact childArtifactId = Id.Artifact.from(Id.Namespace.SYSTEM, "CachedPlugin1", "1.0.0-SNAPSHOT");
+
+    File cacheDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
+                             cConf.get(Constants.AppFabric.ARTIFACT_INSPECTION_CACHE_DIR));
+    try {
+      if (cacheDir.exists()) {
+        DirUtils.deleteDirectoryContents(cacheDir);
+      }
+
+      // add with a cold cache, all artifacts are inspected
+      long startTime = System.nanoTime();
+      artifactRepository.addSystemArtifacts();
+      long coldMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+      Set<PluginClass> expected = artifactRepository.getArtifact(pluginArtifactId).getMeta().getClasses().getPlugins();
+      Assert.assertFalse(expected.isEmpty());
+      Assert.assertFalse(artifactRepository.getArtifact(childArtifactId).getMeta().getClasses().getPlugins().isEmpty());
+      Location parentLocation = artifactRepository.getArtifact(parentArtifactId).getDescriptor().getLocation();
+      File[] cachedFiles = cacheDir.listFiles();
+      Assert.assertNotNull(cachedFiles);
+      Assert.assertTrue(cachedFiles.length > 0);
+
+      // replace the cached results with ones without plugins, so that the artifacts only end up without plugins
+      // if the inspection is skipped
+      for (File cachedFile : cachedFiles) {
+        Files.write(new Gson().toJson(ArtifactClasses.builder().build()), cachedFile, Charsets.UTF_8);
+      }
+      // an entry that doesn't belong to any of the system artifacts
+      File staleFile = new File(cacheDir, "stale.json");
+      Files.write(new Gson().toJson(ArtifactClasses.builder().build()), staleFile, Charsets.UTF_8);
+
+      // add again with a warm cache, the cached inspection results are used
+      startTime = System.nanoTime();
+      artifactRepository.addSystemArtifacts();
+      long warmMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+      // the snapshot parent is written to a new location, but the cached results of its plugins are still used
+      Assert.assertNotEquals(parentLocation,
+                             artifactRepository.getArtifact(parentArtifactId).getDescriptor().getLocation());
+      for (int i = 0; i < numArtifacts; i++) {
+        Id.Artifact artifactId = Id.Artifact.from(Id.Namespace.SYSTEM, "CachedPlugin" + i, "1.0.0-SNAPSHOT");
+        Assert.assertTrue(artifactRepository.getArtifact(artifactId).getMeta().getClasses().getPlugins().isEmpty());
+      }
+      // unused entries are pruned
+      Assert.assertFalse(staleFile.exists());
+
+      LOG.info("Added {} system artifacts in {} ms with a cold inspection cache and in {} ms with a warm cache",
+               numArtifacts, coldMillis, warmMillis);
+
+      // user artifacts are not cached
+      DirUtils.deleteDirectoryContents(cacheDir);
+      Id.Artifact userArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "CachedPlugin0", "1.0.0-SNAPSHOT");
+      artifactRepository.addArtifact(userArtifactId, pluginJars.get(0));
+      Assert.assertEquals(expected,
+                          artifactRepository.getArtifact(userArtifactId).getMeta().getClasses().getPlugins());
+      cachedFiles = cacheDir.listFiles();
+      Assert.assertTrue(cachedFiles == null || cachedFiles.length == 0);
+    } finally {
+      for (File pluginJar : pluginJars) {
+        Assert.assertTrue(pluginJar.delete());
+      }
+      for (File configFile : configFiles) {
+        Assert.assertTrue(configFile.delete());
+      }
+      Assert.assertTrue(parentJar.delete());
+      if (cacheDir.exists()) {
+        DirUtils.deleteDirectoryContents(cacheDir);
+      }
+      artifactRepository.clear(NamespaceId.SYSTEM);
+      artifactRepository.clear(NamespaceId.DEFAULT);
+    }
+  }
+
   @Test
   public void testExportPackage() {
     Manifest manifest = new Manifest();
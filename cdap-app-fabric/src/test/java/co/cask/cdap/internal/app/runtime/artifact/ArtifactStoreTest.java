@@ -30,6 +30,8 @@ import co.cask.cdap.api.plugin.PluginPropertyField;
 import co.cask.cdap.common.ArtifactAlreadyExistsException;
 import co.cask.cdap.common.ArtifactNotFoundException;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.namespace.NamespacedLocationFactory;
+import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.internal.AppFabricTestHelper;
 import co.cask.cdap.internal.app.runtime.artifact.app.inspection.InspectionApp;
 import co.cask.cdap.internal.app.runtime.plugin.PluginNotExistsException;
@@ -41,22 +43,29 @@ import co.cask.cdap.proto.id.Ids;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.security.impersonation.DefaultImpersonator;
 import co.cask.cdap.security.impersonation.EntityImpersonator;
+import co.cask.cdap.security.impersonation.Impersonator;
 import co.cask.cdap.test.SlowTests;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
+import com.google.inject.Injector;
+import org.apache.tephra.TransactionSystemClient;
 import org.apache.twill.filesystem.Location;
+import org.apache.twill.filesystem.LocationFactory;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -72,6 +81,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -80,6 +90,9 @@ import java.util.stream.Collectors;
 // suppressing warnings for Bytes.toBytes() when we know the result is not null
 @SuppressWarnings("ConstantConditions")
 public class ArtifactStoreTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ArtifactStoreTest.class);
+
   private static ArtifactStore artifactStore;
 
   @BeforeClass
@@ -1341,6 +1354,115 @@ public class ArtifactStoreTest {
   }
 
 
+  @Test
+  public void testPluginCatalogAcrossStores() throws Exception {
+    // Another store sharing the same table, e.g. in another process, should see changes made through this store
+    Injector injector = AppFabricTestHelper.getInjector();
+    ArtifactStore otherStore = new ArtifactStore(injector.getInstance(DatasetFramework.class),
+                                                 injector.getInstance(NamespacedLocationFactory.class),
+                                                 injector.getInstance(LocationFactory.class),
+                                                 injector.getInstance(TransactionSystemClient.class),
+                                                 injector.getInstance(Impersonator.class));
+
+    Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.SYSTEM, "parent", "1.0.0");
+    writeArtifact(parentArtifactId, new ArtifactMeta(ArtifactClasses.builder().build()), "parent");
+    Assert.assertTrue(otherStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+
+    // write a plugin artifact through this store
+    Set<ArtifactRange> parents = ImmutableSet.of(new ArtifactRange(
+      NamespaceId.SYSTEM.getNamespace(), "parent", new ArtifactVersion("1.0.0"), new ArtifactVersion("2.0.0")));
+    PluginClass pluginClass1 = new PluginClass("type", "plugin1", "", "classname", "cfg",
+                                               ImmutableMap.<String, PluginPropertyField>of());
+    Id.Artifact pluginArtifactId = Id.Artifact.from(Id.Namespace.DEFAULT, "plugins", "1.0.0-SNAPSHOT");
+    writeArtifact(pluginArtifactId,
+                  new ArtifactMeta(ArtifactClasses.builder().addPlugin(pluginClass1).build(), parents), "plugins");
+
+    for (ArtifactStore store : Arrays.asList(artifactStore, otherStore)) {
+      Assert.assertEquals(ImmutableSet.of(pluginClass1),
+                          Iterables.getOnlyElement(
+                            store.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "type").values()));
+    }
+
+    // overwrite the snapshot artifact with a different plugin
+    PluginClass pluginClass2 = new PluginClass("type", "plugin2", "", "classname", "cfg",
+                                               ImmutableMap.<String, PluginPropertyField>of());
+    writeArtifact(pluginArtifactId,
+                  new ArtifactMeta(ArtifactClasses.builder().addPlugin(pluginClass2).build(), parents), "plugins");
+
+    for (ArtifactStore store : Arrays.asList(artifactStore, otherStore)) {
+      Assert.assertEquals(ImmutableSet.of(pluginClass2),
+                          Iterables.getOnlyElement(
+                            store.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "type").values()));
+      try {
+        store.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "type", "plugin1", null,
+                               Integer.MAX_VALUE, ArtifactSortOrder.UNORDERED);
+        Assert.fail();
+      } catch (PluginNotExistsException e) {
+        // expected
+      }
+    }
+
+    // delete the plugin artifact through the other store, which also removes its column from the version row
+    String versionKey = "default:plugins:1.0.0-SNAPSHOT";
+    Assert.assertTrue(artifactStore.getPluginsVersion().containsKey(versionKey));
+    otherStore.delete(pluginArtifactId);
+    Assert.assertFalse(artifactStore.getPluginsVersion().containsKey(versionKey));
+    for (ArtifactStore store : Arrays.asList(artifactStore, otherStore)) {
+      Assert.assertTrue(store.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+    }
+
+    // adding the artifact again should be seen by both stores
+    writeArtifact(pluginArtifactId,
+                  new ArtifactMeta(ArtifactClasses.builder().addPlugin(pluginClass1).build(), parents), "plugins");
+    for (ArtifactStore store : Arrays.asList(artifactStore, otherStore)) {
+      Assert.assertEquals(ImmutableSet.of(pluginClass1),
+                          Iterables.getOnlyElement(
+                            store.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, "type").values()));
+    }
+    artifactStore.delete(pluginArtifactId);
+    for (ArtifactStore store : Arrays.asList(artifactStore, otherStore)) {
+      Assert.assertTrue(store.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId).isEmpty());
+    }
+  }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testPluginLookupPerformance() throws Exception {
+    // Deploy a parent artifact with many plugin artifacts, similar to a system with a few hundred plugins deployed
+    Id.Artifact parentArtifactId = Id.Artifact.from(Id.Namespace.SYSTEM, "pipeline", "1.0.0");
+    writeArtifact(parentArtifactId, new ArtifactMeta(ArtifactClasses.builder().build()), "pipeline");
+    Set<ArtifactRange> parents = ImmutableSet.of(new ArtifactRange(
+      NamespaceId.SYSTEM.getNamespace(), "pipeline", new ArtifactVersion("1.0.0"), new ArtifactVersion("2.0.0")));
+
+    int numArtifacts = 200;
+    List<String> types = Arrays.asList("batchsource", "batchsink", "transform", "sparkcompute", "action");
+    for (int i = 0; i < numArtifacts; i++) {
+      ArtifactClasses.Builder classes = ArtifactClasses.builder();
+      for (String type : types) {
+        classes.addPlugin(new PluginClass(type, "plugin" + i, "", "classname", "cfg",
+                                          ImmutableMap.<String, PluginPropertyField>of()));
+      }
+      writeArtifact(Id.Artifact.from(Id.Namespace.SYSTEM, "plugins" + i, "1.0.0"),
+                    new ArtifactMeta(classes.build(), parents), "plugins");
+    }
+
+    // Resolve plugins the same way as deploying a pipeline does, by type and by name
+    int iterations = 200;
+    long startTime = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      String type = types.get(i % types.size());
+      Assert.assertEquals(numArtifacts,
+                          artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, type).size());
+      Assert.assertEquals(1, artifactStore.getPluginClasses(NamespaceId.DEFAULT, parentArtifactId, type,
+                                                            "plugin" + i % numArtifacts, null, Integer.MAX_VALUE,
+                                                            ArtifactSortOrder.UNORDERED).size());
+    }
+    long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime);
+    LOG.info("Plugin resolution with {} plugin artifacts: {} us per lookup by type and by name",
+             numArtifacts, elapsedMicros / iterations);
+  }
+
+
   private void assertEqual(Id.Artifact expectedId, ArtifactMeta expectedMeta,
                            String expectedContents, ArtifactDetail actual) throws IOException {
     Assert.assertEquals(expectedId.getName(), actual.getDescriptor().getArtifactId().getName());
@@ -43,6 +43,43 @@ public class FlowletProcessEntryTest {
     Assert.assertEquals(Long.MAX_VALUE, entry.getNextDeque());
   }
 
+  @Test
+  public void testWakeUp() {
+    FlowletProcessEntry entry = FlowletProcessEntry.create(new ProcessSpecification<>(null, null, null));
+    for (int i = 0; i < 30; i++) {
+      entry.backOff();
+    }
+    Assert.assertFalse(entry.shouldProcess());
+
+    // Waking up the entry should make it processable immediately
+    entry.wakeUp();
+    Assert.assertTrue(entry.shouldProcess());
+
+    // The back-off should be reset to the minimum
+    long nanoTimeStart = System.nanoTime();
+    entry.backOff();
+    Assert.assertTrue(entry.getNextDeque() - nanoTimeStart <= TimeUnit.MILLISECONDS.toNanos(10));
+  }
+
+  @Test
+  public void testCommitWithOthers() {
+    FlowletProcessEntry entry = FlowletProcessEntry.create(new ProcessSpecification<>(null, null, null));
+    Assert.assertTrue(entry.canCommitWithOthers());
+
+    // After requesting individual commits, the given number of calls cannot be committed with others
+    entry.commitIndividually(2);
+    Assert.assertFalse(entry.canCommitWithOthers());
+    Assert.assertFalse(entry.canCommitWithOthers());
+    Assert.assertTrue(entry.canCommitWithOthers());
+
+    // Tick and retry entries are always committed individually
+    Assert.assertFalse(FlowletProcessEntry.create(new ProcessSpecification<>(null, null, new TickObject(0)))
+                         .canCommitWithOthers());
+    Assert.assertFalse(FlowletProcessEntry.create(new ProcessSpecification<>(null, null, null),
+                                                  new ProcessSpecification<>(null, null, null))
+                         .canCommitWithOthers());
+  }
+
   private long floorNanosToSec(long nanoseconds) {
     return TimeUnit.SECONDS.toNanos(TimeUnit.NANOSECONDS.toSeconds(nanoseconds));
   }
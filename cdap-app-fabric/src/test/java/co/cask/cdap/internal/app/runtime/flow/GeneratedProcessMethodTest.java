@@ -0,0 +1,222 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.annotation.Batch;
+import co.cask.cdap.api.annotation.ProcessInput;
+import co.cask.cdap.api.flow.flowlet.AbstractFlowlet;
+import co.cask.cdap.api.flow.flowlet.Flowlet;
+import co.cask.cdap.api.flow.flowlet.InputContext;
+import co.cask.cdap.app.queue.InputDatum;
+import co.cask.cdap.common.queue.QueueName;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link GeneratedProcessMethod}.
+ */
+public class GeneratedProcessMethodTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GeneratedProcessMethodTest.class);
+
+  @Test
+  public void testInvoke() throws Exception {
+    TestFlowlet flowlet = new TestFlowlet();
+
+    ProcessMethod<String> method = create(flowlet, "process", String.class);
+    Assert.assertTrue(method instanceof GeneratedProcessMethod);
+    ProcessMethod.ProcessResult<String> result = method.invoke(new ListInputDatum<>(ImmutableList.of("a", "b")));
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertEquals("a", result.getEvent());
+    Assert.assertEquals(ImmutableList.of("a", "b"), flowlet.events);
+
+    // Primitive parameter with return value
+    ProcessMethod<Integer> sumMethod = create(flowlet, "sum", int.class);
+    Assert.assertTrue(sumMethod.invoke(new ListInputDatum<>(ImmutableList.of(1, 2, 3))).isSuccess());
+    Assert.assertEquals(6L, flowlet.sum);
+
+    // Iterator with InputContext
+    flowlet.events.clear();
+    ProcessMethod<String> batchMethod = create(flowlet, "processBatch", Iterator.class, InputContext.class);
+    result = batchMethod.invoke(new ListInputDatum<>(ImmutableList.of("x", "y")));
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertEquals(ImmutableList.of("x", "y", "origin"), flowlet.events);
+
+    // Exception from the process method should be the failure cause
+    ProcessMethod<String> failMethod = create(flowlet, "fail", String.class);
+    result = failMethod.invoke(new ListInputDatum<>(ImmutableList.of("f")));
+    Assert.assertFalse(result.isSuccess());
+    Assert.assertTrue(result.getCause() instanceof IllegalArgumentException);
+    Assert.assertEquals("f", result.getCause().getMessage());
+  }
+
+  @Test
+  public void testReflectionFallback() throws Exception {
+    TestFlowlet flowlet = new TestFlowlet();
+    ProcessMethod<String> method = create(flowlet, "processPrivate", String.class);
+    Assert.assertTrue(method instanceof ReflectionProcessMethod);
+    Assert.assertTrue(method.invoke(new ListInputDatum<>(ImmutableList.of("p"))).isSuccess());
+    Assert.assertEquals(ImmutableList.of("p"), flowlet.events);
+  }
+
+  @Test
+  public void testInvokePerformance() throws Exception {
+    TestFlowlet flowlet = new TestFlowlet();
+    Method method = TestFlowlet.class.getMethod("sum", int.class);
+    ProcessMethod<Integer> generated = GeneratedProcessMethod.create(flowlet, method, 0);
+    ProcessMethod<Integer> reflection = ReflectionProcessMethod.create(flowlet, method, 0);
+
+    ImmutableList.Builder<Integer> builder = ImmutableList.builder();
+    for (int i = 0; i < 1000; i++) {
+      builder.add(i);
+    }
+    InputDatum<Integer> input = new ListInputDatum<>(builder.build());
+
+    // Warm up both paths before timing
+    invokeAll(reflection, input, 2000);
+    invokeAll(generated, input, 2000);
+
+    long reflectionTime = invokeAll(reflection, input, 5000);
+    long generatedTime = invokeAll(generated, input, 5000);
+
+    LOG.info("Time for 5M process method calls: reflection {} ms, generated {} ms",
+             TimeUnit.NANOSECONDS.toMillis(reflectionTime), TimeUnit.NANOSECONDS.toMillis(generatedTime));
+  }
+
+  private long invokeAll(ProcessMethod<Integer> method, InputDatum<Integer> input, int times) {
+    long startTime = System.nanoTime();
+    for (int i = 0; i < times; i++) {
+      Assert.assertTrue(method.invoke(input).isSuccess());
+    }
+    return System.nanoTime() - startTime;
+  }
+
+  private <T> ProcessMethod<T> create(Flowlet flowlet, String name, Class<?>...paramTypes) throws Exception {
+    return GeneratedProcessMethod.create(flowlet, TestFlowlet.class.getDeclaredMethod(name, paramTypes), 0);
+  }
+
+  /**
+   * Flowlet for testing.
+   */
+  public static final class TestFlowlet extends AbstractFlowlet {
+
+    private final List<String> events = new ArrayList<>();
+    private long sum;
+
+    @ProcessInput
+    public void process(String event) {
+      events.add(event);
+    }
+
+    @ProcessInput
+    public long sum(int value) {
+      sum += value;
+      return sum;
+    }
+
+    @Batch(10)
+    @ProcessInput
+    public void processBatch(Iterator<String> events, InputContext context) {
+      while (events.hasNext()) {
+        this.events.add(events.next());
+      }
+      this.events.add(context.getOrigin());
+    }
+
+    @ProcessInput
+    public void fail(String event) {
+      throw new IllegalArgumentException(event);
+    }
+
+    @ProcessInput
+    private void processPrivate(String event) {
+      events.add(event);
+    }
+  }
+
+  /**
+   * A {@link InputDatum} backed by a {@link List}.
+   */
+  private static final class ListInputDatum<T> implements InputDatum<T> {
+
+    private final List<T> events;
+    private final InputContext inputContext;
+
+    ListInputDatum(List<T> events) {
+      this.events = events;
+      this.inputContext = new InputContext() {
+        @Override
+        public String getOrigin() {
+          return "origin";
+        }
+
+        @Override
+        public int getRetryCount() {
+          return 0;
+        }
+      };
+    }
+
+    @Override
+    public boolean needProcess() {
+      return !events.isEmpty();
+    }
+
+    @Override
+    public void incrementRetry() {
+      // No-op
+    }
+
+    @Override
+    public int getRetry() {
+      return 0;
+    }
+
+    @Override
+    public InputContext getInputContext() {
+      return inputContext;
+    }
+
+    @Override
+    public QueueName getQueueName() {
+      return QueueName.fromFlowlet("ns", "app", "flow", "flowlet", "out");
+    }
+
+    @Override
+    public void reclaim() {
+      // No-op
+    }
+
+    @Override
+    public int size() {
+      return events.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return events.iterator();
+    }
+  }
+}
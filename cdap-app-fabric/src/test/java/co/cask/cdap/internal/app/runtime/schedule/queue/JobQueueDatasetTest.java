@@ -49,6 +49,8 @@ import co.cask.cdap.proto.id.ApplicationId;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.WorkflowId;
+import co.cask.cdap.test.SlowTests;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -72,7 +74,10 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -88,6 +93,8 @@ import java.util.Set;
  */
 public class JobQueueDatasetTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(JobQueueDatasetTest.class);
+
   @ClassRule
   public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
 
@@ -363,7 +370,103 @@ public class JobQueueDatasetTest {
         jobQueue.addNotification(
           new ProgramScheduleRecord(SCHED1, new ProgramScheduleMeta(ProgramScheduleStatus.SCHEDULED, 0L)),
           notification);
-        Assert.assertEquals(ImmutableList.of(notification), jobQueue.getJob(SCHED1_JOB.getJobKey()).getNotifications());
+        Assert.assertEquals(ImmutableList.of(notification),
+                            jobQueue.getJobWithNotifications(SCHED1_JOB.getJobKey()).getNotifications());
+      }
+    });
+  }
+
+  @Test
+  public void testIncrementalTriggerState() throws Exception {
+    final ProgramSchedule schedule = new ProgramSchedule("SCHED3", "three partitions schedule", WORKFLOW_ID,
+                                                         ImmutableMap.<String, String>of(),
+                                                         new PartitionTrigger(DATASET_ID, 3),
+                                                         ImmutableList.<Constraint>of());
+    final ProgramScheduleRecord record =
+      new ProgramScheduleRecord(schedule, new ProgramScheduleMeta(ProgramScheduleStatus.SCHEDULED, 0L));
+    final List<Notification> notifications = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      notifications.add(Notification.forPartitions(DATASET_ID, ImmutableList.of(createPartitionKey(i))));
+    }
+
+    // add the notifications in separate transactions, the job should only be satisfied with the last one
+    for (int i = 0; i < notifications.size(); i++) {
+      final int numNotifications = i + 1;
+      txExecutor.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          jobQueue.addNotification(record, notifications.get(numNotifications - 1));
+
+          Set<Job> jobs = toSet(jobQueue.getJobsForSchedule(schedule.getScheduleId()));
+          Assert.assertEquals(1, jobs.size());
+          Job job = jobs.iterator().next();
+          // the scanned job only contains the metadata, the notifications are read on demand
+          Assert.assertTrue(job.getNotifications().isEmpty());
+          Assert.assertEquals(numNotifications < 3 ? Job.State.PENDING_TRIGGER : Job.State.PENDING_CONSTRAINT,
+                              job.getState());
+          Assert.assertEquals(notifications.subList(0, numNotifications),
+                              jobQueue.getJobWithNotifications(job.getJobKey()).getNotifications());
+        }
+      });
+    }
+
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // transiting the state of the job should keep the notifications
+        Job job = toSet(jobQueue.getJobsForSchedule(schedule.getScheduleId())).iterator().next();
+        Job launchJob = jobQueue.transitState(job, Job.State.PENDING_LAUNCH);
+        Assert.assertEquals(launchJob, jobQueue.getJob(job.getJobKey()));
+        Assert.assertEquals(notifications, jobQueue.getJobWithNotifications(job.getJobKey()).getNotifications());
+
+        // deleting the job should delete the notifications as well, such that a job put with the same key
+        // doesn't see the notifications of the deleted job
+        jobQueue.deleteJob(launchJob);
+        Assert.assertNull(jobQueue.getJob(job.getJobKey()));
+        Job newJob = new SimpleJob(schedule, job.getCreationTime(), ImmutableList.<Notification>of(),
+                                   Job.State.PENDING_TRIGGER, 0L);
+        jobQueue.put(newJob);
+        Assert.assertEquals(newJob, jobQueue.getJob(job.getJobKey()));
+      }
+    });
+  }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testAddNotificationsPerformance() throws Exception {
+    // A job of a schedule that needs 5000 partitions, each notification having one partition
+    final int numPartitions = 5000;
+    final ProgramSchedule schedule = new ProgramSchedule("SCHED4", "many partitions schedule", WORKFLOW_ID,
+                                                         ImmutableMap.<String, String>of(),
+                                                         new PartitionTrigger(DATASET_ID, numPartitions),
+                                                         ImmutableList.<Constraint>of());
+    final ProgramScheduleRecord record =
+      new ProgramScheduleRecord(schedule, new ProgramScheduleMeta(ProgramScheduleStatus.SCHEDULED, 0L));
+
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < numPartitions; i++) {
+      final Notification notification = Notification.forPartitions(DATASET_ID,
+                                                                   ImmutableList.of(createPartitionKey(i)));
+      txExecutor.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          jobQueue.addNotification(record, notification);
+        }
+      });
+      if ((i + 1) % 1000 == 0) {
+        LOG.info("Added {} notifications in {} ms", i + 1, stopwatch.elapsedMillis());
+      }
+    }
+    LOG.info("Time to add {} notifications: {} ms", numPartitions, stopwatch.elapsedMillis());
+
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Set<Job> jobs = toSet(jobQueue.getJobsForSchedule(schedule.getScheduleId()));
+        Assert.assertEquals(1, jobs.size());
+        Job job = jobs.iterator().next();
+        Assert.assertEquals(Job.State.PENDING_CONSTRAINT, job.getState());
+        Assert.assertEquals(numPartitions, jobQueue.getJobWithNotifications(job.getJobKey()).getNotifications().size());
       }
     });
   }
@@ -434,6 +537,10 @@ public class JobQueueDatasetTest {
     });
   }
 
+  private PartitionKey createPartitionKey(int i) {
+    return PartitionKey.builder().addIntField("i", i).build();
+  }
+
   private Set<Job> getAllJobs(JobQueueDataset jobQueue) {
     return getAllJobs(jobQueue, false);
   }
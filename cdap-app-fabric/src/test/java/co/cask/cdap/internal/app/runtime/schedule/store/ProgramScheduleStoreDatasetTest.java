@@ -23,6 +23,7 @@ import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.transaction.TransactionExecutorFactory;
 import co.cask.cdap.internal.app.runtime.schedule.ProgramSchedule;
 import co.cask.cdap.internal.app.runtime.schedule.ProgramScheduleRecord;
+import co.cask.cdap.internal.app.runtime.schedule.ProgramScheduleStatus;
 import co.cask.cdap.internal.app.runtime.schedule.trigger.AndTrigger;
 import co.cask.cdap.internal.app.runtime.schedule.trigger.OrTrigger;
 import co.cask.cdap.internal.app.runtime.schedule.trigger.PartitionTrigger;
@@ -35,20 +36,28 @@ import co.cask.cdap.proto.id.ApplicationId;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.WorkflowId;
+import co.cask.cdap.test.SlowTests;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import org.apache.tephra.TransactionAware;
 import org.apache.tephra.TransactionExecutor;
 import org.apache.tephra.TransactionSystemClient;
 import org.junit.Assert;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * This tests the indexing of the schedule store. Adding, retrieving. listing, deleting schedules is tested
@@ -57,6 +66,8 @@ import java.util.Set;
  */
 public class ProgramScheduleStoreDatasetTest extends AppFabricTestBase {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ProgramScheduleStoreDatasetTest.class);
+
   private static final NamespaceId NS_ID = new NamespaceId("schedtest");
   private static final ApplicationId APP1_ID = NS_ID.app("app1", "1");
   private static final ApplicationId APP2_ID = NS_ID.app("app2");
@@ -66,6 +77,10 @@ public class ProgramScheduleStoreDatasetTest extends AppFabricTestBase {
   private static final DatasetId DS1_ID = NS_ID.dataset("pfs1");
   private static final DatasetId DS2_ID = NS_ID.dataset("pfs2");
 
+  private static final int DISPATCH_EVENTS_PER_SEC = 1000;
+  private static final int DISPATCH_NUM_EVENTS = 10000;
+  private static final int DISPATCH_FETCH_SIZE = 100;
+
   @Test
   public void checkDatasetType() throws DatasetManagementException {
     DatasetFramework dsFramework = getInjector().getInstance(DatasetFramework.class);
@@ -328,4 +343,180 @@ public class ProgramScheduleStoreDatasetTest extends AppFabricTestBase {
     });
     Assert.assertEquals(ImmutableSet.of(schedOrNew1), ds1Schedules);
   }
+
+  @Test
+  public void testTriggerScheduleCache() throws Exception {
+    DatasetFramework dsFramework = getInjector().getInstance(DatasetFramework.class);
+    TransactionSystemClient txClient = getInjector().getInstance(TransactionSystemClient.class);
+    TransactionExecutorFactory txExecutorFactory = new DynamicTransactionExecutorFactory(txClient);
+    dsFramework.truncateInstance(Schedulers.STORE_DATASET_ID);
+    final ProgramScheduleStoreDataset store = dsFramework.getDataset(Schedulers.STORE_DATASET_ID,
+                                                                     new HashMap<String, String>(), null);
+    Assert.assertNotNull(store);
+    TransactionExecutor txExecutor = txExecutorFactory.createExecutor(Collections.singleton((TransactionAware) store));
+    final TriggerScheduleCache cache = new TriggerScheduleCache(100);
+
+    final ProgramSchedule sched1 = new ProgramSchedule("sched1", "one partition schedule", PROG1_ID,
+                                                       ImmutableMap.of("prop3", "abc"),
+                                                       new PartitionTrigger(DS1_ID, 1),
+                                                       ImmutableList.<Constraint>of());
+    final ProgramSchedule sched1New = new ProgramSchedule(sched1.getName(), "one partition schedule", PROG1_ID,
+                                                          ImmutableMap.of("prop3", "abc"),
+                                                          new PartitionTrigger(DS2_ID, 1),
+                                                          ImmutableList.<Constraint>of());
+    final String ds1Key = Schedulers.triggerKeyForPartition(DS1_ID);
+    final String ds2Key = Schedulers.triggerKeyForPartition(DS2_ID);
+
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // nothing is triggered, and that is cached as well
+        cache.validate(store);
+        Assert.assertTrue(cache.findSchedules(store, ds1Key).isEmpty());
+        Assert.assertTrue(cache.findSchedules(store, ds2Key).isEmpty());
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        store.addSchedule(sched1);
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // the added schedule must be found even though the empty result was cached
+        cache.validate(store);
+        Collection<ProgramScheduleRecord> records = cache.findSchedules(store, ds1Key);
+        Assert.assertEquals(ImmutableSet.of(sched1), toScheduleSet(records));
+        Assert.assertEquals(ProgramScheduleStatus.SUSPENDED, records.iterator().next().getMeta().getStatus());
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        store.updateScheduleStatus(sched1.getScheduleId(), ProgramScheduleStatus.SCHEDULED);
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // the status change must be reflected in the cached record
+        cache.validate(store);
+        Collection<ProgramScheduleRecord> records = cache.findSchedules(store, ds1Key);
+        Assert.assertEquals(ImmutableSet.of(sched1), toScheduleSet(records));
+        Assert.assertEquals(ProgramScheduleStatus.SCHEDULED, records.iterator().next().getMeta().getStatus());
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        store.updateSchedule(sched1New);
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // the updated schedule is only triggered by DS2
+        cache.validate(store);
+        Assert.assertTrue(cache.findSchedules(store, ds1Key).isEmpty());
+        Assert.assertEquals(ImmutableSet.of(sched1New), toScheduleSet(cache.findSchedules(store, ds2Key)));
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        store.deleteSchedule(sched1New.getScheduleId());
+      }
+    });
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        cache.validate(store);
+        Assert.assertTrue(cache.findSchedules(store, ds1Key).isEmpty());
+        Assert.assertTrue(cache.findSchedules(store, ds2Key).isEmpty());
+
+        // looking up schedules does not change the version
+        long version = store.getVersion();
+        store.findSchedules(ds2Key);
+        Assert.assertEquals(version, store.getVersion());
+      }
+    });
+  }
+
+  @Test
+  @Category(SlowTests.class)
+  public void testPartitionEventDispatchLag() throws Exception {
+    DatasetFramework dsFramework = getInjector().getInstance(DatasetFramework.class);
+    TransactionSystemClient txClient = getInjector().getInstance(TransactionSystemClient.class);
+    TransactionExecutorFactory txExecutorFactory = new DynamicTransactionExecutorFactory(txClient);
+    dsFramework.truncateInstance(Schedulers.STORE_DATASET_ID);
+    final ProgramScheduleStoreDataset store = dsFramework.getDataset(Schedulers.STORE_DATASET_ID,
+                                                                     new HashMap<String, String>(), null);
+    Assert.assertNotNull(store);
+    TransactionExecutor txExecutor = txExecutorFactory.createExecutor(Collections.singleton((TransactionAware) store));
+
+    // 100 out of 1000 datasets that receive partitions have a schedule
+    final List<ProgramSchedule> schedules = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      schedules.add(new ProgramSchedule("sched" + i, "partition schedule", PROG1_ID, ImmutableMap.<String, String>of(),
+                                        new PartitionTrigger(NS_ID.dataset("ds" + i * 10), 1),
+                                        ImmutableList.<Constraint>of()));
+    }
+    txExecutor.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        store.addSchedules(schedules);
+      }
+    });
+
+    long lagWithIndexScan = measureDispatchLag(txExecutor, store, null);
+    long lagWithCache = measureDispatchLag(txExecutor, store, new TriggerScheduleCache(10000));
+    LOG.info("Maximum subscriber lag at {} partition events/sec: {} ms with index scans, {} ms with trigger cache",
+             DISPATCH_EVENTS_PER_SEC, lagWithIndexScan, lagWithCache);
+  }
+
+  /**
+   * Simulates a subscriber that fetches batches of partition events published at
+   * {@link #DISPATCH_EVENTS_PER_SEC} and finds the triggered schedules for every event in one transaction per batch.
+   *
+   * @return the maximum time in milliseconds that an event waited to be processed
+   */
+  private long measureDispatchLag(TransactionExecutor txExecutor, final ProgramScheduleStoreDataset store,
+                                  @Nullable final TriggerScheduleCache cache) throws Exception {
+    final int[] numTriggered = new int[1];
+    int processed = 0;
+    long maxLag = 0L;
+    long startTime = System.currentTimeMillis();
+    while (processed < DISPATCH_NUM_EVENTS) {
+      long now = System.currentTimeMillis();
+      int published = (int) Math.min(DISPATCH_NUM_EVENTS, (now - startTime) * DISPATCH_EVENTS_PER_SEC / 1000);
+      if (published <= processed) {
+        TimeUnit.MILLISECONDS.sleep(1);
+        continue;
+      }
+      // the lag is the age of the oldest event that is not processed yet
+      maxLag = Math.max(maxLag, now - startTime - processed * 1000L / DISPATCH_EVENTS_PER_SEC);
+
+      final int from = processed;
+      final int to = Math.min(published, processed + DISPATCH_FETCH_SIZE);
+      txExecutor.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          if (cache != null) {
+            cache.validate(store);
+          }
+          for (int i = from; i < to; i++) {
+            String triggerKey = Schedulers.triggerKeyForPartition(NS_ID.dataset("ds" + i % 1000));
+            numTriggered[0] += cache == null
+              ? store.findSchedules(triggerKey).size() : cache.findSchedules(store, triggerKey).size();
+          }
+        }
+      });
+      processed = to;
+    }
+    // every tenth event triggers one schedule
+    Assert.assertEquals(DISPATCH_NUM_EVENTS / 10, numTriggered[0]);
+    return maxLag;
+  }
 }
@@ -21,6 +21,7 @@ import co.cask.cdap.api.Transactional;
 import co.cask.cdap.api.Transactionals;
 import co.cask.cdap.api.TxCallable;
 import co.cask.cdap.api.TxRunnable;
+import co.cask.cdap.api.annotation.ReadOnly;
 import co.cask.cdap.api.annotation.TransactionControl;
 import co.cask.cdap.api.annotation.TransactionPolicy;
 import co.cask.cdap.api.app.ApplicationSpecification;
@@ -46,6 +47,7 @@ import co.cask.cdap.api.service.http.HttpServiceRequest;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.test.NoopAdmin;
+import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.internal.app.preview.NoopDataTracerFactory;
 import co.cask.cdap.internal.app.runtime.ThrowingRunnable;
 import co.cask.http.HttpHandler;
@@ -82,9 +84,18 @@ import java.net.URLConnection;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -97,7 +108,10 @@ import javax.ws.rs.PathParam;
  */
 public class HttpHandlerGeneratorTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(HttpHandlerGeneratorTest.class);
+
   private static final String IN_TX = "in-tx";
+  private static final String IN_READ_ONLY_TX = "in-read-only-tx";
 
   @ClassRule
   public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
@@ -168,6 +182,97 @@ public class HttpHandlerGeneratorTest {
     public void exceptionNoTx(HttpServiceRequest request, HttpServiceResponder responder) throws Exception {
       throw new Exception("exceptionNoTx");
     }
+
+    @ReadOnly
+    @Path("/readOnly/{name}")
+    @GET
+    public void readOnly(HttpServiceRequest request, HttpServiceResponder responder, @PathParam("name") String name) {
+      Assert.assertNull(System.getProperty(IN_TX));
+      Assert.assertNotNull(System.getProperty(IN_READ_ONLY_TX));
+      responder.sendString("Read " + name);
+    }
+  }
+
+  @Path("/async")
+  public static final class AsyncHandler extends AbstractHttpServiceHandler {
+
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger outstanding;
+    private final CompletableFuture<Void> release;
+
+    public AsyncHandler(ScheduledExecutorService scheduler, AtomicInteger outstanding,
+                        CompletableFuture<Void> release) {
+      this.scheduler = scheduler;
+      this.outstanding = outstanding;
+      this.release = release;
+    }
+
+    @Path("/wait")
+    @GET
+    public CompletionStage<Void> await(HttpServiceRequest request, HttpServiceResponder responder) {
+      outstanding.incrementAndGet();
+      return release.thenRun(() -> {
+        outstanding.decrementAndGet();
+        responder.sendString("Released");
+      });
+    }
+
+    @Path("/delay/{millis}")
+    @GET
+    public CompletionStage<Void> delay(HttpServiceRequest request, HttpServiceResponder responder,
+                                       @PathParam("millis") long millis) {
+      Assert.assertNotNull(System.getProperty(IN_TX));
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      scheduler.schedule(() -> {
+        responder.sendString("Delayed " + millis);
+        future.complete(null);
+      }, millis, TimeUnit.MILLISECONDS);
+      return future;
+    }
+
+    @Path("/sleep/{millis}")
+    @GET
+    public void sleep(HttpServiceRequest request, HttpServiceResponder responder,
+                      @PathParam("millis") long millis) throws InterruptedException {
+      TimeUnit.MILLISECONDS.sleep(millis);
+      responder.sendString("Slept " + millis);
+    }
+
+    @Path("/failure")
+    @GET
+    public CompletableFuture<Void> failure(HttpServiceRequest request, HttpServiceResponder responder) {
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      scheduler.execute(() -> future.completeExceptionally(new Exception("async failure")));
+      return future;
+    }
+
+    @Path("/noResponse")
+    @GET
+    public CompletionStage<String> noResponse(HttpServiceRequest request, HttpServiceResponder responder) {
+      return CompletableFuture.completedFuture("no response");
+    }
+  }
+
+  @Path("/p3")
+  public static final class ReadOnlyUploadHandler extends AbstractHttpServiceHandler {
+
+    @ReadOnly
+    @Path("/upload")
+    @PUT
+    public HttpContentConsumer upload(HttpServiceRequest request, HttpServiceResponder responder) {
+      return null;
+    }
+  }
+
+  @Path("/p4")
+  public static final class ReadOnlyAsyncHandler extends AbstractHttpServiceHandler {
+
+    @ReadOnly
+    @Path("/async")
+    @GET
+    public CompletionStage<Void> async(HttpServiceRequest request, HttpServiceResponder responder) {
+      return null;
+    }
   }
 
   // Omit class-level PATH annotation, to verify that prefix is still prepended to handled path.
@@ -580,11 +685,147 @@ public class HttpHandlerGeneratorTest {
       Assert.assertEquals("Exception occurred while handling request: exceptionNoTx",
                           new String(ByteStreams.toByteArray(((HttpURLConnection) urlConn).getErrorStream()), "UTF-8"));
 
+      // Call to a read-only method
+      urlConn = new URL(String.format("http://%s:%d/prefix/p2/readOnly/test",
+                                      bindAddress.getHostName(), bindAddress.getPort())).openConnection();
+      urlConn.setReadTimeout(2000);
+      Assert.assertEquals("Read test", new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
+
     } finally {
       service.stop();
     }
   }
 
+  @Test
+  public void testAsyncHandler() throws Exception {
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    AtomicInteger outstanding = new AtomicInteger();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    HttpHandlerFactory factory = new HttpHandlerFactory("/prefix", TransactionControl.IMPLICIT);
+
+    HttpHandler httpHandler = factory.createHttpHandler(
+      TypeToken.of(AsyncHandler.class), new AbstractDelegatorContext<AsyncHandler>() {
+      @Override
+      protected AsyncHandler createHandler() {
+        return new AsyncHandler(scheduler, outstanding, release);
+      }
+    }, new NoopMetricsContext());
+
+    // Use a small and fixed number of threads for executing handler methods
+    int threads = 2;
+    NettyHttpService service = NettyHttpService.builder("test-async-handler")
+      .setHttpHandlers(httpHandler)
+      .setExecThreadPoolSize(threads)
+      .build();
+
+    service.start();
+    try {
+      InetSocketAddress bindAddress = service.getBindAddress();
+
+      URLConnection urlConn = new URL(String.format("http://%s:%d/prefix/async/delay/10",
+                                                    bindAddress.getHostName(), bindAddress.getPort())).openConnection();
+      urlConn.setReadTimeout(2000);
+      Assert.assertEquals("Delayed 10", new String(ByteStreams.toByteArray(urlConn.getInputStream()), Charsets.UTF_8));
+
+      // Failure of the returned stage results in failure response
+      urlConn = new URL(String.format("http://%s:%d/prefix/async/failure",
+                                      bindAddress.getHostName(), bindAddress.getPort())).openConnection();
+      Assert.assertEquals(500, ((HttpURLConnection) urlConn).getResponseCode());
+      Assert.assertEquals("Exception occurred while handling request: async failure",
+                          new String(ByteStreams.toByteArray(((HttpURLConnection) urlConn).getErrorStream()), "UTF-8"));
+
+      // Completing without sending response is a failure too
+      urlConn = new URL(String.format("http://%s:%d/prefix/async/noResponse",
+                                      bindAddress.getHostName(), bindAddress.getPort())).openConnection();
+      Assert.assertEquals(500, ((HttpURLConnection) urlConn).getResponseCode());
+
+      // Asynchronous handler methods don't hold a thread while waiting, hence more requests than threads
+      // can be outstanding at the same time
+      int requests = 20;
+      URL waitURL = new URL(String.format("http://%s:%d/prefix/async/wait",
+                                          bindAddress.getHostName(), bindAddress.getPort()));
+      ExecutorService executor = Executors.newFixedThreadPool(requests);
+      try {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+          futures.add(executor.submit(() -> getResponseCode(waitURL)));
+        }
+        Tasks.waitFor(requests, outstanding::get, 10, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+        for (Future<Integer> future : futures) {
+          Assert.assertFalse(future.isDone());
+        }
+
+        release.complete(null);
+        for (Future<Integer> future : futures) {
+          Assert.assertEquals(200, future.get(10, TimeUnit.SECONDS).intValue());
+        }
+        Assert.assertEquals(0, outstanding.get());
+      } finally {
+        executor.shutdownNow();
+      }
+
+      // Compare the throughput of a synchronous handler method that waits, which is bounded by the number of
+      // threads, with an asynchronous one. Only logged, since timing depends on the machine.
+      long delayMillis = 200;
+      long syncMillis = timeConcurrentRequests(bindAddress, "/prefix/async/sleep/" + delayMillis, requests);
+      long asyncMillis = timeConcurrentRequests(bindAddress, "/prefix/async/delay/" + delayMillis, requests);
+      LOG.info("Throughput with {} threads: sync = {} req/s, async = {} req/s", threads,
+               requests * 1000 / Math.max(1, syncMillis), requests * 1000 / Math.max(1, asyncMillis));
+    } finally {
+      service.stop();
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * Makes the given number of concurrent GET requests to the given path and returns the time it took in
+   * milliseconds for all of them to complete.
+   */
+  private long timeConcurrentRequests(InetSocketAddress address, String path, int requests) throws Exception {
+    URL url = new URL(String.format("http://%s:%d%s", address.getHostName(), address.getPort(), path));
+    ExecutorService executor = Executors.newFixedThreadPool(requests);
+    try {
+      long startTime = System.nanoTime();
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < requests; i++) {
+        futures.add(executor.submit(() -> getResponseCode(url)));
+      }
+      for (Future<Integer> future : futures) {
+        Assert.assertEquals(200, future.get().intValue());
+      }
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Makes a GET request to the given URL and returns the response code after reading the response.
+   */
+  private int getResponseCode(URL url) throws IOException {
+    HttpURLConnection urlConn = (HttpURLConnection) url.openConnection();
+    try {
+      ByteStreams.toByteArray(urlConn.getInputStream());
+      return urlConn.getResponseCode();
+    } finally {
+      urlConn.disconnect();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadOnlyContentConsumer() {
+    // A read-only handler method cannot consume request body
+    new HttpHandlerFactory("/prefix", TransactionControl.IMPLICIT)
+      .validateHttpHandler(Collections.singleton(new ReadOnlyUploadHandler()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadOnlyAsync() {
+    // A read-only handler method must return void, which the CompletionStage return type is not
+    new HttpHandlerFactory("/prefix", TransactionControl.IMPLICIT)
+      .validateHttpHandler(Collections.singleton(new ReadOnlyAsyncHandler()));
+  }
+
   private abstract static class AbstractDelegatorContext<T extends HttpServiceHandler> implements DelegatorContext<T> {
 
     private final ThreadLocal<T> threadLocal = new ThreadLocal<T>() {
@@ -612,6 +853,16 @@ public class HttpHandlerGeneratorTest {
           }
         }
 
+        @Override
+        public void executeReadOnly(ThrowingRunnable runnable) throws Exception {
+          System.setProperty(IN_READ_ONLY_TX, "true");
+          try {
+            runnable.run();
+          } finally {
+            System.clearProperty(IN_READ_ONLY_TX);
+          }
+        }
+
         @Override
         public <T> T execute(Callable<T> callable, boolean transactional) throws Exception {
           if (transactional) {
@@ -21,6 +21,7 @@ import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
+import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
 import co.cask.cdap.data2.transaction.TransactionExecutorFactory;
 import co.cask.cdap.internal.AppFabricTestHelper;
 import co.cask.cdap.proto.ProgramRunStatus;
@@ -46,7 +47,9 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -317,6 +320,126 @@ public class AppMetadataStoreTest {
     Assert.assertEquals(expectedRunStatus, resultRecord.get().getStatus());
   }
 
+  @Test
+  public void testRunIntervalIndex() throws Exception {
+    final AppMetadataStore metadataStoreDataset = getMetadataStore("testRunIntervalIndex");
+    TransactionExecutor txnl = getTxExecutor(metadataStoreDataset);
+    final ProgramId program = NamespaceId.DEFAULT.app("app").program(ProgramType.WORKFLOW, "program");
+    final long hour = TimeUnit.HOURS.toSeconds(1);
+
+    // Runs of one hour each, starting every half an hour, plus runs spanning multiple days and more than two weeks
+    final Map<RunId, Long> runs = new LinkedHashMap<>();
+    for (int i = 0; i < 20; i++) {
+      runs.put(RunIds.generate(TimeUnit.SECONDS.toMillis(i * hour / 2)), hour);
+    }
+    runs.put(RunIds.generate(TimeUnit.SECONDS.toMillis(hour)), TimeUnit.DAYS.toSeconds(3));
+    runs.put(RunIds.generate(TimeUnit.SECONDS.toMillis(2 * hour)), TimeUnit.DAYS.toSeconds(20));
+
+    // Record half of the runs before the index exists
+    final AtomicInteger count = new AtomicInteger();
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        for (Map.Entry<RunId, Long> entry : runs.entrySet()) {
+          long startTs = RunIds.getTime(entry.getKey(), TimeUnit.SECONDS);
+          metadataStoreDataset.recordProgramStart(
+            program, entry.getKey().getId(), startTs, null, ImmutableMap.<String, String>of(),
+            ImmutableMap.<String, String>of(), AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+          if (count.incrementAndGet() % 2 == 0) {
+            metadataStoreDataset.recordProgramStop(
+              program, entry.getKey().getId(), startTs + entry.getValue(), ProgramRunStatus.COMPLETED, null,
+              AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+          }
+        }
+      }
+    });
+
+    final List<long[]> ranges = ImmutableList.of(new long[] { 0, Long.MAX_VALUE }, new long[] { 0, 1 },
+                                                  new long[] { hour, 2 * hour }, new long[] { 3 * hour, 3 * hour },
+                                                  new long[] { 5 * hour + 1, 7 * hour - 1 },
+                                                  new long[] { 50 * hour, 51 * hour },
+                                                  new long[] { 100 * hour, 101 * hour });
+    final Map<Integer, Set<RunId>> expected = new HashMap<>();
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        // Stop the remaining runs
+        count.set(0);
+        for (Map.Entry<RunId, Long> entry : runs.entrySet()) {
+          if (count.incrementAndGet() % 2 != 0) {
+            metadataStoreDataset.recordProgramStop(
+              program, entry.getKey().getId(), RunIds.getTime(entry.getKey(), TimeUnit.SECONDS) + entry.getValue(),
+              ProgramRunStatus.COMPLETED, null, AppFabricTestHelper.createSourceId(sourceId.incrementAndGet()));
+          }
+        }
+        Assert.assertFalse(metadataStoreDataset.isRunIntervalIndexComplete());
+        for (int i = 0; i < ranges.size(); i++) {
+          expected.put(i, metadataStoreDataset.getRunningInRange(ranges.get(i)[0], ranges.get(i)[1]));
+        }
+      }
+    });
+    Assert.assertEquals(runs.keySet(), expected.get(0));
+
+    // Build the index in small batches
+    final AtomicBoolean indexComplete = new AtomicBoolean();
+    while (!indexComplete.get()) {
+      txnl.execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          indexComplete.set(metadataStoreDataset.buildRunIntervalIndex(3));
+        }
+      });
+    }
+
+    // Queries served by the index must return the same runs as the full scan
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertTrue(metadataStoreDataset.isRunIntervalIndexComplete());
+        for (int i = 0; i < ranges.size(); i++) {
+          Assert.assertEquals(expected.get(i),
+                              metadataStoreDataset.getRunningInRange(ranges.get(i)[0], ranges.get(i)[1]));
+        }
+      }
+    });
+
+    // Scanning the index in pages across transactions returns the same runs
+    for (int i = 0; i < ranges.size(); i++) {
+      final long[] range = ranges.get(i);
+      final Set<RunId> runIds = new HashSet<>();
+      final AtomicReference<byte[]> resumeKey = new AtomicReference<>();
+      do {
+        txnl.execute(new TransactionExecutor.Subroutine() {
+          @Override
+          public void apply() throws Exception {
+            resumeKey.set(metadataStoreDataset.scanCompletedInRange(range[0], range[1], resumeKey.get(), 2, runIds));
+          }
+        });
+      } while (resumeKey.get() != null);
+      Assert.assertEquals(expected.get(i), runIds);
+    }
+
+    // A run has at most two index entries, regardless of its duration
+    ProgramRunId programRunId = program.run(RunIds.generate().getId());
+    long day = TimeUnit.DAYS.toSeconds(1);
+    for (long duration : new long[] { 0, hour, 30 * hour, 10 * day, 30 * day }) {
+      for (long startTs : new long[] { 0, hour - 1, 7 * day - 1 }) {
+        List<MDSKey> keys = metadataStoreDataset.getRunIntervalKeys(programRunId, startTs, startTs + duration);
+        Assert.assertTrue(keys.size() <= 2);
+      }
+    }
+
+    // Deleting the program history also removes the index entries
+    txnl.execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        metadataStoreDataset.deleteProgramHistory(program.getNamespace(), program.getApplication(),
+                                                  program.getVersion());
+        Assert.assertEquals(Collections.<RunId>emptySet(), metadataStoreDataset.getRunningInRange(0, Long.MAX_VALUE));
+      }
+    });
+  }
+
   @Test
   public void testScanRunningInRangeWithBatch() throws Exception {
     final AppMetadataStore metadataStoreDataset = getMetadataStore("testScanRunningInRange");
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.scheduler;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Unit tests for {@link TimerWheel}.
+ */
+public class TimerWheelTest {
+
+  @Test
+  public void testExpire() {
+    TimerWheel<String> wheel = new TimerWheel<>(10L, 8, 1000L);
+    wheel.add("a", 1005L);
+    wheel.add("b", 1015L);
+    wheel.add("c", 1015L);
+    wheel.add("d", 1050L);
+    Assert.assertEquals(4, wheel.size());
+
+    Assert.assertTrue(wheel.expire(1004L).isEmpty());
+    Assert.assertEquals(ImmutableSet.of("a"), new HashSet<>(wheel.expire(1005L)));
+    // Items in the slot of the current tick are only returned when they are due
+    Assert.assertTrue(wheel.expire(1012L).isEmpty());
+    Assert.assertEquals(ImmutableSet.of("b", "c"), new HashSet<>(wheel.expire(1020L)));
+    Assert.assertEquals(ImmutableSet.of("d"), new HashSet<>(wheel.expire(1060L)));
+    Assert.assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void testMultipleRounds() {
+    // The wheel covers 80ms in one round
+    TimerWheel<String> wheel = new TimerWheel<>(10L, 8, 0L);
+    wheel.add("a", 25L);
+    wheel.add("b", 105L);
+    wheel.add("c", 1000L);
+
+    // "b" is in the same slot as "a", but in the next round
+    Assert.assertEquals(ImmutableSet.of("a"), new HashSet<>(wheel.expire(30L)));
+    Assert.assertTrue(wheel.expire(90L).isEmpty());
+    Assert.assertEquals(ImmutableSet.of("b"), new HashSet<>(wheel.expire(110L)));
+
+    // Jumping over multiple rounds expires all due items
+    wheel.add("d", 2000L);
+    Assert.assertEquals(ImmutableSet.of("c"), new HashSet<>(wheel.expire(1500L)));
+    Assert.assertEquals(ImmutableSet.of("d"), new HashSet<>(wheel.expire(5000L)));
+    Assert.assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void testAddAndRemove() {
+    TimerWheel<String> wheel = new TimerWheel<>(10L, 8, 0L);
+    wheel.add("a", 50L);
+    wheel.add("b", 50L);
+
+    // Adding again replaces the time
+    wheel.add("a", 20L);
+    Assert.assertEquals(2, wheel.size());
+    Assert.assertEquals(ImmutableSet.of("a"), new HashSet<>(wheel.expire(20L)));
+
+    Assert.assertTrue(wheel.remove("b"));
+    Assert.assertFalse(wheel.remove("b"));
+    Assert.assertTrue(wheel.expire(100L).isEmpty());
+
+    // Items added with a time that already passed are returned by the next expire
+    wheel.add("c", 10L);
+    wheel.add("d", 10L);
+    Assert.assertTrue(wheel.remove("d"));
+    List<String> expired = wheel.expire(100L);
+    Assert.assertEquals(ImmutableSet.of("c"), new HashSet<>(expired));
+    Assert.assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void testNextDeadline() {
+    TimerWheel<String> wheel = new TimerWheel<>(10L, 8, 0L);
+    Assert.assertEquals(Long.MAX_VALUE, wheel.getNextDeadline());
+
+    // The earliest item is returned, also when there are later items in the same slot or in earlier slots
+    wheel.add("a", 35L);
+    wheel.add("b", 32L);
+    wheel.add("c", 112L);
+    Assert.assertEquals(32L, wheel.getNextDeadline());
+    wheel.remove("b");
+    Assert.assertEquals(35L, wheel.getNextDeadline());
+
+    // Only items due in later rounds of the wheel
+    Assert.assertEquals(ImmutableSet.of("a"), new HashSet<>(wheel.expire(40L)));
+    wheel.add("d", 1000L);
+    Assert.assertEquals(112L, wheel.getNextDeadline());
+    Assert.assertEquals(ImmutableSet.of("c"), new HashSet<>(wheel.expire(112L)));
+    Assert.assertEquals(1000L, wheel.getNextDeadline());
+
+    // Items added with a time that already passed are due immediately
+    wheel.add("e", 50L);
+    Assert.assertEquals(50L, wheel.getNextDeadline());
+    Assert.assertEquals(ImmutableSet.of("e"), new HashSet<>(wheel.expire(wheel.getNextDeadline() + 100L)));
+    Assert.assertEquals(1000L, wheel.getNextDeadline());
+  }
+}
@@ -18,11 +18,15 @@ package co.cask.cdap.client;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.data.format.FormatSpecification;
+import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.client.common.ClientTestBase;
+import co.cask.cdap.client.config.StreamBatchWriterConfig;
 import co.cask.cdap.common.BadRequestException;
 import co.cask.cdap.common.StreamNotFoundException;
 import co.cask.cdap.common.UnauthenticatedException;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.ByteBufferBinaryDecoder;
 import co.cask.cdap.proto.NamespaceMeta;
 import co.cask.cdap.proto.StreamProperties;
 import co.cask.cdap.proto.ViewSpecification;
@@ -35,7 +39,9 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -48,6 +54,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -196,6 +203,103 @@ public class StreamClientTestRun extends ClientTestBase {
     Assert.assertTrue(events.isEmpty());
   }
 
+  @Test
+  public void testTextBatchWriter() throws Exception {
+    StreamId streamId = namespaceId.stream("testTextBatchWriter");
+    streamClient.create(streamId);
+
+    int msgCount = 1000;
+    List<ListenableFuture<StreamBatchWriter.BatchResult>> futures = Lists.newArrayList();
+    StreamBatchWriterConfig config = StreamBatchWriterConfig.builder().setMaxBatchSize(1024).build();
+    try (StreamBatchWriter<String> writer = streamClient.createTextBatchWriter(streamId, config)) {
+      for (int i = 0; i < msgCount; i++) {
+        futures.add(writer.write("Testing " + i));
+      }
+    }
+
+    // Every batch is acknowledged once and is acknowledged for all of its events
+    Set<StreamBatchWriter.BatchResult> results = Sets.newIdentityHashSet();
+    for (ListenableFuture<StreamBatchWriter.BatchResult> future : futures) {
+      results.add(future.get(10, TimeUnit.SECONDS));
+    }
+    int ackedEvents = 0;
+    for (StreamBatchWriter.BatchResult result : results) {
+      ackedEvents += result.getEventCount();
+    }
+    Assert.assertEquals(msgCount, ackedEvents);
+    Assert.assertTrue(results.size() > 1);
+
+    List<StreamEvent> events = Lists.newArrayList();
+    streamClient.getEvents(streamId, 0, Long.MAX_VALUE, Integer.MAX_VALUE, events);
+    Assert.assertEquals(msgCount, events.size());
+    Set<String> bodies = Sets.newHashSet();
+    for (StreamEvent event : events) {
+      bodies.add(Charsets.UTF_8.decode(event.getBody()).toString());
+    }
+    for (int i = 0; i < msgCount; i++) {
+      Assert.assertTrue(bodies.contains("Testing " + i));
+    }
+  }
+
+  @Test
+  public void testAvroBatchWriter() throws Exception {
+    StreamId streamId = namespaceId.stream("testAvroBatchWriter");
+    streamClient.create(streamId);
+
+    int msgCount = 100;
+    try (StreamBatchWriter<String> writer =
+           streamClient.createAvroBatchWriter(streamId, Schema.of(Schema.Type.STRING),
+                                              StreamBatchWriterConfig.DEFAULT)) {
+      for (int i = 0; i < msgCount; i++) {
+        writer.write("Testing " + i);
+      }
+      writer.flush();
+    }
+
+    List<StreamEvent> events = Lists.newArrayList();
+    streamClient.getEvents(streamId, 0, Long.MAX_VALUE, Integer.MAX_VALUE, events);
+    Assert.assertEquals(msgCount, events.size());
+    for (int i = 0; i < msgCount; i++) {
+      Assert.assertEquals(Schema.of(Schema.Type.STRING).toString(),
+                          events.get(i).getHeaders().get(Constants.Stream.Headers.SCHEMA));
+      Assert.assertEquals("Testing " + i, new ByteBufferBinaryDecoder(events.get(i).getBody()).readString());
+    }
+  }
+
+  /**
+   * Compares the throughput of writing events one by one and with {@link StreamBatchWriter}.
+   */
+  @Test
+  public void testBatchWriterThroughput() throws Exception {
+    StreamId streamId = namespaceId.stream("testBatchWriterThroughput");
+    streamClient.create(streamId);
+
+    String event = Strings.repeat("0123456789", 10);
+    int singleCount = 500;
+    Stopwatch stopwatch = new Stopwatch().start();
+    for (int i = 0; i < singleCount; i++) {
+      streamClient.sendEvent(streamId, event);
+    }
+    long singleMillis = Math.max(1L, stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+
+    int batchCount = 50000;
+    stopwatch = new Stopwatch().start();
+    try (StreamBatchWriter<String> writer = streamClient.createTextBatchWriter(streamId,
+                                                                               StreamBatchWriterConfig.DEFAULT)) {
+      for (int i = 0; i < batchCount; i++) {
+        writer.write(event);
+      }
+    }
+    long batchMillis = Math.max(1L, stopwatch.elapsedTime(TimeUnit.MILLISECONDS));
+
+    LOG.info("Single event writes: {} events/s. Batch writer: {} events/s",
+             singleCount * 1000L / singleMillis, batchCount * 1000L / batchMillis);
+
+    List<StreamEvent> events = Lists.newArrayList();
+    streamClient.getEvents(streamId, 0, Long.MAX_VALUE, Integer.MAX_VALUE, events);
+    Assert.assertEquals(singleCount + batchCount, events.size());
+  }
+
   @Test
   public void testSendSmallFile() throws Exception {
     testSendFile("Short message", 50);
@@ -0,0 +1,359 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.client;
+
+import co.cask.cdap.api.annotation.Beta;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.client.config.StreamBatchWriterConfig;
+import co.cask.cdap.common.io.ByteArrayBinaryEncoder;
+import co.cask.cdap.common.io.DatumWriter;
+import co.cask.cdap.proto.id.StreamId;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Writes events to a stream in batches through the stream batch endpoint. Events are buffered until the batch
+ * reaches the configured size or the first event of the batch has waited for the configured linger time. Multiple
+ * batches are sent concurrently, each with a separate request, with the connections kept alive between requests.
+ * Writes block when the configured number of batches are being sent and the current batch is full.
+ *
+ * Instances are created with {@link StreamClient#createTextBatchWriter(StreamId, StreamBatchWriterConfig)} or
+ * {@link StreamClient#createAvroBatchWriter(StreamId, Schema, StreamBatchWriterConfig)}.
+ *
+ * @param <T> type of the events
+ */
+@Beta
+@ThreadSafe
+public final class StreamBatchWriter<T> implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamBatchWriter.class);
+
+  private final StreamClient streamClient;
+  private final StreamId stream;
+  private final BatchFormat<T> format;
+  private final StreamBatchWriterConfig config;
+  private final Semaphore inFlightBatches;
+  private final ExecutorService senderExecutor;
+  private final ScheduledExecutorService lingerExecutor;
+  private final ByteArrayBinaryEncoder eventEncoder;
+
+  @GuardedBy("this")
+  private Batch currentBatch;
+  @GuardedBy("this")
+  private boolean closed;
+
+  StreamBatchWriter(StreamClient streamClient, StreamId stream, BatchFormat<T> format,
+                    StreamBatchWriterConfig config) {
+    this.streamClient = streamClient;
+    this.stream = stream;
+    this.format = format;
+    this.config = config;
+    this.inFlightBatches = new Semaphore(config.getMaxInFlightBatches());
+    this.senderExecutor = Executors.newFixedThreadPool(
+      config.getMaxInFlightBatches(),
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("stream-batch-sender-" + stream.getStream() + "-%d")
+        .build());
+    this.lingerExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("stream-batch-linger-" + stream.getStream()).build());
+    this.eventEncoder = new ByteArrayBinaryEncoder();
+  }
+
+  /**
+   * Adds an event to the current batch. This method blocks if the batch becomes full and the maximum number of
+   * batches are being sent.
+   *
+   * @param event the event to write
+   * @return a {@link ListenableFuture} that completes with the {@link BatchResult} when the batch containing the
+   *         event is acknowledged by the server, or fails if the batch could not be written
+   * @throws IOException if failed to encode the event
+   * @throws InterruptedException if interrupted while waiting for a batch to be sent
+   */
+  public synchronized ListenableFuture<BatchResult> write(T event) throws IOException, InterruptedException {
+    if (closed) {
+      throw new IllegalStateException("Writer for stream " + stream + " is already closed");
+    }
+
+    // Encode separately so that a failure doesn't leave a partial event in the batch
+    eventEncoder.reset();
+    format.encode(event, eventEncoder);
+
+    Batch batch = currentBatch;
+    if (batch == null) {
+      batch = currentBatch = new Batch();
+      scheduleLinger(batch);
+    }
+    ByteBuffer encoded = eventEncoder.toByteBuffer();
+    batch.encoder.writeRaw(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+    batch.eventCount++;
+
+    if (batch.encoder.size() >= config.getMaxBatchSize()) {
+      currentBatch = null;
+      send(batch);
+    }
+    return batch.future;
+  }
+
+  /**
+   * Sends the current batch and waits for all batches to be acknowledged. Failures of individual batches are
+   * reported through the futures returned by {@link #write(Object)}.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void flush() throws InterruptedException {
+    synchronized (this) {
+      Batch batch = currentBatch;
+      if (batch != null) {
+        currentBatch = null;
+        send(batch);
+      }
+    }
+    // All batches are acknowledged when all in-flight permits are available
+    inFlightBatches.acquire(config.getMaxInFlightBatches());
+    inFlightBatches.release(config.getMaxInFlightBatches());
+  }
+
+  /**
+   * Sends the buffered events and releases the resources of this writer.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    try {
+      flush();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while flushing events to stream " + stream, e);
+    } finally {
+      lingerExecutor.shutdownNow();
+      senderExecutor.shutdown();
+    }
+  }
+
+  private void scheduleLinger(final Batch batch) {
+    lingerExecutor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (StreamBatchWriter.this) {
+          if (currentBatch != batch) {
+            return;
+          }
+          currentBatch = null;
+          try {
+            send(batch);
+          } catch (InterruptedException e) {
+            // Only happens when the writer is closed
+            LOG.debug("Interrupted while sending batch to stream {}", stream);
+          }
+        }
+      }
+    }, config.getLingerMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sends the given batch asynchronously. Blocks until the number of in-flight batches is below the maximum.
+   */
+  private void send(final Batch batch) throws InterruptedException {
+    try {
+      inFlightBatches.acquire();
+    } catch (InterruptedException e) {
+      batch.future.setException(e);
+      throw e;
+    }
+
+    senderExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          byte[] body = format.toBody(batch.encoder, batch.eventCount);
+          streamClient.sendBatch(stream, format.getContentType(), ByteStreams.newInputStreamSupplier(body));
+          batch.future.set(new BatchResult(batch.eventCount, body.length));
+        } catch (Throwable t) {
+          batch.future.setException(t);
+        } finally {
+          inFlightBatches.release();
+        }
+      }
+    });
+  }
+
+  /**
+   * Result of a batch that was written to the stream.
+   */
+  public static final class BatchResult {
+    private final int eventCount;
+    private final int size;
+
+    BatchResult(int eventCount, int size) {
+      this.eventCount = eventCount;
+      this.size = size;
+    }
+
+    /**
+     * @return number of events in the batch
+     */
+    public int getEventCount() {
+      return eventCount;
+    }
+
+    /**
+     * @return number of bytes of the request body of the batch
+     */
+    public int getSize() {
+      return size;
+    }
+
+    @Override
+    public String toString() {
+      return "BatchResult{eventCount=" + eventCount + ", size=" + size + '}';
+    }
+  }
+
+  /**
+   * Events buffered for one batch request.
+   */
+  private final class Batch {
+    private final ByteArrayBinaryEncoder encoder = new ByteArrayBinaryEncoder(Math.min(config.getMaxBatchSize(),
+                                                                                       64 * 1024));
+    private final SettableFuture<BatchResult> future = SettableFuture.create();
+    private int eventCount;
+  }
+
+  /**
+   * Encodes events and batch request bodies in one of the formats supported by the stream batch endpoint.
+   *
+   * @param <T> type of the events
+   */
+  abstract static class BatchFormat<T> {
+
+    /**
+     * Returns the content type of the batch request.
+     */
+    abstract String getContentType();
+
+    /**
+     * Encodes one event.
+     */
+    abstract void encode(T event, ByteArrayBinaryEncoder encoder) throws IOException;
+
+    /**
+     * Returns the request body for the given encoded events.
+     */
+    abstract byte[] toBody(ByteArrayBinaryEncoder events, int eventCount) throws IOException;
+  }
+
+  /**
+   * Format for text events, separated by new lines.
+   */
+  static final class TextFormat extends BatchFormat<String> {
+
+    @Override
+    String getContentType() {
+      return "text/plain";
+    }
+
+    @Override
+    void encode(String event, ByteArrayBinaryEncoder encoder) throws IOException {
+      if (event.indexOf('\n') >= 0) {
+        throw new IllegalArgumentException("Text event must not contain new line: " + event);
+      }
+      encoder.writeRaw(event.getBytes(Charsets.UTF_8));
+      encoder.writeRaw(new byte[] { '\n' });
+    }
+
+    @Override
+    byte[] toBody(ByteArrayBinaryEncoder events, int eventCount) {
+      return events.toByteArray();
+    }
+  }
+
+  /**
+   * Format for Avro events, sent as an Avro object container file with a single block.
+   */
+  static final class AvroFormat<T> extends BatchFormat<T> {
+
+    private static final byte[] MAGIC = new byte[] { 'O', 'b', 'j', 1 };
+    private static final int SYNC_SIZE = 16;
+
+    private final Schema schema;
+    private final DatumWriter<T> datumWriter;
+    private final byte[] sync;
+
+    AvroFormat(Schema schema, DatumWriter<T> datumWriter) {
+      this.schema = schema;
+      this.datumWriter = datumWriter;
+      this.sync = new byte[SYNC_SIZE];
+      new SecureRandom().nextBytes(sync);
+    }
+
+    @Override
+    String getContentType() {
+      return "avro/binary";
+    }
+
+    @Override
+    void encode(T event, ByteArrayBinaryEncoder encoder) throws IOException {
+      datumWriter.encode(event, encoder);
+    }
+
+    @Override
+    byte[] toBody(ByteArrayBinaryEncoder events, int eventCount) throws IOException {
+      byte[] schemaBytes = schema.toString().getBytes(Charsets.UTF_8);
+      ByteArrayBinaryEncoder encoder = new ByteArrayBinaryEncoder(events.size() + schemaBytes.length + 128);
+
+      // File header: magic, metadata map with the schema and codec, sync marker
+      encoder.writeRaw(MAGIC);
+      encoder.writeLong(2);
+      encoder.writeString("avro.schema");
+      encoder.writeBytes(schemaBytes);
+      encoder.writeString("avro.codec");
+      encoder.writeBytes("null".getBytes(Charsets.UTF_8));
+      encoder.writeLong(0);
+      encoder.writeRaw(sync);
+
+      // Data block: number of objects, size of the objects, the objects, sync marker
+      encoder.writeLong(eventCount);
+      encoder.writeLong(events.size());
+      ByteBuffer eventBytes = events.toByteBuffer();
+      encoder.writeRaw(eventBytes.array(), eventBytes.arrayOffset() + eventBytes.position(), eventBytes.remaining());
+      encoder.writeRaw(sync);
+      return encoder.toByteArray();
+    }
+  }
+}
@@ -20,12 +20,14 @@ import co.cask.cdap.api.annotation.Beta;
 import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.client.config.ClientConfig;
+import co.cask.cdap.client.config.StreamBatchWriterConfig;
 import co.cask.cdap.client.util.RESTClient;
 import co.cask.cdap.common.BadRequestException;
 import co.cask.cdap.common.StreamNotFoundException;
 import co.cask.cdap.common.UnauthenticatedException;
 import co.cask.cdap.common.stream.StreamEventTypeAdapter;
 import co.cask.cdap.common.utils.TimeMathParser;
+import co.cask.cdap.internal.io.ReflectionDatumWriter;
 import co.cask.cdap.internal.io.SchemaTypeAdapter;
 import co.cask.cdap.proto.StreamDetail;
 import co.cask.cdap.proto.StreamProperties;
@@ -258,6 +260,35 @@ public class StreamClient {
     }
   }
 
+  /**
+   * Creates a {@link StreamBatchWriter} for writing text events to a stream in batches. Each event is written as
+   * one line, hence it must not contain new line characters.
+   *
+   * @param stream ID of the stream
+   * @param config configuration of the writer
+   * @return a {@link StreamBatchWriter}, which must be closed after use
+   */
+  public StreamBatchWriter<String> createTextBatchWriter(StreamId stream, StreamBatchWriterConfig config) {
+    return new StreamBatchWriter<>(this, stream, new StreamBatchWriter.TextFormat(), config);
+  }
+
+  /**
+   * Creates a {@link StreamBatchWriter} for writing Avro encoded events to a stream in batches. Events are encoded
+   * with the given schema through reflection.
+   *
+   * @param stream ID of the stream
+   * @param schema schema of the events
+   * @param config configuration of the writer
+   * @param <T> type of the events
+   * @return a {@link StreamBatchWriter}, which must be closed after use
+   */
+  public <T> StreamBatchWriter<T> createAvroBatchWriter(StreamId stream, Schema schema,
+                                                        StreamBatchWriterConfig config) {
+    return new StreamBatchWriter<>(this, stream,
+                                   new StreamBatchWriter.AvroFormat<>(schema, new ReflectionDatumWriter<T>(schema)),
+                                   config);
+  }
+
   /**
    * Truncates a stream, deleting all stream events belonging to the stream.
    *
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.client.config;
+
+import co.cask.cdap.client.StreamBatchWriter;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Configuration for {@link StreamBatchWriter}.
+ */
+public class StreamBatchWriterConfig {
+
+  public static final StreamBatchWriterConfig DEFAULT = StreamBatchWriterConfig.builder().build();
+
+  private static final int DEFAULT_MAX_BATCH_SIZE = 1024 * 1024;
+  private static final long DEFAULT_LINGER_MILLIS = 100L;
+  private static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 4;
+
+  private final int maxBatchSize;
+  private final long lingerMillis;
+  private final int maxInFlightBatches;
+
+  public StreamBatchWriterConfig(int maxBatchSize, long lingerMillis, int maxInFlightBatches) {
+    Preconditions.checkArgument(maxBatchSize > 0, "Max batch size must be positive");
+    Preconditions.checkArgument(lingerMillis >= 0, "Linger time must not be negative");
+    Preconditions.checkArgument(maxInFlightBatches > 0, "Max number of in-flight batches must be positive");
+    this.maxBatchSize = maxBatchSize;
+    this.lingerMillis = lingerMillis;
+    this.maxInFlightBatches = maxInFlightBatches;
+  }
+
+  /**
+   * @return the number of bytes of encoded events after which a batch is sent
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * @return the maximum number of milliseconds an event waits in a batch before the batch is sent
+   */
+  public long getLingerMillis() {
+    return lingerMillis;
+  }
+
+  /**
+   * @return the maximum number of batches being sent concurrently. Writes block when this many batches are being sent
+   *         and the current batch is full.
+   */
+  public int getMaxInFlightBatches() {
+    return maxInFlightBatches;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("maxBatchSize", maxBatchSize)
+      .add("lingerMillis", lingerMillis)
+      .add("maxInFlightBatches", maxInFlightBatches)
+      .toString();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder for {@link StreamBatchWriterConfig}.
+   */
+  public static class Builder {
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private long lingerMillis = DEFAULT_LINGER_MILLIS;
+    private int maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+
+    public Builder setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    public Builder setLingerMillis(long lingerMillis) {
+      this.lingerMillis = lingerMillis;
+      return this;
+    }
+
+    public Builder setMaxInFlightBatches(int maxInFlightBatches) {
+      this.maxInFlightBatches = maxInFlightBatches;
+      return this;
+    }
+
+    public StreamBatchWriterConfig build() {
+      return new StreamBatchWriterConfig(maxBatchSize, lingerMillis, maxInFlightBatches);
+    }
+  }
+}
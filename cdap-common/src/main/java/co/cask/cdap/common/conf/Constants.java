@@ -182,12 +182,20 @@ public final class Constants {
     public static final String LOCAL_DATASET_DELETER_INITIAL_DELAY_SECONDS
       = "app.program.local.dataset.deleter.initial.delay";
     public static final String SYSTEM_ARTIFACTS_DIR = "app.artifact.dir";
+    public static final String SYSTEM_ARTIFACTS_LOAD_THREADS = "app.artifact.system.load.threads";
+    public static final String ARTIFACT_INSPECTION_CACHE_ENABLED = "app.artifact.inspection.cache.enabled";
+    public static final String ARTIFACT_INSPECTION_CACHE_DIR = "app.artifact.inspection.cache.dir";
     public static final String PROGRAM_EXTRA_CLASSPATH = "app.program.extra.classpath";
     public static final String SPARK_YARN_CLIENT_REWRITE = "app.program.spark.yarn.client.rewrite.enabled";
     public static final String SPARK_COMPAT = "app.program.spark.compat";
     public static final String RUNTIME_EXT_DIR = "app.program.runtime.extensions.dir";
     public static final String PROGRAM_MAX_START_SECONDS = "app.program.max.start.seconds";
     public static final String PROGRAM_MAX_STOP_SECONDS = "app.program.max.stop.seconds";
+    public static final String SERVICE_READ_ONLY_TX_REFRESH_MILLIS = "app.program.service.read.only.tx.refresh.millis";
+    public static final String FLOWLET_BATCHES_PER_TX = "app.program.flowlet.batches.per.tx";
+    public static final String LAUNCH_CACHE_ENABLED = "app.program.launch.cache.enabled";
+    public static final String LAUNCH_CACHE_DIR = "app.program.launch.cache.dir";
+    public static final String LAUNCH_CACHE_PERIOD_HOURS = "app.program.launch.cache.period.hours";
 
     /**
      * Guice named bindings.
@@ -296,6 +304,9 @@ public final class Constants {
     public static final String TIME_EVENT_FETCH_SIZE = "scheduler.time.event.fetch.size";
     public static final String DATA_EVENT_FETCH_SIZE = "scheduler.data.event.fetch.size";
     public static final String PROGRAM_STATUS_EVENT_FETCH_SIZE = "scheduler.program.status.event.fetch.size";
+    public static final String CONSTRAINT_CHECK_FULL_SCAN_INTERVAL_MILLIS =
+      "scheduler.constraint.check.full.scan.interval.millis";
+    public static final String TRIGGER_CACHE_SIZE = "scheduler.trigger.cache.size";
   }
 
   /**
@@ -734,6 +745,11 @@ public final class Constants {
       public static final long MAX_MINUTE_RESOLUTION_QUERY_INTERVAL = 600;
       // Number of seconds to subtract from current timestamp when query without "end" time.
       public static final long QUERY_SECOND_DELAY = 2;
+
+      // Maximum number of queries to keep in the metrics query cache. Setting it to 0 disables the cache.
+      public static final String CACHE_MAX_SIZE = "metrics.query.cache.max.size";
+      // Number of seconds after the end of a time bucket when the bucket is considered complete and can be cached.
+      public static final String CACHE_BUCKET_CLOSE_DELAY_SECONDS = "metrics.query.cache.bucket.close.delay.seconds";
     }
   }
 
@@ -1258,6 +1274,8 @@ public final class Constants {
     public static final String LOCAL_DATA_CLEANUP_FREQUENCY = "messaging.local.data.cleanup.frequency.secs";
 
     public static final String CACHE_SIZE_MB = "messaging.cache.size.mb";
+    public static final String CACHE_OFF_HEAP_ENABLED = "messaging.cache.off.heap.enabled";
+    public static final String CACHE_OFF_HEAP_SEGMENT_SIZE_KB = "messaging.cache.off.heap.segment.size.kb";
 
     public static final String HBASE_MAX_SCAN_THREADS = "messaging.hbase.max.scan.threads";
     public static final String HBASE_SCAN_CACHE_ROWS = "messaging.hbase.scan.cache.rows";
@@ -1280,6 +1298,8 @@ public final class Constants {
 
     // Distributed mode related configurations
     public static final String HA_FENCING_DELAY_SECONDS = "messaging.ha.fencing.delay.seconds";
+    public static final String SHARDS = "messaging.shards";
+    public static final String SHARD_ELECTION_DELAY_SECONDS = "messaging.shard.election.delay.seconds";
     public static final String CONTAINER_VIRTUAL_CORES = "messaging.container.num.cores";
     public static final String CONTAINER_MEMORY_MB = "messaging.container.memory.mb";
     public static final String CONTAINER_INSTANCES = "messaging.container.instances";
@@ -0,0 +1,327 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.common.internal.remote;
+
+import co.cask.common.http.HttpRequest;
+import co.cask.common.http.HttpRequestConfig;
+import co.cask.common.http.HttpResponse;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolMap;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
+import org.apache.twill.common.Threads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.channels.ClosedChannelException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A HTTP client that keeps a pool of keep-alive connections for each endpoint, so that calls between services
+ * don't need to open a new connection for every request. Request and response bodies are fully buffered in memory.
+ * It only supports plain HTTP.
+ */
+final class PooledHttpClient implements Closeable {
+
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT = 32;
+  private static final int MAX_CONTENT_LENGTH = Integer.MAX_VALUE;
+  private static final AttributeKey<Promise<FullHttpResponse>> RESPONSE_PROMISE =
+    AttributeKey.valueOf("responsePromise");
+  // Set on channels that have completed at least one request
+  private static final AttributeKey<Boolean> REUSED = AttributeKey.valueOf("reused");
+
+  private static volatile PooledHttpClient instance;
+
+  private final EventLoopGroup eventLoopGroup;
+  private final ChannelPoolMap<InetSocketAddress, FixedChannelPool> pools;
+
+  /**
+   * Returns the {@link PooledHttpClient} shared by all {@link RemoteClient} in the process.
+   */
+  static PooledHttpClient getInstance() {
+    PooledHttpClient client = instance;
+    if (client != null) {
+      return client;
+    }
+    synchronized (PooledHttpClient.class) {
+      if (instance == null) {
+        instance = new PooledHttpClient(0, DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT);
+      }
+      return instance;
+    }
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param threads number of IO threads, or {@code 0} to use the Netty default
+   * @param maxConnectionsPerEndpoint maximum number of connections to each endpoint. Requests wait for a connection
+   *                                  when all of them are in use.
+   */
+  PooledHttpClient(int threads, final int maxConnectionsPerEndpoint) {
+    this.eventLoopGroup = new NioEventLoopGroup(threads, Threads.createDaemonThreadFactory("pooled-http-client-%d"));
+    final Bootstrap bootstrap = new Bootstrap()
+      .group(eventLoopGroup)
+      .channel(NioSocketChannel.class)
+      .option(ChannelOption.TCP_NODELAY, true)
+      .option(ChannelOption.SO_KEEPALIVE, true);
+
+    this.pools = new AbstractChannelPoolMap<InetSocketAddress, FixedChannelPool>() {
+      @Override
+      protected FixedChannelPool newPool(InetSocketAddress address) {
+        return new FixedChannelPool(bootstrap.clone().remoteAddress(address), new AbstractChannelPoolHandler() {
+          @Override
+          public void channelCreated(Channel channel) {
+            channel.pipeline()
+              .addLast("codec", new HttpClientCodec())
+              .addLast("aggregator", new HttpObjectAggregator(MAX_CONTENT_LENGTH))
+              .addLast("response", new ResponseHandler());
+          }
+        }, maxConnectionsPerEndpoint);
+      }
+    };
+  }
+
+  /**
+   * Executes the given request and returns the response. A request that fails on a reused connection, which can
+   * happen if the server closed the idle connection, is retried on another connection.
+   *
+   * @param request the request to execute
+   * @param config the config for timeouts
+   * @return the response
+   * @throws IOException if failed to execute the request
+   */
+  HttpResponse execute(HttpRequest request, HttpRequestConfig config) throws IOException {
+    URL url = request.getURL();
+    InetSocketAddress address = new InetSocketAddress(url.getHost(),
+                                                      url.getPort() < 0 ? url.getDefaultPort() : url.getPort());
+    ChannelPool pool = pools.get(address);
+    FullHttpRequest nettyRequest = createRequest(request);
+    try {
+      while (true) {
+        Channel channel = acquire(pool, config.getConnectTimeout());
+        boolean reused = channel.attr(REUSED).get() != null;
+        try {
+          return execute(pool, channel, nettyRequest.retainedDuplicate(), config.getReadTimeout());
+        } catch (ClosedChannelException e) {
+          if (!reused) {
+            throw e;
+          }
+        }
+      }
+    } finally {
+      nettyRequest.release();
+    }
+  }
+
+  @Override
+  public void close() {
+    eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).syncUninterruptibly();
+  }
+
+  private HttpResponse execute(ChannelPool pool, Channel channel, FullHttpRequest request,
+                               int readTimeoutMillis) throws IOException {
+    try {
+      final Promise<FullHttpResponse> promise = channel.eventLoop().newPromise();
+      channel.attr(RESPONSE_PROMISE).set(promise);
+      // The channel could have been closed right after it was acquired, hence fail the promise in that case
+      if (!channel.isActive()) {
+        promise.tryFailure(new ClosedChannelException());
+      }
+      channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+          if (!future.isSuccess()) {
+            promise.tryFailure(future.cause());
+          }
+        }
+      });
+
+      boolean completed = readTimeoutMillis > 0
+        ? promise.await(readTimeoutMillis, TimeUnit.MILLISECONDS)
+        : promise.await().isDone();
+      if (!completed) {
+        channel.close();
+        throw new SocketTimeoutException("Read timed out from " + channel.remoteAddress());
+      }
+      if (!promise.isSuccess()) {
+        channel.close();
+        Throwable cause = promise.cause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      }
+
+      FullHttpResponse response = promise.getNow();
+      try {
+        Map<String, List<String>> headers = new HashMap<>();
+        for (String name : response.headers().names()) {
+          headers.put(name, ImmutableList.copyOf(response.headers().getAll(name)));
+        }
+        HttpResponse result = new HttpResponse(response.status().code(), response.status().reasonPhrase(),
+                                               ByteBufUtil.getBytes(response.content()), headers);
+        if (HttpUtil.isKeepAlive(response)) {
+          channel.attr(REUSED).set(Boolean.TRUE);
+        } else {
+          channel.close();
+        }
+        return result;
+      } finally {
+        response.release();
+      }
+    } catch (InterruptedException e) {
+      channel.close();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for response from " + channel.remoteAddress());
+    } finally {
+      channel.attr(RESPONSE_PROMISE).set(null);
+      pool.release(channel);
+    }
+  }
+
+  /**
+   * Acquires a channel from the given pool, waiting at most the given timeout.
+   */
+  private Channel acquire(final ChannelPool pool, int timeoutMillis) throws IOException {
+    Future<Channel> future = pool.acquire();
+    try {
+      boolean completed = timeoutMillis > 0
+        ? future.await(timeoutMillis, TimeUnit.MILLISECONDS)
+        : future.await().isDone();
+      if (!completed) {
+        // Make sure the channel is returned to the pool if it is acquired after the timeout
+        future.addListener(new FutureListener<Channel>() {
+          @Override
+          public void operationComplete(Future<Channel> future) {
+            if (future.isSuccess()) {
+              pool.release(future.getNow());
+            }
+          }
+        });
+        throw new SocketTimeoutException("Timeout in connecting");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while connecting");
+    }
+
+    if (!future.isSuccess()) {
+      Throwable cause = future.cause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+    return future.getNow();
+  }
+
+  private FullHttpRequest createRequest(HttpRequest request) throws IOException {
+    URL url = request.getURL();
+    byte[] body = new byte[0];
+    if (request.getBody() != null) {
+      try (InputStream is = request.getBody().getInput()) {
+        body = ByteStreams.toByteArray(is);
+      }
+    }
+    String uri = url.getFile().isEmpty() ? "/" : url.getFile();
+    FullHttpRequest nettyRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                                                              HttpMethod.valueOf(request.getMethod().name()),
+                                                              uri, Unpooled.wrappedBuffer(body));
+    HttpHeaders headers = nettyRequest.headers();
+    if (request.getHeaders() != null) {
+      for (Map.Entry<String, String> entry : request.getHeaders().entries()) {
+        headers.add(entry.getKey(), entry.getValue());
+      }
+    }
+    headers.set(HttpHeaderNames.HOST, url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort());
+    headers.set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+    headers.set(HttpHeaderNames.CONTENT_LENGTH, body.length);
+    return nettyRequest;
+  }
+
+  /**
+   * Completes the response promise of the channel.
+   */
+  private static final class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+      Promise<FullHttpResponse> promise = ctx.channel().attr(RESPONSE_PROMISE).getAndSet(null);
+      if (promise == null || !promise.trySuccess(response.retain())) {
+        response.release();
+      }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      Promise<FullHttpResponse> promise = ctx.channel().attr(RESPONSE_PROMISE).getAndSet(null);
+      if (promise != null) {
+        promise.tryFailure(new ClosedChannelException());
+      }
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      Promise<FullHttpResponse> promise = ctx.channel().attr(RESPONSE_PROMISE).getAndSet(null);
+      if (promise != null) {
+        promise.tryFailure(cause);
+      }
+      ctx.close();
+    }
+  }
+}
@@ -43,7 +43,8 @@ import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
- * Discovers a remote service and resolves URLs to that service.
+ * Discovers a remote service and resolves URLs to that service. Plain HTTP requests are executed over pooled
+ * keep-alive connections shared by all instances in the process.
  */
 public class RemoteClient {
   private final Supplier<EndpointStrategy> endpointStrategySupplier;
@@ -90,7 +91,9 @@ public class RemoteClient {
    */
   public HttpResponse execute(HttpRequest request) throws IOException {
     try {
-      HttpResponse response = HttpRequests.execute(request, httpRequestConfig);
+      HttpResponse response = "http".equals(request.getURL().getProtocol())
+        ? PooledHttpClient.getInstance().execute(request, httpRequestConfig)
+        : HttpRequests.execute(request, httpRequestConfig);
       switch (response.getResponseCode()) {
         case HttpURLConnection.HTTP_UNAVAILABLE:
           throw new ServiceUnavailableException(discoverableServiceName, response.getResponseBodyAsString());
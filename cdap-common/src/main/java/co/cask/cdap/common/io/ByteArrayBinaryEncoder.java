@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.io;
+
+import com.google.common.base.Charsets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * An {@link Encoder} for binary-format data that writes directly to a growable byte array.
+ * It produces the same format as {@link BinaryEncoder}, but without the overhead of going through an
+ * {@link java.io.OutputStream} for every byte.
+ *
+ * The encoder can be reused by calling {@link #reset()}.
+ */
+@NotThreadSafe
+public final class ByteArrayBinaryEncoder implements Encoder {
+
+  private byte[] buf;
+  private int count;
+
+  public ByteArrayBinaryEncoder() {
+    this(256);
+  }
+
+  public ByteArrayBinaryEncoder(int initialCapacity) {
+    this.buf = new byte[initialCapacity];
+  }
+
+  /**
+   * Discards all the encoded bytes so that the encoder can be reused.
+   */
+  public void reset() {
+    count = 0;
+  }
+
+  /**
+   * Returns the number of bytes encoded.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Returns a copy of the encoded bytes.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buf, count);
+  }
+
+  /**
+   * Returns a {@link ByteBuffer} of the encoded bytes without copying. The buffer returned is only valid until
+   * the next write or reset to this encoder.
+   */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, count);
+  }
+
+  /**
+   * Writes raw bytes without encoding.
+   */
+  public ByteArrayBinaryEncoder writeRaw(byte[] rawBytes) {
+    return writeRaw(rawBytes, 0, rawBytes.length);
+  }
+
+  /**
+   * Writes raw bytes without encoding.
+   *
+   * @param rawBytes The bytes to write.
+   * @param off Offset to start in the byte array.
+   * @param len Number of bytes to write starting from the offset.
+   */
+  public ByteArrayBinaryEncoder writeRaw(byte[] rawBytes, int off, int len) {
+    ensureCapacity(len);
+    System.arraycopy(rawBytes, off, buf, count, len);
+    count += len;
+    return this;
+  }
+
+  @Override
+  public Encoder writeNull() throws IOException {
+    // No-op
+    return this;
+  }
+
+  @Override
+  public Encoder writeBool(boolean b) throws IOException {
+    ensureCapacity(1);
+    buf[count++] = (byte) (b ? 1 : 0);
+    return this;
+  }
+
+  @Override
+  public Encoder writeInt(int i) throws IOException {
+    ensureCapacity(5);
+    // Compute the zig-zag value. First double the value and flip the bit if the input is negative.
+    int val = (i << 1) ^ (i >> 31);
+    while ((val & ~0x7f) != 0) {
+      buf[count++] = (byte) (0x80 | val & 0x7f);
+      val >>>= 7;
+    }
+    buf[count++] = (byte) val;
+    return this;
+  }
+
+  @Override
+  public Encoder writeLong(long l) throws IOException {
+    ensureCapacity(10);
+    // Compute the zig-zag value. First double the value and flip the bit if the input is negative.
+    long val = (l << 1) ^ (l >> 63);
+    while ((val & ~0x7fL) != 0) {
+      buf[count++] = (byte) (0x80 | val & 0x7f);
+      val >>>= 7;
+    }
+    buf[count++] = (byte) val;
+    return this;
+  }
+
+  @Override
+  public Encoder writeFloat(float f) throws IOException {
+    ensureCapacity(4);
+    writeFixedInt(Float.floatToIntBits(f));
+    return this;
+  }
+
+  @Override
+  public Encoder writeDouble(double d) throws IOException {
+    ensureCapacity(8);
+    long bits = Double.doubleToLongBits(d);
+    writeFixedInt((int) bits);
+    writeFixedInt((int) (bits >> 32));
+    return this;
+  }
+
+  @Override
+  public Encoder writeString(String s) throws IOException {
+    return writeBytes(s.getBytes(Charsets.UTF_8));
+  }
+
+  @Override
+  public Encoder writeBytes(byte[] bytes) throws IOException {
+    return writeBytes(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public Encoder writeBytes(byte[] bytes, int off, int len) throws IOException {
+    writeInt(len);
+    return writeRaw(bytes, off, len);
+  }
+
+  @Override
+  public Encoder writeBytes(ByteBuffer buffer) throws IOException {
+    int len = buffer.remaining();
+    writeInt(len);
+    if (buffer.hasArray()) {
+      return writeRaw(buffer.array(), buffer.arrayOffset() + buffer.position(), len);
+    }
+    ensureCapacity(len);
+    buffer.duplicate().get(buf, count, len);
+    count += len;
+    return this;
+  }
+
+  /**
+   * Writes an int as fixed four bytes in little endian. Caller should have ensured the capacity.
+   */
+  private void writeFixedInt(int bits) {
+    buf[count++] = (byte) bits;
+    buf[count++] = (byte) (bits >> 8);
+    buf[count++] = (byte) (bits >> 16);
+    buf[count++] = (byte) (bits >> 24);
+  }
+
+  private void ensureCapacity(int len) {
+    if (buf.length - count < len) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + len));
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.common.io;
+
+import com.google.common.base.Charsets;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A {@link Decoder} for binary-format data that reads directly from a byte array or a {@link ByteBuffer}.
+ * It decodes the same format as {@link BinaryDecoder}, but without the overhead of going through an
+ * {@link java.io.InputStream} for every byte. The {@link #readBytes()} method returns a slice of the underlying
+ * buffer without copying, hence the returned buffer is only valid as long as the underlying buffer is not modified.
+ *
+ * The decoder can be reused by calling one of the {@code reset} methods.
+ */
+@NotThreadSafe
+public final class ByteBufferBinaryDecoder implements Decoder {
+
+  // Maximum number of bytes for the variable length encoding of int and long
+  private static final int MAX_INT_BYTES = 5;
+  private static final int MAX_LONG_BYTES = 10;
+
+  private byte[] buf;
+  private int pos;
+  private int limit;
+
+  public ByteBufferBinaryDecoder() {
+    this(new byte[0]);
+  }
+
+  public ByteBufferBinaryDecoder(byte[] bytes) {
+    reset(bytes);
+  }
+
+  public ByteBufferBinaryDecoder(ByteBuffer buffer) {
+    reset(buffer);
+  }
+
+  /**
+   * Resets this decoder to read from the given byte array.
+   */
+  public ByteBufferBinaryDecoder reset(byte[] bytes) {
+    return reset(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Resets this decoder to read from the given range of the byte array.
+   */
+  public ByteBufferBinaryDecoder reset(byte[] bytes, int off, int len) {
+    this.buf = bytes;
+    this.pos = off;
+    this.limit = off + len;
+    return this;
+  }
+
+  /**
+   * Resets this decoder to read the remaining bytes of the given {@link ByteBuffer}. The position of the
+   * given buffer is not changed by the decoder. If the buffer is not backed by an array, the remaining
+   * bytes are copied.
+   */
+  public ByteBufferBinaryDecoder reset(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return reset(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return reset(bytes);
+  }
+
+  /**
+   * Returns the number of bytes that are not yet decoded.
+   */
+  public int remaining() {
+    return limit - pos;
+  }
+
+  @Override
+  public Object readNull() throws IOException {
+    // No-op
+    return null;
+  }
+
+  @Override
+  public boolean readBool() throws IOException {
+    return readByte() == 1;
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    int val = 0;
+    int shift = 0;
+    int b;
+    if (limit - pos >= MAX_INT_BYTES) {
+      // Enough bytes for the longest encoding, no need to check for the end of buffer for each byte
+      do {
+        b = buf[pos++] & 0xff;
+        val ^= (b & 0x7f) << shift;
+        shift += 7;
+      } while (b > 0x7f && shift < 7 * MAX_INT_BYTES);
+    } else {
+      do {
+        b = readByte();
+        val ^= (b & 0x7f) << shift;
+        shift += 7;
+      } while (b > 0x7f && shift < 7 * MAX_INT_BYTES);
+    }
+    if (b > 0x7f) {
+      throw new IOException("Invalid int encoding");
+    }
+    return (val >>> 1) ^ -(val & 1);
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    long val = 0;
+    int shift = 0;
+    int b;
+    if (limit - pos >= MAX_LONG_BYTES) {
+      // Enough bytes for the longest encoding, no need to check for the end of buffer for each byte
+      do {
+        b = buf[pos++] & 0xff;
+        val ^= (long) (b & 0x7f) << shift;
+        shift += 7;
+      } while (b > 0x7f && shift < 7 * MAX_LONG_BYTES);
+    } else {
+      do {
+        b = readByte();
+        val ^= (long) (b & 0x7f) << shift;
+        shift += 7;
+      } while (b > 0x7f && shift < 7 * MAX_LONG_BYTES);
+    }
+    if (b > 0x7f) {
+      throw new IOException("Invalid long encoding");
+    }
+    return (val >>> 1) ^ -(val & 1);
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    ensureAvailable(4);
+    return Float.intBitsToFloat(readFixedInt());
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    ensureAvailable(8);
+    int low = readFixedInt();
+    int high = readFixedInt();
+    return Double.longBitsToDouble(((long) high << 32) | (low & 0xffffffffL));
+  }
+
+  @Override
+  public String readString() throws IOException {
+    int len = readInt();
+    ensureAvailable(len);
+    String str = new String(buf, pos, len, Charsets.UTF_8);
+    pos += len;
+    return str;
+  }
+
+  /**
+   * Reads bytes. The {@link ByteBuffer} returned is a slice of the underlying buffer without copying.
+   */
+  @Override
+  public ByteBuffer readBytes() throws IOException {
+    int len = readInt();
+    ensureAvailable(len);
+    ByteBuffer slice = ByteBuffer.wrap(buf, pos, len).slice();
+    pos += len;
+    return slice;
+  }
+
+  @Override
+  public void skipFloat() throws IOException {
+    skip(4);
+  }
+
+  @Override
+  public void skipDouble() throws IOException {
+    skip(8);
+  }
+
+  @Override
+  public void skipString() throws IOException {
+    skipBytes();
+  }
+
+  @Override
+  public void skipBytes() throws IOException {
+    skip(readInt());
+  }
+
+  private void skip(int len) throws IOException {
+    ensureAvailable(len);
+    pos += len;
+  }
+
+  /**
+   * Reads a little endian int of fixed four bytes. Caller should have checked that there are enough bytes.
+   */
+  private int readFixedInt() {
+    int bits = (buf[pos] & 0xff) | ((buf[pos + 1] & 0xff) << 8)
+      | ((buf[pos + 2] & 0xff) << 16) | ((buf[pos + 3] & 0xff) << 24);
+    pos += 4;
+    return bits;
+  }
+
+  private void ensureAvailable(int len) throws IOException {
+    if (len < 0) {
+      throw new IOException("Invalid length " + len);
+    }
+    if (limit - pos < len) {
+      throw new EOFException();
+    }
+  }
+
+  /**
+   * Reads a byte value.
+   *
+   * @return The byte value read.
+   * @throws EOFException If end of buffer reached.
+   */
+  private int readByte() throws IOException {
+    if (pos >= limit) {
+      throw new EOFException();
+    }
+    return buf[pos++] & 0xff;
+  }
+}
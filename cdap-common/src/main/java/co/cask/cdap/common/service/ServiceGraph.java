@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.common.service;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Service;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a set of {@link Service Services} and startup tasks according to their declared dependencies.
+ * A service or task is started as soon as all of its dependencies have started, hence services that don't depend on
+ * each other are started concurrently. The time it took to start each of them is recorded in
+ * a {@link ServiceStartupTimes}.
+ *
+ * <pre>{@code
+ * ServiceGraph.builder()
+ *   .addService("transaction", txService)
+ *   .addService("dataset", datasetService, "transaction")
+ *   .addTask("log.appender", logAppenderInitializer::initialize, "dataset")
+ *   .build()
+ *   .start();
+ * }</pre>
+ *
+ * Stopping is left to the caller, since the stopping order usually has its own constraints.
+ */
+public final class ServiceGraph {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceGraph.class);
+
+  private final Map<String, Node> nodes;
+  private final ServiceStartupTimes startupTimes;
+
+  /**
+   * Returns a new {@link Builder} for building a {@link ServiceGraph}.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private ServiceGraph(Map<String, Node> nodes, ServiceStartupTimes startupTimes) {
+    this.nodes = nodes;
+    this.startupTimes = startupTimes;
+  }
+
+  /**
+   * Starts all services and tasks in the graph and blocks until all of them are started. If any of them failed to
+   * start, services depending on it are not started, while the independent ones are still started. The first
+   * failure is rethrown after all startups completed, with other failures added as suppressed exceptions.
+   *
+   * @throws Exception if any of the services or tasks failed to start
+   */
+  public void start() throws Exception {
+    if (nodes.isEmpty()) {
+      return;
+    }
+    long startTime = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(nodes.size(),
+                                                            Threads.createDaemonThreadFactory("service-graph-%d"));
+    try {
+      // Nodes are in topological order, hence futures of dependencies are always created before their dependents
+      Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+      for (Node node : nodes.values()) {
+        CompletableFuture<?>[] dependencies = node.dependencies.stream().map(futures::get)
+          .toArray(CompletableFuture<?>[]::new);
+        futures.put(node.name, CompletableFuture.allOf(dependencies).thenRunAsync(() -> start(node), executor));
+      }
+
+      Exception failure = null;
+      for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+        try {
+          entry.getValue().join();
+        } catch (CompletionException e) {
+          // Only report the node that actually failed, not the ones that were skipped because of the failure
+          if (e.getCause() instanceof StartFailure && ((StartFailure) e.getCause()).name.equals(entry.getKey())) {
+            Throwable cause = e.getCause().getCause();
+            Exception exception = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+            if (failure == null) {
+              failure = exception;
+            } else {
+              failure.addSuppressed(exception);
+            }
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    LOG.info("Started {} services in {} ms", nodes.size(),
+             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+  }
+
+  /**
+   * Returns the {@link ServiceStartupTimes} that the startup times are recorded to.
+   */
+  public ServiceStartupTimes getStartupTimes() {
+    return startupTimes;
+  }
+
+  private void start(Node node) {
+    LOG.debug("Starting {}", node.name);
+    long startTime = System.nanoTime();
+    try {
+      node.task.run();
+    } catch (Throwable t) {
+      LOG.error("Failed to start {}", node.name, t);
+      throw new StartFailure(node.name, t);
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    startupTimes.record(node.name, millis);
+    LOG.info("Started {} in {} ms", node.name, millis);
+  }
+
+  /**
+   * A task to run as part of starting the graph.
+   */
+  public interface Task {
+
+    /**
+     * Runs the task, blocking until it completes.
+     *
+     * @throws Exception if the task failed
+     */
+    void run() throws Exception;
+  }
+
+  /**
+   * Builder for {@link ServiceGraph}.
+   */
+  public static final class Builder {
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private ServiceStartupTimes startupTimes = new ServiceStartupTimes();
+
+    private Builder() {
+    }
+
+    /**
+     * Adds a {@link Service} to the graph.
+     *
+     * @param name a unique name of the service in the graph
+     * @param service the service to start
+     * @param dependencies names of services and tasks that must be started before this service
+     * @return this builder
+     */
+    public Builder addService(String name, Service service, String... dependencies) {
+      return addTask(name, () -> {
+        Service.State state = service.startAndWait();
+        if (state != Service.State.RUNNING) {
+          throw new IllegalStateException("Service " + name + " is in state " + state + " after start");
+        }
+      }, dependencies);
+    }
+
+    /**
+     * Adds a startup task to the graph.
+     *
+     * @param name a unique name of the task in the graph
+     * @param task the task to run
+     * @param dependencies names of services and tasks that must be started before this task
+     * @return this builder
+     */
+    public Builder addTask(String name, Task task, String... dependencies) {
+      Preconditions.checkArgument(!nodes.containsKey(name), "Duplicate service name %s", name);
+      nodes.put(name, new Node(name, task, new LinkedHashSet<>(Arrays.asList(dependencies))));
+      return this;
+    }
+
+    /**
+     * Sets the {@link ServiceStartupTimes} to record startup times to. By default a new instance is used.
+     */
+    public Builder setStartupTimes(ServiceStartupTimes startupTimes) {
+      this.startupTimes = startupTimes;
+      return this;
+    }
+
+    /**
+     * Builds the {@link ServiceGraph}.
+     *
+     * @throws IllegalArgumentException if there is a dependency on a name that is not in the graph
+     *                                  or if there is a cyclic dependency
+     */
+    public ServiceGraph build() {
+      for (Node node : nodes.values()) {
+        for (String dependency : node.dependencies) {
+          Preconditions.checkArgument(nodes.containsKey(dependency),
+                                      "Unknown dependency %s of %s", dependency, node.name);
+        }
+      }
+
+      // Sort the nodes topologically, keeping the order they were added among independent nodes
+      Map<String, Node> sorted = new LinkedHashMap<>();
+      Set<String> visiting = new HashSet<>();
+      for (Node node : nodes.values()) {
+        visit(node, sorted, visiting, new ArrayList<>());
+      }
+      return new ServiceGraph(Collections.unmodifiableMap(sorted), startupTimes);
+    }
+
+    private void visit(Node node, Map<String, Node> sorted, Set<String> visiting, List<String> path) {
+      if (sorted.containsKey(node.name)) {
+        return;
+      }
+      path.add(node.name);
+      Preconditions.checkArgument(visiting.add(node.name), "Cyclic dependency %s", path);
+      for (String dependency : node.dependencies) {
+        visit(nodes.get(dependency), sorted, visiting, path);
+      }
+      visiting.remove(node.name);
+      path.remove(path.size() - 1);
+      sorted.put(node.name, node);
+    }
+  }
+
+  /**
+   * A service or task in the graph.
+   */
+  private static final class Node {
+    private final String name;
+    private final Task task;
+    private final Set<String> dependencies;
+
+    private Node(String name, Task task, Set<String> dependencies) {
+      this.name = name;
+      this.task = task;
+      this.dependencies = dependencies;
+    }
+  }
+
+  /**
+   * Exception to carry the name of the node that failed to start through the {@link CompletableFuture}.
+   */
+  private static final class StartFailure extends RuntimeException {
+    private final String name;
+
+    private StartFailure(String name, Throwable cause) {
+      super("Failed to start " + name, cause);
+      this.name = name;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.common.service;
+
+import com.google.inject.Singleton;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long it took to start each service of a process, in the order they finished starting.
+ * It is populated by {@link ServiceGraph} and is a singleton, so that it can be reported, for example,
+ * through the operational stats.
+ */
+@Singleton
+public final class ServiceStartupTimes {
+
+  private final Map<String, Long> startupMillis = new LinkedHashMap<>();
+
+  /**
+   * Records the time it took to start the given service.
+   */
+  public synchronized void record(String name, long millis) {
+    // Remove first so that the insertion order reflects the latest start
+    startupMillis.remove(name);
+    startupMillis.put(name, millis);
+  }
+
+  /**
+   * Returns a copy of the startup times in milliseconds, keyed by service name in the order they finished starting.
+   */
+  public synchronized Map<String, Long> getAll() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(startupMillis));
+  }
+}
@@ -16,13 +16,16 @@
 package co.cask.cdap.internal.app.store;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.schema.Schema;
 import co.cask.cdap.proto.ProgramRunStatus;
 import co.cask.cdap.proto.RunRecord;
 import co.cask.cdap.proto.id.ProgramRunId;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 import com.google.gson.annotations.SerializedName;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 
@@ -34,6 +37,27 @@ import javax.annotation.Nullable;
  */
 public final class RunRecordMeta extends RunRecord {
 
+  /**
+   * All versions of the {@link Schema} used to store {@link RunRecordMeta} in binary format, with the schema at
+   * index {@code i} being version {@code i + 1}. A new version must be appended whenever fields are added to or
+   * removed from this class or {@link RunRecord}.
+   */
+  public static final List<Schema> SCHEMAS = ImmutableList.of(
+    Schema.recordOf(
+      "RunRecordMeta",
+      Schema.Field.of("pid", Schema.of(Schema.Type.STRING)),
+      Schema.Field.of("startTs", Schema.of(Schema.Type.LONG)),
+      Schema.Field.of("runTs", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+      Schema.Field.of("stopTs", Schema.nullableOf(Schema.of(Schema.Type.LONG))),
+      Schema.Field.of("status", Schema.enumWith("ALL", "STARTING", "RUNNING", "SUSPENDED", "RESUMING",
+                                                "COMPLETED", "FAILED", "KILLED")),
+      Schema.Field.of("properties", Schema.nullableOf(Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                                   Schema.of(Schema.Type.STRING)))),
+      Schema.Field.of("twillRunId", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+      Schema.Field.of("systemArgs", Schema.nullableOf(Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                                   Schema.of(Schema.Type.STRING)))),
+      Schema.Field.of("sourceId", Schema.nullableOf(Schema.of(Schema.Type.BYTES)))));
+
   // carries the ProgramRunId, but we don't need to serialize it as it is already in the key of the meta data store
   private final transient ProgramRunId programRunId;
 
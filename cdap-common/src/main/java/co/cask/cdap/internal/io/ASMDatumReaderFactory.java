@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.lang.InstantiatorFactory;
+import co.cask.cdap.internal.asm.ByteCodeClassLoader;
+import co.cask.cdap.internal.asm.ClassDefinition;
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ExecutionError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Inject;
+
+/**
+ * A factory class for creating {@link DatumReader} instance for different data type and schema.
+ * The {@link DatumReader} returned generates a specialized {@link DatumReader} class using ASM for each
+ * source schema it sees, with all the schema resolution done at generation time. Generated classes are cached
+ * in memory. If a class cannot be generated for a given type, it falls back to use {@link ReflectionDatumReader}.
+ */
+public final class ASMDatumReaderFactory implements DatumReaderFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ASMDatumReaderFactory.class);
+
+  private final LoadingCache<CacheKey, Class<DatumReader<?>>> datumReaderClasses;
+  private final FieldAccessorFactory fieldAccessorFactory;
+  private final InstantiatorFactory instantiatorFactory;
+
+  @Inject
+  public ASMDatumReaderFactory(FieldAccessorFactory fieldAccessorFactory) {
+    this.fieldAccessorFactory = fieldAccessorFactory;
+    this.instantiatorFactory = new InstantiatorFactory(true);
+    this.datumReaderClasses = CacheBuilder.newBuilder().build(new ASMCacheLoader());
+  }
+
+  /**
+   * Creates a {@link DatumReader} that is able to decode data of the given data type with the given {@link Schema}.
+   * The instance created is thread safe and reusable.
+   *
+   * @param type Type information of the data type to be decoded.
+   * @param schema Schema of the data type.
+   * @param <T> Type of the data type.
+   * @return A {@link DatumReader} instance.
+   */
+  @Override
+  public <T> DatumReader<T> create(TypeToken<T> type, Schema schema) {
+    return new SchemaResolvingDatumReader<>(type, schema);
+  }
+
+  /**
+   * Creates a {@link DatumReader} for reading data of the given source schema into the given type and target schema.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> DatumReader<T> createReader(TypeToken<T> type, Schema sourceSchema, Schema targetSchema) {
+    try {
+      Class<DatumReader<?>> readerClass = datumReaderClasses.getUnchecked(new CacheKey(sourceSchema,
+                                                                                       targetSchema, type));
+      return (DatumReader<T>) readerClass.getConstructor(FieldAccessorFactory.class, InstantiatorFactory.class)
+                                         .newInstance(fieldAccessorFactory, instantiatorFactory);
+    } catch (Exception | ExecutionError | LinkageError e) {
+      LOG.debug("Failed to generate DatumReader for type {} with source schema {} and target schema {}. " +
+                  "Using reflection based DatumReader instead.", type, sourceSchema, targetSchema, e);
+      return new ReflectionDatumReader<>(targetSchema, type);
+    }
+  }
+
+  /**
+   * A {@link DatumReader} that delegates to the generated {@link DatumReader} based on the source schema.
+   *
+   * @param <T> Type of the data type.
+   */
+  private final class SchemaResolvingDatumReader<T> implements DatumReader<T> {
+
+    private final TypeToken<T> type;
+    private final Schema schema;
+    private final ConcurrentMap<Schema, DatumReader<T>> readers;
+    // The last used source schema and reader. Most of the time data is read with the same source schema instance,
+    // which can be matched by reference without computing the schema hash code.
+    private volatile Map.Entry<Schema, DatumReader<T>> lastReader;
+
+    private SchemaResolvingDatumReader(TypeToken<T> type, Schema schema) {
+      this.type = type;
+      this.schema = schema;
+      this.readers = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public T read(Decoder decoder, Schema sourceSchema) throws IOException {
+      Map.Entry<Schema, DatumReader<T>> last = lastReader;
+      if (last != null && last.getKey() == sourceSchema) {
+        return last.getValue().read(decoder, sourceSchema);
+      }
+
+      DatumReader<T> reader = readers.get(sourceSchema);
+      if (reader == null) {
+        reader = createReader(type, sourceSchema, schema);
+        DatumReader<T> existing = readers.putIfAbsent(sourceSchema, reader);
+        if (existing != null) {
+          reader = existing;
+        }
+      }
+      lastReader = Maps.immutableEntry(sourceSchema, reader);
+      return reader.read(decoder, sourceSchema);
+    }
+  }
+
+  /**
+   * A private {@link CacheLoader} for generating different {@link DatumReader} {@link Class}.
+   */
+  private static final class ASMCacheLoader extends CacheLoader<CacheKey, Class<DatumReader<?>>> {
+
+    private final Map<TypeToken<?>, ByteCodeClassLoader> classloaders = Maps.newIdentityHashMap();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Class<DatumReader<?>> load(CacheKey key) throws Exception {
+      ClassDefinition classDef = new DatumReaderGenerator().generate(key.getType(), key.getSourceSchema(),
+                                                                     key.getTargetSchema());
+
+      synchronized (classloaders) {
+        ByteCodeClassLoader classloader = classloaders.get(key.getType());
+        if (classloader == null) {
+          // The ClassLoader of the generated DatumReader has CDAP system ClassLoader as parent.
+          // The ClassDefinition contains list of classes that should not be loaded by the generated class ClassLoader
+          classloader = new ByteCodeClassLoader(ASMDatumReaderFactory.class.getClassLoader());
+          classloaders.put(key.getType(), classloader);
+        }
+        return (Class<DatumReader<?>>) classloader.addClass(classDef).loadClass(classDef.getClassName());
+      }
+    }
+  }
+
+  private static final class CacheKey {
+    private final Schema sourceSchema;
+    private final Schema targetSchema;
+    private final TypeToken<?> type;
+
+    private CacheKey(Schema sourceSchema, Schema targetSchema, TypeToken<?> type) {
+      this.sourceSchema = sourceSchema;
+      this.targetSchema = targetSchema;
+      this.type = type;
+    }
+
+    Schema getSourceSchema() {
+      return sourceSchema;
+    }
+
+    Schema getTargetSchema() {
+      return targetSchema;
+    }
+
+    TypeToken<?> getType() {
+      return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      CacheKey cacheKey = (CacheKey) o;
+      return sourceSchema.equals(cacheKey.sourceSchema)
+        && targetSchema.equals(cacheKey.targetSchema)
+        && type.equals(cacheKey.type);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(sourceSchema, targetSchema, type);
+    }
+  }
+}
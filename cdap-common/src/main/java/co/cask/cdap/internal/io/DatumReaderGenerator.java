@@ -0,0 +1,1028 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.lang.Instantiator;
+import co.cask.cdap.common.lang.InstantiatorFactory;
+import co.cask.cdap.internal.asm.ClassDefinition;
+import co.cask.cdap.internal.asm.Methods;
+import co.cask.cdap.internal.asm.Signatures;
+import co.cask.cdap.internal.lang.Fields;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Primitives;
+import com.google.common.reflect.TypeParameter;
+import com.google.common.reflect.TypeToken;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.GeneratorAdapter;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.commons.TableSwitchGenerator;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Class for generating {@link DatumReader} bytecodes using ASM. A generated class reads data written with
+ * a specific source schema into a specific data type with a specific target schema. All schema resolution,
+ * such as skipping removed fields, numeric widening, union branch selection and enum index mapping, is done
+ * at generation time, hence the generated code only performs the decoding. The class generated will have a
+ * skeleton looks like the following:
+ * <pre>
+ * {@code
+ *  public final class generatedClassName implements DatumReader<InputType> {
+ *    private final FieldAccessor fieldAccessorForEachRecordField;
+ *    private final Instantiator instantiatorForEachRecordOrCollection;
+ *    private final Object[] enumMappingForEachEnum;
+ *
+ *    public generatedClassName(FieldAccessorFactory accessorFactory, InstantiatorFactory instantiatorFactory) {
+ *      // Initialize the fields
+ *    }
+ *
+ *    public Object read(Decoder decoder, Schema sourceSchema) throws IOException {
+ *      return generatedReadMethod(decoder);
+ *    }
+ *
+ *    private Object generatedReadMethod(Decoder decoder) throws IOException {
+ *      // Reads the value from the decoder, which calls other generated read and skip methods
+ *    }
+ *  }
+ * }
+ * </pre>
+ *
+ * For example, reading a record {@code Record { int i; String s; }} with the source schema
+ * {@code { long i; String s; }} generates a read method similar to
+ * <pre>
+ * {@code
+ *   private Object readRecord<hash>(Decoder decoder) throws IOException {
+ *     Object record = this.instantiator$Record.create();
+ *     this.Record$i.setInt(record, readint<hash>(decoder));
+ *     this.Record$s.set(record, readString<hash>(decoder));
+ *     return record;
+ *   }
+ * }
+ * </pre>
+ *
+ * The source schema passed to the {@link DatumReader#read(Decoder, Schema)} method of the generated class is ignored.
+ * Callers should use {@link ASMDatumReaderFactory}, which selects the generated class based on the source schema.
+ */
+@NotThreadSafe
+final class DatumReaderGenerator {
+
+  private static final Type DECODER_TYPE = Type.getType(Decoder.class);
+  private static final Type SUPPORT_TYPE = Type.getType(DatumReaderSupport.class);
+  private static final Type INSTANTIATOR_TYPE = Type.getType(Instantiator.class);
+  private static final Type OBJECT_ARRAY_TYPE = Type.getType(Object[].class);
+
+  private final Map<String, Method> readMethods = Maps.newHashMap();
+  private final Map<String, Method> skipMethods = Maps.newHashMap();
+  private final Multimap<TypeToken<?>, String> fieldAccessorRequests = HashMultimap.create();
+  private final Map<String, Class<?>> instantiatorRequests = Maps.newHashMap();
+  private final Map<String, Map.Entry<Class<?>, String[]>> enumMappingRequests = Maps.newHashMap();
+  private ClassWriter classWriter;
+  private Type classType;
+  private List<Class<?>> preservedClasses;
+
+  /**
+   * Generates a {@link DatumReader} class for decoding data of the given type.
+   *
+   * @param type Type information of the data type to be decoded.
+   * @param sourceSchema Schema that the data was encoded with.
+   * @param targetSchema Schema of the data type.
+   * @return A {@link ClassDefinition} that contains generated class information.
+   * @throws IllegalArgumentException if the type is not supported by the generated reader
+   */
+  ClassDefinition generate(TypeToken<?> type, Schema sourceSchema, Schema targetSchema) {
+    classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+    preservedClasses = Lists.newArrayList();
+
+    TypeToken<?> interfaceType = getInterfaceType(type);
+
+    // Generate the class
+    String className = getClassName(interfaceType, sourceSchema, targetSchema);
+    classType = Type.getObjectType(className);
+    classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC + Opcodes.ACC_FINAL,
+                      className, Signatures.getClassSignature(interfaceType),
+                      Type.getInternalName(Object.class),
+                      new String[]{Type.getInternalName(interfaceType.getRawType())});
+
+    // Read method
+    generateRead(type, sourceSchema, targetSchema);
+
+    // Constructor
+    generateConstructor();
+
+    return new ClassDefinition(classWriter.toByteArray(), className, preservedClasses);
+  }
+
+  /**
+   * Generates the constructor. The constructor generated has signature
+   * {@code (FieldAccessorFactory, InstantiatorFactory)}.
+   */
+  private void generateConstructor() {
+    Method constructor = getMethod(void.class, "<init>", FieldAccessorFactory.class, InstantiatorFactory.class);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, classWriter);
+
+    // super(); // Calling Object constructor
+    mg.loadThis();
+    mg.invokeConstructor(Type.getType(Object.class), getMethod(void.class, "<init>"));
+
+    // For each record field that needs an accessor, get the accessor and store it in field.
+    for (Map.Entry<TypeToken<?>, String> entry : fieldAccessorRequests.entries()) {
+      String fieldAccessorName = getFieldAccessorName(entry.getKey(), entry.getValue());
+
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, fieldAccessorName,
+                             Type.getDescriptor(FieldAccessor.class), null, null).visitEnd();
+      // this.fieldAccessorName
+      //  = accessorFactory.getFieldAccessor(TypeToken.of(Class.forName("className")), "fieldName");
+      mg.loadThis();
+      mg.loadArg(0);
+      pushTypeToken(mg, entry.getKey().getRawType());
+      mg.push(entry.getValue());
+      mg.invokeInterface(Type.getType(FieldAccessorFactory.class),
+                         getMethod(FieldAccessor.class, "getFieldAccessor", TypeToken.class, String.class));
+      mg.putField(classType, fieldAccessorName, Type.getType(FieldAccessor.class));
+    }
+
+    // For each record or collection type, get the instantiator and store it in field.
+    for (Map.Entry<String, Class<?>> entry : instantiatorRequests.entrySet()) {
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getKey(),
+                             INSTANTIATOR_TYPE.getDescriptor(), null, null).visitEnd();
+      // this.instantiatorName = instantiatorFactory.get(TypeToken.of(Class.forName("className")));
+      mg.loadThis();
+      mg.loadArg(1);
+      pushTypeToken(mg, entry.getValue());
+      mg.invokeVirtual(Type.getType(InstantiatorFactory.class),
+                       getMethod(Instantiator.class, "get", TypeToken.class));
+      mg.putField(classType, entry.getKey(), INSTANTIATOR_TYPE);
+    }
+
+    // For each enum, create the mapping from source enum index to enum constant.
+    for (Map.Entry<String, Map.Entry<Class<?>, String[]>> entry : enumMappingRequests.entrySet()) {
+      classWriter.visitField(Opcodes.ACC_PRIVATE + Opcodes.ACC_FINAL, entry.getKey(),
+                             OBJECT_ARRAY_TYPE.getDescriptor(), null, null).visitEnd();
+      // this.enumMappingName = DatumReaderSupport.createEnumMapping(Class.forName("className"), new String[] {...});
+      mg.loadThis();
+      mg.push(entry.getValue().getKey().getName());
+      mg.invokeStatic(Type.getType(Class.class), getMethod(Class.class, "forName", String.class));
+      String[] names = entry.getValue().getValue();
+      mg.push(names.length);
+      mg.newArray(Type.getType(String.class));
+      for (int i = 0; i < names.length; i++) {
+        mg.dup();
+        mg.push(i);
+        mg.push(names[i]);
+        mg.arrayStore(Type.getType(String.class));
+      }
+      mg.invokeStatic(SUPPORT_TYPE, getMethod(Object[].class, "createEnumMapping", Class.class, String[].class));
+      mg.putField(classType, entry.getKey(), OBJECT_ARRAY_TYPE);
+    }
+
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Generates the {@link DatumReader#read(Decoder, Schema)} method.
+   */
+  private void generateRead(TypeToken<?> type, Schema sourceSchema, Schema targetSchema) {
+    Method readMethod = getMethod(Object.class, "read", Decoder.class, Schema.class);
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PUBLIC, readMethod, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+    invokeRead(mg, type, sourceSchema, targetSchema, Type.getType(Object.class));
+    mg.returnValue();
+    mg.endMethod();
+  }
+
+  /**
+   * Returns the read method for the given type and schemas. The same method will be returned if the same
+   * type and schemas have been passed to the method before. The generated method has signature
+   * {@code (Decoder)} and returns either a primitive type, if the type is primitive, or {@link Object}.
+   */
+  private Method getReadMethod(TypeToken<?> type, Schema sourceSchema, Schema targetSchema) {
+    String key = String.format("%s%s%s", normalizeTypeName(type),
+                               sourceSchema.getSchemaHash(), targetSchema.getSchemaHash());
+
+    Method method = readMethods.get(key);
+    if (method != null) {
+      return method;
+    }
+
+    Type returnType = getReadType(type, targetSchema);
+    method = new Method("read" + key, returnType, new Type[] {DECODER_TYPE});
+
+    // Put the method into map first before generating the body in order to support recursive data type.
+    readMethods.put(key, method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+    generateReadBody(mg, type, sourceSchema, targetSchema, returnType, key);
+    mg.endMethod();
+
+    return method;
+  }
+
+  /**
+   * Generates the read method body. The generated code always ends with either a return or a throw.
+   */
+  private void generateReadBody(GeneratorAdapter mg, TypeToken<?> type, Schema sourceSchema,
+                                Schema targetSchema, Type returnType, String key) {
+    Schema.Type sourceType = sourceSchema.getType();
+    Schema.Type targetType = targetSchema.getType();
+
+    if (sourceType == Schema.Type.UNION) {
+      readUnion(mg, type, sourceSchema, targetSchema, returnType);
+      return;
+    }
+
+    if (targetType == Schema.Type.UNION) {
+      // Pick the first target schema in the union that the source schema can be resolved to
+      Schema resolvedSchema = findResolvableSchema(sourceSchema, targetSchema);
+      if (resolvedSchema == null) {
+        throwResolveFailure(mg, sourceSchema, targetSchema);
+        return;
+      }
+      invokeRead(mg, type, sourceSchema, resolvedSchema, returnType);
+      mg.returnValue();
+      return;
+    }
+
+    if (!canResolve(sourceSchema, targetSchema, Sets.<String>newHashSet())) {
+      throwResolveFailure(mg, sourceSchema, targetSchema);
+      return;
+    }
+
+    switch (sourceType) {
+      case NULL:
+        mg.loadArg(0);
+        mg.invokeInterface(DECODER_TYPE, getMethod(Object.class, "readNull"));
+        mg.returnValue();
+        break;
+      case BYTES:
+        readBytes(mg, type);
+        break;
+      case ENUM:
+        readEnum(mg, type, sourceSchema, targetSchema, key);
+        break;
+      case ARRAY:
+        readArray(mg, type, sourceSchema, targetSchema);
+        break;
+      case MAP:
+        readMap(mg, type, sourceSchema, targetSchema);
+        break;
+      case RECORD:
+        readRecord(mg, type, sourceSchema, targetSchema);
+        break;
+      default:
+        readSimple(mg, type, sourceType, targetType, returnType);
+    }
+  }
+
+  /**
+   * Generates code for reading simple types, with conversion from the source type to the target type.
+   */
+  private void readSimple(GeneratorAdapter mg, TypeToken<?> type, Schema.Type sourceType,
+                          Schema.Type targetType, Type returnType) {
+    Class<?> rawType = type.getRawType();
+    if (rawType.isPrimitive() && (rawType == boolean.class) != (targetType == Schema.Type.BOOLEAN)) {
+      throw new IllegalArgumentException("Cannot read " + targetType + " into " + type);
+    }
+    Type valueType = readPrimitive(mg, sourceType);
+
+    if (targetType == Schema.Type.STRING) {
+      if (sourceType != Schema.Type.STRING) {
+        // String.valueOf(value)
+        mg.invokeStatic(Type.getType(String.class),
+                        new Method("valueOf", Type.getType(String.class), new Type[] {valueType}));
+      } else if (URI.class.equals(rawType)) {
+        mg.invokeStatic(Type.getType(URI.class), getMethod(URI.class, "create", String.class));
+      } else if (URL.class.equals(rawType)) {
+        mg.invokeStatic(SUPPORT_TYPE, getMethod(URL.class, "toURL", String.class));
+      }
+      mg.returnValue();
+      return;
+    }
+
+    // Widen the value to the target schema type
+    Type targetValueType = getPrimitiveType(targetType);
+    mg.cast(valueType, targetValueType);
+    valueType = targetValueType;
+
+    // Then cast to the primitive type of the field, e.g. byte, char or short are written as int
+    Class<?> primitiveType = Primitives.unwrap(rawType);
+    if (primitiveType.isPrimitive() && primitiveType != void.class
+      && primitiveType != boolean.class && targetType != Schema.Type.BOOLEAN) {
+      Type fieldValueType = Type.getType(primitiveType);
+      mg.cast(valueType, fieldValueType);
+      valueType = fieldValueType;
+    }
+
+    convert(mg, valueType, returnType);
+    mg.returnValue();
+  }
+
+  /**
+   * Generates code for reading bytes.
+   */
+  private void readBytes(GeneratorAdapter mg, TypeToken<?> type) {
+    mg.loadArg(0);
+    mg.invokeInterface(DECODER_TYPE, getMethod(ByteBuffer.class, "readBytes"));
+
+    Class<?> rawType = type.getRawType();
+    if (byte[].class.equals(rawType)) {
+      mg.invokeStatic(SUPPORT_TYPE, getMethod(byte[].class, "toBytes", ByteBuffer.class));
+    } else if (UUID.class.equals(rawType)) {
+      mg.invokeStatic(SUPPORT_TYPE, getMethod(Object.class, "toUUID", ByteBuffer.class));
+    }
+    mg.returnValue();
+  }
+
+  /**
+   * Generates code for reading enum. The enum index in the source schema is mapped to the enum constant through
+   * an array created in the constructor.
+   */
+  private void readEnum(GeneratorAdapter mg, TypeToken<?> type, Schema sourceSchema,
+                        Schema targetSchema, String key) {
+    Class<?> rawType = type.getRawType();
+    if (!rawType.isEnum()) {
+      throw new IllegalArgumentException("Only enum type is supported for enum value, but got " + type);
+    }
+    preservedClasses.add(rawType);
+
+    Set<String> targetValues = targetSchema.getEnumValues();
+    String[] names = new String[sourceSchema.getEnumValues().size()];
+    for (int i = 0; i < names.length; i++) {
+      String value = sourceSchema.getEnumValue(i);
+      names[i] = targetValues.contains(value) ? value : null;
+    }
+    String fieldName = "enum$" + key;
+    enumMappingRequests.put(fieldName, Maps.<Class<?>, String[]>immutableEntry(rawType, names));
+
+    // return DatumReaderSupport.getEnum(this.enumMapping, decoder.readInt());
+    mg.loadThis();
+    mg.getField(classType, fieldName, OBJECT_ARRAY_TYPE);
+    mg.loadArg(0);
+    mg.invokeInterface(DECODER_TYPE, getMethod(int.class, "readInt"));
+    mg.invokeStatic(SUPPORT_TYPE, getMethod(Object.class, "getEnum", Object[].class, int.class));
+    mg.returnValue();
+  }
+
+  /**
+   * Generates code for reading array into either a java array or a {@link Collection}.
+   */
+  private void readArray(final GeneratorAdapter mg, TypeToken<?> type, Schema sourceSchema, Schema targetSchema) {
+    TypeToken<?> componentType;
+    if (type.isArray()) {
+      componentType = type.getComponentType();
+    } else if (Collection.class.isAssignableFrom(type.getRawType())) {
+      componentType = TypeToken.of(getTypeArguments(type)[0]);
+    } else {
+      throw new IllegalArgumentException("Only array or collection type is supported for array value, but got "
+                                           + type);
+    }
+
+    final Type collectionType = Type.getType(Collection.class);
+    final int collection = mg.newLocal(collectionType);
+    if (type.isArray()) {
+      mg.newInstance(Type.getType(ArrayList.class));
+      mg.dup();
+      mg.invokeConstructor(Type.getType(ArrayList.class), getMethod(void.class, "<init>"));
+    } else {
+      createInstance(mg, type.getRawType());
+      mg.checkCast(collectionType);
+    }
+    mg.storeLocal(collection);
+
+    final Method readComponent = getReadMethod(componentType, sourceSchema.getComponentSchema(),
+                                               targetSchema.getComponentSchema());
+    // collection.add(readComponent(decoder)) for each element
+    readBlocks(mg, new Runnable() {
+      @Override
+      public void run() {
+        mg.loadLocal(collection);
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.invokeVirtual(classType, readComponent);
+        convert(mg, readComponent.getReturnType(), Type.getType(Object.class));
+        mg.invokeInterface(collectionType, getMethod(boolean.class, "add", Object.class));
+        mg.pop();
+      }
+    });
+
+    mg.loadLocal(collection);
+    if (type.isArray()) {
+      pushClass(mg, componentType.getRawType());
+      mg.invokeStatic(SUPPORT_TYPE, getMethod(Object.class, "toArray", Collection.class, Class.class));
+    }
+    mg.returnValue();
+  }
+
+  /**
+   * Generates code for reading map.
+   */
+  private void readMap(final GeneratorAdapter mg, TypeToken<?> type, Schema sourceSchema, Schema targetSchema) {
+    if (!Map.class.isAssignableFrom(type.getRawType())) {
+      throw new IllegalArgumentException("Only map type is supported for map value, but got " + type);
+    }
+    java.lang.reflect.Type[] typeArgs = getTypeArguments(type);
+
+    final Type mapType = Type.getType(Map.class);
+    final int map = mg.newLocal(mapType);
+    createInstance(mg, type.getRawType());
+    mg.checkCast(mapType);
+    mg.storeLocal(map);
+
+    Map.Entry<Schema, Schema> sourceEntry = sourceSchema.getMapSchema();
+    Map.Entry<Schema, Schema> targetEntry = targetSchema.getMapSchema();
+    final Method readKey = getReadMethod(TypeToken.of(typeArgs[0]), sourceEntry.getKey(), targetEntry.getKey());
+    final Method readValue = getReadMethod(TypeToken.of(typeArgs[1]), sourceEntry.getValue(), targetEntry.getValue());
+
+    // map.put(readKey(decoder), readValue(decoder)) for each entry
+    readBlocks(mg, new Runnable() {
+      @Override
+      public void run() {
+        mg.loadLocal(map);
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.invokeVirtual(classType, readKey);
+        convert(mg, readKey.getReturnType(), Type.getType(Object.class));
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.invokeVirtual(classType, readValue);
+        convert(mg, readValue.getReturnType(), Type.getType(Object.class));
+        mg.invokeInterface(mapType, getMethod(Object.class, "put", Object.class, Object.class));
+        mg.pop();
+      }
+    });
+
+    mg.loadLocal(map);
+    mg.returnValue();
+  }
+
+  /**
+   * Generates code for reading record. Fields in the source schema that are missing in the target schema are
+   * skipped.
+   */
+  private void readRecord(GeneratorAdapter mg, TypeToken<?> type, Schema sourceSchema, Schema targetSchema) {
+    Class<?> rawType = type.getRawType();
+    int record = mg.newLocal(Type.getType(Object.class));
+    createInstance(mg, rawType);
+    mg.storeLocal(record);
+
+    for (Schema.Field sourceField : sourceSchema.getFields()) {
+      Schema.Field targetField = targetSchema.getField(sourceField.getName());
+      if (targetField == null) {
+        mg.loadThis();
+        mg.loadArg(0);
+        mg.invokeVirtual(classType, getSkipMethod(sourceField.getSchema()));
+        continue;
+      }
+
+      String fieldName = sourceField.getName();
+      TypeToken<?> fieldType;
+      try {
+        Field field = Fields.findField(type.getType(), fieldName);
+        fieldType = type.resolveType(field.getGenericType());
+      } catch (NoSuchFieldException e) {
+        throw new IllegalArgumentException("Field " + fieldName + " not found in " + type, e);
+      }
+      fieldAccessorRequests.put(type, fieldName);
+
+      // this.fieldAccessor.setXXX(record, readField(decoder));
+      mg.loadThis();
+      mg.getField(classType, getFieldAccessorName(type, fieldName), Type.getType(FieldAccessor.class));
+      mg.loadLocal(record);
+      mg.loadThis();
+      mg.loadArg(0);
+      Method readField = getReadMethod(fieldType, sourceField.getSchema(), targetField.getSchema());
+      mg.invokeVirtual(classType, readField);
+
+      Class<?> fieldRawType = fieldType.getRawType();
+      if (fieldRawType.isPrimitive()) {
+        Type fieldValueType = Type.getType(fieldRawType);
+        convert(mg, readField.getReturnType(), fieldValueType);
+        String setter = String.format("set%c%s", Character.toUpperCase(fieldRawType.getName().charAt(0)),
+                                      fieldRawType.getName().substring(1));
+        mg.invokeInterface(Type.getType(FieldAccessor.class),
+                           getMethod(void.class, setter, Object.class, fieldRawType));
+      } else {
+        convert(mg, readField.getReturnType(), Type.getType(Object.class));
+        mg.invokeInterface(Type.getType(FieldAccessor.class),
+                           getMethod(void.class, "set", Object.class, Object.class));
+      }
+    }
+
+    mg.loadLocal(record);
+    mg.returnValue();
+  }
+
+  /**
+   * Generates code for reading union. The target schema for each union index is resolved at generation time.
+   */
+  private void readUnion(final GeneratorAdapter mg, final TypeToken<?> type, final Schema sourceSchema,
+                         final Schema targetSchema, final Type returnType) {
+    final List<Schema> unionSchemas = sourceSchema.getUnionSchemas();
+    int[] indices = new int[unionSchemas.size()];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = i;
+    }
+
+    mg.loadArg(0);
+    mg.invokeInterface(DECODER_TYPE, getMethod(int.class, "readInt"));
+    mg.tableSwitch(indices, new TableSwitchGenerator() {
+      @Override
+      public void generateCase(int key, Label end) {
+        Schema sourceValueSchema = unionSchemas.get(key);
+        Schema targetValueSchema = targetSchema;
+        if (targetSchema.getType() == Schema.Type.UNION) {
+          // Try the target schema at the same index first, then try all target schemas.
+          targetValueSchema = null;
+          if (key < targetSchema.getUnionSchemas().size()) {
+            Schema schema = targetSchema.getUnionSchema(key);
+            if (schema.getType() == sourceValueSchema.getType()
+              && canResolve(sourceValueSchema, schema, Sets.<String>newHashSet())) {
+              targetValueSchema = schema;
+            }
+          }
+          if (targetValueSchema == null) {
+            targetValueSchema = findResolvableSchema(sourceValueSchema, targetSchema);
+          }
+        }
+        if (targetValueSchema == null) {
+          throwResolveFailure(mg, sourceSchema, targetSchema);
+          return;
+        }
+        invokeRead(mg, type, sourceValueSchema, targetValueSchema, returnType);
+        mg.returnValue();
+      }
+
+      @Override
+      public void generateDefault() {
+        // Fall through to the end
+      }
+    });
+    mg.throwException(Type.getType(IOException.class), "Invalid union index.");
+  }
+
+  /**
+   * Returns the skip method for the given schema. The generated method has signature {@code void (Decoder)}.
+   */
+  private Method getSkipMethod(Schema schema) {
+    String key = schema.getSchemaHash().toString();
+    Method method = skipMethods.get(key);
+    if (method != null) {
+      return method;
+    }
+
+    method = new Method("skip" + key, Type.VOID_TYPE, new Type[] {DECODER_TYPE});
+
+    // Put the method into map first before generating the body in order to support recursive data type.
+    skipMethods.put(key, method);
+
+    GeneratorAdapter mg = new GeneratorAdapter(Opcodes.ACC_PRIVATE, method, null,
+                                               new Type[] {Type.getType(IOException.class)}, classWriter);
+    generateSkipBody(mg, schema);
+    mg.returnValue();
+    mg.endMethod();
+
+    return method;
+  }
+
+  /**
+   * Generates the skip method body.
+   */
+  private void generateSkipBody(final GeneratorAdapter mg, Schema schema) {
+    switch (schema.getType()) {
+      case NULL:
+        break;
+      case BOOLEAN:
+      case INT:
+      case LONG:
+      case ENUM:
+        Type valueType = readPrimitive(mg, schema.getType() == Schema.Type.ENUM ? Schema.Type.INT : schema.getType());
+        if (valueType.getSize() == 2) {
+          mg.pop2();
+        } else {
+          mg.pop();
+        }
+        break;
+      case FLOAT:
+        invokeSkip(mg, "skipFloat");
+        break;
+      case DOUBLE:
+        invokeSkip(mg, "skipDouble");
+        break;
+      case BYTES:
+        invokeSkip(mg, "skipBytes");
+        break;
+      case STRING:
+        invokeSkip(mg, "skipString");
+        break;
+      case ARRAY:
+        final Method skipComponent = getSkipMethod(schema.getComponentSchema());
+        readBlocks(mg, new Runnable() {
+          @Override
+          public void run() {
+            mg.loadThis();
+            mg.loadArg(0);
+            mg.invokeVirtual(classType, skipComponent);
+          }
+        });
+        break;
+      case MAP:
+        final Method skipKey = getSkipMethod(schema.getMapSchema().getKey());
+        final Method skipValue = getSkipMethod(schema.getMapSchema().getValue());
+        readBlocks(mg, new Runnable() {
+          @Override
+          public void run() {
+            mg.loadThis();
+            mg.loadArg(0);
+            mg.invokeVirtual(classType, skipKey);
+            mg.loadThis();
+            mg.loadArg(0);
+            mg.invokeVirtual(classType, skipValue);
+          }
+        });
+        break;
+      case RECORD:
+        for (Schema.Field field : schema.getFields()) {
+          mg.loadThis();
+          mg.loadArg(0);
+          mg.invokeVirtual(classType, getSkipMethod(field.getSchema()));
+        }
+        break;
+      case UNION:
+        final List<Schema> unionSchemas = schema.getUnionSchemas();
+        int[] indices = new int[unionSchemas.size()];
+        for (int i = 0; i < indices.length; i++) {
+          indices[i] = i;
+        }
+        mg.loadArg(0);
+        mg.invokeInterface(DECODER_TYPE, getMethod(int.class, "readInt"));
+        mg.tableSwitch(indices, new TableSwitchGenerator() {
+          @Override
+          public void generateCase(int key, Label end) {
+            mg.loadThis();
+            mg.loadArg(0);
+            mg.invokeVirtual(classType, getSkipMethod(unionSchemas.get(key)));
+            mg.goTo(end);
+          }
+
+          @Override
+          public void generateDefault() {
+            mg.throwException(Type.getType(IOException.class), "Invalid union index.");
+          }
+        });
+        break;
+    }
+  }
+
+  /**
+   * Generates a loop for reading the blocks of array or map. The given {@link Runnable} is called to generate the
+   * code for reading each element.
+   */
+  private void readBlocks(GeneratorAdapter mg, Runnable readElement) {
+    int len = mg.newLocal(Type.INT_TYPE);
+    int idx = mg.newLocal(Type.INT_TYPE);
+    Label blockStart = mg.newLabel();
+    Label elementStart = mg.newLabel();
+    Label end = mg.newLabel();
+
+    // while ((len = decoder.readInt()) != 0)
+    mg.mark(blockStart);
+    mg.loadArg(0);
+    mg.invokeInterface(DECODER_TYPE, getMethod(int.class, "readInt"));
+    mg.storeLocal(len);
+    mg.loadLocal(len);
+    mg.ifZCmp(GeneratorAdapter.EQ, end);
+
+    // for (int idx = 0; idx < len; idx++)
+    mg.push(0);
+    mg.storeLocal(idx);
+    mg.mark(elementStart);
+    mg.loadLocal(idx);
+    mg.loadLocal(len);
+    mg.ifICmp(GeneratorAdapter.GE, blockStart);
+
+    readElement.run();
+
+    mg.iinc(idx, 1);
+    mg.goTo(elementStart);
+    mg.mark(end);
+  }
+
+  /**
+   * Generates code for calling the read method of the given type and schemas, leaving the result of the given
+   * type on the stack.
+   */
+  private void invokeRead(GeneratorAdapter mg, TypeToken<?> type, Schema sourceSchema,
+                          Schema targetSchema, Type resultType) {
+    Method method = getReadMethod(type, sourceSchema, targetSchema);
+    mg.loadThis();
+    mg.loadArg(0);
+    mg.invokeVirtual(classType, method);
+    convert(mg, method.getReturnType(), resultType);
+  }
+
+  /**
+   * Generates code for reading a primitive value or string from the decoder.
+   *
+   * @return the type of the value left on the stack
+   */
+  private Type readPrimitive(GeneratorAdapter mg, Schema.Type schemaType) {
+    mg.loadArg(0);
+    switch (schemaType) {
+      case BOOLEAN:
+        mg.invokeInterface(DECODER_TYPE, getMethod(boolean.class, "readBool"));
+        return Type.BOOLEAN_TYPE;
+      case INT:
+        mg.invokeInterface(DECODER_TYPE, getMethod(int.class, "readInt"));
+        return Type.INT_TYPE;
+      case LONG:
+        mg.invokeInterface(DECODER_TYPE, getMethod(long.class, "readLong"));
+        return Type.LONG_TYPE;
+      case FLOAT:
+        mg.invokeInterface(DECODER_TYPE, getMethod(float.class, "readFloat"));
+        return Type.FLOAT_TYPE;
+      case DOUBLE:
+        mg.invokeInterface(DECODER_TYPE, getMethod(double.class, "readDouble"));
+        return Type.DOUBLE_TYPE;
+      case STRING:
+        mg.invokeInterface(DECODER_TYPE, getMethod(String.class, "readString"));
+        return Type.getType(String.class);
+    }
+    throw new IllegalArgumentException("Not a simple type " + schemaType);
+  }
+
+  private void invokeSkip(GeneratorAdapter mg, String methodName) {
+    mg.loadArg(0);
+    mg.invokeInterface(DECODER_TYPE, getMethod(void.class, methodName));
+  }
+
+  /**
+   * Generates code for boxing or unboxing the value on the stack if needed.
+   */
+  private void convert(GeneratorAdapter mg, Type from, Type to) {
+    if (from.equals(to)) {
+      return;
+    }
+    if (to.getSort() == Type.OBJECT) {
+      mg.valueOf(from);
+    } else {
+      mg.unbox(to);
+    }
+  }
+
+  /**
+   * Generates code for creating a new instance of the given type through an {@link Instantiator}.
+   */
+  private void createInstance(GeneratorAdapter mg, Class<?> rawType) {
+    String fieldName = "instantiator$" + normalizeTypeName(TypeToken.of(rawType));
+    instantiatorRequests.put(fieldName, rawType);
+    preservedClasses.add(rawType);
+    mg.loadThis();
+    mg.getField(classType, fieldName, INSTANTIATOR_TYPE);
+    mg.invokeInterface(INSTANTIATOR_TYPE, getMethod(Object.class, "create"));
+  }
+
+  private void throwResolveFailure(GeneratorAdapter mg, Schema sourceSchema, Schema targetSchema) {
+    mg.throwException(Type.getType(IOException.class),
+                      String.format("Fails to resolve %s to %s", sourceSchema.getType(), targetSchema.getType()));
+  }
+
+  /**
+   * Returns the first schema in the given target union schema that the given source schema can be resolved to,
+   * or {@code null} if none is found.
+   */
+  @Nullable
+  private Schema findResolvableSchema(Schema sourceSchema, Schema targetSchema) {
+    for (Schema schema : targetSchema.getUnionSchemas()) {
+      if (canResolve(sourceSchema, schema, Sets.<String>newHashSet())) {
+        return schema;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether data of the source schema can be resolved to the target schema.
+   *
+   * @param seen set of source and target schema hashes that are being checked, for handling recursive schema
+   */
+  private boolean canResolve(Schema sourceSchema, Schema targetSchema, Set<String> seen) {
+    Schema.Type sourceType = sourceSchema.getType();
+    Schema.Type targetType = targetSchema.getType();
+
+    if (sourceType == Schema.Type.UNION) {
+      for (Schema schema : sourceSchema.getUnionSchemas()) {
+        if (canResolve(schema, targetSchema, seen)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (targetType == Schema.Type.UNION) {
+      for (Schema schema : targetSchema.getUnionSchemas()) {
+        if (canResolve(sourceSchema, schema, seen)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    switch (sourceType) {
+      case BOOLEAN:
+        return targetType == Schema.Type.BOOLEAN || targetType == Schema.Type.STRING;
+      case INT:
+        return targetType == Schema.Type.INT || targetType == Schema.Type.LONG || targetType == Schema.Type.FLOAT
+          || targetType == Schema.Type.DOUBLE || targetType == Schema.Type.STRING;
+      case LONG:
+        return targetType == Schema.Type.LONG || targetType == Schema.Type.FLOAT
+          || targetType == Schema.Type.DOUBLE || targetType == Schema.Type.STRING;
+      case FLOAT:
+        return targetType == Schema.Type.FLOAT || targetType == Schema.Type.DOUBLE
+          || targetType == Schema.Type.STRING;
+      case DOUBLE:
+        return targetType == Schema.Type.DOUBLE || targetType == Schema.Type.STRING;
+      case STRING:
+        return targetType == Schema.Type.STRING;
+    }
+
+    if (sourceType != targetType) {
+      return false;
+    }
+    if (!seen.add(sourceSchema.getSchemaHash().toString() + targetSchema.getSchemaHash().toString())) {
+      return true;
+    }
+
+    switch (sourceType) {
+      case ARRAY:
+        return canResolve(sourceSchema.getComponentSchema(), targetSchema.getComponentSchema(), seen);
+      case MAP:
+        return canResolve(sourceSchema.getMapSchema().getKey(), targetSchema.getMapSchema().getKey(), seen)
+          && canResolve(sourceSchema.getMapSchema().getValue(), targetSchema.getMapSchema().getValue(), seen);
+      case RECORD:
+        for (Schema.Field sourceField : sourceSchema.getFields()) {
+          Schema.Field targetField = targetSchema.getField(sourceField.getName());
+          if (targetField != null && !canResolve(sourceField.getSchema(), targetField.getSchema(), seen)) {
+            return false;
+          }
+        }
+        return true;
+      default:
+        // NULL, BYTES and ENUM
+        return true;
+    }
+  }
+
+  /**
+   * Returns the return type of the read method. It is the primitive type if the data type is primitive and
+   * the target schema is a simple numeric or boolean type. Otherwise it is {@link Object}.
+   */
+  private Type getReadType(TypeToken<?> type, Schema targetSchema) {
+    Class<?> rawType = type.getRawType();
+    switch (targetSchema.getType()) {
+      case BOOLEAN:
+      case INT:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return rawType.isPrimitive() ? Type.getType(rawType) : Type.getType(Object.class);
+      default:
+        return Type.getType(Object.class);
+    }
+  }
+
+  private Type getPrimitiveType(Schema.Type schemaType) {
+    switch (schemaType) {
+      case BOOLEAN:
+        return Type.BOOLEAN_TYPE;
+      case INT:
+        return Type.INT_TYPE;
+      case LONG:
+        return Type.LONG_TYPE;
+      case FLOAT:
+        return Type.FLOAT_TYPE;
+      case DOUBLE:
+        return Type.DOUBLE_TYPE;
+    }
+    throw new IllegalArgumentException("Not a primitive type " + schemaType);
+  }
+
+  private java.lang.reflect.Type[] getTypeArguments(TypeToken<?> type) {
+    if (!(type.getType() instanceof ParameterizedType)) {
+      throw new IllegalArgumentException("Only parameterized type is supported, but got " + type);
+    }
+    return ((ParameterizedType) type.getType()).getActualTypeArguments();
+  }
+
+  /**
+   * Generates code for pushing the {@link Class} of the given type to the stack.
+   */
+  private void pushClass(GeneratorAdapter mg, Class<?> cls) {
+    if (cls.isPrimitive()) {
+      mg.getStatic(Type.getType(Primitives.wrap(cls)), "TYPE", Type.getType(Class.class));
+      return;
+    }
+    Class<?> elementType = cls;
+    while (elementType.isArray()) {
+      elementType = elementType.getComponentType();
+    }
+    if (!elementType.isPrimitive()) {
+      preservedClasses.add(elementType);
+    }
+    mg.push(Type.getType(cls));
+  }
+
+  /**
+   * Generates code for pushing {@code TypeToken.of(Class.forName("className"))} to the stack.
+   */
+  private void pushTypeToken(GeneratorAdapter mg, Class<?> cls) {
+    mg.push(cls.getName());
+    mg.invokeStatic(Type.getType(Class.class), getMethod(Class.class, "forName", String.class));
+    mg.invokeStatic(Type.getType(TypeToken.class), getMethod(TypeToken.class, "of", Class.class));
+  }
+
+  private <T> TypeToken<DatumReader<T>> getInterfaceType(TypeToken<T> type) {
+    return new TypeToken<DatumReader<T>>() {
+    }.where(new TypeParameter<T>() {
+    }, type);
+  }
+
+  private String getClassName(TypeToken<?> interfaceType, Schema sourceSchema, Schema targetSchema) {
+    return String.format("%s/%s%s%s%s",
+                         interfaceType.getRawType().getPackage().getName().replace('.', '/'),
+                         normalizeTypeName(TypeToken.of(((ParameterizedType) interfaceType.getType())
+                                                          .getActualTypeArguments()[0])),
+                         interfaceType.getRawType().getSimpleName(),
+                         sourceSchema.getSchemaHash(), targetSchema.getSchemaHash());
+  }
+
+  private String normalizeTypeName(TypeToken<?> type) {
+    String typeName = type.toString();
+    int dimension = 0;
+    while (type.isArray()) {
+      type = type.getComponentType();
+      typeName = type.toString();
+      dimension++;
+    }
+
+    typeName = typeName.replace(".", "")
+                        .replace("<", "Of")
+                        .replace(">", "")
+                        .replace(",", "To")
+                        .replace(" ", "")
+                        .replace("$", "")
+                        .replace("?", "");
+    if (dimension > 0) {
+      typeName = "Array" + dimension + typeName;
+    }
+    return typeName;
+  }
+
+  private Method getMethod(Class<?> returnType, String name, Class<?>...args) {
+    return Methods.getMethod(returnType, name, args);
+  }
+
+  /**
+   * Generates the name of the class field for storing {@link FieldAccessor} for the given record field.
+   */
+  private String getFieldAccessorName(TypeToken<?> recordType, String fieldName) {
+    return String.format("%s$%s", normalizeTypeName(recordType), fieldName);
+  }
+}
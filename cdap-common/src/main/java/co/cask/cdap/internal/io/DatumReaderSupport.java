@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.io;
+
+import com.google.common.primitives.Longs;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Helper methods called by the {@link co.cask.cdap.common.io.DatumReader} classes generated by
+ * {@link DatumReaderGenerator}. The conversions are the same as the ones done by {@link ReflectionDatumReader}.
+ * This class has to be public since the generated classes are defined in a different ClassLoader.
+ */
+public final class DatumReaderSupport {
+
+  /**
+   * Returns the remaining content of the given {@link ByteBuffer} as byte array.
+   */
+  public static byte[] toBytes(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      byte[] array = buffer.array();
+      if (buffer.remaining() == array.length) {
+        return array;
+      }
+      byte[] bytes = new byte[buffer.remaining()];
+      System.arraycopy(array, buffer.arrayOffset() + buffer.position(), bytes, 0, buffer.remaining());
+      return bytes;
+    }
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Returns a {@link UUID} if the given {@link ByteBuffer} has exactly 16 bytes remaining, otherwise returns
+   * the buffer itself.
+   */
+  public static Object toUUID(ByteBuffer buffer) {
+    if (buffer.remaining() == Longs.BYTES * 2) {
+      return new UUID(buffer.getLong(), buffer.getLong());
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns a {@link URL} created from the given string.
+   */
+  public static URL toURL(String str) throws MalformedURLException {
+    return new URL(str);
+  }
+
+  /**
+   * Copies the elements of the given {@link Collection} to a new array of the given component type.
+   */
+  public static Object toArray(Collection<?> collection, Class<?> componentType) {
+    Object array = Array.newInstance(componentType, collection.size());
+    int idx = 0;
+    for (Object obj : collection) {
+      Array.set(array, idx++, obj);
+    }
+    return array;
+  }
+
+  /**
+   * Creates an array for mapping enum index in the source schema to the enum constant.
+   *
+   * @param enumType the enum class
+   * @param names names of the enum values in the source schema, indexed by the enum index. A {@code null} entry
+   *              means the value is missing in the target schema
+   * @return an array containing the enum constants, indexed by the enum index in the source schema
+   */
+  public static Object[] createEnumMapping(Class<?> enumType, String[] names) {
+    Object[] constants = enumType.getEnumConstants();
+    Object[] mapping = new Object[names.length];
+    for (int i = 0; i < names.length; i++) {
+      if (names[i] == null) {
+        continue;
+      }
+      for (Object constant : constants) {
+        if (((Enum<?>) constant).name().equals(names[i])) {
+          mapping[i] = constant;
+          break;
+        }
+      }
+      if (mapping[i] == null) {
+        throw new IllegalArgumentException("Enum value '" + names[i] + "' missing in " + enumType);
+      }
+    }
+    return mapping;
+  }
+
+  /**
+   * Returns the enum constant for the given enum index from the mapping created by
+   * {@link #createEnumMapping(Class, String[])}.
+   */
+  public static Object getEnum(Object[] mapping, int idx) throws IOException {
+    if (idx < 0 || idx >= mapping.length) {
+      throw new IOException("Invalid enum index " + idx);
+    }
+    Object value = mapping[idx];
+    if (value == null) {
+      throw new IOException("Enum value at index " + idx + " missing in target.");
+    }
+    return value;
+  }
+
+  private DatumReaderSupport() {
+  }
+}
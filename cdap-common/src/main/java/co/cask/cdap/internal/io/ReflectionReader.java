@@ -46,7 +46,8 @@ public abstract class ReflectionReader<FROM, TO> {
 
   protected ReflectionReader(Schema schema, TypeToken<TO> type) {
     this.creatorFactory = new InstantiatorFactory(true);
-    this.creators = Maps.newIdentityHashMap();
+    // concurrent, so that a reader can be shared by multiple threads
+    this.creators = Maps.newConcurrentMap();
     this.fieldAccessorFactory = new ReflectionFieldAccessorFactory();
     this.schema = schema;
     this.type = type;
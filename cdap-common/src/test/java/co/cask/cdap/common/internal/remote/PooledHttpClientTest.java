@@ -0,0 +1,236 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.common.internal.remote;
+
+import co.cask.common.http.HttpRequest;
+import co.cask.common.http.HttpRequestConfig;
+import co.cask.common.http.HttpRequests;
+import co.cask.common.http.HttpResponse;
+import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HttpResponder;
+import co.cask.http.NettyHttpService;
+import com.google.common.collect.Iterables;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+
+/**
+ * Tests for {@link PooledHttpClient}.
+ */
+public class PooledHttpClientTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PooledHttpClientTest.class);
+  private static final HttpRequestConfig REQUEST_CONFIG = new HttpRequestConfig(5000, 5000, false);
+
+  private static NettyHttpService httpService;
+  private static PooledHttpClient client;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    httpService = NettyHttpService.builder("pooled-http-client-test")
+      .setHost("localhost")
+      .setHttpHandlers(new TestHandler())
+      .setExecThreadPoolSize(10)
+      .build();
+    httpService.start();
+    client = new PooledHttpClient(4, 8);
+  }
+
+  @AfterClass
+  public static void finish() throws Exception {
+    client.close();
+    httpService.stop();
+  }
+
+  @Test
+  public void testRequests() throws Exception {
+    HttpResponse response = client.execute(HttpRequest.get(getURL("/ping")).build(), REQUEST_CONFIG);
+    Assert.assertEquals(200, response.getResponseCode());
+    Assert.assertEquals("pong", response.getResponseBodyAsString());
+
+    response = client.execute(HttpRequest.post(getURL("/echo")).addHeader("X-Echo", "header")
+                                .withBody("body").build(), REQUEST_CONFIG);
+    Assert.assertEquals(200, response.getResponseCode());
+    Assert.assertEquals("body", response.getResponseBodyAsString());
+    Assert.assertEquals("header", Iterables.getOnlyElement(response.getHeaders().get("X-Echo")));
+
+    response = client.execute(HttpRequest.get(getURL("/unknown")).build(), REQUEST_CONFIG);
+    Assert.assertEquals(404, response.getResponseCode());
+  }
+
+  @Test
+  public void testConnectionClose() throws Exception {
+    // The server closes the connection after each response, which shouldn't affect later requests
+    for (int i = 0; i < 10; i++) {
+      HttpResponse response = client.execute(HttpRequest.get(getURL("/close")).build(), REQUEST_CONFIG);
+      Assert.assertEquals(200, response.getResponseCode());
+      Assert.assertEquals("closed", response.getResponseBodyAsString());
+    }
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+    try {
+      client.execute(HttpRequest.get(getURL("/sleep?millis=2000")).build(), new HttpRequestConfig(5000, 200, false));
+      Assert.fail("Expected read timeout");
+    } catch (SocketTimeoutException e) {
+      // expected
+    }
+    HttpResponse response = client.execute(HttpRequest.get(getURL("/ping")).build(), REQUEST_CONFIG);
+    Assert.assertEquals("pong", response.getResponseBodyAsString());
+  }
+
+  /**
+   * Compares requests per second and latency of {@link HttpRequests}, which uses {@link java.net.HttpURLConnection},
+   * and {@link PooledHttpClient}.
+   */
+  @Test
+  public void testThroughput() throws Exception {
+    final URL url = getURL("/ping");
+    RequestExecutor urlConnection = new RequestExecutor() {
+      @Override
+      public HttpResponse execute(HttpRequest request) throws Exception {
+        return HttpRequests.execute(request, REQUEST_CONFIG);
+      }
+    };
+    RequestExecutor pooled = new RequestExecutor() {
+      @Override
+      public HttpResponse execute(HttpRequest request) throws Exception {
+        return client.execute(request, REQUEST_CONFIG);
+      }
+    };
+
+    // Warm up both clients before measuring
+    measure("warm up HttpURLConnection", urlConnection, url, 4, 200);
+    measure("warm up pooled", pooled, url, 4, 200);
+    measure("HttpURLConnection", urlConnection, url, 4, 2500);
+    measure("pooled", pooled, url, 4, 2500);
+  }
+
+  private void measure(String name, final RequestExecutor executor, final URL url,
+                       int threads, final int requestsPerThread) throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<long[]>> futures = new ArrayList<>();
+      long startTime = System.nanoTime();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executorService.submit(new Callable<long[]>() {
+          @Override
+          public long[] call() throws Exception {
+            long[] latencies = new long[requestsPerThread];
+            for (int i = 0; i < requestsPerThread; i++) {
+              long requestStart = System.nanoTime();
+              HttpResponse response = executor.execute(HttpRequest.get(url).build());
+              latencies[i] = System.nanoTime() - requestStart;
+              Assert.assertEquals(200, response.getResponseCode());
+            }
+            return latencies;
+          }
+        }));
+      }
+
+      long[] latencies = new long[threads * requestsPerThread];
+      int idx = 0;
+      for (Future<long[]> future : futures) {
+        long[] threadLatencies = future.get();
+        System.arraycopy(threadLatencies, 0, latencies, idx, threadLatencies.length);
+        idx += threadLatencies.length;
+      }
+      long elapsedNanos = System.nanoTime() - startTime;
+      Arrays.sort(latencies);
+
+      LOG.info("{}: {} requests/s, p50 latency {} us, p99 latency {} us", name,
+               latencies.length * TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+               TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length / 2]),
+               TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length * 99 / 100]));
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private URL getURL(String path) throws Exception {
+    InetSocketAddress address = httpService.getBindAddress();
+    return new URL(String.format("http://%s:%d%s", address.getHostName(), address.getPort(), path));
+  }
+
+  /**
+   * Executes a request with one of the clients being compared.
+   */
+  private interface RequestExecutor {
+    HttpResponse execute(HttpRequest request) throws Exception;
+  }
+
+  /**
+   * Handler for the test.
+   */
+  public static final class TestHandler extends AbstractHttpHandler {
+
+    @GET
+    @Path("/ping")
+    public void ping(FullHttpRequest request, HttpResponder responder) {
+      responder.sendString(HttpResponseStatus.OK, "pong");
+    }
+
+    @POST
+    @Path("/echo")
+    public void echo(FullHttpRequest request, HttpResponder responder) {
+      responder.sendByteArray(HttpResponseStatus.OK, ByteBufUtil.getBytes(request.content()),
+                              new DefaultHttpHeaders().set("X-Echo", request.headers().get("X-Echo")));
+    }
+
+    @GET
+    @Path("/close")
+    public void close(FullHttpRequest request, HttpResponder responder) {
+      responder.sendString(HttpResponseStatus.OK, "closed",
+                           new DefaultHttpHeaders().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE));
+    }
+
+    @GET
+    @Path("/sleep")
+    public void sleep(FullHttpRequest request, HttpResponder responder,
+                      @QueryParam("millis") long millis) throws InterruptedException {
+      TimeUnit.MILLISECONDS.sleep(millis);
+      responder.sendString(HttpResponseStatus.OK, "slept");
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.common.service;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.Service;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link ServiceGraph}.
+ */
+public class ServiceGraphTest {
+
+  @Test
+  public void testDependencyOrder() throws Exception {
+    List<String> started = Collections.synchronizedList(new ArrayList<>());
+    ServiceStartupTimes startupTimes = new ServiceStartupTimes();
+
+    // Services are added in an order different than the dependency order
+    ServiceGraph.builder()
+      .addService("c", createService("c", started), "b")
+      .addService("b", createService("b", started), "a")
+      .addTask("d", () -> started.add("d"), "a", "c")
+      .addService("a", createService("a", started))
+      .setStartupTimes(startupTimes)
+      .build()
+      .start();
+
+    Assert.assertEquals(Arrays.asList("a", "b", "c", "d"), started);
+    Assert.assertEquals(Arrays.asList("a", "b", "c", "d"), new ArrayList<>(startupTimes.getAll().keySet()));
+  }
+
+  @Test(timeout = 10000)
+  public void testConcurrentStart() throws Exception {
+    // Both tasks can only complete if they are running concurrently
+    CountDownLatch latch = new CountDownLatch(2);
+    ServiceGraph.Task task = () -> {
+      latch.countDown();
+      Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    };
+    List<String> started = Collections.synchronizedList(new ArrayList<>());
+    ServiceGraph graph = ServiceGraph.builder()
+      .addTask("a", task)
+      .addTask("b", task)
+      .addService("c", createService("c", started), "a", "b")
+      .build();
+    graph.start();
+
+    Assert.assertEquals(Collections.singletonList("c"), started);
+    Assert.assertEquals(3, graph.getStartupTimes().getAll().size());
+  }
+
+  @Test
+  public void testStartFailure() {
+    List<String> started = Collections.synchronizedList(new ArrayList<>());
+    ServiceGraph graph = ServiceGraph.builder()
+      .addTask("failure", () -> {
+        throw new IllegalStateException("failure");
+      })
+      .addService("dependent", createService("dependent", started), "failure")
+      .addService("independent", createService("independent", started))
+      .build();
+    try {
+      graph.start();
+      Assert.fail("Expected start failure");
+    } catch (Exception e) {
+      Assert.assertTrue(e instanceof IllegalStateException);
+      Assert.assertEquals(0, e.getSuppressed().length);
+    }
+
+    // The independent service should still be started, while the dependent one should not
+    Assert.assertEquals(Collections.singletonList("independent"), started);
+    Assert.assertEquals(Collections.singleton("independent"), graph.getStartupTimes().getAll().keySet());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCyclicDependency() {
+    ServiceGraph.builder()
+      .addTask("a", () -> { }, "c")
+      .addTask("b", () -> { }, "a")
+      .addTask("c", () -> { }, "b")
+      .build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownDependency() {
+    ServiceGraph.builder()
+      .addTask("a", () -> { }, "b")
+      .build();
+  }
+
+  private Service createService(String name, List<String> started) {
+    return new AbstractIdleService() {
+      @Override
+      protected void startUp() throws Exception {
+        started.add(name);
+      }
+
+      @Override
+      protected void shutDown() throws Exception {
+        // no-op
+      }
+    };
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.io;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.data.schema.UnsupportedTypeException;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.internal.io.ASMDatumReaderFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.internal.io.ReflectionDatumWriter;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link ASMDatumReaderFactory}.
+ */
+public class ASMDatumReaderFactoryTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ASMDatumReaderFactoryTest.class);
+  private static final ASMDatumReaderFactory DATUM_READER_FACTORY =
+    new ASMDatumReaderFactory(new ASMFieldAccessorFactory());
+
+  /**
+   * Enum for testing.
+   */
+  public enum TestEnum {
+    VALUE1, VALUE2, VALUE3, VALUE4
+  }
+
+  /**
+   * Enum with the same values as {@link TestEnum}, but in different order.
+   */
+  public enum ReorderedEnum {
+    VALUE4, VALUE2, VALUE1, VALUE3
+  }
+
+  /**
+   * Record for testing different data types.
+   */
+  public static final class Record {
+    private boolean bool;
+    private byte b;
+    private short s;
+    private int i;
+    private long l;
+    private float f;
+    private double d;
+    private String str;
+    private TestEnum testEnum;
+    private List<String> list;
+    private Set<Integer> set;
+    private Map<String, Long> map;
+    private int[] ints;
+    private String[] strs;
+    private UUID uuid;
+    private byte[] bytes;
+    private URI uri;
+    private Node node;
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Record other = (Record) o;
+      return bool == other.bool && b == other.b && s == other.s && i == other.i && l == other.l
+        && f == other.f && d == other.d && Objects.equal(str, other.str) && testEnum == other.testEnum
+        && Objects.equal(list, other.list) && Objects.equal(set, other.set) && Objects.equal(map, other.map)
+        && Arrays.equals(ints, other.ints) && Arrays.equals(strs, other.strs) && Objects.equal(uuid, other.uuid)
+        && Arrays.equals(bytes, other.bytes) && Objects.equal(uri, other.uri) && Objects.equal(node, other.node);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(str, i, l);
+    }
+  }
+
+  /**
+   * Recursive record.
+   */
+  public static final class Node {
+    private int value;
+    private Node next;
+
+    Node(int value, Node next) {
+      this.value = value;
+      this.next = next;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Node other = (Node) o;
+      return value == other.value && Objects.equal(next, other.next);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(value, next);
+    }
+  }
+
+  /**
+   * Old version of a record for testing schema evolution.
+   */
+  public static final class RecordV1 {
+    private int count;
+    private float ratio;
+    private String name;
+    private List<Integer> values;
+    private Node removed;
+    private TestEnum testEnum;
+    private int number;
+  }
+
+  /**
+   * New version of a record for testing schema evolution.
+   */
+  public static final class RecordV2 {
+    private long count;
+    private double ratio;
+    private String name;
+    private List<Long> values;
+    private String added;
+    private ReorderedEnum testEnum;
+    private String number;
+  }
+
+  @Test
+  public void testRecord() throws Exception {
+    Record record = new Record();
+    record.bool = true;
+    record.b = (byte) 12;
+    record.s = (short) 1234;
+    record.i = 123456;
+    record.l = Long.MAX_VALUE;
+    record.f = 1.5f;
+    record.d = 3.14d;
+    record.str = "string";
+    record.testEnum = TestEnum.VALUE3;
+    record.list = ImmutableList.of("a", "b", "c");
+    record.set = ImmutableSet.of(1, 2, 3);
+    record.map = ImmutableMap.of("k1", 1L, "k2", 2L);
+    record.ints = new int[] {1, 2, 3, 4};
+    record.strs = new String[] {"x", null, "z"};
+    record.uuid = UUID.randomUUID();
+    record.bytes = new byte[] {1, 2, 3};
+    record.uri = URI.create("http://localhost/test");
+    record.node = new Node(1, new Node(2, new Node(3, null)));
+
+    TypeToken<Record> type = TypeToken.of(Record.class);
+    Schema schema = getSchema(type);
+    byte[] encoded = encode(schema, record);
+
+    Assert.assertEquals(record, decode(DATUM_READER_FACTORY.create(type, schema), schema, encoded));
+
+    // Nulls and empty collections
+    record = new Record();
+    record.list = ImmutableList.of();
+    encoded = encode(schema, record);
+    Assert.assertEquals(record, decode(DATUM_READER_FACTORY.create(type, schema), schema, encoded));
+  }
+
+  @Test
+  public void testSimpleTypes() throws Exception {
+    Assert.assertEquals(Integer.valueOf(10), readAs(Schema.of(Schema.Type.INT), 10,
+                                                    Schema.of(Schema.Type.INT), TypeToken.of(Integer.class)));
+    Assert.assertEquals(Long.valueOf(10L), readAs(Schema.of(Schema.Type.INT), 10,
+                                                  Schema.of(Schema.Type.LONG), TypeToken.of(Long.class)));
+    Assert.assertEquals(Double.valueOf(1.5d), readAs(Schema.of(Schema.Type.FLOAT), 1.5f,
+                                                     Schema.of(Schema.Type.DOUBLE), TypeToken.of(Double.class)));
+    Assert.assertEquals("10", readAs(Schema.of(Schema.Type.LONG), 10L,
+                                     Schema.of(Schema.Type.STRING), TypeToken.of(String.class)));
+    Assert.assertEquals("true", readAs(Schema.of(Schema.Type.BOOLEAN), true,
+                                       Schema.of(Schema.Type.STRING), TypeToken.of(String.class)));
+
+    // Resolve to union
+    Schema nullableLong = Schema.nullableOf(Schema.of(Schema.Type.LONG));
+    Assert.assertEquals(Long.valueOf(5L), readAs(Schema.of(Schema.Type.INT), 5,
+                                                 nullableLong, TypeToken.of(Long.class)));
+    Assert.assertNull(readAs(Schema.nullableOf(Schema.of(Schema.Type.INT)), null,
+                             nullableLong, TypeToken.of(Long.class)));
+
+    // Fails to resolve
+    try {
+      readAs(Schema.of(Schema.Type.STRING), "10", Schema.of(Schema.Type.INT), TypeToken.of(Integer.class));
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSchemaEvolution() throws Exception {
+    RecordV1 recordV1 = new RecordV1();
+    recordV1.count = 10;
+    recordV1.ratio = 0.5f;
+    recordV1.name = "name";
+    recordV1.values = ImmutableList.of(1, 2, 3);
+    recordV1.removed = new Node(1, new Node(2, null));
+    recordV1.testEnum = TestEnum.VALUE2;
+    recordV1.number = 100;
+
+    Schema sourceSchema = getSchema(TypeToken.of(RecordV1.class));
+    byte[] encoded = encode(sourceSchema, recordV1);
+
+    TypeToken<RecordV2> type = TypeToken.of(RecordV2.class);
+    Schema targetSchema = getSchema(type);
+    RecordV2 recordV2 = decode(DATUM_READER_FACTORY.create(type, targetSchema), sourceSchema, encoded);
+
+    Assert.assertEquals(10L, recordV2.count);
+    Assert.assertEquals(0.5d, recordV2.ratio, 0.0001d);
+    Assert.assertEquals("name", recordV2.name);
+    Assert.assertEquals(ImmutableList.of(1L, 2L, 3L), recordV2.values);
+    Assert.assertNull(recordV2.added);
+    Assert.assertEquals(ReorderedEnum.VALUE2, recordV2.testEnum);
+    Assert.assertEquals("100", recordV2.number);
+
+    // Should be the same as the reflection based reader
+    RecordV2 expected = decode(new ReflectionDatumReader<>(targetSchema, type), sourceSchema, encoded);
+    Assert.assertEquals(expected.count, recordV2.count);
+    Assert.assertEquals(expected.ratio, recordV2.ratio, 0.0001d);
+    Assert.assertEquals(expected.values, recordV2.values);
+    Assert.assertEquals(expected.testEnum, recordV2.testEnum);
+    Assert.assertEquals(expected.number, recordV2.number);
+
+    // The same reader can read data written with different schemas
+    DatumReader<RecordV2> reader = DATUM_READER_FACTORY.create(type, targetSchema);
+    RecordV2 source = new RecordV2();
+    source.count = 20L;
+    source.name = "v2";
+    source.testEnum = ReorderedEnum.VALUE4;
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals("name", decode(reader, sourceSchema, encoded).name);
+      recordV2 = decode(reader, targetSchema, encode(targetSchema, source));
+      Assert.assertEquals(20L, recordV2.count);
+      Assert.assertEquals("v2", recordV2.name);
+      Assert.assertEquals(ReorderedEnum.VALUE4, recordV2.testEnum);
+    }
+  }
+
+  @Test
+  public void testReadPerformance() throws Exception {
+    // Compares the read throughput of the generated reader against the reflection based reader
+    Record record = new Record();
+    record.i = 1234;
+    record.l = 5678L;
+    record.d = 1.5d;
+    record.str = "performance";
+    record.testEnum = TestEnum.VALUE4;
+    record.list = ImmutableList.of("a", "b", "c", "d", "e");
+    record.map = ImmutableMap.of("k1", 1L, "k2", 2L, "k3", 3L);
+    record.ints = new int[] {1, 2, 3, 4, 5, 6, 7, 8};
+    record.node = new Node(1, new Node(2, null));
+
+    TypeToken<Record> type = TypeToken.of(Record.class);
+    Schema schema = getSchema(type);
+    byte[] encoded = encode(schema, record);
+
+    DatumReader<Record> asmReader = DATUM_READER_FACTORY.create(type, schema);
+    DatumReader<Record> reflectionReader = new ReflectionDatumReader<>(schema, type);
+    Assert.assertEquals(record, decode(asmReader, schema, encoded));
+    Assert.assertEquals(record, decode(reflectionReader, schema, encoded));
+
+    int count = 20000;
+    for (int round = 0; round < 2; round++) {
+      long asmTime = timeRead(asmReader, schema, encoded, count);
+      long reflectionTime = timeRead(reflectionReader, schema, encoded, count);
+      LOG.info("Read {} records. ASM: {} ms, Reflection: {} ms", count,
+               TimeUnit.NANOSECONDS.toMillis(asmTime), TimeUnit.NANOSECONDS.toMillis(reflectionTime));
+    }
+  }
+
+  private long timeRead(DatumReader<Record> reader, Schema schema, byte[] encoded, int count) throws IOException {
+    long startTime = System.nanoTime();
+    for (int i = 0; i < count; i++) {
+      decode(reader, schema, encoded);
+    }
+    return System.nanoTime() - startTime;
+  }
+
+  private <T> Schema getSchema(TypeToken<T> type) throws UnsupportedTypeException {
+    return new ReflectionSchemaGenerator().generate(type.getType());
+  }
+
+  private <T> T readAs(Schema sourceSchema, Object value, Schema targetSchema, TypeToken<T> type) throws IOException {
+    return decode(DATUM_READER_FACTORY.create(type, targetSchema), sourceSchema, encode(sourceSchema, value));
+  }
+
+  private byte[] encode(Schema schema, Object value) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new ReflectionDatumWriter<>(schema).encode(value, new BinaryEncoder(os));
+    return os.toByteArray();
+  }
+
+  private <T> T decode(DatumReader<T> reader, Schema sourceSchema, byte[] encoded) throws IOException {
+    return reader.read(new BinaryDecoder(new ByteArrayInputStream(encoded)), sourceSchema);
+  }
+}
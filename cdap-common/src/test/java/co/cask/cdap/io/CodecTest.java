@@ -18,22 +18,32 @@ package co.cask.cdap.io;
 
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.ByteArrayBinaryEncoder;
+import co.cask.cdap.common.io.ByteBufferBinaryDecoder;
 import co.cask.cdap.common.io.Decoder;
 import co.cask.cdap.common.io.Encoder;
 import org.junit.Assert;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
  */
 public class CodecTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(CodecTest.class);
+
   @Test
   public void testCodec() throws IOException {
     PipedOutputStream output = new PipedOutputStream();
@@ -124,4 +134,142 @@ public class CodecTest {
     Assert.assertEquals(1024, inBuf.get());
     Assert.assertEquals(9999999, inBuf.get());
   }
+
+  @Test
+  public void testBufferCodec() throws IOException {
+    // The buffer based encoder should produce the same bytes as the stream based one
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    writeValues(new BinaryEncoder(output));
+    ByteArrayBinaryEncoder encoder = new ByteArrayBinaryEncoder(1);
+    writeValues(encoder);
+    Assert.assertArrayEquals(output.toByteArray(), encoder.toByteArray());
+
+    // Both decoders should be able to decode it
+    readValues(new BinaryDecoder(new ByteArrayInputStream(encoder.toByteArray())));
+    ByteBufferBinaryDecoder decoder = new ByteBufferBinaryDecoder(encoder.toByteBuffer());
+    readValues(decoder);
+    Assert.assertEquals(0, decoder.remaining());
+
+    // Decode from a buffer with non-zero offset and from a direct buffer
+    byte[] bytes = new byte[encoder.size() + 10];
+    System.arraycopy(encoder.toByteArray(), 0, bytes, 5, encoder.size());
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, 5, encoder.size()).slice();
+    readValues(decoder.reset(buffer));
+    Assert.assertEquals(0, decoder.remaining());
+
+    ByteBuffer directBuffer = ByteBuffer.allocateDirect(encoder.size());
+    directBuffer.put(encoder.toByteBuffer()).flip();
+    readValues(decoder.reset(directBuffer));
+    Assert.assertEquals(encoder.size(), directBuffer.remaining());
+
+    // Reading past the end should fail
+    encoder.reset();
+    encoder.writeInt(Integer.MAX_VALUE);
+    decoder.reset(encoder.toByteArray(), 0, encoder.size() - 1);
+    try {
+      decoder.readInt();
+      Assert.fail("Expected EOFException");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReadBytesSlice() throws IOException {
+    ByteArrayBinaryEncoder encoder = new ByteArrayBinaryEncoder();
+    encoder.writeBytes(new byte[] {1, 2, 3});
+    encoder.writeInt(10);
+
+    byte[] encoded = encoder.toByteArray();
+    ByteBufferBinaryDecoder decoder = new ByteBufferBinaryDecoder(encoded);
+    ByteBuffer bytes = decoder.readBytes();
+    Assert.assertEquals(10, decoder.readInt());
+
+    // The bytes read should share the same array as the encoded bytes
+    Assert.assertSame(encoded, bytes.array());
+    Assert.assertEquals(3, bytes.remaining());
+    Assert.assertEquals(1, bytes.get());
+    Assert.assertEquals(2, bytes.get());
+    Assert.assertEquals(3, bytes.get());
+  }
+
+  @Test
+  public void testDecodePerformance() throws IOException {
+    // Compares the decode throughput of the buffer based decoder against the stream based one
+    ByteArrayBinaryEncoder encoder = new ByteArrayBinaryEncoder();
+    for (int i = 0; i < 1000; i++) {
+      encoder.writeInt(i * 1000).writeLong((long) i * Integer.MAX_VALUE).writeDouble(i * 0.5d);
+      encoder.writeString("metric.name." + i);
+    }
+    byte[] encoded = encoder.toByteArray();
+
+    int count = 200;
+    for (int round = 0; round < 2; round++) {
+      long startTime = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        decodeAll(new BinaryDecoder(new ByteArrayInputStream(encoded)));
+      }
+      long streamTime = System.nanoTime() - startTime;
+
+      startTime = System.nanoTime();
+      ByteBufferBinaryDecoder decoder = new ByteBufferBinaryDecoder();
+      for (int i = 0; i < count; i++) {
+        decodeAll(decoder.reset(encoded));
+      }
+      long bufferTime = System.nanoTime() - startTime;
+
+      LOG.info("Decoded {} bytes {} times. BinaryDecoder: {} ms, ByteBufferBinaryDecoder: {} ms",
+               encoded.length, count, TimeUnit.NANOSECONDS.toMillis(streamTime),
+               TimeUnit.NANOSECONDS.toMillis(bufferTime));
+    }
+  }
+
+  private void decodeAll(Decoder decoder) throws IOException {
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(i * 1000, decoder.readInt());
+      Assert.assertEquals((long) i * Integer.MAX_VALUE, decoder.readLong());
+      decoder.readDouble();
+      decoder.skipString();
+    }
+  }
+
+  private void writeValues(Encoder encoder) throws IOException {
+    encoder.writeBool(true).writeBool(false);
+    for (int i : new int[] {0, -1, 1234, -1234, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      encoder.writeInt(i);
+    }
+    for (long l : new long[] {0, -20, 30000, -600000, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      encoder.writeLong(l);
+    }
+    encoder.writeFloat(3.14f).writeFloat(Float.MIN_VALUE);
+    encoder.writeDouble(Math.E).writeDouble(Double.MAX_VALUE);
+    encoder.writeString("This is a testing message");
+    encoder.writeString(Character.toString((char) 200) + Character.toString((char) 20000));
+    encoder.writeBytes(new byte[] {1, 2, 3, 4}, 1, 2);
+    encoder.writeBytes(ByteBuffer.wrap(new byte[] {5, 6, 7}));
+    encoder.writeString("skip").writeFloat(1.0f).writeDouble(2.0d).writeInt(42);
+  }
+
+  private void readValues(Decoder decoder) throws IOException {
+    Assert.assertTrue(decoder.readBool());
+    Assert.assertFalse(decoder.readBool());
+    for (int i : new int[] {0, -1, 1234, -1234, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+      Assert.assertEquals(i, decoder.readInt());
+    }
+    for (long l : new long[] {0, -20, 30000, -600000, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE}) {
+      Assert.assertEquals(l, decoder.readLong());
+    }
+    Assert.assertEquals(3.14f, decoder.readFloat(), 0.0000001f);
+    Assert.assertEquals(Float.MIN_VALUE, decoder.readFloat(), 0.0000001f);
+    Assert.assertEquals(Math.E, decoder.readDouble(), 0.0000001d);
+    Assert.assertEquals(Double.MAX_VALUE, decoder.readDouble(), 0.0000001d);
+    Assert.assertEquals("This is a testing message", decoder.readString());
+    Assert.assertEquals(Character.toString((char) 200) + Character.toString((char) 20000), decoder.readString());
+    Assert.assertEquals(ByteBuffer.wrap(new byte[] {2, 3}), decoder.readBytes());
+    Assert.assertEquals(ByteBuffer.wrap(new byte[] {5, 6, 7}), decoder.readBytes());
+    decoder.skipString();
+    decoder.skipFloat();
+    decoder.skipDouble();
+    Assert.assertEquals(42, decoder.readInt());
+  }
 }
@@ -218,6 +218,48 @@ public abstract class StreamConsumerTestBase {
     consumer1.close();
   }
 
+  @Test
+  public void testHasData() throws Exception {
+    String stream = "testHasData";
+    StreamId streamId = TEST_NAMESPACE.stream(stream);
+    StreamAdmin streamAdmin = getStreamAdmin();
+    streamAdmin.create(streamId);
+    StreamConfig streamConfig = streamAdmin.getConfig(streamId);
+
+    writeEvents(streamConfig, "Testing ", 5);
+
+    StreamConsumer consumer = getConsumerFactory().create(streamId, "has.data",
+                                                          new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null));
+    TransactionContext txContext = createTxContext(consumer);
+
+    // Before the first poll, it always reports having data
+    Assert.assertTrue(consumer.hasData());
+
+    txContext.start();
+    Assert.assertEquals(5, Iterables.size(consumer.poll(5, 1, TimeUnit.SECONDS)));
+    txContext.finish();
+
+    // All events in the stream file are consumed
+    Assert.assertFalse(consumer.hasData());
+
+    // Writes to a new stream file, which should be detected
+    writeEvents(streamConfig, "Testing more ", 2);
+    Assert.assertTrue(consumer.hasData());
+
+    // A rolled back poll should be reported as having data
+    txContext.start();
+    Assert.assertEquals(2, Iterables.size(consumer.poll(2, 1, TimeUnit.SECONDS)));
+    txContext.abort();
+    Assert.assertTrue(consumer.hasData());
+
+    txContext.start();
+    Assert.assertEquals(2, Iterables.size(consumer.poll(2, 1, TimeUnit.SECONDS)));
+    txContext.finish();
+    Assert.assertFalse(consumer.hasData());
+
+    consumer.close();
+  }
+
   @Test
   public void testFIFOReconfigure() throws Exception {
     String stream = "testReconfigure";
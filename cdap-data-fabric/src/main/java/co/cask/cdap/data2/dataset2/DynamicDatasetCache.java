@@ -25,6 +25,7 @@ import co.cask.cdap.api.dataset.DatasetDefinition;
 import co.cask.cdap.common.lang.ClassLoaders;
 import co.cask.cdap.data.dataset.SystemDatasetInstantiator;
 import co.cask.cdap.data2.metadata.lineage.AccessType;
+import co.cask.cdap.data2.transaction.AbstractTransactionContext;
 import co.cask.cdap.data2.transaction.TransactionContextFactory;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.base.Objects;
@@ -229,7 +230,7 @@ public abstract class DynamicDatasetCache implements DatasetContext, AutoCloseab
    * @return a new transaction context
    */
   @Override
-  public abstract TransactionContext newTransactionContext() throws TransactionFailureException;
+  public abstract AbstractTransactionContext newTransactionContext() throws TransactionFailureException;
 
   /**
    * Dismiss the current transaction context. This releases the references to the context's
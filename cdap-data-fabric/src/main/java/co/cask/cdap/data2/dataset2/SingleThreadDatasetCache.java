@@ -263,7 +263,7 @@ public class SingleThreadDatasetCache extends DynamicDatasetCache {
   }
 
   @Override
-  public TransactionContext newTransactionContext() throws TransactionFailureException {
+  public AbstractTransactionContext newTransactionContext() throws TransactionFailureException {
     if (txContext != null && txContext.getCurrentTransaction() != null) {
       throw new TransactionFailureException("Attempted to start a transaction within active transaction " +
                                               txContext.getCurrentTransaction().getTransactionId());
@@ -45,25 +45,31 @@ import co.cask.cdap.api.dataset.lib.PartitionMetadata;
 import co.cask.cdap.api.dataset.lib.PartitionOutput;
 import co.cask.cdap.api.dataset.lib.PartitionedFileSet;
 import co.cask.cdap.api.dataset.lib.PartitionedFileSetArguments;
+import co.cask.cdap.api.dataset.lib.PartitionedFileSetProperties;
 import co.cask.cdap.api.dataset.lib.Partitioning;
 import co.cask.cdap.api.dataset.lib.Partitioning.FieldType;
 import co.cask.cdap.api.dataset.lib.partitioned.PartitionKeyCodec;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Put;
 import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.logging.LogSamplers;
 import co.cask.cdap.common.logging.Loggers;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data.RuntimeProgramContext;
 import co.cask.cdap.data.RuntimeProgramContextAware;
 import co.cask.cdap.data2.dataset2.lib.file.FileSetDataset;
+import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.explore.client.ExploreFacade;
 import co.cask.cdap.proto.id.DatasetId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -79,8 +85,10 @@ import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -129,6 +137,8 @@ public class PartitionedFileSetDataset extends AbstractDataset
   private static final byte[] LAST_MODIFICATION_TIME_COL = { 'm' };
   private static final byte[] RELATIVE_PATH = { 'p' };
   private static final byte[] METADATA_PREFIX = { 'm', '.' };
+  // prefix of the columns that store the values of indexed partitioning fields
+  private static final String INDEXED_FIELD_PREFIX = "i.";
 
   protected final FileSet files;
   protected final DatasetSpecification spec;
@@ -137,6 +147,7 @@ public class PartitionedFileSetDataset extends AbstractDataset
   protected final Map<String, String> runtimeArguments;
   protected final Partitioning partitioning;
   private final IndexedTable partitionsTable;
+  private final Set<String> indexedFields;
   private final Provider<ExploreFacade> exploreFacadeProvider;
 
   private final DatasetId datasetInstanceId;
@@ -164,6 +175,7 @@ public class PartitionedFileSetDataset extends AbstractDataset
     this.exploreEnabled = FileSetProperties.isExploreEnabled(spec.getProperties());
     this.runtimeArguments = arguments;
     this.partitioning = partitioning;
+    this.indexedFields = PartitionedFileSetProperties.getIndexedFields(spec.getProperties());
     this.exploreFacadeProvider = exploreFacadeProvider;
     this.datasetInstanceId = new DatasetId(datasetContext.getNamespaceId(), name);
   }
@@ -356,6 +368,7 @@ public class PartitionedFileSetDataset extends AbstractDataset
     if (!appending) {
       put.add(RELATIVE_PATH, Bytes.toBytes(path));
       put.add(CREATION_TIME_COL, nowInMillis);
+      addIndexedFieldsToPut(key, put);
     }
     put.add(LAST_MODIFICATION_TIME_COL, nowInMillis);
 
@@ -372,6 +385,64 @@ public class PartitionedFileSetDataset extends AbstractDataset
     }
   }
 
+  @WriteOnly
+  @Override
+  public void addPartitions(Map<PartitionKey, String> partitions) {
+    if (partitions.isEmpty()) {
+      return;
+    }
+    // validate all keys and check for existing partitions with a single batch read before writing anything
+    List<PartitionKey> keys = new ArrayList<>(partitions.keySet());
+    List<Get> gets = new ArrayList<>(keys.size());
+    for (PartitionKey key : keys) {
+      gets.add(new Get(generateRowKey(key, partitioning)));
+    }
+    List<Row> rows = partitionsTable.get(gets);
+    for (int i = 0; i < rows.size(); i++) {
+      if (!rows.get(i).isEmpty()) {
+        throw new PartitionAlreadyExistsException(getName(), keys.get(i));
+      }
+    }
+
+    byte[] nowInMillis = Bytes.toBytes(System.currentTimeMillis());
+    for (int i = 0; i < keys.size(); i++) {
+      PartitionKey key = keys.get(i);
+      String path = partitions.get(key);
+      LOG.debug("Creating partition with key {} and path {} to dataset {}", key, path, getName());
+      AddPartitionOperation operation = new AddPartitionOperation(key, path, false);
+      operationsInThisTx.add(operation);
+
+      Put put = new Put(gets.get(i).getRow());
+      put.add(RELATIVE_PATH, Bytes.toBytes(path));
+      put.add(CREATION_TIME_COL, nowInMillis);
+      put.add(LAST_MODIFICATION_TIME_COL, nowInMillis);
+      addIndexedFieldsToPut(key, put);
+      put.add(WRITE_PTR_COL, tx.getWritePointer());
+      partitionsTable.put(put);
+
+      addPartitionToExplore(key, path);
+      operation.setExplorePartitionCreated();
+    }
+  }
+
+  /**
+   * Adds the values of the indexed partitioning fields to the given {@link Put}, so that they get indexed
+   * by the partitions table.
+   */
+  private void addIndexedFieldsToPut(PartitionKey key, Put put) {
+    for (String fieldName : indexedFields) {
+      put.add(Bytes.toBytes(getIndexColumn(fieldName)),
+              FieldTypes.toBytes(key.getField(fieldName), partitioning.getFields().get(fieldName)));
+    }
+  }
+
+  /**
+   * Returns the name of the column that stores the value of the given indexed partitioning field.
+   */
+  static String getIndexColumn(String fieldName) {
+    return INDEXED_FIELD_PREFIX + fieldName;
+  }
+
   @ReadWrite
   @Override
   public PartitionConsumerResult consumePartitions(PartitionConsumerState partitionConsumerState) {
@@ -757,43 +828,117 @@ public class PartitionedFileSetDataset extends AbstractDataset
   // if decodeMetadata is false, null is passed as the PartitionMetadata to the PartitionConsumer,
   // for efficiency reasons, since the metadata is not always needed
   protected void getPartitions(@Nullable PartitionFilter filter, PartitionConsumer consumer, boolean decodeMetadata) {
-    byte[] startKey = generateStartKey(filter);
-    byte[] endKey = generateStopKey(filter);
-    getPartitions(filter, consumer, decodeMetadata, startKey, endKey, Long.MAX_VALUE);
+    try (Scanner scanner = createPartitionsScanner(filter)) {
+      getPartitions(scanner, filter, consumer, decodeMetadata, Long.MAX_VALUE);
+    }
   }
 
   private void getPartitions(@Nullable PartitionFilter filter, PartitionConsumer consumer, boolean decodeMetadata,
                              @Nullable byte[] startKey, @Nullable byte[] endKey, long limit) {
-    long count = 0L;
     try (Scanner scanner = partitionsTable.scan(startKey, endKey)) {
-      while (count < limit) {
-        Row row = scanner.next();
-        if (row == null) {
-          break;
-        }
-        PartitionKey key;
-        try {
-          key = parseRowKey(row.getRow(), partitioning);
-        } catch (IllegalArgumentException e) {
-          LOG.debug(String.format("Failed to parse row key for partitioned file set '%s': %s",
-                                  getName(), Bytes.toStringBinary(row.getRow())));
-          continue;
-        }
-        if (filter != null && !filter.match(key)) {
-          continue;
-        }
-        byte[] pathBytes = row.get(RELATIVE_PATH);
-        if (pathBytes != null) {
-          consumer.consume(key, Bytes.toString(pathBytes), decodeMetadata ? metadataFromRow(row) : null);
-        }
-        count++;
+      getPartitions(scanner, filter, consumer, decodeMetadata, limit);
+    }
+  }
+
+  private void getPartitions(Scanner scanner, @Nullable PartitionFilter filter, PartitionConsumer consumer,
+                             boolean decodeMetadata, long limit) {
+    long count = 0L;
+    while (count < limit) {
+      Row row = scanner.next();
+      if (row == null) {
+        break;
+      }
+      PartitionKey key;
+      try {
+        key = parseRowKey(row.getRow(), partitioning);
+      } catch (IllegalArgumentException e) {
+        LOG.debug(String.format("Failed to parse row key for partitioned file set '%s': %s",
+                                getName(), Bytes.toStringBinary(row.getRow())));
+        continue;
+      }
+      if (filter != null && !filter.match(key)) {
+        continue;
       }
-      if (count == 0) {
-        warnIfInvalidPartitionFilter(filter, partitioning);
+      byte[] pathBytes = row.get(RELATIVE_PATH);
+      if (pathBytes != null) {
+        consumer.consume(key, Bytes.toString(pathBytes), decodeMetadata ? metadataFromRow(row) : null);
       }
+      count++;
+    }
+    if (count == 0) {
+      warnIfInvalidPartitionFilter(filter, partitioning);
     }
   }
 
+  /**
+   * Creates a {@link Scanner} over the rows of the partitions table that can match the given filter. The scan is
+   * narrowed down, in order of preference, by:
+   * <ul>
+   *   <li>a lookup of an indexed partitioning field, if the filter has a condition on such field;</li>
+   *   <li>a {@link FuzzyRowFilter}, if the filter has single value conditions on fields that are not
+   *       leading fields of the row key;</li>
+   *   <li>the start and stop row keys generated from the leading fields.</li>
+   * </ul>
+   * Rows returned by the scanner still need to be matched against the filter.
+   */
+  private Scanner createPartitionsScanner(@Nullable PartitionFilter filter) {
+    // always generate the start and stop keys, as it also validates the filter
+    byte[] startKey = generateStartKey(filter);
+    byte[] endKey = generateStopKey(filter);
+    if (filter == null) {
+      return partitionsTable.scan(startKey, endKey);
+    }
+
+    Scanner scanner = scanByIndex(filter);
+    if (scanner != null) {
+      return scanner;
+    }
+
+    FuzzyRowFilter fuzzyRowFilter = generateFuzzyRowFilter(filter);
+    if (fuzzyRowFilter != null) {
+      return partitionsTable.scan(new Scan(startKey, endKey, fuzzyRowFilter));
+    }
+    return partitionsTable.scan(startKey, endKey);
+  }
+
+  /**
+   * Returns a {@link Scanner} that reads the partitions through the index of an indexed partitioning field, or
+   * {@code null} if the filter has no condition that can use an index. The first partitioning field is never
+   * looked up through the index, because a condition on it already narrows down the scan of the partitions table.
+   */
+  @Nullable
+  private Scanner scanByIndex(PartitionFilter filter) {
+    if (indexedFields.isEmpty()) {
+      return null;
+    }
+    String firstField = partitioning.getFields().keySet().iterator().next();
+    PartitionFilter.Condition<? extends Comparable> rangeCondition = null;
+    for (String fieldName : indexedFields) {
+      PartitionFilter.Condition<? extends Comparable> condition = filter.getCondition(fieldName);
+      if (condition == null || fieldName.equals(firstField)) {
+        continue;
+      }
+      FieldType fieldType = partitioning.getFields().get(fieldName);
+      if (condition.isSingleValue()) {
+        return partitionsTable.readByIndex(Bytes.toBytes(getIndexColumn(fieldName)),
+                                           FieldTypes.toBytes(condition.getValue(), fieldType));
+      }
+      // The byte order of strings is not always the same as the String order, hence only use numeric ranges
+      if (rangeCondition == null && fieldType != FieldType.STRING) {
+        rangeCondition = condition;
+      }
+    }
+    if (rangeCondition == null) {
+      return null;
+    }
+    FieldType fieldType = partitioning.getFields().get(rangeCondition.getFieldName());
+    Comparable lower = rangeCondition.getLower();
+    Comparable upper = rangeCondition.getUpper();
+    return partitionsTable.scanByIndex(Bytes.toBytes(getIndexColumn(rangeCondition.getFieldName())),
+                                       lower == null ? null : FieldTypes.toBytes(lower, fieldType),
+                                       upper == null ? null : FieldTypes.toBytes(upper, fieldType));
+  }
+
   private PartitionMetadata metadataFromRow(Row row) {
     Map<String, String> metadata = new HashMap<>();
     for (Map.Entry<byte[], byte[]> entry : row.getColumns().entrySet()) {
@@ -1306,6 +1451,63 @@ public class PartitionedFileSetDataset extends AbstractDataset
     return stopKey;
   }
 
+  /**
+   * Generates a {@link FuzzyRowFilter} that matches the row keys on the single value conditions of the filter.
+   * Since the position of a field in the row key is only known if all fields before it have a known length,
+   * the fuzzy key covers the fields up to the first string field without a single value condition.
+   *
+   * @return a {@link FuzzyRowFilter}, or {@code null} if the filter has no single value condition after an
+   *         unconstrained field, in which case the start and stop keys already narrow down the scan as much.
+   */
+  @Nullable
+  private FuzzyRowFilter generateFuzzyRowFilter(PartitionFilter filter) {
+    ByteArrayOutputStream fuzzyKey = new ByteArrayOutputStream();
+    ByteArrayOutputStream fuzzyMask = new ByteArrayOutputStream();
+    int fixedLength = 0;
+    boolean hasWildcard = false;
+    boolean needed = false;
+    boolean first = true;
+    for (Map.Entry<String, FieldType> entry : partitioning.getFields().entrySet()) {
+      FieldType fieldType = entry.getValue();
+      PartitionFilter.Condition<? extends Comparable> condition = filter.getCondition(entry.getKey());
+      if (condition == null || !condition.isSingleValue()) {
+        if (fieldType == FieldType.STRING) {
+          break; // the position of the following fields is unknown
+        }
+        if (!first) {
+          appendFuzzy(fuzzyKey, fuzzyMask, new byte[1], false); // the \0 separator
+        }
+        int size = fieldType == FieldType.INT ? Bytes.SIZEOF_INT : Bytes.SIZEOF_LONG;
+        appendFuzzy(fuzzyKey, fuzzyMask, new byte[size], true);
+        hasWildcard = true;
+      } else {
+        if (!first) {
+          appendFuzzy(fuzzyKey, fuzzyMask, new byte[1], false); // the \0 separator
+        }
+        appendFuzzy(fuzzyKey, fuzzyMask, FieldTypes.toBytes(condition.getValue(), fieldType), false);
+        fixedLength = fuzzyKey.size();
+        needed = needed || hasWildcard;
+      }
+      first = false;
+    }
+    if (!needed) {
+      return null;
+    }
+    return new FuzzyRowFilter(ImmutableList.of(ImmutablePair.of(Arrays.copyOf(fuzzyKey.toByteArray(), fixedLength),
+                                                                Arrays.copyOf(fuzzyMask.toByteArray(), fixedLength))));
+  }
+
+  /**
+   * Appends the given bytes to the fuzzy key, and the corresponding mask bytes to the fuzzy mask.
+   */
+  private static void appendFuzzy(ByteArrayOutputStream fuzzyKey, ByteArrayOutputStream fuzzyMask,
+                                  byte[] bytes, boolean wildcard) {
+    fuzzyKey.write(bytes, 0, bytes.length);
+    for (int i = 0; i < bytes.length; i++) {
+      fuzzyMask.write(wildcard ? 1 : 0);
+    }
+  }
+
   @VisibleForTesting
   static PartitionKey parseRowKey(byte[] rowKey, Partitioning partitioning) {
     PartitionKey.Builder builder = PartitionKey.builder();
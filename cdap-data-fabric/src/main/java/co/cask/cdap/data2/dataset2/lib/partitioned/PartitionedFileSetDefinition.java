@@ -47,6 +47,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Defines the partitioned dataset type. At this time, the partitions are not managed by the
@@ -88,7 +89,7 @@ public class PartitionedFileSetDefinition
     // define the columns for indexing on the partitionsTable
     DatasetProperties indexedTableProperties = DatasetProperties.builder()
       .addAll(properties.getProperties())
-      .add(IndexedTable.INDEX_COLUMNS_CONF_KEY, INDEXED_COLS)
+      .add(IndexedTable.INDEX_COLUMNS_CONF_KEY, getIndexedColumns(partitioning, properties.getProperties()))
       .build();
     return DatasetSpecification.builder(instanceName, getName())
       .properties(properties.getProperties())
@@ -113,10 +114,18 @@ public class PartitionedFileSetDefinition
         "Partitioning cannot be changed. Existing: %s, new: %s", oldPartitioning, newPartitioning));
     }
 
+    // validate that the indexed fields are not changing, because existing partitions would not be indexed
+    Set<String> oldIndexedFields = PartitionedFileSetProperties.getIndexedFields(currentSpec.getProperties());
+    Set<String> newIndexedFields = PartitionedFileSetProperties.getIndexedFields(properties.getProperties());
+    if (!oldIndexedFields.equals(newIndexedFields)) {
+      throw new IncompatibleUpdateException(String.format(
+        "Indexed partitioning fields cannot be changed. Existing: %s, new: %s", oldIndexedFields, newIndexedFields));
+    }
+
     // define the columns for indexing on the partitionsTable
     DatasetProperties indexedTableProperties = DatasetProperties.builder()
       .addAll(properties.getProperties())
-      .add(IndexedTable.INDEX_COLUMNS_CONF_KEY, INDEXED_COLS)
+      .add(IndexedTable.INDEX_COLUMNS_CONF_KEY, getIndexedColumns(newPartitioning, properties.getProperties()))
       .build();
     return DatasetSpecification.builder(instanceName, getName())
       .properties(properties.getProperties())
@@ -127,6 +136,22 @@ public class PartitionedFileSetDefinition
       .build();
   }
 
+  /**
+   * Returns the columns of the partitions table to be indexed, which include the columns for the indexed
+   * partitioning fields.
+   *
+   * @throws IllegalArgumentException if an indexed field is not a field of the partitioning
+   */
+  private static String getIndexedColumns(Partitioning partitioning, Map<String, String> properties) {
+    StringBuilder builder = new StringBuilder(INDEXED_COLS);
+    for (String fieldName : PartitionedFileSetProperties.getIndexedFields(properties)) {
+      Preconditions.checkArgument(partitioning.getFields().containsKey(fieldName),
+                                  "Indexed field '%s' is not a field of the partitioning %s", fieldName, partitioning);
+      builder.append(',').append(PartitionedFileSetDataset.getIndexColumn(fieldName));
+    }
+    return builder.toString();
+  }
+
   @Override
   public DatasetAdmin getAdmin(DatasetContext datasetContext, DatasetSpecification spec,
                                ClassLoader classLoader) throws IOException {
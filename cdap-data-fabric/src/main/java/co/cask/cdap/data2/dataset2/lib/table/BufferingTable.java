@@ -105,6 +105,10 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
 
+  // Scanners that read ahead on background threads. The ones not closed by the caller are closed when
+  // the transaction ends, so that their fetch threads don't wait forever for the caller.
+  private final List<PrefetchingScanner> prefetchingScanners = new ArrayList<>();
+
   // the current transaction
   protected Transaction tx;
 
@@ -260,6 +264,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public void close() throws IOException {
     // releasing resources
+    closePrefetchingScanners();
     buff = null;
     toUndo = null;
   }
@@ -338,6 +343,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public boolean commitTx() throws Exception {
+    closePrefetchingScanners();
     if (!buff.isEmpty()) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
@@ -363,6 +369,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   @Override
   public boolean rollbackTx() throws Exception {
+    closePrefetchingScanners();
     buff.clear();
     if (toUndo != null) {
       undo(toUndo);
@@ -372,6 +379,43 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     return true;
   }
 
+  /**
+   * Keeps track of the given {@link PrefetchingScanner} until the transaction ends. Scanners already closed by the
+   * caller are dropped.
+   */
+  private void addPrefetchingScanner(PrefetchingScanner scanner) {
+    synchronized (prefetchingScanners) {
+      Iterator<PrefetchingScanner> iterator = prefetchingScanners.iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().isClosed()) {
+          iterator.remove();
+        }
+      }
+      prefetchingScanners.add(scanner);
+    }
+  }
+
+  /**
+   * Closes all the {@link PrefetchingScanner} opened in the current transaction.
+   */
+  private void closePrefetchingScanners() {
+    List<PrefetchingScanner> scanners;
+    synchronized (prefetchingScanners) {
+      if (prefetchingScanners.isEmpty()) {
+        return;
+      }
+      scanners = new ArrayList<>(prefetchingScanners);
+      prefetchingScanners.clear();
+    }
+    for (PrefetchingScanner scanner : scanners) {
+      try {
+        scanner.close();
+      } catch (Exception e) {
+        LOG.warn("Failed to close scanner of table {}", getTransactionAwareName(), e);
+      }
+    }
+  }
+
   protected void ensureTransactionIsStarted() {
     if (tx == null) {
       throw new DataSetException("Attempt to perform a data operation without a transaction");
@@ -697,7 +741,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     ensureTransactionIsStarted();
     NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = scanBuffer(scan);
     try {
-      return new BufferingScanner(bufferMap, scanPersisted(scan));
+      Scanner persistedScanner = PrefetchingScanner.wrapIfEnabled(scan, scanPersisted(scan));
+      if (persistedScanner instanceof PrefetchingScanner) {
+        addPrefetchingScanner((PrefetchingScanner) persistedScanner);
+      }
+      return new BufferingScanner(bufferMap, persistedScanner);
     } catch (Exception e) {
       LOG.debug("scan failed for table: " + getTransactionAwareName() +
           ", scan: " + scan.toString(), e);
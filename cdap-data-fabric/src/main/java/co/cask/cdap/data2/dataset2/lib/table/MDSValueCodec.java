@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.DatumReader;
+import co.cask.cdap.common.io.DatumWriter;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.io.Encoder;
+import co.cask.cdap.internal.io.DatumReaderFactory;
+import co.cask.cdap.internal.io.DatumWriterFactory;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of the values stored in a {@link MetadataStoreDataset}. Values of each registered type are
+ * encoded with the {@link Schema} of the latest version registered for that type, using {@link DatumWriterFactory}
+ * and {@link DatumReaderFactory}. The encoded value starts with a magic byte followed by the schema version,
+ * so that values written with older schema versions or as JSON can still be decoded.
+ */
+public final class MDSValueCodec {
+
+  // A JSON document never starts with this byte, hence it distinguishes binary values from JSON values
+  private static final byte MAGIC = 0;
+
+  private final Map<Type, List<Schema>> schemas;
+  private final Map<Type, DatumWriter<Object>> writers;
+  private final Map<Type, DatumReader<Object>> readers;
+
+  /**
+   * Creates a {@link Builder} for {@link MDSValueCodec}.
+   */
+  public static Builder builder(DatumWriterFactory writerFactory, DatumReaderFactory readerFactory) {
+    return new Builder(writerFactory, readerFactory);
+  }
+
+  /**
+   * Returns {@code true} if the given serialized value was encoded by a {@link MDSValueCodec}.
+   */
+  public static boolean isEncoded(byte[] serialized) {
+    return serialized.length > 0 && serialized[0] == MAGIC;
+  }
+
+  @SuppressWarnings("unchecked")
+  private MDSValueCodec(DatumWriterFactory writerFactory, DatumReaderFactory readerFactory,
+                        Map<Type, List<Schema>> schemas) {
+    this.schemas = schemas;
+
+    // Both writers and readers are created once per type with the latest schema version. Readers resolve the
+    // schema version a value was written with on every read.
+    Map<Type, DatumWriter<Object>> writers = new HashMap<>();
+    Map<Type, DatumReader<Object>> readers = new HashMap<>();
+    for (Map.Entry<Type, List<Schema>> entry : schemas.entrySet()) {
+      List<Schema> versions = entry.getValue();
+      TypeToken<Object> typeToken = (TypeToken<Object>) TypeToken.of(entry.getKey());
+      writers.put(entry.getKey(), writerFactory.create(typeToken, versions.get(versions.size() - 1)));
+      readers.put(entry.getKey(), readerFactory.create(typeToken, versions.get(versions.size() - 1)));
+    }
+    this.writers = ImmutableMap.copyOf(writers);
+    this.readers = ImmutableMap.copyOf(readers);
+  }
+
+  /**
+   * Returns {@code true} if values of the given type are encoded by this codec.
+   */
+  public boolean canEncode(Type type) {
+    return schemas.containsKey(type);
+  }
+
+  /**
+   * Encodes the given value with the latest schema version of the given type.
+   *
+   * @throws IllegalArgumentException if the given type is not registered to this codec
+   */
+  public byte[] encode(Object value, Type type) throws IOException {
+    DatumWriter<Object> writer = writers.get(type);
+    Preconditions.checkArgument(writer != null, "Type %s is not registered for binary encoding", type);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    os.write(MAGIC);
+    Encoder encoder = new BinaryEncoder(os);
+    encoder.writeInt(schemas.get(type).size());
+    writer.encode(value, encoder);
+    return os.toByteArray();
+  }
+
+  /**
+   * Decodes the given binary value to the given type, resolving the schema version that the value was written
+   * with against the latest schema version.
+   *
+   * @throws IOException if the value cannot be decoded to the given type
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T decode(byte[] serialized, Type type) throws IOException {
+    List<Schema> versions = schemas.get(type);
+    if (versions == null) {
+      throw new IOException("Type " + type + " is not registered for binary decoding");
+    }
+
+    ByteArrayInputStream is = new ByteArrayInputStream(serialized, 1, serialized.length - 1);
+    Decoder decoder = new BinaryDecoder(is);
+    int version = decoder.readInt();
+    if (version < 1 || version > versions.size()) {
+      throw new IOException("Unknown schema version " + version + " for type " + type);
+    }
+    return (T) readers.get(type).read(decoder, versions.get(version - 1));
+  }
+
+  /**
+   * Builder for {@link MDSValueCodec}.
+   */
+  public static final class Builder {
+    private final DatumWriterFactory writerFactory;
+    private final DatumReaderFactory readerFactory;
+    private final Map<Type, List<Schema>> schemas;
+
+    private Builder(DatumWriterFactory writerFactory, DatumReaderFactory readerFactory) {
+      this.writerFactory = writerFactory;
+      this.readerFactory = readerFactory;
+      this.schemas = new HashMap<>();
+    }
+
+    /**
+     * Registers a type for binary encoding.
+     *
+     * @param type the value type
+     * @param versions all schema versions of the type, with the schema at index {@code i} being version
+     *                 {@code i + 1}. Values are always written with the last one.
+     */
+    public Builder add(Type type, List<Schema> versions) {
+      Preconditions.checkArgument(!versions.isEmpty(), "At least one schema version is required for %s", type);
+      schemas.put(type, ImmutableList.copyOf(versions));
+      return this;
+    }
+
+    public MDSValueCodec build() {
+      return new MDSValueCodec(writerFactory, readerFactory, ImmutableMap.copyOf(schemas));
+    }
+  }
+}
@@ -38,6 +38,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -57,24 +58,42 @@ public class MetadataStoreDataset extends AbstractDataset {
 
   private final Table table;
   private final Gson gson;
+  private final MDSValueCodec valueCodec;
 
   public MetadataStoreDataset(Table table) {
     this(table, new Gson());
   }
 
   public MetadataStoreDataset(Table table, Gson gson) {
+    this(table, gson, null);
+  }
+
+  /**
+   * Creates a {@link MetadataStoreDataset} that stores values of the types registered to the given
+   * {@link MDSValueCodec} in binary format, and values of all other types as JSON.
+   */
+  public MetadataStoreDataset(Table table, Gson gson, @Nullable MDSValueCodec valueCodec) {
     super("ignored", table);
     this.table = table;
     this.gson = gson;
+    this.valueCodec = valueCodec;
   }
 
   protected <T> byte[] serialize(T value) {
+    if (valueCodec != null && valueCodec.canEncode(value.getClass())) {
+      try {
+        return valueCodec.encode(value, value.getClass());
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
     return Bytes.toBytes(gson.toJson(value));
   }
 
   /**
    * Deserialize the given serialized value of a given type.
-   * Default implementation is to use {@link Gson} to deserialize.
+   * Default implementation is to use the {@link MDSValueCodec} for binary values and {@link Gson} for
+   * JSON values.
    *
    * @param key the key used to fetch the given value
    * @param serialized the serialized value
@@ -83,6 +102,17 @@ public class MetadataStoreDataset extends AbstractDataset {
    * @return the deserialized value
    */
   protected <T> T deserialize(MDSKey key, byte[] serialized, Type typeOfT) {
+    if (MDSValueCodec.isEncoded(serialized)) {
+      if (valueCodec == null) {
+        throw new IllegalStateException("No value codec available to decode binary value of type " + typeOfT +
+                                          " with key " + key);
+      }
+      try {
+        return valueCodec.decode(serialized, typeOfT);
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
     return gson.fromJson(Bytes.toString(serialized), typeOfT);
   }
 
@@ -0,0 +1,252 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
+import co.cask.cdap.api.dataset.table.Scanner;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Scanner} that reads ahead rows from another {@link Scanner} on a background thread, so that fetching
+ * rows from the underlying storage overlaps with the processing of rows by the caller. Rows are handed over in
+ * batches through a bounded buffer. The number of rows in a batch is adjusted based on the size of the rows seen so
+ * far, so that each batch is close to a target size in bytes.
+ *
+ * The read ahead is enabled by setting the {@link #PROPERTY_PREFETCH_ENABLED} property in the {@link Scan}.
+ * The background thread waits for the caller while the buffer is full, until this scanner is closed. Tables
+ * returning this scanner should close it when the transaction ends, in case the caller doesn't.
+ */
+public final class PrefetchingScanner implements Scanner {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PrefetchingScanner.class);
+
+  /**
+   * Scan property to enable reading ahead rows on a background thread. Default is {@code false}.
+   */
+  public static final String PROPERTY_PREFETCH_ENABLED = "dataset.table.scan.prefetch.enabled";
+
+  /**
+   * Scan property for the maximum number of fetched batches buffered ahead of the caller.
+   */
+  public static final String PROPERTY_PREFETCH_BATCHES = "dataset.table.scan.prefetch.batches";
+
+  /**
+   * Scan property for the target size in bytes of each fetched batch.
+   */
+  public static final String PROPERTY_PREFETCH_BATCH_BYTES = "dataset.table.scan.prefetch.batch.bytes";
+
+  static final int DEFAULT_PREFETCH_BATCHES = 4;
+  static final int DEFAULT_PREFETCH_BATCH_BYTES = 1024 * 1024;
+
+  // Start with a small batch so that the caller gets the first rows quickly
+  private static final int INITIAL_BATCH_ROWS = 16;
+  private static final int MAX_BATCH_ROWS = 10000;
+  private static final long OFFER_TIMEOUT_MILLIS = 100L;
+
+  // Marker for the end of the scan. It is never the same instance as a batch of rows.
+  private static final List<Row> END_OF_SCAN = Collections.unmodifiableList(new ArrayList<Row>());
+
+  private static final ExecutorService FETCH_EXECUTOR =
+    Executors.newCachedThreadPool(Threads.createDaemonThreadFactory("table-scan-prefetch-%d"));
+
+  private final Scanner scanner;
+  private final int batchBytes;
+  private final BlockingQueue<List<Row>> batches;
+  private final Future<?> fetchFuture;
+
+  private volatile boolean closed;
+  private volatile Throwable failure;
+  private Iterator<Row> currentBatch;
+  private boolean exhausted;
+
+  /**
+   * Returns a {@link PrefetchingScanner} that reads ahead from the given {@link Scanner} if it is enabled by the
+   * properties of the given {@link Scan}; otherwise the given {@link Scanner} is returned.
+   */
+  public static Scanner wrapIfEnabled(Scan scan, Scanner scanner) {
+    Map<String, String> properties = scan.getProperties();
+    if (!Boolean.parseBoolean(properties.get(PROPERTY_PREFETCH_ENABLED))) {
+      return scanner;
+    }
+    return new PrefetchingScanner(scanner,
+                                  getPositiveInt(properties, PROPERTY_PREFETCH_BATCHES, DEFAULT_PREFETCH_BATCHES),
+                                  getPositiveInt(properties, PROPERTY_PREFETCH_BATCH_BYTES,
+                                                 DEFAULT_PREFETCH_BATCH_BYTES));
+  }
+
+  @VisibleForTesting
+  PrefetchingScanner(Scanner scanner, int bufferBatches, int batchBytes) {
+    this.scanner = scanner;
+    this.batchBytes = batchBytes;
+    this.batches = new ArrayBlockingQueue<>(bufferBatches);
+    this.currentBatch = Collections.emptyIterator();
+    this.fetchFuture = FETCH_EXECUTOR.submit(new Runnable() {
+      @Override
+      public void run() {
+        fetch();
+      }
+    });
+  }
+
+  @Nullable
+  @Override
+  public Row next() {
+    while (!currentBatch.hasNext()) {
+      if (exhausted || closed) {
+        return null;
+      }
+      List<Row> batch;
+      try {
+        batch = batches.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      }
+      if (batch == END_OF_SCAN) {
+        exhausted = true;
+        if (failure != null) {
+          throw Throwables.propagate(failure);
+        }
+        return null;
+      }
+      currentBatch = batch.iterator();
+    }
+    return currentBatch.next();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    batches.clear();
+    // Wait for the fetch to stop before closing the underlying scanner, since scanners are not thread safe.
+    // The fetch thread is not interrupted, as some scanners don't handle interruption gracefully.
+    try {
+      fetchFuture.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // Shouldn't happen, as failure is captured in the fetch loop
+      LOG.debug("Exception raised when fetching rows ahead", e.getCause());
+    } finally {
+      scanner.close();
+    }
+  }
+
+  /**
+   * Returns {@code true} if this scanner is closed.
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Fetches rows from the underlying scanner into the buffer until the end of the scan is reached or
+   * this scanner is closed.
+   */
+  private void fetch() {
+    int batchRows = INITIAL_BATCH_ROWS;
+    try {
+      Row row = null;
+      do {
+        List<Row> batch = new ArrayList<>(batchRows);
+        long bytes = 0L;
+        while (batch.size() < batchRows && (row = scanner.next()) != null) {
+          batch.add(row);
+          bytes += getSize(row);
+        }
+        if (!batch.isEmpty()) {
+          // Adjust the number of rows of the next batch such that it is close to the target batch size
+          long rowBytes = Math.max(1L, bytes / batch.size());
+          batchRows = (int) Math.max(1L, Math.min(MAX_BATCH_ROWS, batchBytes / rowBytes));
+          if (!offer(batch)) {
+            return;
+          }
+        }
+      } while (row != null);
+    } catch (Throwable t) {
+      failure = t;
+    }
+    offer(END_OF_SCAN);
+  }
+
+  /**
+   * Puts the given batch to the buffer, waiting for space to become available.
+   *
+   * @return {@code true} if the batch is added; {@code false} if this scanner is closed
+   */
+  private boolean offer(List<Row> batch) {
+    try {
+      while (!closed) {
+        if (batches.offer(batch, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * Returns an estimate of the size of the given row in bytes.
+   */
+  private static long getSize(Row row) {
+    long size = row.getRow().length;
+    for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+      size += column.getKey().length;
+      byte[] value = column.getValue();
+      if (value != null) {
+        size += value.length;
+      }
+    }
+    return size;
+  }
+
+  private static int getPositiveInt(Map<String, String> properties, String key, int defaultValue) {
+    String value = properties.get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    int result = Integer.parseInt(value);
+    if (result <= 0) {
+      throw new IllegalArgumentException(String.format("Scan property %s must be positive, but is %d", key, result));
+    }
+    return result;
+  }
+}
@@ -35,6 +35,13 @@ public class FactCodec {
   private static final Logger LOG = LoggerFactory.getLogger(FactCodec.class);
   // current version
   private static final byte[] VERSION = new byte[] {0};
+  // prefix of the rows of the dimension value and measure name index, which sort after all facts
+  private static final byte[] INDEX_VERSION = new byte[] {1};
+
+  // types of index rows
+  private static final byte INDEX_TYPE_DIMENSION = 'd';
+  private static final byte INDEX_TYPE_MEASURE = 'm';
+  private static final byte INDEX_TYPE_STATE = 's';
 
   // encoding types
   private static final String TYPE_MEASURE_NAME = "measureName";
@@ -147,6 +154,110 @@ public class FactCodec {
     return rowKey;
   }
 
+  /**
+   * Builds the row key prefix of the dimension index entries of the given aggregation group and the given number of
+   * leading dimension values.
+   * @param dimensionValues dimension values of the aggregation group
+   * @param prefixLength number of leading dimension values to include, which must not be {@code null}
+   * @return row key prefix
+   */
+  public byte[] createDimensionIndexPrefix(List<DimensionValue> dimensionValues, int prefixLength) {
+    return createIndexRowKey(INDEX_TYPE_DIMENSION, dimensionValues, prefixLength, 0);
+  }
+
+  /**
+   * Builds the row key of the dimension index entry, which records that the dimension value at the given index is
+   * the first non-null value after the given number of leading dimension values.
+   * @param dimensionValues dimension values of a fact
+   * @param prefixLength number of leading dimension values of the entry
+   * @param nextIndex index of the next non-null dimension value
+   * @return row key
+   */
+  public byte[] createDimensionIndexRowKey(List<DimensionValue> dimensionValues, int prefixLength, int nextIndex) {
+    // Row key format:
+    // <index version><type><encoded agg group><prefix length><encoded dimension1 value>...
+    //                                               <encoded dimensionK value><next index><encoded next value>
+    int idSize = entityTable.getIdSize();
+    byte[] rowKey = createIndexRowKey(INDEX_TYPE_DIMENSION, dimensionValues, prefixLength, 1 + idSize);
+    int offset = rowKey.length - 1 - idSize;
+    rowKey[offset++] = (byte) nextIndex;
+    DimensionValue nextValue = dimensionValues.get(nextIndex);
+    writeEncoded(nextValue.getName(), nextValue.getValue(), rowKey, offset);
+    return rowKey;
+  }
+
+  /**
+   * Returns the next dimension value recorded in the given dimension index row key.
+   * @param rowKey row key of a dimension index entry
+   * @param dimensionNames dimension names of the aggregation group
+   * @return the dimension value
+   */
+  public DimensionValue getIndexedDimensionValue(byte[] rowKey, List<String> dimensionNames) {
+    int offset = rowKey.length - entityTable.getIdSize();
+    String dimensionName = dimensionNames.get(rowKey[offset - 1] & 0xff);
+    return new DimensionValue(dimensionName, entityTable.getName(readEncoded(rowKey, offset), dimensionName));
+  }
+
+  /**
+   * Builds the row key prefix of the measure index entries of the given aggregation group and the given number of
+   * leading dimension values.
+   * @param dimensionValues dimension values of the aggregation group
+   * @param prefixLength number of leading dimension values to include, which must not be {@code null}
+   * @return row key prefix
+   */
+  public byte[] createMeasureIndexPrefix(List<DimensionValue> dimensionValues, int prefixLength) {
+    return createIndexRowKey(INDEX_TYPE_MEASURE, dimensionValues, prefixLength, 0);
+  }
+
+  /**
+   * Builds the row key of the measure index entry, which records that the measure exists for facts with the given
+   * leading dimension values. The measure name can be decoded with {@link #getMeasureName(byte[])}.
+   * @param dimensionValues dimension values of a fact
+   * @param prefixLength number of leading dimension values of the entry
+   * @param measureName measure name
+   * @return row key
+   */
+  public byte[] createMeasureIndexRowKey(List<DimensionValue> dimensionValues, int prefixLength, String measureName) {
+    // Row key format:
+    // <index version><type><encoded agg group><prefix length><encoded dimension1 value>...
+    //                                                            <encoded dimensionK value><encoded measure name>
+    int idSize = entityTable.getIdSize();
+    byte[] rowKey = createIndexRowKey(INDEX_TYPE_MEASURE, dimensionValues, prefixLength, idSize);
+    writeEncoded(TYPE_MEASURE_NAME, measureName, rowKey, rowKey.length - idSize);
+    return rowKey;
+  }
+
+  /**
+   * @return row key for keeping the state of the index
+   */
+  public byte[] getIndexStateRowKey() {
+    return new byte[] { INDEX_VERSION[0], INDEX_TYPE_STATE };
+  }
+
+  /**
+   * @return prefix of the row keys of all facts
+   */
+  static byte[] getFactRowKeyPrefix() {
+    return Arrays.copyOf(VERSION, VERSION.length);
+  }
+
+  private byte[] createIndexRowKey(byte type, List<DimensionValue> dimensionValues, int prefixLength,
+                                   int extraLength) {
+    // "+1" is for <encoded agg group>, the other "+1"s are for the type and the prefix length
+    byte[] rowKey =
+      new byte[INDEX_VERSION.length + 1 + (prefixLength + 1) * entityTable.getIdSize() + 1 + extraLength];
+    System.arraycopy(INDEX_VERSION, 0, rowKey, 0, INDEX_VERSION.length);
+    int offset = INDEX_VERSION.length;
+    rowKey[offset++] = type;
+    offset = writeEncodedAggGroup(dimensionValues, rowKey, offset);
+    rowKey[offset++] = (byte) prefixLength;
+    for (int i = 0; i < prefixLength; i++) {
+      DimensionValue dimensionValue = dimensionValues.get(i);
+      offset = writeEncoded(dimensionValue.getName(), dimensionValue.getValue(), rowKey, offset);
+    }
+    return rowKey;
+  }
+
   private static int writeVersion(byte[] rowKey) {
     System.arraycopy(VERSION, 0, rowKey, 0, VERSION.length);
     return VERSION.length;
@@ -25,8 +25,12 @@ import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
 import co.cask.cdap.data2.dataset2.lib.table.MetricsTable;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -36,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -46,11 +51,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /**
  * Table for storing {@link Fact}s.
  *
+ * Besides the facts, the table keeps an index of dimension values and measure names, which is used to answer
+ * {@link #findSingleDimensionValue(List, Map, long, long)} and {@link #findMeasureNames(List, Map, long, long)}
+ * without scanning the facts. For each aggregation group and each number of leading dimension values of a fact,
+ * the index records the next non-null dimension value and the measure names, in coarse time buckets.
+ *
  * Thread safe as long as the passed into the constructor datasets are thread safe (usually is not the case).
  */
 public final class FactTable implements Closeable {
@@ -61,6 +72,17 @@ public final class FactTable implements Closeable {
   private static final int MAX_RECORDS_TO_SCAN_DURING_SEARCH = 10 * 1000 * 1000;
   private static final int MAX_SCANS_DURING_SEARCH = 10 * 1000;
 
+  // the index records time in buckets of at least one hour
+  private static final int MIN_INDEX_RESOLUTION = 3600;
+  // max number of recently written index entries to remember, to avoid writing the same entries repeatedly
+  private static final int MAX_WRITTEN_INDEX_ENTRIES = 100 * 1000;
+  // how long to remember a written index entry. Index entries can be deleted through other instances, and the time
+  // bucket never changes for the totals resolution, hence entries must be written again from time to time.
+  private static final long WRITTEN_INDEX_ENTRY_EXPIRY_SECS = 300;
+  // number of fact rows to process before writing index entries when building the index
+  private static final int INDEX_BUILD_BATCH_SIZE = 1000;
+  private static final byte[] INDEX_COMPLETE_COLUMN = Bytes.toBytes("complete");
+
   private static final Function<byte[], Long> BYTES_TO_LONG = new Function<byte[], Long>() {
     @Override
     public Long apply(byte[] input) {
@@ -86,6 +108,10 @@ public final class FactTable implements Closeable {
   private final String putCountMetric;
   private final String incrementCountMetric;
 
+  private final int indexResolution;
+  private final Cache<ByteBuffer, Boolean> writtenIndexEntries;
+  private volatile boolean indexComplete;
+
   @Nullable
   private MetricsCollector metrics;
 
@@ -102,6 +128,11 @@ public final class FactTable implements Closeable {
    */
   public FactTable(MetricsTable timeSeriesTable,
                    EntityTable entityTable, int resolution, int rollTime) {
+    this(timeSeriesTable, entityTable, resolution, rollTime, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  FactTable(MetricsTable timeSeriesTable, EntityTable entityTable, int resolution, int rollTime, Ticker ticker) {
     // Two bytes for column name, which is a delta timestamp
     Preconditions.checkArgument(rollTime <= MAX_ROLL_TIME, "Rolltime should be <= " + MAX_ROLL_TIME);
 
@@ -112,6 +143,12 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.indexResolution = Math.max(resolution, MIN_INDEX_RESOLUTION);
+    this.writtenIndexEntries = CacheBuilder.newBuilder()
+      .maximumSize(MAX_WRITTEN_INDEX_ENTRIES)
+      .expireAfterWrite(WRITTEN_INDEX_ENTRY_EXPIRY_SECS, TimeUnit.SECONDS)
+      .ticker(ticker)
+      .build();
   }
 
   public void setMetricsCollector(MetricsCollector metrics) {
@@ -122,7 +159,15 @@ public final class FactTable implements Closeable {
     // Simply collecting all rows/cols/values that need to be put to the underlying table.
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> gaugesTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     NavigableMap<byte[], NavigableMap<byte[], byte[]>> incrementsTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    List<ByteBuffer> newIndexEntries = new ArrayList<>();
     for (Fact fact : facts) {
+      List<String> measureNames = new ArrayList<>(fact.getMeasurements().size());
+      for (Measurement measurement : fact.getMeasurements()) {
+        measureNames.add(measurement.getName());
+      }
+      addIndexEntries(fact.getDimensionValues(), measureNames, fact.getTimestamp(), indexTable, newIndexEntries);
+
       for (Measurement measurement : fact.getMeasurements()) {
         byte[] rowKey = codec.createRowKey(fact.getDimensionValues(), measurement.getName(), fact.getTimestamp());
         byte[] column = codec.createColumn(fact.getTimestamp());
@@ -144,12 +189,185 @@ public final class FactTable implements Closeable {
     // todo: replace with single call, to be able to optimize rpcs in underlying table
     timeSeriesTable.put(convertedGaugesTable);
     timeSeriesTable.increment(convertedIncrementsTable);
+    writeIndexEntries(indexTable, newIndexEntries);
     if (metrics != null) {
       metrics.increment(putCountMetric, convertedGaugesTable.size());
       metrics.increment(incrementCountMetric, convertedIncrementsTable.size());
     }
   }
 
+  /**
+   * Builds the index of dimension values and measure names from the facts in this table. The index is maintained
+   * when adding facts, hence this only needs to be called once for the facts added before the index existed.
+   * Until the index is built, searching dimension values and measure names scans the facts.
+   */
+  public void buildIndex() {
+    if (isIndexComplete()) {
+      return;
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    List<ByteBuffer> newIndexEntries = new ArrayList<>();
+    byte[] startRow = FactCodec.getFactRowKeyPrefix();
+    int scannedRecords = 0;
+    try (Scanner scanner = timeSeriesTable.scan(startRow, Bytes.stopKeyForPrefix(startRow), null)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        byte[] rowKey = row.getRow();
+        String measureName = codec.getMeasureName(rowKey);
+        if (measureName == null) {
+          // will never happen, unless data in entity table was corrupted or deleted
+          continue;
+        }
+        List<DimensionValue> dimensionValues = codec.getDimensionValues(rowKey);
+        for (byte[] column : row.getColumns().keySet()) {
+          addIndexEntries(dimensionValues, Collections.singletonList(measureName),
+                          codec.getTimestamp(rowKey, column), indexTable, newIndexEntries);
+        }
+        if (++scannedRecords % INDEX_BUILD_BATCH_SIZE == 0) {
+          writeIndexEntries(indexTable, newIndexEntries);
+          indexTable.clear();
+          newIndexEntries.clear();
+        }
+      }
+    }
+    writeIndexEntries(indexTable, newIndexEntries);
+
+    NavigableMap<byte[], NavigableMap<byte[], Long>> state = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], Long> stateColumns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    stateColumns.put(INDEX_COMPLETE_COLUMN, 1L);
+    state.put(codec.getIndexStateRowKey(), stateColumns);
+    timeSeriesTable.put(state);
+    indexComplete = true;
+
+    LOG.info("Built index of fact table {} with resolution {} from {} records",
+             timeSeriesTable, resolution, scannedRecords);
+  }
+
+  /**
+   * Adds the index entries of a fact to the given index table, skipping the entries that were recently written.
+   */
+  private void addIndexEntries(List<DimensionValue> dimensionValues, Collection<String> measureNames, long ts,
+                               NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable,
+                               List<ByteBuffer> newIndexEntries) {
+    byte[] column = Bytes.toBytes(ts / indexResolution * indexResolution);
+    for (int prefixLength = 0; prefixLength <= dimensionValues.size(); prefixLength++) {
+      for (String measureName : measureNames) {
+        addIndexEntry(codec.createMeasureIndexRowKey(dimensionValues, prefixLength, measureName), column,
+                      indexTable, newIndexEntries);
+      }
+      int nextIndex = prefixLength;
+      while (nextIndex < dimensionValues.size() && dimensionValues.get(nextIndex).getValue() == null) {
+        nextIndex++;
+      }
+      if (nextIndex < dimensionValues.size()) {
+        addIndexEntry(codec.createDimensionIndexRowKey(dimensionValues, prefixLength, nextIndex), column,
+                      indexTable, newIndexEntries);
+      }
+      // searches only use non-null values for leading dimensions, hence longer prefixes are never looked up
+      if (nextIndex != prefixLength) {
+        break;
+      }
+    }
+  }
+
+  private void addIndexEntry(byte[] rowKey, byte[] column, NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable,
+                             List<ByteBuffer> newIndexEntries) {
+    ByteBuffer entry = ByteBuffer.wrap(Bytes.concat(rowKey, column));
+    if (writtenIndexEntries.getIfPresent(entry) == null) {
+      NavigableMap<byte[], Long> columns = indexTable.get(rowKey);
+      if (columns == null) {
+        columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        indexTable.put(rowKey, columns);
+      }
+      columns.put(column, 1L);
+      newIndexEntries.add(entry);
+    }
+  }
+
+  private void writeIndexEntries(NavigableMap<byte[], NavigableMap<byte[], Long>> indexTable,
+                                 List<ByteBuffer> newIndexEntries) {
+    if (indexTable.isEmpty()) {
+      return;
+    }
+    timeSeriesTable.put(indexTable);
+    // only remember the entries once they are written
+    for (ByteBuffer entry : newIndexEntries) {
+      writtenIndexEntries.put(entry, Boolean.TRUE);
+    }
+  }
+
+  private boolean isIndexComplete() {
+    if (!indexComplete) {
+      indexComplete = timeSeriesTable.get(codec.getIndexStateRowKey(), INDEX_COMPLETE_COLUMN) != null;
+    }
+    return indexComplete;
+  }
+
+  /**
+   * Returns the number of leading dimensions that have non-null values in the given dimension slice.
+   */
+  private static int getLeadingValuesCount(List<String> dimensionNames, Map<String, String> dimensionSlice) {
+    int count = 0;
+    while (count < dimensionNames.size() && dimensionSlice.get(dimensionNames.get(count)) != null) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Returns whether any of the dimension values starting from the given index is not {@code null}.
+   */
+  private static boolean hasValuesAfter(List<DimensionValue> dimensionValues, int index) {
+    for (int i = index; i < dimensionValues.size(); i++) {
+      if (dimensionValues.get(i).getValue() != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the keys of the index rows with the given prefix that have entries in the given time range.
+   */
+  private List<byte[]> findIndexRows(byte[] prefix, long startTs, long endTs) {
+    long startBucket = startTs / indexResolution * indexResolution;
+    List<byte[]> rowKeys = new ArrayList<>();
+    try (Scanner scanner = timeSeriesTable.scan(prefix, Bytes.stopKeyForPrefix(prefix), null)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        for (byte[] column : row.getColumns().keySet()) {
+          long bucket = Bytes.toLong(column);
+          if (bucket >= startBucket && bucket <= endTs) {
+            rowKeys.add(row.getRow());
+            break;
+          }
+        }
+      }
+    }
+    return rowKeys;
+  }
+
+  /**
+   * Deletes the time buckets that start before or at the given timestamp from the index rows with the given prefix.
+   */
+  private void deleteIndexRows(byte[] prefix, long endTs) {
+    try (Scanner scanner = timeSeriesTable.scan(prefix, Bytes.stopKeyForPrefix(prefix), null)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        List<byte[]> columns = new ArrayList<>();
+        for (byte[] column : row.getColumns().keySet()) {
+          if (Bytes.toLong(column) <= endTs) {
+            columns.add(column);
+          }
+        }
+        if (!columns.isEmpty()) {
+          timeSeriesTable.delete(row.getRow(), columns.toArray(new byte[columns.size()][]));
+        }
+      }
+    }
+  }
+
   private class MeasureNameComparator implements Comparator<String> {
     private final Map<String, Long> measureNameToEntityIdMap;
 
@@ -247,6 +465,37 @@ public final class FactTable implements Closeable {
         }
       }
     }
+    deleteIndex(scan);
+  }
+
+  /**
+   * Deletes the index entries of the facts deleted by the given scan. Index entries are only deleted when all facts
+   * with the leading dimension values of the scan are deleted up to the end of the scan, which is the case when
+   * deleting the metrics of an entity, e.g. an application, or when deleting old metrics. Otherwise, the index may
+   * still contain values of deleted facts. Since the index keeps coarse time buckets, the bucket that contains the
+   * end of the scan is deleted as well.
+   */
+  private void deleteIndex(FactScan scan) {
+    List<DimensionValue> dimensionValues = new ArrayList<>(scan.getDimensionValues());
+    int prefixLength = 0;
+    while (prefixLength < dimensionValues.size() && dimensionValues.get(prefixLength).getValue() != null) {
+      prefixLength++;
+    }
+    if (scan.getStartTs() > 0 || !scan.getMeasureNames().isEmpty() || hasValuesAfter(dimensionValues, prefixLength)) {
+      return;
+    }
+
+    // all entries that have the dimension values of the scan as prefix
+    for (int length = prefixLength; length <= dimensionValues.size(); length++) {
+      deleteIndexRows(codec.createDimensionIndexPrefix(dimensionValues, length), scan.getEndTs());
+      deleteIndexRows(codec.createMeasureIndexPrefix(dimensionValues, length), scan.getEndTs());
+    }
+    // the entry that has the last dimension value of the scan as next value
+    if (prefixLength > 0) {
+      deleteIndexRows(codec.createDimensionIndexRowKey(dimensionValues, prefixLength - 1, prefixLength - 1),
+                      scan.getEndTs());
+    }
+    writtenIndexEntries.invalidateAll();
   }
 
   /**
@@ -292,6 +541,21 @@ public final class FactTable implements Closeable {
       return Collections.emptySet();
     }
 
+    // The index can be used if the dimension slice only has values for leading dimensions
+    int prefixLength = getLeadingValuesCount(allDimensionNames, dimensionSlice);
+    if (dimToFillIndexes.size() == allDimensionNames.size() - prefixLength && isIndexComplete()) {
+      Set<DimensionValue> result = Sets.newHashSet();
+      for (byte[] rowKey : findIndexRows(codec.createDimensionIndexPrefix(allDimensions, prefixLength),
+                                         startTs, endTs)) {
+        DimensionValue dimensionValue = codec.getIndexedDimensionValue(rowKey, allDimensionNames);
+        if (dimensionValue.getValue() != null) {
+          result.add(dimensionValue);
+        }
+      }
+      LOG.trace("search for dimensions completed using index, found: {}", result.size());
+      return result;
+    }
+
     Set<DimensionValue> result = Sets.newHashSet();
     int scans = 0;
     int scannedRecords = 0;
@@ -380,6 +644,21 @@ public final class FactTable implements Closeable {
       allDimensions.add(new DimensionValue(dimensionName, dimensionSlice.get(dimensionName)));
     }
 
+    // The index can be used if the dimension slice only has values for leading dimensions
+    int prefixLength = getLeadingValuesCount(allDimensionNames, dimensionSlice);
+    if (!hasValuesAfter(allDimensions, prefixLength) && isIndexComplete()) {
+      Set<String> measureNames = Sets.newHashSet();
+      for (byte[] rowKey : findIndexRows(codec.createMeasureIndexPrefix(allDimensions, prefixLength),
+                                         startTs, endTs)) {
+        String measureName = codec.getMeasureName(rowKey);
+        if (measureName != null) {
+          measureNames.add(measureName);
+        }
+      }
+      LOG.trace("search for measures completed using index, found: {}", measureNames.size());
+      return measureNames;
+    }
+
     byte[] startRow = codec.createStartRowKey(allDimensions, null, startTs, false);
     byte[] endRow = codec.createEndRowKey(allDimensions, null, endTs, false);
     endRow = Bytes.stopKeyForPrefix(endRow);
@@ -67,6 +67,11 @@ public abstract class ForwardingQueueConsumer implements QueueConsumer, Transact
     return consumer.dequeue(maxBatchSize);
   }
 
+  @Override
+  public boolean hasData() throws IOException {
+    return consumer.hasData();
+  }
+
   @Override
   public void startTx(Transaction tx) {
     if (txAware != null) {
@@ -48,4 +48,16 @@ public interface QueueConsumer extends Closeable {
    * @return A {@link DequeueResult}.
    */
   DequeueResult<byte[]> dequeue(int maxBatchSize) throws IOException;
+
+  /**
+   * Checks if there may be entries available for this consumer to dequeue. This method doesn't require a
+   * transaction and is meant to be a cheap probe for deciding whether a transaction should be started to dequeue.
+   * It may return {@code true} even if a dequeue would return nothing, but it never returns {@code false}
+   * if there are committed entries that are not yet consumed by this consumer.
+   *
+   * @return {@code false} if there is nothing to dequeue, {@code true} otherwise
+   */
+  default boolean hasData() throws IOException {
+    return true;
+  }
 }
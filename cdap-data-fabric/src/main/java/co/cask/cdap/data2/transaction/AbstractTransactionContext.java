@@ -23,7 +23,10 @@ import org.apache.tephra.TransactionAware;
 import org.apache.tephra.TransactionContext;
 import org.apache.tephra.TransactionFailureException;
 import org.apache.tephra.TransactionSystemClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.annotation.Nullable;
@@ -38,8 +41,11 @@ import javax.annotation.Nullable;
  */
 public abstract class AbstractTransactionContext extends TransactionContext {
 
+  private static final Logger LOG = LoggerFactory.getLogger(AbstractTransactionContext.class);
+
   private final TransactionSystemClient txClient;
   private Transaction currentTx;
+  private boolean readOnly;
 
   protected AbstractTransactionContext(TransactionSystemClient txClient) {
     // Passing null to parent to make sure nothing in parent class would work
@@ -107,9 +113,27 @@ public abstract class AbstractTransactionContext extends TransactionContext {
     startAllTxAwares();
   }
 
+  /**
+   * Starts a read-only transaction with the given {@link Transaction}. The given transaction is owned by the caller
+   * and is only used as a snapshot for reading. Finishing or aborting a read-only transaction never calls the
+   * transaction system, and {@link #finish()} fails if any {@link TransactionAware} has changes.
+   *
+   * @param tx the transaction to read with
+   */
+  public void startReadOnly(Transaction tx) throws TransactionFailureException {
+    Preconditions.checkState(currentTx == null, "Already have an active transaction.");
+    currentTx = tx;
+    readOnly = true;
+    startAllTxAwares();
+  }
+
   @Override
   public void finish() throws TransactionFailureException {
     Preconditions.checkState(currentTx != null, "Cannot finish tx that has not been started");
+    if (readOnly) {
+      finishReadOnly();
+      return;
+    }
     // each of these steps will abort and rollback the tx in case if errors, and throw an exception
     checkForConflicts();
     persist();
@@ -123,6 +147,26 @@ public abstract class AbstractTransactionContext extends TransactionContext {
     }
   }
 
+  /**
+   * Finishes a read-only transaction by rolling back all {@link TransactionAware}. The transaction is aborted with
+   * failure if there are any changes.
+   */
+  private void finishReadOnly() throws TransactionFailureException {
+    for (TransactionAware txAware : getTransactionAwares()) {
+      Collection<byte[]> changes = null;
+      try {
+        changes = txAware.getTxChanges();
+      } catch (Throwable t) {
+        abort(createTransactionFailure("retrieve changes from", txAware, t));
+      }
+      if (changes != null && !changes.isEmpty()) {
+        abort(createTransactionFailure("write to", txAware, new IllegalStateException(
+          "Write operations are not allowed in a read-only transaction")));
+      }
+    }
+    abort();
+  }
+
   @Override
   public void abort() throws TransactionFailureException {
     abort(null);
@@ -150,7 +194,13 @@ public abstract class AbstractTransactionContext extends TransactionContext {
         }
       }
       try {
-        if (success) {
+        if (readOnly) {
+          // The transaction is not owned by this context, hence only the transaction-aware states are rolled back
+          if (!success) {
+            LOG.warn("Failed to roll back transaction-aware states for read-only transaction {}",
+                     currentTx.getTransactionId());
+          }
+        } else if (success) {
           txClient.abort(currentTx);
         } else {
           txClient.invalidate(currentTx.getTransactionId());
@@ -169,6 +219,7 @@ public abstract class AbstractTransactionContext extends TransactionContext {
       }
     } finally {
       currentTx = null;
+      readOnly = false;
       cleanup();
     }
   }
@@ -176,6 +227,7 @@ public abstract class AbstractTransactionContext extends TransactionContext {
   @Override
   public void checkpoint() throws TransactionFailureException {
     Preconditions.checkState(currentTx != null, "Cannot checkpoint tx that has not been started");
+    Preconditions.checkState(!readOnly, "Cannot checkpoint read-only tx");
     persist();
     try {
       currentTx = txClient.checkpoint(currentTx);
@@ -206,10 +258,13 @@ public abstract class AbstractTransactionContext extends TransactionContext {
         txAware.startTx(currentTx);
       } catch (Throwable t) {
         try {
-          txClient.abort(currentTx);
+          if (!readOnly) {
+            txClient.abort(currentTx);
+          }
           throw createTransactionFailure("start", txAware, t);
         } finally {
           currentTx = null;
+          readOnly = false;
         }
       }
     }
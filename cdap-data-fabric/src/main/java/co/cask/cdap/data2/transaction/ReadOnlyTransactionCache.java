@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import org.apache.tephra.Transaction;
+import org.apache.tephra.TransactionSystemClient;
+import org.apache.twill.common.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A service that keeps a short transaction which is shared by read-only tasks, so that those tasks
+ * don't need to talk to the transaction system. A new transaction is started periodically to keep the snapshot
+ * fresh, and a replaced transaction is aborted once it is no longer used by any task. If the cached transaction
+ * could not be refreshed for longer than the maximum age, for example because the transaction system is unreachable,
+ * each task gets its own new transaction instead, so that no task reads with a snapshot that may have timed out.
+ *
+ * Tasks that use this class should call {@link #acquire()} to get the current transaction and must call
+ * {@link #release(Transaction)} when done with it.
+ */
+public final class ReadOnlyTransactionCache extends AbstractScheduledService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReadOnlyTransactionCache.class);
+
+  private final TransactionSystemClient txClient;
+  private final long refreshMillis;
+  private final long maxAgeNanos;
+  private final ConcurrentMap<Long, Snapshot> snapshots;
+  private volatile Snapshot current;
+  private ScheduledExecutorService executor;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param txClient the {@link TransactionSystemClient} for starting and aborting transactions
+   * @param refreshMillis how often in milliseconds a new transaction is started. It should be much smaller than
+   *                      the transaction timeout.
+   * @param maxAgeMillis maximum age in milliseconds of the cached transaction to be given to tasks. It should be
+   *                     smaller than the transaction timeout.
+   */
+  public ReadOnlyTransactionCache(TransactionSystemClient txClient, long refreshMillis, long maxAgeMillis) {
+    Preconditions.checkArgument(refreshMillis > 0, "Refresh interval must be > 0");
+    Preconditions.checkArgument(maxAgeMillis >= refreshMillis, "Maximum age must be >= refresh interval");
+    this.txClient = txClient;
+    this.refreshMillis = refreshMillis;
+    this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    this.snapshots = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Returns the current cached transaction. The transaction must only be used for reading and must be released
+   * by calling {@link #release(Transaction)}. If the cached transaction is older than the maximum age, a new
+   * transaction is started for the caller, which is aborted when it is released.
+   *
+   * @throws IllegalStateException if this service is not running
+   */
+  public Transaction acquire() {
+    while (true) {
+      Preconditions.checkState(isRunning(), "Read-only transaction cache is not running");
+      Snapshot snapshot = current;
+      if (System.nanoTime() - snapshot.startNanos > maxAgeNanos) {
+        LOG.debug("Read-only transaction {} is older than {} ms. Starting a new transaction.",
+                  snapshot.tx.getTransactionId(), TimeUnit.NANOSECONDS.toMillis(maxAgeNanos));
+        return acquireNew();
+      }
+      if (snapshot.acquire()) {
+        return snapshot.tx;
+      }
+      // The snapshot is being replaced concurrently, just retry with the new one
+    }
+  }
+
+  /**
+   * Releases a transaction acquired through {@link #acquire()}.
+   */
+  public void release(Transaction tx) {
+    Snapshot snapshot = snapshots.get(tx.getTransactionId());
+    Preconditions.checkArgument(snapshot != null, "Transaction %s was not acquired from this cache",
+                                tx.getTransactionId());
+    snapshot.release();
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    refresh();
+  }
+
+  @Override
+  protected void runOneIteration() throws Exception {
+    try {
+      refresh();
+    } catch (Exception e) {
+      // Keep using the current transaction until the next successful refresh or until it reaches the maximum age
+      LOG.warn("Failed to refresh read-only transaction. Will be retried in {} ms.", refreshMillis, e);
+    }
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    try {
+      Snapshot snapshot = current;
+      if (snapshot != null) {
+        snapshot.retire();
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Override
+  protected Scheduler scheduler() {
+    return Scheduler.newFixedDelaySchedule(refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  protected ScheduledExecutorService executor() {
+    executor = Executors.newSingleThreadScheduledExecutor(
+      Threads.createDaemonThreadFactory("read-only-tx-cache-refresher"));
+    return executor;
+  }
+
+  /**
+   * Starts a new transaction for a single task. It is aborted when the task releases it.
+   */
+  private Transaction acquireNew() {
+    Snapshot snapshot = new Snapshot(txClient.startShort());
+    snapshot.acquire();
+    snapshots.put(snapshot.tx.getTransactionId(), snapshot);
+    snapshot.retire();
+    return snapshot.tx;
+  }
+
+  /**
+   * Starts a new transaction to replace the current one.
+   */
+  private void refresh() {
+    Snapshot snapshot = new Snapshot(txClient.startShort());
+    snapshots.put(snapshot.tx.getTransactionId(), snapshot);
+    Snapshot old = current;
+    current = snapshot;
+    if (old != null) {
+      old.retire();
+    }
+  }
+
+  /**
+   * A cached transaction together with the number of tasks that are using it.
+   */
+  private final class Snapshot {
+
+    private final Transaction tx;
+    private final long startNanos;
+    // Number of tasks using the transaction. It is set to -1 when the transaction is aborted.
+    private final AtomicInteger users;
+    private volatile boolean retired;
+
+    Snapshot(Transaction tx) {
+      this.tx = tx;
+      this.startNanos = System.nanoTime();
+      this.users = new AtomicInteger();
+    }
+
+    boolean acquire() {
+      while (true) {
+        int count = users.get();
+        if (count < 0) {
+          return false;
+        }
+        if (users.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release() {
+      if (users.decrementAndGet() == 0 && retired) {
+        abortIfUnused();
+      }
+    }
+
+    void retire() {
+      retired = true;
+      abortIfUnused();
+    }
+
+    private void abortIfUnused() {
+      if (!users.compareAndSet(0, -1)) {
+        return;
+      }
+      snapshots.remove(tx.getTransactionId());
+      try {
+        txClient.abort(tx);
+      } catch (Exception e) {
+        LOG.warn("Failed to abort read-only transaction {}", tx.getTransactionId(), e);
+      }
+    }
+  }
+}
@@ -145,6 +145,12 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     return result;
   }
 
+  @Override
+  public boolean hasData() throws IOException {
+    // Entries in the cache were visible to a previous transaction, hence can be dequeued.
+    return !entryCache.isEmpty() || hasUnconsumedEntry(scanStartRow, Bytes.stopKeyForPrefix(queueRowPrefix));
+  }
+
   @Override
   public void startTx(Transaction tx) {
     consumingEntries.clear();
@@ -202,6 +208,18 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     return true;
   }
 
+  /**
+   * Checks, without a transaction, whether there is any queue entry in the given row range that is not yet
+   * processed by the consumer group. Implementations that cannot perform the check cheaply should
+   * return {@code true}, which is the default.
+   *
+   * @param startRow the start row of the range, inclusive
+   * @param stopRow the stop row of the range, exclusive
+   */
+  protected boolean hasUnconsumedEntry(byte[] startRow, byte[] stopRow) throws IOException {
+    return true;
+  }
+
   /**
    * Called when the start row is updated.
    */
@@ -218,10 +236,13 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
       claimedStateValue = encodeStateColumn(ConsumerEntryState.CLAIMED);
     }
 
+    // Entries dequeued by this call. The consumingEntries may already contain entries from earlier dequeue calls in
+    // the same transaction, which must not be returned again.
+    SortedMap<byte[], SimpleQueueEntry> entries = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     boolean isReachedDequeueTimeLimit = false;
     Stopwatch stopwatch = new Stopwatch();
     stopwatch.start();
-    while (consumingEntries.size() < maxBatchSize && getEntries(consumingEntries, maxBatchSize, stopwatch)) {
+    while (entries.size() < maxBatchSize && getEntries(entries, maxBatchSize, stopwatch)) {
 
       // ANDREAS: this while loop should stop once getEntries/populateCache reaches the end of the queue. Currently, it
       // will retry as long as it gets at least one entry in every round, even if that is an entry that must be ignored
@@ -231,7 +252,7 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
       // For FIFO, need to try claiming the entry if group size > 1
       if (getConfig().getDequeueStrategy() == DequeueStrategy.FIFO && getConfig().getGroupSize() > 1) {
-        Iterator<Map.Entry<byte[], SimpleQueueEntry>> iterator = consumingEntries.entrySet().iterator();
+        Iterator<Map.Entry<byte[], SimpleQueueEntry>> iterator = entries.entrySet().iterator();
         while (iterator.hasNext()) {
           SimpleQueueEntry entry = iterator.next().getValue();
 
@@ -256,13 +277,13 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
         // reached. There can be some false positive (reached the end of queue, yet passed the time limit), but
         // it's ok since we only use this boolean for logging only and normally it won't be the case as long as
         // dequeue is completed in relatively short time comparing to the tx timeout.
-        isReachedDequeueTimeLimit = consumingEntries.size() < maxBatchSize;
+        isReachedDequeueTimeLimit = entries.size() < maxBatchSize;
         break;
       }
     }
 
     // If nothing get dequeued, return the empty result.
-    if (consumingEntries.isEmpty()) {
+    if (entries.isEmpty()) {
       if (isReachedDequeueTimeLimit) {
         LOG.warn("Unable to dequeue any entry after {}ms.", maxDequeueMillis);
       }
@@ -271,10 +292,11 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
     if (isReachedDequeueTimeLimit) {
       LOG.warn("Dequeue time limit of {}ms reached. Requested batch size {}, dequeued {}",
-               maxDequeueMillis, maxBatchSize, consumingEntries.size());
+               maxDequeueMillis, maxBatchSize, entries.size());
     }
 
-    return new SimpleDequeueResult(consumingEntries.values());
+    consumingEntries.putAll(entries);
+    return new SimpleDequeueResult(entries.values());
   }
 
   /**
@@ -331,7 +353,8 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
         }
 
         byte[] rowKey = entry.getFirst();
-        if (excludeRows.contains(rowKey)) {
+        if (excludeRows.contains(rowKey) || consumingEntries.containsKey(rowKey)) {
+          // Skip entries that are already dequeued in the current transaction
           continue;
         }
 
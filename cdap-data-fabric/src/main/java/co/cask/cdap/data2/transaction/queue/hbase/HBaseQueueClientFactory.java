@@ -304,6 +304,20 @@ public class HBaseQueueClientFactory implements QueueClientFactory, ProgramConte
       return consumers.peek().dequeue(maxBatchSize);
     }
 
+    @Override
+    public boolean hasData() throws IOException {
+      // Consumers are rotated on every commit, hence check all of them
+      if (consumers.isEmpty()) {
+        return true;
+      }
+      for (HBaseQueueConsumer consumer : consumers) {
+        if (consumer.hasData()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     @Override
     public void close() throws IOException {
       for (HBaseQueueConsumer consumer : consumers) {
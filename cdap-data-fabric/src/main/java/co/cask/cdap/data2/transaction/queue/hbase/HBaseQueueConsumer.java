@@ -18,9 +18,11 @@ package co.cask.cdap.data2.transaction.queue.hbase;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.queue.QueueName;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.queue.ConsumerConfig;
 import co.cask.cdap.data2.queue.DequeueResult;
 import co.cask.cdap.data2.transaction.queue.AbstractQueueConsumer;
+import co.cask.cdap.data2.transaction.queue.ConsumerEntryState;
 import co.cask.cdap.data2.transaction.queue.QueueEntryRow;
 import co.cask.cdap.data2.transaction.queue.QueueScanner;
 import com.google.common.collect.Lists;
@@ -43,6 +45,10 @@ import java.util.Set;
  */
 abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
 
+  // Maximum number of rows to inspect when checking for unconsumed entries without a transaction
+  private static final int HAS_DATA_MAX_ROWS = 1000;
+  private static final int HAS_DATA_SCAN_ROWS = 100;
+
   private final HTable hTable;
   private final HBaseConsumerState state;
   private final HBaseConsumerStateStore stateStore;
@@ -141,6 +147,44 @@ abstract class HBaseQueueConsumer extends AbstractQueueConsumer {
     return queueStrategy.createScanner(getConfig(), hTable, scan, numRows);
   }
 
+  @Override
+  protected boolean hasUnconsumedEntry(byte[] startRow, byte[] stopRow) throws IOException {
+    if (closed || (!canConsume && state.getPreviousBarrier() != null)) {
+      // Whether the previous barrier is fully consumed can only be checked transactionally by the dequeue
+      return true;
+    }
+
+    // A plain scan without the dequeue attributes, hence the coprocessor doesn't filter on transaction.
+    // Every queue entry has the meta column, hence selecting it guarantees every entry row is returned.
+    Scan scan = new Scan();
+    scan.setStartRow(startRow);
+    scan.setStopRow(getScanStopRow(stopRow));
+    scan.addColumn(QueueEntryRow.COLUMN_FAMILY, QueueEntryRow.META_COLUMN);
+    scan.addColumn(QueueEntryRow.COLUMN_FAMILY, stateColumnName);
+    scan.setMaxVersions(1);
+
+    QueueScanner scanner = queueStrategy.createScanner(getConfig(), hTable, scan, HAS_DATA_SCAN_ROWS);
+    try {
+      int rows = 0;
+      ImmutablePair<byte[], Map<byte[], byte[]>> row = scanner.next();
+      while (row != null) {
+        byte[] stateBytes = row.getSecond().get(stateColumnName);
+        if (stateBytes == null || stateBytes.length == 0
+          || QueueEntryRow.getState(stateBytes) != ConsumerEntryState.PROCESSED) {
+          return true;
+        }
+        // Stop inspecting if there are too many processed entries that are not yet evicted
+        if (++rows >= HAS_DATA_MAX_ROWS) {
+          return true;
+        }
+        row = scanner.next();
+      }
+      return false;
+    } finally {
+      scanner.close();
+    }
+  }
+
   @Override
   public void close() throws IOException {
     if (closed) {
@@ -28,8 +28,11 @@ import org.apache.tephra.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.NavigableSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -62,6 +65,16 @@ public class InMemoryQueue {
 
   public ImmutablePair<List<Key>, List<byte[]>> dequeue(Transaction tx, ConsumerConfig config,
                                                         ConsumerState consumerState, int maxBatchSize) {
+    return dequeue(tx, config, consumerState, maxBatchSize, Collections.<Key>emptySet());
+  }
+
+  /**
+   * Dequeues entries, skipping the given keys, which were already dequeued by the consumer in the same
+   * transaction but are not acked yet.
+   */
+  public ImmutablePair<List<Key>, List<byte[]>> dequeue(Transaction tx, ConsumerConfig config,
+                                                        ConsumerState consumerState, int maxBatchSize,
+                                                        Set<Key> excludeKeys) {
 
     List<Key> keys = Lists.newArrayListWithCapacity(maxBatchSize);
     List<byte[]> datas = Lists.newArrayListWithCapacity(maxBatchSize);
@@ -85,6 +98,10 @@ public class InMemoryQueue {
         // the entry is in the exclude list of current transaction. There is a chance that visible entries follow.
         updateStartKey = false; // next time we have to revisit this entry
         continue;
+      } else if (excludeKeys.contains(key)) {
+        // already dequeued in the current transaction, but not processed until the transaction commits
+        updateStartKey = false;
+        continue;
       }
       Item item = entries.get(key);
       if (item == null) {
@@ -132,6 +149,23 @@ public class InMemoryQueue {
     return keys.isEmpty() ? null : ImmutablePair.of(keys, datas);
   }
 
+  /**
+   * Checks if there are entries after the consumer start position that are not yet processed by the consumer group.
+   * This check doesn't use any transaction, hence it may return {@code true} for entries that are not yet
+   * visible or entries that will be dequeued by other consumer instances in the same group.
+   */
+  public boolean hasPending(ConsumerConfig config, ConsumerState consumerState) {
+    Collection<Item> items = consumerState.startKey == null ? entries.values() :
+      entries.tailMap(consumerState.startKey).values();
+
+    for (Item item : items) {
+      if (!ConsumerEntryState.PROCESSED.equals(item.getConsumerState(config.getGroupId()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public void ack(List<Key> dequeuedKeys, ConsumerConfig config) {
     if (dequeuedKeys == null) {
       return;
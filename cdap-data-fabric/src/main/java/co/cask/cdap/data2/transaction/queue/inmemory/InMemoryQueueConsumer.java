@@ -27,9 +27,12 @@ import org.apache.tephra.Transaction;
 import org.apache.tephra.TransactionAware;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Consumer for an in-memory queue.
@@ -43,7 +46,9 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
   private boolean committed = false;
   private final ConsumerConfig config;
   private final int numGroups;
+  // Keys dequeued in the current transaction, across all dequeue calls
   private List<InMemoryQueue.Key> dequeuedKeys;
+  private final Set<InMemoryQueue.Key> dequeuedKeySet = new HashSet<>();
   private final InMemoryQueue.ConsumerState state = new InMemoryQueue.ConsumerState();
   private final InMemoryQueueService queueService;
 
@@ -82,19 +87,25 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
   @Override
   public DequeueResult dequeue(int maxBatchSize) throws IOException {
     ImmutablePair<List<InMemoryQueue.Key>, List<byte[]>> result =
-      getQueue().dequeue(currentTx, config, state, maxBatchSize);
+      getQueue().dequeue(currentTx, config, state, maxBatchSize, dequeuedKeySet);
     if (result == null) {
       return EMPTY_RESULT;
     } else {
-      dequeuedKeys = result.getFirst();
+      addDequeuedKeys(result.getFirst());
       return new InMemoryDequeueResult(result);
     }
   }
 
+  @Override
+  public boolean hasData() throws IOException {
+    return getQueue().hasPending(config, state);
+  }
+
   @Override
   public void startTx(Transaction tx) {
     currentTx = tx;
     dequeuedKeys = null;
+    dequeuedKeySet.clear();
     committed = false;
   }
 
@@ -128,6 +139,7 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
       }
     }
     dequeuedKeys = null;
+    dequeuedKeySet.clear();
     return true;
   }
 
@@ -136,6 +148,15 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
     // No-op
   }
 
+  private void addDequeuedKeys(List<InMemoryQueue.Key> keys) {
+    if (dequeuedKeys == null) {
+      dequeuedKeys = new ArrayList<>(keys);
+    } else {
+      dequeuedKeys.addAll(keys);
+    }
+    dequeuedKeySet.addAll(keys);
+  }
+
   private final class InMemoryDequeueResult implements DequeueResult<byte[]> {
 
     private final List<InMemoryQueue.Key> keys;
@@ -153,11 +174,7 @@ public class InMemoryQueueConsumer implements QueueConsumer, TransactionAware {
 
     @Override
     public void reclaim() {
-      if (dequeuedKeys != null) {
-        dequeuedKeys.addAll(keys);
-      } else {
-        dequeuedKeys = keys;
-      }
+      addDequeuedKeys(keys);
     }
 
     @Override
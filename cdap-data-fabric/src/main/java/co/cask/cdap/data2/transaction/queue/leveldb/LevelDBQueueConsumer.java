@@ -25,6 +25,8 @@ import co.cask.cdap.data2.dataset2.lib.table.leveldb.KeyValue;
 import co.cask.cdap.data2.dataset2.lib.table.leveldb.LevelDBTableCore;
 import co.cask.cdap.data2.queue.ConsumerConfig;
 import co.cask.cdap.data2.transaction.queue.AbstractQueueConsumer;
+import co.cask.cdap.data2.transaction.queue.ConsumerEntryState;
+import co.cask.cdap.data2.transaction.queue.QueueEntryRow;
 import co.cask.cdap.data2.transaction.queue.QueueEvictor;
 import co.cask.cdap.data2.transaction.queue.QueueScanner;
 import com.google.common.collect.Maps;
@@ -53,6 +55,9 @@ public final class LevelDBQueueConsumer extends AbstractQueueConsumer {
 
   private static final long EVICTION_TIMEOUT_SECONDS = 10;
 
+  // Maximum number of rows to inspect in the non-transactional has data check.
+  private static final int HAS_DATA_MAX_ROWS = 1000;
+
   // used for undoing state. The value does not matter, but the OcTable interface was written to expect some value...
   private static final byte[] DUMMY_STATE_CONTENT = { };
 
@@ -143,6 +148,32 @@ public final class LevelDBQueueConsumer extends AbstractQueueConsumer {
     core.undo(changes, KeyValue.LATEST_TIMESTAMP);
   }
 
+  @Override
+  protected boolean hasUnconsumedEntry(byte[] startRow, byte[] stopRow) throws IOException {
+    // Every queue entry has the meta column, hence selecting it guarantees every entry row is returned
+    byte[][] columns = new byte[][] { QueueEntryRow.META_COLUMN, stateColumnName };
+    Scanner scanner = core.scan(startRow, stopRow, null, columns, Transaction.ALL_VISIBLE_LATEST);
+    try {
+      int rows = 0;
+      Row row = scanner.next();
+      while (row != null) {
+        byte[] stateBytes = row.get(stateColumnName);
+        if (stateBytes == null || stateBytes.length == 0
+          || QueueEntryRow.getState(stateBytes) != ConsumerEntryState.PROCESSED) {
+          return true;
+        }
+        // Stop inspecting if there are too many processed entries that are not yet evicted
+        if (++rows >= HAS_DATA_MAX_ROWS) {
+          return true;
+        }
+        row = scanner.next();
+      }
+      return false;
+    } finally {
+      scanner.close();
+    }
+  }
+
   @Override
   protected QueueScanner getScanner(byte[] startRow, byte[] stopRow, int numRows) throws IOException {
     final Scanner scanner = core.scan(startRow, stopRow, null, null, Transaction.ALL_VISIBLE_LATEST);
@@ -18,11 +18,14 @@ package co.cask.cdap.data2.transaction.stream;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data.file.ReadFilters;
 import co.cask.cdap.data.stream.StreamEventOffset;
 import co.cask.cdap.data.stream.StreamFileOffset;
+import co.cask.cdap.data.stream.StreamFileType;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data2.queue.ConsumerConfig;
 import co.cask.cdap.data2.queue.DequeueResult;
@@ -47,10 +50,12 @@ import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 import org.apache.tephra.Transaction;
 import org.apache.tephra.TxConstants;
+import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -106,6 +111,11 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
   // Persist state at most once per second.
   private static final long STATE_PERSIST_MIN_INTERVAL = TimeUnit.SECONDS.toNanos(1);
 
+  // Maximum time hasData() relies on the stream file sizes without a poll. File sizes reported by a distributed
+  // file system may lag behind for files that are still being written. It matches the interval that
+  // the live stream file reader uses to check for new files.
+  private static final long HAS_DATA_MAX_IDLE = TimeUnit.MILLISECONDS.toNanos(Constants.Stream.NEW_FILE_CHECK_INTERVAL);
+
   private static final DequeueResult<StreamEvent> EMPTY_RESULT = DequeueResult.Empty.result();
   private static final Function<PollStreamEvent, byte[]> EVENT_ROW_KEY = new Function<PollStreamEvent, byte[]>() {
     @Override
@@ -157,10 +167,23 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
   private Transaction transaction;
   private List<PollStreamEvent> polledEvents;
   private long nextPersistStateTime;
+  private long lastPollTime;
   private boolean committed;
   private boolean closed;
   private StreamConsumerState lastPersistedState;
 
+  /**
+   * Adds the given events polled by a {@link #poll(int, long, TimeUnit)} call to the events to commit in the
+   * current transaction and returns them as a {@link DequeueResult}.
+   */
+  private DequeueResult<StreamEvent> toDequeueResult(List<PollStreamEvent> events) {
+    if (events.isEmpty()) {
+      return EMPTY_RESULT;
+    }
+    polledEvents.addAll(events);
+    return new SimpleDequeueResult(events);
+  }
+
   /**
    *
    * @param streamConfig Stream configuration.
@@ -222,6 +245,7 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
   @Override
   public final DequeueResult<StreamEvent> poll(int maxEvents, long timeout,
                                                TimeUnit timeoutUnit) throws IOException, InterruptedException {
+    lastPollTime = System.nanoTime();
 
     // Only need the CLAIMED state for FIFO with group size > 1.
     byte[] fifoStateContent = null;
@@ -229,13 +253,17 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
       fifoStateContent = encodeStateColumn(ConsumerEntryState.CLAIMED);
     }
 
+    // Events polled by this call. The polledEvents may already contain events from earlier poll calls in the same
+    // transaction, which must not be returned again.
+    List<PollStreamEvent> events = Lists.newArrayList();
+
     // Try to read from cache if any
     if (!eventCache.isEmpty()) {
-      getEvents(eventCache, polledEvents, maxEvents, fifoStateContent);
+      getEvents(eventCache, events, maxEvents, fifoStateContent);
     }
 
-    if (polledEvents.size() == maxEvents) {
-      return new SimpleDequeueResult(polledEvents);
+    if (events.size() == maxEvents) {
+      return toDequeueResult(events);
     }
 
     // Number of events it tries to read by multiply the maxEvents with the group size. It doesn't have to be exact,
@@ -254,13 +282,13 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
     consumerState.setState(reader.getPosition());
 
     // Read from the underlying file reader
-    while (polledEvents.size() < maxEvents) {
+    while (events.size() < maxEvents) {
       int readCount = reader.read(eventCache, maxRead, timeoutNano, TimeUnit.NANOSECONDS, readFilter);
       long elapsedNano = stopwatch.elapsedTime(TimeUnit.NANOSECONDS);
       timeoutNano -= elapsedNano;
 
       if (readCount > 0) {
-        int eventsClaimed = getEvents(eventCache, polledEvents, maxEvents - polledEvents.size(), fifoStateContent);
+        int eventsClaimed = getEvents(eventCache, events, maxEvents - events.size(), fifoStateContent);
 
         // TODO: This is a quick fix for preventing backoff logic in flowlet drive kicks in too early.
         // But it doesn't entirely prevent backoff. A proper fix would have a special state in the dequeue result
@@ -268,7 +296,7 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
 
         // If able to read some events but nothing is claimed, don't check for normal timeout.
         // Only do short transaction timeout checks.
-        if (eventsClaimed == 0 && polledEvents.isEmpty()) {
+        if (eventsClaimed == 0 && events.isEmpty()) {
           if (elapsedNano < (txTimeoutNano / 2)) {
             // If still last than half of tx timeout, continue polling without checking normal timeout.
             continue;
@@ -281,11 +309,21 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
       }
     }
 
-    if (polledEvents.isEmpty()) {
-      return EMPTY_RESULT;
-    } else {
-      return new SimpleDequeueResult(polledEvents);
+    return toDequeueResult(events);
+  }
+
+  @Override
+  public boolean hasData() throws IOException {
+    if (!eventCache.isEmpty() || closed || lastPollTime == 0L
+      || System.nanoTime() - lastPollTime >= HAS_DATA_MAX_IDLE) {
+      return true;
     }
+    for (StreamFileOffset offset : reader.getPosition()) {
+      if (hasUnreadEvent(offset)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
@@ -480,6 +518,33 @@ public abstract class AbstractStreamFileConsumer implements StreamConsumer {
    * @return The stateContent byte array
    */
   // TODO: This method is copied from AbstractQueue2Consumer. Future effort is needed to unify them.
+  /**
+   * Checks, without reading the file, whether there may be events at or after the given file offset.
+   */
+  private boolean hasUnreadEvent(StreamFileOffset offset) throws IOException {
+    // A data block is always larger than the end marker of a closed file
+    if (getLength(offset.getEventLocation()) - offset.getOffset() > Longs.BYTES) {
+      return true;
+    }
+    // The reader moves to the next partition once the current one times up
+    if (System.currentTimeMillis() > offset.getPartitionEnd()) {
+      return true;
+    }
+    Location partitionLocation = Locations.getParent(offset.getEventLocation());
+    return partitionLocation == null
+      || StreamUtils.createStreamLocation(partitionLocation, offset.getNamePrefix(),
+                                          offset.getSequenceId() + 1, StreamFileType.EVENT).exists();
+  }
+
+  private long getLength(Location location) throws IOException {
+    try {
+      return location.length();
+    } catch (FileNotFoundException e) {
+      // The file is not yet created by the writer
+      return 0L;
+    }
+  }
+
   private byte[] encodeStateColumn(ConsumerEntryState state) {
     byte[] stateContent = new byte[Longs.BYTES + Ints.BYTES + 1];
 
@@ -52,6 +52,11 @@ public abstract class ForwardingStreamConsumer implements StreamConsumer {
     return delegate.poll(maxEvents, timeout, timeoutUnit);
   }
 
+  @Override
+  public boolean hasData() throws IOException {
+    return delegate.hasData();
+  }
+
   @Override
   public void close() throws IOException {
     delegate.close();
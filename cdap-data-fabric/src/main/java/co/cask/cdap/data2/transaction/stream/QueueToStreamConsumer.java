@@ -113,6 +113,11 @@ public final class QueueToStreamConsumer implements StreamConsumer {
     };
   }
 
+  @Override
+  public boolean hasData() throws IOException {
+    return consumer.hasData();
+  }
+
   @Override
   public void close() throws IOException {
     consumer.close();
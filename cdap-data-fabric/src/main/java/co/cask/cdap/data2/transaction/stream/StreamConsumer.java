@@ -58,4 +58,16 @@ public interface StreamConsumer extends Closeable, TransactionAware {
    */
   DequeueResult<StreamEvent> poll(int maxEvents,
                                   long timeout, TimeUnit timeoutUnit) throws IOException, InterruptedException;
+
+  /**
+   * Checks if there may be events available for this consumer to poll. This method doesn't require a
+   * transaction and is meant to be a cheap probe for deciding whether a transaction should be started to poll.
+   * It may return {@code true} even if a poll would return nothing, but it never returns {@code false}
+   * if there are events that are not yet consumed by this consumer.
+   *
+   * @return {@code false} if there is nothing to poll, {@code true} otherwise
+   */
+  default boolean hasData() throws IOException {
+    return true;
+  }
 }
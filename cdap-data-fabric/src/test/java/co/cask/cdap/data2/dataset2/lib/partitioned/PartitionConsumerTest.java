@@ -17,6 +17,9 @@
 package co.cask.cdap.data2.dataset2.lib.partitioned;
 
 import co.cask.cdap.api.Predicate;
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.lib.Partition;
 import co.cask.cdap.api.dataset.lib.PartitionDetail;
 import co.cask.cdap.api.dataset.lib.PartitionFilter;
@@ -24,6 +27,7 @@ import co.cask.cdap.api.dataset.lib.PartitionKey;
 import co.cask.cdap.api.dataset.lib.PartitionedFileSet;
 import co.cask.cdap.api.dataset.lib.PartitionedFileSetProperties;
 import co.cask.cdap.api.dataset.lib.Partitioning;
+import co.cask.cdap.api.dataset.lib.partitioned.ClaimingPartitionConsumer;
 import co.cask.cdap.api.dataset.lib.partitioned.ConcurrentPartitionConsumer;
 import co.cask.cdap.api.dataset.lib.partitioned.ConsumablePartition;
 import co.cask.cdap.api.dataset.lib.partitioned.ConsumerConfiguration;
@@ -40,6 +44,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.apache.tephra.TransactionAware;
+import org.apache.tephra.TransactionConflictException;
 import org.apache.tephra.TransactionContext;
 import org.apache.tephra.TransactionExecutor;
 import org.apache.tephra.TransactionManager;
@@ -51,6 +56,8 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -64,6 +71,8 @@ import javax.annotation.Nullable;
  */
 public class PartitionConsumerTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionConsumerTest.class);
+
   @ClassRule
   public static TemporaryFolder tmpFolder = new TemporaryFolder();
   @ClassRule
@@ -77,6 +86,7 @@ public class PartitionConsumerTest {
 
   private static final DatasetId pfsInstance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("pfs");
   private static final DatasetId pfsExternalInstance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("ext");
+  private static final DatasetId stateInstance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("state");
   private static Location pfsBaseLocation;
 
   @Before
@@ -98,6 +108,9 @@ public class PartitionConsumerTest {
     if (dsFrameworkUtil.getInstance(pfsExternalInstance) != null) {
       dsFrameworkUtil.deleteInstance(pfsExternalInstance);
     }
+    if (dsFrameworkUtil.getInstance(stateInstance) != null) {
+      dsFrameworkUtil.deleteInstance(stateInstance);
+    }
     Assert.assertFalse(pfsBaseLocation.exists());
   }
 
@@ -996,6 +1009,228 @@ public class PartitionConsumerTest {
     });
   }
 
+  @Test
+  public void testClaimingConcurrency() throws Exception {
+    final PartitionedFileSet dataset = dsFrameworkUtil.getInstance(pfsInstance);
+    final TransactionAware txAwareDataset = (TransactionAware) dataset;
+    dsFrameworkUtil.createInstance("keyValueTable", stateInstance, DatasetProperties.EMPTY);
+    final KeyValueTable stateTable = dsFrameworkUtil.getInstance(stateInstance);
+
+    final Set<PartitionKey> partitionKeys = new HashSet<>();
+    for (int i = 0; i < 10; i++) {
+      partitionKeys.add(generateUniqueKey());
+    }
+
+    // have ClaimingPartitionConsumers that share the same state.
+    ConsumerConfiguration configuration = ConsumerConfiguration.builder().setMaxRetries(3).build();
+    final PartitionConsumer partitionConsumer1 =
+      new ClaimingPartitionConsumer(dataset, stateTable, "consumer", configuration);
+    final PartitionConsumer partitionConsumer2 =
+      new ClaimingPartitionConsumer(dataset, stateTable, "consumer", configuration);
+    final PartitionConsumer partitionConsumer3 =
+      new ClaimingPartitionConsumer(dataset, stateTable, "consumer", configuration);
+
+    dsFrameworkUtil.newInMemoryTransactionExecutor(txAwareDataset).execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        for (final PartitionKey partitionKey : partitionKeys) {
+          dataset.getPartitionOutput(partitionKey).addPartition();
+        }
+      }
+    });
+
+    dsFrameworkUtil.newInMemoryTransactionExecutor(txAwareDataset, (TransactionAware) stateTable).execute(
+      new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        List<PartitionDetail> consumedBy1 = partitionConsumer1.consumePartitions(1).getPartitions();
+        Assert.assertEquals(1, consumedBy1.size());
+
+        // 1 is in progress by partitionConsumer1, so partitionConsumer2 only gets the remaining 9 partitions
+        List<PartitionDetail> consumedBy2 = partitionConsumer2.consumePartitions(10).getPartitions();
+        Assert.assertEquals(9, consumedBy2.size());
+        Assert.assertEquals(0, partitionConsumer3.consumePartitions().getPartitions().size());
+
+        // partitionConsumer1 aborts its partition, so it then becomes available for partitionConsumer3
+        partitionConsumer1.onFinish(consumedBy1, false);
+        List<PartitionDetail> consumedBy3 = partitionConsumer3.consumePartitions(2).getPartitions();
+        Assert.assertEquals(1, consumedBy3.size());
+        Assert.assertEquals(toKeys(consumedBy1), toKeys(consumedBy3));
+
+        // a partition that is not in progress cannot be finished
+        try {
+          partitionConsumer1.onFinish(consumedBy1, true);
+          Assert.fail("Expected not to be able to finish a partition that is not in progress");
+        } catch (IllegalStateException expected) {
+          // expected
+        }
+
+        partitionConsumer3.onFinish(consumedBy3, true);
+        partitionConsumer2.onFinish(consumedBy2, true);
+
+        // finished partitions are removed from the working set, and cannot be finished again
+        try {
+          partitionConsumer2.onFinish(consumedBy2, true);
+          Assert.fail("Expected not to be able to finish a partition that is not in the working set");
+        } catch (IllegalArgumentException expected) {
+          // expected
+        }
+
+        // at this point, all partitions are processed, so no additional partitions are available for consumption
+        Assert.assertEquals(0, partitionConsumer3.consumePartitions().getPartitions().size());
+
+        Set<PartitionKey> allProcessedKeys = new HashSet<>(toKeys(consumedBy2));
+        allProcessedKeys.addAll(toKeys(consumedBy3));
+        Assert.assertEquals(partitionKeys, allProcessedKeys);
+      }
+    });
+
+    // consuming when there are no new partitions doesn't write to the state table, so that consumers
+    // don't conflict with each other on the shared marker row
+    dsFrameworkUtil.newInMemoryTransactionExecutor(txAwareDataset, (TransactionAware) stateTable).execute(
+      new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        Assert.assertEquals(0, partitionConsumer1.consumePartitions().getPartitions().size());
+        Assert.assertTrue(((TransactionAware) stateTable).getTxChanges().isEmpty());
+      }
+    });
+
+    // new partitions are still consumed
+    final PartitionKey newKey = generateUniqueKey();
+    dsFrameworkUtil.newInMemoryTransactionExecutor(txAwareDataset).execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        dataset.getPartitionOutput(newKey).addPartition();
+      }
+    });
+    dsFrameworkUtil.newInMemoryTransactionExecutor(txAwareDataset, (TransactionAware) stateTable).execute(
+      new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        List<PartitionDetail> consumed = partitionConsumer2.consumePartitions().getPartitions();
+        Assert.assertEquals(1, consumed.size());
+        Assert.assertEquals(newKey, consumed.get(0).getPartitionKey());
+      }
+    });
+  }
+
+  @Test
+  public void testConflictRate() throws Exception {
+    // Measures how many transactions of concurrent consumers conflict with each other, when keeping the whole working
+    // set in one row (ConcurrentPartitionConsumer) versus keeping a claim row per partition (ClaimingPartitionConsumer)
+    dsFrameworkUtil.createInstance("keyValueTable", stateInstance, DatasetProperties.EMPTY);
+
+    PartitionedFileSet dataset = dsFrameworkUtil.getInstance(pfsInstance);
+    TransactionContext txContext = new TransactionContext(new InMemoryTxSystemClient(dsFrameworkUtil.getTxManager()),
+                                                          (TransactionAware) dataset);
+    txContext.start();
+    for (int i = 0; i < 100; i++) {
+      dataset.getPartitionOutput(generateUniqueKey()).addPartition();
+    }
+    txContext.finish();
+
+    int numConsumers = 4;
+    int numRounds = 10;
+
+    int concurrentConflicts = countConflicts(numConsumers, numRounds, new ConsumerFactory() {
+      @Override
+      public PartitionConsumer create(PartitionedFileSet dataset, KeyValueTable stateTable) {
+        return new ConcurrentPartitionConsumer(dataset, new KVTableRowStatePersistor(stateTable, "concurrent"));
+      }
+    });
+    int claimingConflicts = countConflicts(numConsumers, numRounds, new ConsumerFactory() {
+      @Override
+      public PartitionConsumer create(PartitionedFileSet dataset, KeyValueTable stateTable) {
+        return new ClaimingPartitionConsumer(dataset, stateTable, "claiming");
+      }
+    });
+
+    int numTransactions = numConsumers * numRounds;
+    LOG.info("Conflicting transactions of {} consumers: ConcurrentPartitionConsumer {}/{}, " +
+               "ClaimingPartitionConsumer {}/{}",
+             numConsumers, concurrentConflicts, numTransactions, claimingConflicts, numTransactions);
+    // with a single state row, all but one of the consumers conflict in every round
+    Assert.assertEquals((numConsumers - 1) * numRounds, concurrentConflicts);
+    Assert.assertTrue(claimingConflicts < concurrentConflicts);
+  }
+
+  /**
+   * Runs rounds of concurrent consumers, each consuming one partition in its own transaction, and returns the
+   * number of transactions that failed due to conflicts. Before the measured rounds, all partitions are added to
+   * the working set so that populating the working set doesn't count towards the conflicts.
+   */
+  private int countConflicts(int numConsumers, int numRounds, ConsumerFactory consumerFactory) throws Exception {
+    InMemoryTxSystemClient txClient = new InMemoryTxSystemClient(dsFrameworkUtil.getTxManager());
+    List<PartitionConsumer> consumers = new ArrayList<>();
+    List<TransactionContext> txContexts = new ArrayList<>();
+    for (int i = 0; i < numConsumers; i++) {
+      PartitionedFileSet dataset = dsFrameworkUtil.getInstance(pfsInstance);
+      KeyValueTable stateTable = dsFrameworkUtil.getInstance(stateInstance);
+      consumers.add(consumerFactory.create(dataset, stateTable));
+      txContexts.add(new TransactionContext(txClient, (TransactionAware) dataset, (TransactionAware) stateTable));
+    }
+
+    txContexts.get(0).start();
+    List<PartitionDetail> all = consumers.get(0).consumePartitions().getPartitions();
+    consumers.get(0).untake(all);
+    txContexts.get(0).finish();
+
+    int conflicts = 0;
+    for (int round = 0; round < numRounds; round++) {
+      List<List<PartitionDetail>> consumed = new ArrayList<>();
+      for (int i = 0; i < numConsumers; i++) {
+        txContexts.get(i).start();
+        consumed.add(consumers.get(i).consumePartitions(1).getPartitions());
+      }
+      for (int i = 0; i < numConsumers; i++) {
+        try {
+          txContexts.get(i).finish();
+        } catch (TransactionConflictException e) {
+          conflicts++;
+          consumed.get(i).clear();
+        }
+      }
+      // mark the partitions that were successfully claimed as processed
+      for (int i = 0; i < numConsumers; i++) {
+        if (!consumed.get(i).isEmpty()) {
+          txContexts.get(i).start();
+          consumers.get(i).onFinish(consumed.get(i), true);
+          txContexts.get(i).finish();
+        }
+      }
+    }
+    return conflicts;
+  }
+
+  private interface ConsumerFactory {
+    PartitionConsumer create(PartitionedFileSet dataset, KeyValueTable stateTable);
+  }
+
+  /**
+   * A {@link StatePersistor} that keeps the state in one row of a {@link KeyValueTable}.
+   */
+  private static final class KVTableRowStatePersistor implements StatePersistor {
+    private final KeyValueTable table;
+    private final byte[] key;
+
+    private KVTableRowStatePersistor(KeyValueTable table, String key) {
+      this.table = table;
+      this.key = Bytes.toBytes(key);
+    }
+
+    @Override
+    public void persistState(byte[] state) {
+      table.write(key, state);
+    }
+
+    @Nullable
+    @Override
+    public byte[] readState() {
+      return table.read(key);
+    }
+  }
+
   private int counter = 0;
 
   // generates unique partition keys, where the 'i' field is incrementing from 0 upwards on each returned key
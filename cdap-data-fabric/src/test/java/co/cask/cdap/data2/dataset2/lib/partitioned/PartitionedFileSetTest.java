@@ -35,6 +35,7 @@ import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.data2.dataset2.DatasetFrameworkTestUtil;
 import co.cask.cdap.proto.id.DatasetId;
 import co.cask.cdap.test.SlowTests;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -70,6 +71,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -106,6 +108,7 @@ public class PartitionedFileSetTest {
 
   private static final DatasetId pfsInstance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("pfs");
   private static final DatasetId pfsExternalInstance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("ext");
+  private static final DatasetId pfsIndexedInstance = DatasetFrameworkTestUtil.NAMESPACE_ID.dataset("indexed");
   private static Location pfsBaseLocation;
 
   private static Map<String, String> tablePermissions;
@@ -156,6 +159,9 @@ public class PartitionedFileSetTest {
     if (dsFrameworkUtil.getInstance(pfsExternalInstance) != null) {
       dsFrameworkUtil.deleteInstance(pfsExternalInstance);
     }
+    if (dsFrameworkUtil.getInstance(pfsIndexedInstance) != null) {
+      dsFrameworkUtil.deleteInstance(pfsIndexedInstance);
+    }
     Assert.assertFalse(pfsBaseLocation.exists());
   }
 
@@ -1011,6 +1017,145 @@ public class PartitionedFileSetTest {
 
   }
 
+  @Test
+  public void testAddPartitions() throws Exception {
+    final PartitionedFileSet dataset = dsFrameworkUtil.getInstance(pfsInstance);
+    final PartitionKey key1 = generateUniqueKey();
+    final PartitionKey key2 = generateUniqueKey();
+
+    dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        dataset.addPartitions(ImmutableMap.of(key1, "path1", key2, "path2"));
+        Assert.assertEquals("path1", dataset.getPartition(key1).getRelativePath());
+        Assert.assertEquals("path2", dataset.getPartition(key2).getRelativePath());
+      }
+    });
+
+    // adding partitions with one of them existing should fail without adding any of them
+    final PartitionKey key3 = generateUniqueKey();
+    dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        try {
+          dataset.addPartitions(ImmutableMap.of(key3, "path3", key1, "path1"));
+          Assert.fail("Expected PartitionAlreadyExistsException");
+        } catch (PartitionAlreadyExistsException e) {
+          // expected
+        }
+        Assert.assertNull(dataset.getPartition(key3));
+      }
+    });
+  }
+
+  @Test
+  @Category(SlowTests.class)
+  public void testIndexedFields() throws Exception {
+    dsFrameworkUtil.createInstance("partitionedFileSet", pfsIndexedInstance, PartitionedFileSetProperties.builder()
+      .setPartitioning(PARTITIONING_1)
+      .setIndexedFields("i", "l")
+      .setBasePath("indexedDir")
+      .build());
+    final PartitionedFileSet dataset = dsFrameworkUtil.getInstance(pfsIndexedInstance);
+
+    final Map<PartitionKey, String> partitions = new HashMap<>();
+    final Set<BasicPartition> allPartitionDetails = Sets.newHashSet();
+    for (int s = 0; s < 4; s++) {
+      for (int i = 0; i < 4; i++) {
+        for (int l = 0; l < 4; l++) {
+          PartitionKey key = PartitionKey.builder()
+            .addField("s", String.format("%c-%d", 'a' + s, s))
+            .addField("i", i * 100)
+            .addField("l", 15L - 10 * l)
+            .build();
+          String path = String.format("%d/%d/%d", s, i, l);
+          partitions.put(key, path);
+          allPartitionDetails.add(new BasicPartition((PartitionedFileSetDataset) dataset, path, key));
+        }
+      }
+    }
+
+    dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+      @Override
+      public void apply() throws Exception {
+        dataset.addPartitions(partitions);
+      }
+    });
+
+    List<PartitionFilter> filters = generateFilters();
+    testAllFilters(dataset, allPartitionDetails, filters);
+
+    // dropping partitions should also remove them from the index
+    for (final BasicPartition partition : ImmutableList.copyOf(Iterables.limit(allPartitionDetails, 5))) {
+      dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          dataset.dropPartition(partition.getPartitionKey());
+        }
+      });
+      allPartitionDetails.remove(partition);
+    }
+    testAllFilters(dataset, allPartitionDetails, filters);
+  }
+
+  @Test
+  @Category(SlowTests.class)
+  public void testFilterPerformance() throws Exception {
+    Partitioning partitioning = Partitioning.builder().addIntField("day").addIntField("hour").build();
+    dsFrameworkUtil.createInstance("partitionedFileSet", pfsIndexedInstance, PartitionedFileSetProperties.builder()
+      .setPartitioning(partitioning)
+      .setIndexedFields("hour")
+      .setBasePath("perfDir")
+      .build());
+    dsFrameworkUtil.createInstance("partitionedFileSet", pfsExternalInstance, PartitionedFileSetProperties.builder()
+      .setPartitioning(partitioning)
+      .setBasePath("notIndexedDir")
+      .build());
+    final PartitionedFileSet indexed = dsFrameworkUtil.getInstance(pfsIndexedInstance);
+    final PartitionedFileSet notIndexed = dsFrameworkUtil.getInstance(pfsExternalInstance);
+
+    final int days = 1000;
+    for (final PartitionedFileSet dataset : ImmutableList.of(indexed, notIndexed)) {
+      long startTime = System.nanoTime();
+      for (int day = 0; day < days; day += 100) {
+        final Map<PartitionKey, String> partitions = new HashMap<>();
+        for (int d = day; d < day + 100; d++) {
+          for (int hour = 0; hour < 24; hour++) {
+            partitions.put(PartitionKey.builder().addIntField("day", d).addIntField("hour", hour).build(),
+                           d + "/" + hour);
+          }
+        }
+        dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(
+          new TransactionExecutor.Subroutine() {
+            @Override
+            public void apply() throws Exception {
+              dataset.addPartitions(partitions);
+            }
+          });
+      }
+      LOG.info("Time to add {} partitions to {}: {} ms", days * 24, ((PartitionedFileSetDataset) dataset).getName(),
+               TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    // filter on the non-leading field, which uses the index or a fuzzy row filter
+    final PartitionFilter filter = PartitionFilter.builder().addValueCondition("hour", 3).build();
+    for (final PartitionedFileSet dataset : ImmutableList.of(indexed, notIndexed)) {
+      long startTime = System.nanoTime();
+      for (int i = 0; i < 10; i++) {
+        dsFrameworkUtil.newTransactionExecutor((TransactionAware) dataset).execute(
+          new TransactionExecutor.Subroutine() {
+            @Override
+            public void apply() throws Exception {
+              Assert.assertEquals(days, dataset.getPartitions(filter).size());
+            }
+          });
+      }
+      LOG.info("Time to filter {} partitions 10 times in {}: {} ms", days * 24,
+               ((PartitionedFileSetDataset) dataset).getName(),
+               TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+  }
+
   private void testAllFilters(PartitionedFileSet dataset,
                               Set<BasicPartition> allPartitionDetails,
                               List<PartitionFilter> filters) throws Exception {
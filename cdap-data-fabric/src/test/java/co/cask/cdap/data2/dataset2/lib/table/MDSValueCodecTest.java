@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.internal.app.store.RunRecordMeta;
+import co.cask.cdap.internal.io.ASMDatumWriterFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.ReflectionDatumReaderFactory;
+import co.cask.cdap.proto.ProgramRunStatus;
+import co.cask.cdap.proto.id.NamespaceId;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Tests for {@link MDSValueCodec}.
+ */
+public class MDSValueCodecTest {
+
+  private static final Schema V1 = Schema.recordOf("Value",
+                                                   Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                                                   Schema.Field.of("count", Schema.of(Schema.Type.INT)));
+  private static final Schema V2 = Schema.recordOf("Value",
+                                                   Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                                                   Schema.Field.of("count", Schema.of(Schema.Type.INT)),
+                                                   Schema.Field.of("tags", Schema.nullableOf(
+                                                     Schema.mapOf(Schema.of(Schema.Type.STRING),
+                                                                  Schema.of(Schema.Type.STRING)))));
+
+  @Test
+  public void testRunRecordMeta() throws IOException {
+    MDSValueCodec codec = createCodec().add(RunRecordMeta.class, RunRecordMeta.SCHEMAS).build();
+
+    RunRecordMeta meta = new RunRecordMeta(NamespaceId.DEFAULT.app("app").worker("worker").run("pid"),
+                                           10L, 20L, null, ProgramRunStatus.RUNNING,
+                                           ImmutableMap.of("runtimeArgs", "{}"), ImmutableMap.of("k", "v"),
+                                           "twillRunId", Bytes.toBytes(1234L));
+    byte[] encoded = codec.encode(meta, RunRecordMeta.class);
+    Assert.assertTrue(MDSValueCodec.isEncoded(encoded));
+    Assert.assertTrue(encoded.length < new Gson().toJson(meta).length());
+
+    RunRecordMeta decoded = codec.decode(encoded, RunRecordMeta.class);
+    // The program run id is not part of the stored value
+    Assert.assertEquals(new RunRecordMeta(meta.getProgramRunId(), decoded.getStartTs(), decoded.getRunTs(),
+                                          decoded.getStopTs(), decoded.getStatus(), decoded.getProperties(),
+                                          decoded.getSystemArgs(), decoded.getTwillRunId(), decoded.getSourceId()),
+                        meta);
+  }
+
+  @Test
+  public void testSchemaEvolution() throws IOException {
+    MDSValueCodec oldCodec = createCodec().add(Value.class, ImmutableList.of(V1)).build();
+    MDSValueCodec newCodec = createCodec().add(Value.class, ImmutableList.of(V1, V2)).build();
+
+    // Values written with the old schema version are readable with the new one
+    Value decoded = newCodec.decode(oldCodec.encode(new Value("v", 1, null), Value.class), Value.class);
+    Assert.assertEquals("v", decoded.name);
+    Assert.assertEquals(1, decoded.count);
+    Assert.assertNull(decoded.tags);
+
+    decoded = newCodec.decode(newCodec.encode(new Value("v", 2, ImmutableMap.of("a", "b")), Value.class), Value.class);
+    Assert.assertEquals(2, decoded.count);
+    Assert.assertEquals(ImmutableMap.of("a", "b"), decoded.tags);
+
+    // The same reader is used for values of all schema versions
+    decoded = newCodec.decode(oldCodec.encode(new Value("v", 4, null), Value.class), Value.class);
+    Assert.assertEquals(4, decoded.count);
+    Assert.assertNull(decoded.tags);
+
+    // Values written with an unknown schema version are rejected
+    try {
+      oldCodec.decode(newCodec.encode(new Value("v", 3, null), Value.class), Value.class);
+      Assert.fail("Expected decoding failure for unknown schema version");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testJsonCompatibility() {
+    Assert.assertFalse(MDSValueCodec.isEncoded(Bytes.toBytes(new Gson().toJson(new Value("v", 1, null)))));
+    Assert.assertFalse(MDSValueCodec.isEncoded(Bytes.toBytes(new Gson().toJson("string"))));
+    Assert.assertFalse(MDSValueCodec.isEncoded(Bytes.toBytes(new Gson().toJson(new byte[] { 0 }))));
+    Assert.assertFalse(MDSValueCodec.isEncoded(new byte[0]));
+  }
+
+  private MDSValueCodec.Builder createCodec() {
+    return MDSValueCodec.builder(new ASMDatumWriterFactory(new ASMFieldAccessorFactory()),
+                                 new ReflectionDatumReaderFactory());
+  }
+
+  public static final class Value {
+    private final String name;
+    private final int count;
+    private final Map<String, String> tags;
+
+    Value(String name, int count, Map<String, String> tags) {
+      this.name = name;
+      this.count = count;
+      this.tags = tags;
+    }
+  }
+}
@@ -1294,6 +1294,79 @@ public abstract class TableTest<T extends Table> {
     }
   }
 
+  @Test
+  public void testPrefetchingScan() throws Exception {
+    DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE);
+    admin.create();
+    try {
+      Transaction tx1 = txClient.startShort();
+      Table table = getTable(CONTEXT1, MY_TABLE);
+      ((TransactionAware) table).startTx(tx1);
+
+      // write rows of different sizes, so that the batch size gets adjusted while scanning
+      for (int i = 0; i < 1000; i++) {
+        table.put(new Put(Bytes.toBytes(String.format("r%04d", i))).add(C1, new byte[i % 100 + 1]).add(C2, i));
+      }
+      txClient.canCommitOrThrow(tx1, ((TransactionAware) table).getTxChanges());
+      Assert.assertTrue(((TransactionAware) table).commitTx());
+      txClient.commitOrThrow(tx1);
+      ((TransactionAware) table).postTxCommit();
+
+      Transaction tx2 = txClient.startShort();
+      ((TransactionAware) table).startTx(tx2);
+
+      // changes that are not yet persisted should be merged with the prefetched rows
+      table.delete(Bytes.toBytes("r0010"));
+      table.put(Bytes.toBytes("r0500a"), C1, V1);
+
+      Scan scan = new Scan(Bytes.toBytes("r0005"), Bytes.toBytes("r0900"));
+      Scan prefetchScan = new Scan(Bytes.toBytes("r0005"), Bytes.toBytes("r0900"));
+      prefetchScan.setProperty(PrefetchingScanner.PROPERTY_PREFETCH_ENABLED, "true");
+      prefetchScan.setProperty(PrefetchingScanner.PROPERTY_PREFETCH_BATCHES, "2");
+      prefetchScan.setProperty(PrefetchingScanner.PROPERTY_PREFETCH_BATCH_BYTES, "1000");
+
+      List<String> expected = scanRows(table, scan);
+      Assert.assertEquals(895, expected.size());
+      Assert.assertEquals(expected, scanRows(table, prefetchScan));
+
+      // closing the scanner before reaching the end should stop the prefetching
+      try (Scanner scanner = table.scan(prefetchScan)) {
+        Assert.assertEquals("r0005", Bytes.toString(scanner.next().getRow()));
+      }
+
+      // a scanner that is not closed should be closed when the transaction ends, which stops the prefetching.
+      // Only the rows already handed over to the caller can still be read afterwards.
+      Scanner scanner = table.scan(prefetchScan);
+      Assert.assertEquals("r0005", Bytes.toString(scanner.next().getRow()));
+      Assert.assertTrue(((TransactionAware) table).rollbackTx());
+      int remaining = 0;
+      while (scanner.next() != null) {
+        remaining++;
+      }
+      Assert.assertTrue(remaining < expected.size() - 1);
+
+      txClient.abort(tx2);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  private static List<String> scanRows(Table table, Scan scan) {
+    List<String> rows = new ArrayList<>();
+    try (Scanner scanner = table.scan(scan)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        StringBuilder builder = new StringBuilder(Bytes.toStringBinary(row.getRow()));
+        for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+          builder.append(',').append(Bytes.toStringBinary(column.getKey()))
+            .append('=').append(Bytes.toStringBinary(column.getValue()));
+        }
+        rows.add(builder.toString());
+      }
+    }
+    return rows;
+  }
+
   @Test
   public void testScanWithFuzzyRowFilter() throws Exception {
     DatasetAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE);
@@ -16,9 +16,14 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.Row;
+import co.cask.cdap.api.dataset.table.Scan;
+import co.cask.cdap.api.dataset.table.Scanner;
+import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.guice.ConfigModule;
@@ -28,18 +33,26 @@ import co.cask.cdap.data.runtime.DataFabricLevelDBModule;
 import co.cask.cdap.data.runtime.DataSetsModules;
 import co.cask.cdap.data.runtime.TransactionMetricsModule;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTableTest;
+import co.cask.cdap.data2.dataset2.lib.table.PrefetchingScanner;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
 import co.cask.cdap.security.authorization.AuthorizationEnforcementModule;
 import co.cask.cdap.security.authorization.AuthorizationTestModule;
+import co.cask.cdap.test.SlowTests;
+import com.google.common.base.Stopwatch;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import org.apache.tephra.Transaction;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.Map;
 
 /**
@@ -47,7 +60,10 @@ import java.util.Map;
  */
 public class LevelDBTableTest extends BufferingTableTest<LevelDBTable> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(LevelDBTableTest.class);
+
   private static final LevelDBTableDefinition TABLE_DEFINITION = new LevelDBTableDefinition("foo");
+  private static final byte[] COLUMN = Bytes.toBytes("c");
 
   @ClassRule
   public static TemporaryFolder tmpFolder = new TemporaryFolder();
@@ -112,4 +128,66 @@ public class LevelDBTableTest extends BufferingTableTest<LevelDBTable> {
       service.list().contains(tableName);
     }
   }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testPrefetchingScanPerformance() throws Exception {
+    int rows = 100000;
+    LevelDBTableAdmin admin = getTableAdmin(CONTEXT1, MY_TABLE, DatasetProperties.EMPTY);
+    admin.create();
+    try {
+      LevelDBTable table = getTable(CONTEXT1, MY_TABLE, DatasetProperties.EMPTY);
+      Transaction tx = txClient.startShort();
+      table.startTx(tx);
+      byte[] value = new byte[256];
+      for (int i = 0; i < rows; i++) {
+        table.put(Bytes.toBytes(i), COLUMN, value);
+      }
+      Assert.assertTrue(table.commitTx());
+      txClient.commitOrThrow(tx);
+      table.postTxCommit();
+
+      tx = txClient.startShort();
+      table.startTx(tx);
+      Scan scan = new Scan(null, null);
+      Scan prefetchScan = new Scan(null, null);
+      prefetchScan.setProperty(PrefetchingScanner.PROPERTY_PREFETCH_ENABLED, "true");
+
+      // warm up
+      Assert.assertEquals(rows, scanWithWork(table, scan));
+
+      Stopwatch stopwatch = new Stopwatch().start();
+      Assert.assertEquals(rows, scanWithWork(table, scan));
+      long scanMillis = Math.max(1L, stopwatch.elapsedMillis());
+
+      stopwatch.reset().start();
+      Assert.assertEquals(rows, scanWithWork(table, prefetchScan));
+      long prefetchMillis = Math.max(1L, stopwatch.elapsedMillis());
+
+      LOG.info("Scanned {} rows with CPU-heavy processing: {} rows/sec without prefetch, {} rows/sec with prefetch",
+               rows, rows * 1000L / scanMillis, rows * 1000L / prefetchMillis);
+      txClient.abort(tx);
+    } finally {
+      admin.drop();
+    }
+  }
+
+  /**
+   * Scans the table and does some CPU work on each row, returning the number of rows scanned.
+   */
+  private int scanWithWork(Table table, Scan scan) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    int count = 0;
+    try (Scanner scanner = table.scan(scan)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        for (int i = 0; i < 20; i++) {
+          digest.update(row.get(COLUMN));
+        }
+        digest.digest();
+        count++;
+      }
+    }
+    return count;
+  }
 }
@@ -24,6 +24,7 @@ import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
+import com.google.common.base.Ticker;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -39,6 +40,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Test base for {@link co.cask.cdap.data2.dataset2.lib.timeseries.FactTable}.
@@ -269,6 +272,138 @@ public class FactTableTest {
 
   }
 
+  @Test
+  public void testIndex() throws Exception {
+    InMemoryTableService.create("IndexEntityTable");
+    InMemoryTableService.create("IndexDataTable");
+    FactTable table = new FactTable(new InMemoryMetricsTable("IndexDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("IndexEntityTable")),
+                                    Integer.MAX_VALUE, 2);
+    List<String> aggregation = ImmutableList.of("dim1", "dim2", "dim3", "dim4");
+
+    for (int i = 0; i < 2; i++) {
+      writeInc(table, "metric-a" + i, i, i, "dim1", "value1", "dim2", "value2", "dim3", "value3", "dim4", "value4");
+      writeInc(table, "metric-b" + i, i, i, "dim1", "value2", "dim2", "value2", "dim3", "x3", "dim4", "x4");
+      writeInc(table, "metric-c" + i, i, i, "dim1", "value2", "dim2", "value2", "dim3", null, "dim4", "y4");
+      writeInc(table, "metric-d" + i, i, i, "dim1", "value1", "dim2", "value3", "dim3", "y3", "dim4", null);
+      writeInc(table, "metric-e" + i, i, i, "dim1", "value3", "dim2", null, "dim3", null, "dim4", "z4");
+    }
+
+    Map<String, String> partialSlice = Maps.newHashMap();
+    partialSlice.put("dim1", "value2");
+    partialSlice.put("dim2", null);
+    List<Map<String, String>> slices = ImmutableList.of(
+      ImmutableMap.<String, String>of(),
+      ImmutableMap.of("dim1", "value1"),
+      ImmutableMap.of("dim1", "value2"),
+      ImmutableMap.of("dim1", "value3"),
+      ImmutableMap.of("dim1", "value1", "dim2", "value2"),
+      ImmutableMap.of("dim1", "value2", "dim2", "value2"),
+      ImmutableMap.of("dim1", "value1", "dim2", "value3", "dim3", "y3"),
+      ImmutableMap.of("dim2", "value2"),
+      partialSlice);
+
+    // results from scanning the facts
+    List<Set<DimensionValue>> expectedDimensionValues = Lists.newArrayList();
+    List<Set<String>> expectedMeasureNames = Lists.newArrayList();
+    for (Map<String, String> slice : slices) {
+      expectedDimensionValues.add(table.findSingleDimensionValue(aggregation, slice, 0, 1));
+      expectedMeasureNames.add(table.findMeasureNames(aggregation, slice, 0, 1));
+    }
+
+    // results from the index should be the same
+    table.buildIndex();
+    for (int i = 0; i < slices.size(); i++) {
+      Assert.assertEquals(expectedDimensionValues.get(i), table.findSingleDimensionValue(aggregation, slices.get(i),
+                                                                                         0, 1));
+      Assert.assertEquals(expectedMeasureNames.get(i), table.findMeasureNames(aggregation, slices.get(i), 0, 1));
+    }
+
+    // the index is maintained when adding facts
+    writeInc(table, "metric-f", 0, 1, "dim1", "value4", "dim2", "value2", "dim3", null, "dim4", null);
+    testTagSearch(table, aggregation, ImmutableMap.<String, String>of(),
+                  ImmutableSet.of(new DimensionValue("dim1", "value1"), new DimensionValue("dim1", "value2"),
+                                  new DimensionValue("dim1", "value3"), new DimensionValue("dim1", "value4")));
+    testTagSearch(table, aggregation, ImmutableMap.of("dim1", "value4"),
+                  ImmutableSet.of(new DimensionValue("dim2", "value2")));
+    testMetricNamesSearch(table, aggregation, ImmutableMap.of("dim1", "value4"), ImmutableSet.of("metric-f"));
+
+    // deleting all facts of an entity also deletes its index entries
+    table.delete(new FactScan(0, 1, dimValues("dim1", "value2", "dim2", null, "dim3", null, "dim4", null)));
+    testTagSearch(table, aggregation, ImmutableMap.<String, String>of(),
+                  ImmutableSet.of(new DimensionValue("dim1", "value1"), new DimensionValue("dim1", "value3"),
+                                  new DimensionValue("dim1", "value4")));
+    testTagSearch(table, aggregation, ImmutableMap.of("dim1", "value2"), ImmutableSet.<DimensionValue>of());
+    testMetricNamesSearch(table, aggregation, ImmutableMap.of("dim1", "value2"), ImmutableSet.<String>of());
+  }
+
+  @Test
+  public void testIndexTimeRange() throws Exception {
+    InMemoryTableService.create("IndexTimeEntityTable");
+    InMemoryTableService.create("IndexTimeDataTable");
+    FactTable table = new FactTable(new InMemoryMetricsTable("IndexTimeDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("IndexTimeEntityTable")), 60, 60);
+    table.buildIndex();
+    List<String> aggregation = ImmutableList.of("dim1", "dim2");
+
+    // the index keeps time in hourly buckets
+    long ts = System.currentTimeMillis() / 1000 / 3600 * 3600;
+    writeInc(table, "metric1", ts, 1, "dim1", "value1", "dim2", "value2");
+    writeInc(table, "metric2", ts + 7200, 1, "dim1", "value1", "dim2", "value3");
+
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "value2"), new DimensionValue("dim2", "value3")),
+                        table.findSingleDimensionValue(aggregation, ImmutableMap.of("dim1", "value1"),
+                                                       ts, ts + 7200));
+    Assert.assertEquals(ImmutableSet.of(new DimensionValue("dim2", "value3")),
+                        table.findSingleDimensionValue(aggregation, ImmutableMap.of("dim1", "value1"),
+                                                       ts + 3600, ts + 7200));
+    Assert.assertEquals(ImmutableSet.of("metric1"),
+                        table.findMeasureNames(aggregation, ImmutableMap.of("dim1", "value1"), ts, ts + 60));
+
+    // deleting old facts deletes the time buckets of the index
+    table.delete(new FactScan(0, ts + 3599, dimValues("dim1", null, "dim2", null)));
+    Assert.assertEquals(ImmutableSet.of("metric2"),
+                        table.findMeasureNames(aggregation, ImmutableMap.of("dim1", "value1"), ts, ts + 7200));
+  }
+
+  @Test
+  public void testIndexAfterDeleteByOtherInstance() throws Exception {
+    InMemoryTableService.create("IndexDeleteEntityTable");
+    InMemoryTableService.create("IndexDeleteDataTable");
+    final AtomicLong nanos = new AtomicLong();
+    Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    };
+    FactTable table = new FactTable(new InMemoryMetricsTable("IndexDeleteDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("IndexDeleteEntityTable")),
+                                    Integer.MAX_VALUE, 2, ticker);
+    FactTable otherTable = new FactTable(new InMemoryMetricsTable("IndexDeleteDataTable"),
+                                         new EntityTable(new InMemoryMetricsTable("IndexDeleteEntityTable")),
+                                         Integer.MAX_VALUE, 2);
+    table.buildIndex();
+    List<String> aggregation = ImmutableList.of("dim1", "dim2");
+
+    writeInc(table, "metric1", 0, 1, "dim1", "value1", "dim2", "value2");
+    testTagSearch(table, aggregation, ImmutableMap.<String, String>of(),
+                  ImmutableSet.of(new DimensionValue("dim1", "value1")));
+
+    // deleting the entity through another instance, such as when an app is deleted
+    otherTable.delete(new FactScan(0, 1, dimValues("dim1", "value1", "dim2", null)));
+    testTagSearch(table, aggregation, ImmutableMap.<String, String>of(), ImmutableSet.<DimensionValue>of());
+
+    // the entries remembered by the first instance expire, hence new facts of the entity get indexed again
+    nanos.addAndGet(TimeUnit.HOURS.toNanos(1));
+    writeInc(table, "metric1", 0, 1, "dim1", "value1", "dim2", "value2");
+    testTagSearch(table, aggregation, ImmutableMap.<String, String>of(),
+                  ImmutableSet.of(new DimensionValue("dim1", "value1")));
+    testTagSearch(table, aggregation, ImmutableMap.of("dim1", "value1"),
+                  ImmutableSet.of(new DimensionValue("dim2", "value2")));
+    testMetricNamesSearch(table, aggregation, ImmutableMap.of("dim1", "value1"), ImmutableSet.of("metric1"));
+  }
+
   private void testMetricNamesSearch(FactTable table, List<String> aggregationList ,
                                      Map<String, String> sliceBy,
                                      ImmutableSet<String> expectedResuls) throws Exception {
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.transaction;
+
+import co.cask.cdap.common.utils.Tasks;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.tephra.Transaction;
+import org.apache.tephra.TransactionManager;
+import org.apache.tephra.inmemory.InMemoryTxSystemClient;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link ReadOnlyTransactionCache}.
+ */
+public class ReadOnlyTransactionCacheTest {
+
+  private static final String UNAVAILABLE = "Transaction system is unavailable";
+
+  private static TransactionManager txManager;
+
+  @BeforeClass
+  public static void setup() {
+    txManager = new TransactionManager(new Configuration());
+    txManager.startAndWait();
+  }
+
+  @AfterClass
+  public static void finish() {
+    txManager.stopAndWait();
+  }
+
+  @Test
+  public void testRefresh() throws Exception {
+    ReadOnlyTransactionCache cache = new ReadOnlyTransactionCache(new InMemoryTxSystemClient(txManager), 50L, 60000L);
+    cache.startAndWait();
+    try {
+      Transaction tx = cache.acquire();
+      Assert.assertTrue(isInProgress(tx));
+
+      // Wait for the transaction to get replaced
+      Tasks.waitFor(true, () -> {
+        Transaction newTx = cache.acquire();
+        cache.release(newTx);
+        return newTx.getTransactionId() != tx.getTransactionId();
+      }, 5, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+
+      // The replaced transaction is still in progress until it is released
+      Assert.assertTrue(isInProgress(tx));
+      cache.release(tx);
+      Assert.assertFalse(isInProgress(tx));
+      Assert.assertFalse(txManager.getCurrentState().getInvalid().contains(tx.getTransactionId()));
+
+      // A new committed transaction becomes visible to read-only transaction after refresh
+      Transaction writeTx = txManager.startShort();
+      txManager.commit(writeTx);
+      Tasks.waitFor(true, () -> {
+        Transaction readTx = cache.acquire();
+        try {
+          return readTx.isVisible(writeTx.getWritePointer());
+        } finally {
+          cache.release(readTx);
+        }
+      }, 5, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+    } finally {
+      cache.stopAndWait();
+    }
+
+    // No transaction is left in progress after the cache is stopped
+    Assert.assertTrue(txManager.getCurrentState().getInProgress().isEmpty());
+
+    try {
+      cache.acquire();
+      Assert.fail("Expected failure on stopped cache");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testRefreshFailure() throws Exception {
+    FailingTxClient txClient = new FailingTxClient(txManager);
+    ReadOnlyTransactionCache cache = new ReadOnlyTransactionCache(txClient, 50L, 200L);
+    cache.startAndWait();
+    try {
+      Transaction tx = cache.acquire();
+      cache.release(tx);
+
+      // While refresh keeps failing, the cached transaction is used until it reaches the maximum age.
+      // After that, a new transaction is needed for every task, which fails since the transaction system is down.
+      txClient.failing = true;
+      Tasks.waitFor(true, () -> {
+        try {
+          cache.release(cache.acquire());
+          return false;
+        } catch (RuntimeException e) {
+          Assert.assertEquals(UNAVAILABLE, e.getMessage());
+          return true;
+        }
+      }, 5, TimeUnit.SECONDS, 10, TimeUnit.MILLISECONDS);
+
+      // Once the transaction system is back, tasks get a new transaction again
+      txClient.failing = false;
+      Transaction newTx = cache.acquire();
+      Assert.assertNotEquals(tx.getTransactionId(), newTx.getTransactionId());
+      Assert.assertTrue(isInProgress(newTx));
+      cache.release(newTx);
+    } finally {
+      cache.stopAndWait();
+    }
+
+    // No transaction is left in progress after the cache is stopped
+    Assert.assertTrue(txManager.getCurrentState().getInProgress().isEmpty());
+  }
+
+  private boolean isInProgress(Transaction tx) {
+    return txManager.getCurrentState().getInProgress().containsKey(tx.getTransactionId());
+  }
+
+  /**
+   * A {@link InMemoryTxSystemClient} that fails to start transactions while {@link #failing} is set.
+   */
+  private static final class FailingTxClient extends InMemoryTxSystemClient {
+
+    private volatile boolean failing;
+
+    FailingTxClient(TransactionManager txManager) {
+      super(txManager);
+    }
+
+    @Override
+    public Transaction startShort() {
+      if (failing) {
+        throw new RuntimeException(UNAVAILABLE);
+      }
+      return super.startShort();
+    }
+  }
+}
@@ -585,6 +585,62 @@ public class TransactionContextTest {
     Assert.assertNull(context.getCurrentTransaction());
   }
 
+  @Test
+  public void testReadOnly() throws TransactionFailureException {
+    Transaction tx = txManager.startShort();
+    AbstractTransactionContext context = new SimpleTransactionContext(txClient, ds1, ds2);
+    context.startReadOnly(tx);
+    Assert.assertSame(tx, ds1.tx);
+    Assert.assertSame(tx, ds2.tx);
+    context.finish();
+
+    // No commit happened, the transaction-aware states are just rolled back
+    Assert.assertTrue(ds1.checked);
+    Assert.assertFalse(ds1.committed);
+    Assert.assertFalse(ds1.postCommitted);
+    Assert.assertTrue(ds1.rolledBack);
+    Assert.assertTrue(ds2.rolledBack);
+    Assert.assertNull(context.getCurrentTransaction());
+
+    // The transaction is still in progress since it is not owned by the context
+    Assert.assertTrue(txManager.getCurrentState().getInProgress().containsKey(tx.getTransactionId()));
+
+    // Aborting doesn't touch the transaction either
+    context.startReadOnly(tx);
+    context.abort();
+    Assert.assertTrue(ds1.rolledBack);
+    Assert.assertTrue(txManager.getCurrentState().getInProgress().containsKey(tx.getTransactionId()));
+
+    // The context can be used for regular transaction afterwards
+    context.start();
+    ds1.addChange(A);
+    context.finish();
+    Assert.assertTrue(ds1.committed);
+    Assert.assertEquals(txClient.state, DummyTxClient.CommitState.Committed);
+
+    txManager.abort(tx);
+  }
+
+  @Test
+  public void testReadOnlyWithChanges() throws TransactionFailureException {
+    Transaction tx = txManager.startShort();
+    AbstractTransactionContext context = new SimpleTransactionContext(txClient, ds1, ds2);
+    context.startReadOnly(tx);
+    ds2.addChange(B);
+    try {
+      context.finish();
+      Assert.fail("Changes in read-only transaction should fail");
+    } catch (TransactionFailureException e) {
+      // expected
+    }
+    Assert.assertFalse(ds2.committed);
+    Assert.assertTrue(ds2.rolledBack);
+    Assert.assertNull(context.getCurrentTransaction());
+    Assert.assertTrue(txManager.getCurrentState().getInProgress().containsKey(tx.getTransactionId()));
+
+    txManager.abort(tx);
+  }
+
   enum InduceFailure { NoFailure, ReturnFalse, ThrowException }
 
   static class DummyTxAware implements TransactionAware {
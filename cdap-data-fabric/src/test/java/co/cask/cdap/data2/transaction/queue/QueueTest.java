@@ -329,6 +329,134 @@ public abstract class QueueTest {
     }
   }
 
+  @Test(timeout = TIMEOUT_MS)
+  public void testHasData() throws Exception {
+    QueueName queueName = QueueName.fromFlowlet(NamespaceId.DEFAULT.getEntityName(), "app",
+                                                "flow", "flowlet", "queuehasdata");
+    ConsumerConfig consumerConfig = new ConsumerConfig(0, 0, 1, DequeueStrategy.FIFO, null);
+    configureGroups(queueName, ImmutableList.of(consumerConfig));
+    try (
+      QueueProducer producer = queueClientFactory.createProducer(queueName);
+      QueueConsumer consumer = queueClientFactory.createConsumer(queueName, consumerConfig, 1)
+    ) {
+      TransactionContext txContext = createTxContext(producer, consumer);
+
+      // Nothing is enqueued yet
+      if (isHasDataExact()) {
+        Assert.assertFalse(consumer.hasData());
+      }
+
+      // Uncommitted enqueue may or may not be reported, but committed one must be
+      txContext.start();
+      producer.enqueue(new QueueEntry(Bytes.toBytes(1)));
+      producer.enqueue(new QueueEntry(Bytes.toBytes(2)));
+      txContext.finish();
+      Assert.assertTrue(consumer.hasData());
+
+      // Dequeue one, there should still be data
+      txContext.start();
+      Assert.assertEquals(1, Bytes.toInt(consumer.dequeue().iterator().next()));
+      txContext.finish();
+      Assert.assertTrue(consumer.hasData());
+
+      // Dequeue the last one
+      txContext.start();
+      Assert.assertEquals(2, Bytes.toInt(consumer.dequeue().iterator().next()));
+      txContext.finish();
+      if (isHasDataExact()) {
+        Assert.assertFalse(consumer.hasData());
+      }
+
+      // A rolled back dequeue should be reported as having data again
+      txContext.start();
+      producer.enqueue(new QueueEntry(Bytes.toBytes(3)));
+      txContext.finish();
+
+      txContext.start();
+      Assert.assertEquals(3, Bytes.toInt(consumer.dequeue().iterator().next()));
+      txContext.abort();
+      Assert.assertTrue(consumer.hasData());
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@link QueueConsumer#hasData()} of the queue implementation under test returns
+   * {@code false} when the queue is fully consumed.
+   */
+  protected boolean isHasDataExact() {
+    return false;
+  }
+
+  @Test(timeout = TIMEOUT_MS)
+  public void testMultipleDequeuesPerTx() throws Exception {
+    // Flowlets can dequeue multiple batches in one transaction. Every dequeue must return entries that were not yet
+    // dequeued in the transaction, and all of them must be acked on commit or be dequeued again after rollback.
+    // This also compares the dequeue throughput of one batch per transaction with ten batches per transaction.
+    int entries = 20000;
+    int batchSize = 10;
+    for (int batchesPerTx : new int[] {1, 10}) {
+      QueueName queueName = QueueName.fromFlowlet(NamespaceId.DEFAULT.getEntityName(), "app", "flow",
+                                                  "flowlet", "multidequeue" + batchesPerTx);
+      ConsumerConfig consumerConfig = new ConsumerConfig(0, 0, 1, DequeueStrategy.FIFO, null);
+      configureGroups(queueName, ImmutableList.of(consumerConfig));
+
+      try (
+        QueueProducer producer = queueClientFactory.createProducer(queueName);
+        QueueConsumer consumer = queueClientFactory.createConsumer(queueName, consumerConfig, 1)
+      ) {
+        TransactionContext txContext = createTxContext(producer);
+        txContext.start();
+        for (int i = 0; i < entries; i++) {
+          producer.enqueue(new QueueEntry(Bytes.toBytes(i)));
+        }
+        txContext.finish();
+
+        // Entries dequeued in an aborted transaction must be dequeued again
+        txContext = createTxContext(consumer);
+        txContext.start();
+        Set<Integer> rolledBack = Sets.newHashSet();
+        for (int i = 0; i < 2; i++) {
+          for (byte[] data : consumer.dequeue(batchSize)) {
+            Assert.assertTrue(rolledBack.add(Bytes.toInt(data)));
+          }
+        }
+        Assert.assertEquals(2 * batchSize, rolledBack.size());
+        txContext.abort();
+
+        Set<Integer> dequeued = Sets.newHashSet();
+        Stopwatch stopwatch = new Stopwatch().start();
+        while (dequeued.size() < entries) {
+          txContext.start();
+          int dequeuedInTx = 0;
+          for (int i = 0; i < batchesPerTx; i++) {
+            DequeueResult<byte[]> result = consumer.dequeue(batchSize);
+            for (byte[] data : result) {
+              int value = Bytes.toInt(data);
+              Assert.assertTrue("Entry " + value + " dequeued more than once", dequeued.add(value));
+            }
+            dequeuedInTx += result.size();
+          }
+          txContext.finish();
+          Assert.assertTrue(dequeuedInTx > 0);
+        }
+        stopwatch.stop();
+
+        LOG.info("Dequeued {} entries with {} batches of size {} per transaction in {} ms",
+                 dequeued.size(), batchesPerTx, batchSize, stopwatch.elapsedMillis());
+        Assert.assertEquals(entries, dequeued.size());
+        Assert.assertTrue(dequeued.containsAll(rolledBack));
+      }
+
+      // All entries were acked, hence a new consumer gets nothing
+      try (QueueConsumer consumer = queueClientFactory.createConsumer(queueName, consumerConfig, 1)) {
+        TransactionContext txContext = createTxContext(consumer);
+        txContext.start();
+        Assert.assertTrue(consumer.dequeue(batchSize).isEmpty());
+        txContext.finish();
+      }
+    }
+  }
+
   @Test
   public void testOneFIFOEnqueueDequeue() throws Exception {
     testOneEnqueueDequeue(DequeueStrategy.FIFO);
@@ -796,4 +796,9 @@ public abstract class HBaseQueueTest extends QueueTest {
       });
     }
   }
+
+  @Override
+  protected boolean isHasDataExact() {
+    return true;
+  }
 }
@@ -87,4 +87,9 @@ public class InMemoryQueueTest extends QueueTest {
     queueAdmin = injector.getInstance(QueueAdmin.class);
     executorFactory = injector.getInstance(TransactionExecutorFactory.class);
   }
+
+  @Override
+  protected boolean isHasDataExact() {
+    return true;
+  }
 }
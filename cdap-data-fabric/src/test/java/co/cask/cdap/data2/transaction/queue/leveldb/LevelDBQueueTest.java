@@ -104,4 +104,9 @@ public class LevelDBQueueTest extends QueueTest {
     txSystemClient.commitOrThrow(tx);
     Uninterruptibles.getUninterruptibly(evictor.evict(tx));
   }
+
+  @Override
+  protected boolean isHasDataExact() {
+    return true;
+  }
 }
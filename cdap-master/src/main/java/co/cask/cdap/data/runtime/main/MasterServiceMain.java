@@ -39,6 +39,8 @@ import co.cask.cdap.common.logging.LoggerLogHandler;
 import co.cask.cdap.common.runtime.DaemonMain;
 import co.cask.cdap.common.service.RetryOnStartFailureService;
 import co.cask.cdap.common.service.RetryStrategies;
+import co.cask.cdap.common.service.ServiceGraph;
+import co.cask.cdap.common.service.ServiceStartupTimes;
 import co.cask.cdap.common.service.Services;
 import co.cask.cdap.common.twill.HadoopClassExcluder;
 import co.cask.cdap.common.utils.DirUtils;
@@ -63,6 +65,7 @@ import co.cask.cdap.internal.app.services.AppFabricServer;
 import co.cask.cdap.logging.appender.LogAppenderInitializer;
 import co.cask.cdap.logging.guice.LoggingModules;
 import co.cask.cdap.master.startup.ServiceResourceKeys;
+import co.cask.cdap.messaging.MessagingServiceUtils;
 import co.cask.cdap.messaging.guice.MessagingClientModule;
 import co.cask.cdap.metrics.guice.MetricsClientRuntimeModule;
 import co.cask.cdap.metrics.guice.MetricsStoreModule;
@@ -381,18 +384,6 @@ public class MasterServiceMain extends DaemonMain {
     return false;
   }
 
-  /**
-   * Gets an instance of the given {@link Service} class from the given {@link Injector}, start the service and
-   * returns it.
-   */
-  private static <T extends Service> T getAndStart(Injector injector, Class<T> cls) {
-    T service = injector.getInstance(cls);
-    LOG.debug("Starting service in master {}", service);
-    service.startAndWait();
-    LOG.info("Service {} started in master", service);
-    return service;
-  }
-
   /**
    * Stops a guava {@link Service}. No exception will be thrown even stopping failed.
    */
@@ -622,13 +613,25 @@ public class MasterServiceMain extends DaemonMain {
       }
 
       authorizerInstantiator = injector.getInstance(AuthorizerInstantiator.class);
-      services.add(getAndStart(injector, KafkaClientService.class));
-      services.add(getAndStart(injector, MetricsCollectionService.class));
-
-      services.add(getAndStart(injector, OperationalStatsService.class));
-      ServiceStore serviceStore = getAndStart(injector, ServiceStore.class);
+      ServiceStartupTimes startupTimes = injector.getInstance(ServiceStartupTimes.class);
+      KafkaClientService kafkaClientService = injector.getInstance(KafkaClientService.class);
+      MetricsCollectionService metricsCollectionService = injector.getInstance(MetricsCollectionService.class);
+      OperationalStatsService operationalStatsService = injector.getInstance(OperationalStatsService.class);
+      ServiceStore serviceStore = injector.getInstance(ServiceStore.class);
+      services.add(kafkaClientService);
+      services.add(metricsCollectionService);
+      services.add(operationalStatsService);
       services.add(serviceStore);
 
+      // Starts the services needed by the twill runner, independent ones are started concurrently
+      startServices(ServiceGraph.builder()
+                      .setStartupTimes(startupTimes)
+                      .addService("kafka.client", kafkaClientService)
+                      .addService("metrics.collection", metricsCollectionService, "kafka.client")
+                      .addService("operational.stats", operationalStatsService)
+                      .addService("service.store", serviceStore)
+                      .build());
+
       twillRunner = injector.getInstance(TwillRunnerService.class);
       twillRunner.start();
 
@@ -643,39 +646,46 @@ public class MasterServiceMain extends DaemonMain {
       }
 
       // Create app-fabric and dataset services
-      services.add(new RetryOnStartFailureService(new Supplier<Service>() {
+      Service datasetService = new RetryOnStartFailureService(new Supplier<Service>() {
         @Override
         public Service get() {
           return injector.getInstance(DatasetService.class);
         }
-      }, RetryStrategies.exponentialDelay(200, 5000, TimeUnit.MILLISECONDS)));
-      services.add(injector.getInstance(AppFabricServer.class));
+      }, RetryStrategies.exponentialDelay(200, 5000, TimeUnit.MILLISECONDS));
+      Service appFabricServer = injector.getInstance(AppFabricServer.class);
+      services.add(datasetService);
+      services.add(appFabricServer);
 
       executor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("master-runner"));
 
       // Start monitoring twill application
       monitorTwillApplication(executor, 0, controller, twillRunner, serviceStore, secureStoreRenewer);
 
-      // Starts all services.
-      for (Service service : services) {
-        if (service.isRunning()) {
-          // Some services already started (e.g. MetricsCollectionService, KafkaClientService)
-          continue;
-        }
-        LOG.info("Starting service in master: {}", service);
-        try {
-          service.startAndWait();
-        } catch (Throwable t) {
-          // shut down the executor and stop the twill app,
-          // then throw an exception to cause the leader election service to stop
-          // leader election's listener will then shutdown the master
-          stop(true);
-          throw new RuntimeException(String.format("Unable to start service %s: %s", service, t.getMessage()));
-        }
-      }
+      // Starts the remaining services.
+      startServices(ServiceGraph.builder()
+                      .setStartupTimes(startupTimes)
+                      .addService("dataset", datasetService)
+                      .addService("app.fabric", appFabricServer, "dataset")
+                      .build());
       LOG.info("CDAP Master started successfully.");
     }
 
+    /**
+     * Starts all services in the given {@link ServiceGraph}. If any of them failed to start, all services in master
+     * will be stopped and a {@link RuntimeException} will be thrown.
+     */
+    private void startServices(ServiceGraph serviceGraph) {
+      try {
+        serviceGraph.start();
+      } catch (Throwable t) {
+        // shut down the executor and stop the twill app,
+        // then throw an exception to cause the leader election service to stop
+        // leader election's listener will then shutdown the master
+        stop(true);
+        throw new RuntimeException(String.format("Unable to start services in master: %s", t.getMessage()), t);
+      }
+    }
+
     @Override
     public void follower() {
       LOG.info("Became follower for master services");
@@ -1023,19 +1033,38 @@ public class MasterServiceMain extends DaemonMain {
         String configPrefix = entry.getValue() + "twill.";
 
         Map<String, String> config = new HashMap<>();
+        String jvmOpts = null;
         for (Map.Entry<String, String> confEntry : cConf) {
           if (confEntry.getKey().startsWith(configPrefix)) {
             // Get the key that twill recognize, which is prefixed with "twill."
             String key = confEntry.getKey().substring(entry.getValue().length());
             // Special case for jvm options.
             if ("twill.jvm.opts".equals(key)) {
-              preparer.setJVMOptions(runnableName, confEntry.getValue());
+              jvmOpts = confEntry.getValue();
             } else {
               config.put(key, confEntry.getValue());
             }
           }
         }
 
+        // The off-heap message cache is added to the reserved non-heap memory of the messaging service, which
+        // also bounds the direct memory. The container memory is increased by the same amount in
+        // the MasterTwillApplication, so that the heap size is not affected.
+        int offHeapCacheMemory = Constants.Service.MESSAGING_SERVICE.equals(runnableName)
+          ? MessagingServiceUtils.getOffHeapCacheMemoryMB(cConf) : 0;
+        if (offHeapCacheMemory > 0) {
+          String reservedMemory = config.get(Configs.Keys.JAVA_RESERVED_MEMORY_MB);
+          int reservedMemoryMB = offHeapCacheMemory + (reservedMemory == null
+            ? cConf.getInt(Configs.Keys.JAVA_RESERVED_MEMORY_MB)
+            : Integer.parseInt(reservedMemory));
+          config.put(Configs.Keys.JAVA_RESERVED_MEMORY_MB, Integer.toString(reservedMemoryMB));
+          jvmOpts = (jvmOpts == null ? "" : jvmOpts + " ") + "-XX:MaxDirectMemorySize=" + reservedMemoryMB + "m";
+        }
+
+        if (jvmOpts != null) {
+          preparer.setJVMOptions(runnableName, jvmOpts);
+        }
+
         if (!config.isEmpty()) {
           preparer.withConfiguration(runnableName, config);
         }
@@ -26,6 +26,7 @@ import co.cask.cdap.hive.ExploreUtils;
 import co.cask.cdap.internal.app.runtime.batch.distributed.MapReduceContainerHelper;
 import co.cask.cdap.internal.app.runtime.distributed.LocalizeResource;
 import co.cask.cdap.logging.LoggingUtil;
+import co.cask.cdap.messaging.MessagingServiceUtils;
 import co.cask.cdap.spi.hbase.HBaseDDLExecutor;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
@@ -246,9 +247,12 @@ public class MasterTwillApplication implements TwillApplication {
   }
 
   private Builder.RunnableSetter addMessaging(Builder.MoreRunnable builder) {
+    // Reserve the memory of the off-heap message cache on top of the configured container memory
+    int offHeapCacheMemory = MessagingServiceUtils.getOffHeapCacheMemoryMB(cConf);
     ResourceSpecification resourceSpec = createResourceSpecification(Constants.MessagingSystem.CONTAINER_VIRTUAL_CORES,
                                                                      Constants.MessagingSystem.CONTAINER_MEMORY_MB,
-                                                                     Constants.Service.MESSAGING_SERVICE);
+                                                                     Constants.Service.MESSAGING_SERVICE,
+                                                                     offHeapCacheMemory);
     return addResources(Constants.Service.MESSAGING_SERVICE,
                         builder.add(new MessagingServiceTwillRunnable(Constants.Service.MESSAGING_SERVICE,
                                                                       CCONF_NAME, HCONF_NAME), resourceSpec));
@@ -258,6 +262,15 @@ public class MasterTwillApplication implements TwillApplication {
    * Creates a {@link ResourceSpecification} based on the given configuration keys.
    */
   private ResourceSpecification createResourceSpecification(String vCoresKey, String memoryKey, String instancesKey) {
+    return createResourceSpecification(vCoresKey, memoryKey, instancesKey, 0);
+  }
+
+  /**
+   * Creates a {@link ResourceSpecification} based on the given configuration keys, with extra memory added to the
+   * configured memory size.
+   */
+  private ResourceSpecification createResourceSpecification(String vCoresKey, String memoryKey,
+                                                            String instancesKey, int extraMemoryMB) {
     int vCores = cConf.getInt(vCoresKey);
     int memory = cConf.getInt(memoryKey);
     int instances = instanceCountMap.get(instancesKey);
@@ -268,7 +281,7 @@ public class MasterTwillApplication implements TwillApplication {
 
     return ResourceSpecification.Builder.with()
       .setVirtualCores(vCores)
-      .setMemory(memory, ResourceSpecification.SizeUnit.MEGA)
+      .setMemory(memory + extraMemoryMB, ResourceSpecification.SizeUnit.MEGA)
       .setInstances(instances)
       .build();
   }
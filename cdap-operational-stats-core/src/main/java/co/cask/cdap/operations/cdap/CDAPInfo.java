@@ -16,23 +16,39 @@
 
 package co.cask.cdap.operations.cdap;
 
+import co.cask.cdap.common.service.ServiceStartupTimes;
 import co.cask.cdap.operations.OperationalStats;
+import com.google.inject.Injector;
+
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * {@link OperationalStats} representing CDAP information.
  */
 public class CDAPInfo extends AbstractCDAPStats implements CDAPInfoMXBean {
   private final long startTime;
+  private ServiceStartupTimes startupTimes;
 
   public CDAPInfo() {
     this.startTime = System.currentTimeMillis();
   }
 
+  @Override
+  public void initialize(Injector injector) {
+    startupTimes = injector.getInstance(ServiceStartupTimes.class);
+  }
+
   @Override
   public long getUptime() {
     return System.currentTimeMillis() - startTime;
   }
 
+  @Override
+  public Map<String, Long> getServiceStartupMillis() {
+    return startupTimes == null ? Collections.<String, Long>emptyMap() : startupTimes.getAll();
+  }
+
   @Override
   public String getStatType() {
     return "info";
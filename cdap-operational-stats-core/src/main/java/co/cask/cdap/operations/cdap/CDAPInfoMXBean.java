@@ -16,6 +16,7 @@
 
 package co.cask.cdap.operations.cdap;
 
+import java.util.Map;
 import javax.management.MXBean;
 
 /**
@@ -27,4 +28,9 @@ public interface CDAPInfoMXBean {
    * Returns the CDAP Master's uptime
    */
   long getUptime();
+
+  /**
+   * Returns the time in milliseconds it took to start each service, keyed by service name
+   */
+  Map<String, Long> getServiceStartupMillis();
 }
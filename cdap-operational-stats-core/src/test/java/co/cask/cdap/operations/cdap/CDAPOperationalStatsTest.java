@@ -20,6 +20,7 @@ import co.cask.cdap.AllProgramsApp;
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.namespace.NamespaceAdmin;
+import co.cask.cdap.common.service.ServiceStartupTimes;
 import co.cask.cdap.common.utils.Tasks;
 import co.cask.cdap.internal.AppFabricTestHelper;
 import co.cask.cdap.operations.OperationalStats;
@@ -76,6 +77,10 @@ public class CDAPOperationalStatsTest {
     Assert.assertEquals(AbstractCDAPStats.SERVICE_NAME, info.getServiceName());
     Assert.assertEquals("info", info.getStatType());
     Assert.assertTrue(info.getUptime() <= System.currentTimeMillis());
+    Assert.assertTrue(info.getServiceStartupMillis().isEmpty());
+    injector.getInstance(ServiceStartupTimes.class).record("test", 10L);
+    info.initialize(injector);
+    Assert.assertEquals(10L, (long) info.getServiceStartupMillis().get("test"));
     CDAPEntities entities = new CDAPEntities();
     entities.initialize(injector);
     Assert.assertEquals(AbstractCDAPStats.SERVICE_NAME, entities.getServiceName());
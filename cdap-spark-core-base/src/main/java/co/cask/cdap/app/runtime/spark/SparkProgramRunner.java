@@ -35,11 +35,13 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.lang.FilterClassLoader;
 import co.cask.cdap.common.lang.InstantiatorFactory;
+import co.cask.cdap.common.namespace.NamespacedLocationFactory;
 import co.cask.cdap.data.ProgramContextAware;
 import co.cask.cdap.data2.dataset2.DatasetFramework;
 import co.cask.cdap.data2.transaction.stream.StreamAdmin;
 import co.cask.cdap.internal.app.runtime.AbstractProgramRunnerWithPlugin;
 import co.cask.cdap.internal.app.runtime.BasicProgramContext;
+import co.cask.cdap.internal.app.runtime.LaunchArtifactCache;
 import co.cask.cdap.internal.app.runtime.ProgramOptionConstants;
 import co.cask.cdap.internal.app.runtime.ProgramRunners;
 import co.cask.cdap.internal.app.runtime.artifact.PluginFinder;
@@ -88,6 +90,7 @@ final class SparkProgramRunner extends AbstractProgramRunnerWithPlugin
   private final CConfiguration cConf;
   private final Configuration hConf;
   private final LocationFactory locationFactory;
+  private final NamespacedLocationFactory namespacedLocationFactory;
   private final TransactionSystemClient txClient;
   private final DatasetFramework datasetFramework;
   private final MetricsCollectionService metricsCollectionService;
@@ -103,6 +106,7 @@ final class SparkProgramRunner extends AbstractProgramRunnerWithPlugin
 
   @Inject
   SparkProgramRunner(CConfiguration cConf, Configuration hConf, LocationFactory locationFactory,
+                     NamespacedLocationFactory namespacedLocationFactory,
                      TransactionSystemClient txClient, DatasetFramework datasetFramework,
                      MetricsCollectionService metricsCollectionService,
                      DiscoveryServiceClient discoveryServiceClient, StreamAdmin streamAdmin,
@@ -114,6 +118,7 @@ final class SparkProgramRunner extends AbstractProgramRunnerWithPlugin
     this.cConf = cConf;
     this.hConf = hConf;
     this.locationFactory = locationFactory;
+    this.namespacedLocationFactory = namespacedLocationFactory;
     this.txClient = txClient;
     this.datasetFramework = datasetFramework;
     this.metricsCollectionService = metricsCollectionService;
@@ -191,8 +196,17 @@ final class SparkProgramRunner extends AbstractProgramRunnerWithPlugin
         : new DistributedSparkSubmitter(hConf, locationFactory, host, runtimeContext,
                                         options.getArguments().getOption(Constants.AppFabric.APP_SCHEDULER_QUEUE));
 
+      // Launch artifacts are only needed in distributed mode
+      LaunchArtifactCache launchCache = SparkRuntimeContextConfig.isLocal(hConf)
+        ? null
+        : LaunchArtifactCache.create(cConf, namespacedLocationFactory.get(program.getId().getNamespaceId()),
+                                     runId.getId());
+      if (launchCache != null) {
+        closeables.addFirst(launchCache);
+      }
+
       Service sparkRuntimeService = new SparkRuntimeService(cConf, spark, getPluginArchive(options),
-                                                            runtimeContext, submitter, locationFactory);
+                                                            runtimeContext, submitter, locationFactory, launchCache);
 
       sparkRuntimeService.addListener(createRuntimeServiceListener(closeables), Threads.SAME_THREAD_EXECUTOR);
       ProgramController controller = new SparkProgramController(sparkRuntimeService, runtimeContext);
@@ -37,6 +37,7 @@ import co.cask.cdap.common.logging.LoggingContextAccessor;
 import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.internal.app.runtime.DataSetFieldSetter;
+import co.cask.cdap.internal.app.runtime.LaunchArtifactCache;
 import co.cask.cdap.internal.app.runtime.LocalizationUtils;
 import co.cask.cdap.internal.app.runtime.MetricsFieldSetter;
 import co.cask.cdap.internal.app.runtime.ProgramRunners;
@@ -71,6 +72,7 @@ import org.apache.spark.deploy.SparkSubmit;
 import org.apache.twill.api.Configs;
 import org.apache.twill.api.RunId;
 import org.apache.twill.api.TwillRunnable;
+import org.apache.twill.filesystem.Location;
 import org.apache.twill.filesystem.LocationFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,8 +101,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
@@ -137,6 +138,7 @@ final class SparkRuntimeService extends AbstractExecutionThreadService {
   private final File pluginArchive;
   private final SparkSubmitter sparkSubmitter;
   private final LocationFactory locationFactory;
+  private final LaunchArtifactCache launchCache;
   private final AtomicReference<ListenableFuture<RunId>> completion;
   private final BasicSparkClientContext context;
   private final ProgramLifecycle<SparkRuntimeContext> programLifecycle;
@@ -146,13 +148,14 @@ final class SparkRuntimeService extends AbstractExecutionThreadService {
 
   SparkRuntimeService(CConfiguration cConf, final Spark spark, @Nullable File pluginArchive,
                       SparkRuntimeContext runtimeContext, SparkSubmitter sparkSubmitter,
-                      LocationFactory locationFactory) {
+                      LocationFactory locationFactory, @Nullable LaunchArtifactCache launchCache) {
     this.cConf = cConf;
     this.spark = spark;
     this.runtimeContext = runtimeContext;
     this.pluginArchive = pluginArchive;
     this.sparkSubmitter = sparkSubmitter;
     this.locationFactory = locationFactory;
+    this.launchCache = launchCache;
     this.completion = new AtomicReference<>();
     this.context = new BasicSparkClientContext(runtimeContext);
     this.programLifecycle = new ProgramLifecycle<SparkRuntimeContext>() {
@@ -228,22 +231,18 @@ final class SparkRuntimeService extends AbstractExecutionThreadService {
         // Localize all user requested files in distributed mode
         distributedUserResources(context.getLocalizeResources(), localizeResources);
 
-        // Localize program jar and the expanding program jar
-        File programJar = Locations.linkOrCopy(runtimeContext.getProgram().getJarLocation(),
-                                               new File(tempDir, SparkRuntimeContextProvider.PROGRAM_JAR_NAME));
-        File expandedProgramJar = Locations.linkOrCopy(runtimeContext.getProgram().getJarLocation(),
-                                                       new File(tempDir,
-                                                                SparkRuntimeContextProvider.PROGRAM_JAR_EXPANDED_NAME));
         // Localize both the unexpanded and expanded program jar
-        localizeResources.add(new LocalizeResource(programJar));
-        localizeResources.add(new LocalizeResource(expandedProgramJar, true));
+        localizeResources.add(new LocalizeResource(
+          copyProgramJar(tempDir, SparkRuntimeContextProvider.PROGRAM_JAR_NAME), false));
+        localizeResources.add(new LocalizeResource(
+          copyProgramJar(tempDir, SparkRuntimeContextProvider.PROGRAM_JAR_EXPANDED_NAME), true));
 
         if (pluginArchive != null) {
           localizeResources.add(new LocalizeResource(pluginArchive, true));
         }
 
         // Create and localize the launcher jar, which is for setting up services and classloader for spark containers
-        localizeResources.add(new LocalizeResource(createLauncherJar(tempDir)));
+        localizeResources.add(new LocalizeResource(createLauncherJar(tempDir), false));
 
         // Create metrics conf file in the current directory since
         // the same value for the "spark.metrics.conf" config needs to be used for both driver and executor processes
@@ -265,14 +264,14 @@ final class SparkRuntimeService extends AbstractExecutionThreadService {
         Joiner joiner = Joiner.on(File.pathSeparator).skipNulls();
 
         // Localize the spark.jar archive, which contains all CDAP and dependency jars
-        File sparkJar = new File(tempDir, CDAP_SPARK_JAR);
-        classpath = joiner.join(Iterables.transform(buildDependencyJar(sparkJar), new Function<String, String>() {
+        Map<String, File> dependencyJars = getDependencyJars();
+        classpath = joiner.join(Iterables.transform(dependencyJars.keySet(), new Function<String, String>() {
           @Override
           public String apply(String name) {
             return Paths.get("$PWD", CDAP_SPARK_JAR, name).toString();
           }
         }));
-        localizeResources.add(new LocalizeResource(sparkJar, true));
+        localizeResources.add(new LocalizeResource(buildDependencyJar(dependencyJars, tempDir), true));
 
         // Localize logback if there is one. It is placed at the beginning of the classpath
         File logbackJar = ProgramRunners.createLogbackJar(new File(tempDir, "logback.xml.jar"));
@@ -442,18 +441,51 @@ final class SparkRuntimeService extends AbstractExecutionThreadService {
     runtimeContext.destroyProgram(programLifecycle, txControl, false);
   }
 
+  /**
+   * Copies the program jar for localization. If the {@link LaunchArtifactCache} is available, the copy is shared
+   * by all runs of programs from the same program jar.
+   *
+   * @param tempDir temporary directory for storing the copy if the cache is not available
+   * @param name the file name of the copy
+   * @return the {@link URI} of the copy
+   */
+  private URI copyProgramJar(File tempDir, String name) throws IOException {
+    Location programJarLocation = runtimeContext.getProgram().getJarLocation();
+    if (launchCache == null) {
+      return Locations.linkOrCopy(programJarLocation, new File(tempDir, name)).toURI();
+    }
+
+    // The program jar is never modified in place, hence it is keyed by the location instead of the content
+    String key = LaunchArtifactCache.keyBuilder().add(programJarLocation).build();
+    return launchCache.getLocation(key, name, target -> ByteStreams.copy(Locations.newInputSupplier(programJarLocation),
+                                                                         Locations.newOutputSupplier(target))).toURI();
+  }
+
   /**
    * Creates a JAR file which contains generate Spark YARN container main classes. Those classes
    * are used for intercepting the Java main method in the YARN container so that we can control the
    * ClassLoader creation.
+   *
+   * @return the {@link URI} of the jar file
    */
-  private File createLauncherJar(File tempDir) throws IOException {
+  private URI createLauncherJar(File tempDir) throws IOException {
+    List<String> mainClassNames = Arrays.asList("org.apache.spark.deploy.yarn.ApplicationMaster",
+                                                "org.apache.spark.executor.CoarseGrainedExecutorBackend");
+    LaunchArtifactCache.Generator generator = target -> ContainerLauncherGenerator.generateLauncherJar(
+      mainClassNames, SparkContainerLauncher.class, Locations.newOutputSupplier(target));
+
+    URL launcherClassPath = ClassLoaders.getClassPathURL(SparkContainerLauncher.class);
+    if (launchCache != null && launcherClassPath != null) {
+      String key = LaunchArtifactCache.keyBuilder()
+        .add(mainClassNames.toString())
+        .addClassPath(Collections.singleton(launcherClassPath))
+        .build();
+      return launchCache.getLocation(key, CDAP_LAUNCHER_JAR, generator).toURI();
+    }
+
     File jarFile = new File(tempDir, CDAP_LAUNCHER_JAR);
-    ContainerLauncherGenerator.generateLauncherJar(
-      Arrays.asList("org.apache.spark.deploy.yarn.ApplicationMaster",
-                    "org.apache.spark.executor.CoarseGrainedExecutorBackend"),
-      SparkContainerLauncher.class, Files.newOutputStreamSupplier(jarFile));
-    return jarFile;
+    generator.generate(Locations.toLocation(jarFile));
+    return jarFile.toURI();
   }
 
   /**
@@ -577,37 +609,64 @@ final class SparkRuntimeService extends AbstractExecutionThreadService {
   }
 
   /**
-   * Packages all the dependencies of the Spark job. It contains all CDAP classes that are needed to run the
+   * Finds all the dependencies of the Spark job. It contains all CDAP classes that are needed to run the
    * user spark program.
    *
-   * @param targetFile the target file for the jar created
-   * @return list of jar file name that contains all dependency jars in sorted order
-   * @throws IOException if failed to package the jar
+   * @return a map from jar file name to the jar file, sorted by the name
    */
-  private Iterable<String> buildDependencyJar(File targetFile) throws IOException, URISyntaxException {
-    Set<String> classpath = new TreeSet<>();
-    try (JarOutputStream jarOut = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(targetFile)))) {
-      jarOut.setLevel(Deflater.NO_COMPRESSION);
-
-      // Zip all the jar files under the same directory that contains the jar for this class and twill class.
-      // Those are the directory created by TWILL that contains all dependency jars for this container
-      for (String className : Arrays.asList(getClass().getName(), TwillRunnable.class.getName())) {
-        Enumeration<URL> resources = getClass().getClassLoader().getResources(className.replace('.', '/') + ".class");
-        while (resources.hasMoreElements()) {
-          URL classURL = resources.nextElement();
-          File libDir = new File(ClassLoaders.getClassPathURL(className, classURL).toURI()).getParentFile();
-
-          for (File file : DirUtils.listFiles(libDir, "jar")) {
-            if (classpath.add(file.getName())) {
-              jarOut.putNextEntry(new JarEntry(file.getName()));
-              Files.copy(file, jarOut);
-              jarOut.closeEntry();
-            }
+  private Map<String, File> getDependencyJars() throws IOException, URISyntaxException {
+    Map<String, File> jars = new TreeMap<>();
+
+    // Find all the jar files under the same directory that contains the jar for this class and twill class.
+    // Those are the directory created by TWILL that contains all dependency jars for this container
+    for (String className : Arrays.asList(getClass().getName(), TwillRunnable.class.getName())) {
+      Enumeration<URL> resources = getClass().getClassLoader().getResources(className.replace('.', '/') + ".class");
+      while (resources.hasMoreElements()) {
+        URL classURL = resources.nextElement();
+        File libDir = new File(ClassLoaders.getClassPathURL(className, classURL).toURI()).getParentFile();
+
+        for (File file : DirUtils.listFiles(libDir, "jar")) {
+          if (!jars.containsKey(file.getName())) {
+            jars.put(file.getName(), file);
           }
         }
       }
     }
-    return classpath;
+    return jars;
+  }
+
+  /**
+   * Packages the given dependency jars into a jar. If the {@link LaunchArtifactCache} is available, the jar
+   * built by an earlier run is reused as long as the content of the dependency jars are the same.
+   *
+   * @param dependencyJars the jars to package, keyed by the jar file name
+   * @param tempDir temporary directory for storing the jar if the cache is not available
+   * @return the {@link URI} of the jar created
+   * @throws IOException if failed to package the jar
+   */
+  private URI buildDependencyJar(Map<String, File> dependencyJars, File tempDir) throws IOException {
+    LaunchArtifactCache.Generator generator = target -> {
+      try (JarOutputStream jarOut = new JarOutputStream(new BufferedOutputStream(target.getOutputStream()))) {
+        jarOut.setLevel(Deflater.NO_COMPRESSION);
+        for (Map.Entry<String, File> entry : dependencyJars.entrySet()) {
+          jarOut.putNextEntry(new JarEntry(entry.getKey()));
+          Files.copy(entry.getValue(), jarOut);
+          jarOut.closeEntry();
+        }
+      }
+    };
+
+    if (launchCache == null) {
+      File targetFile = new File(tempDir, CDAP_SPARK_JAR);
+      generator.generate(Locations.toLocation(targetFile));
+      return targetFile.toURI();
+    }
+
+    LaunchArtifactCache.KeyBuilder keyBuilder = LaunchArtifactCache.keyBuilder();
+    for (Map.Entry<String, File> entry : dependencyJars.entrySet()) {
+      keyBuilder.add(entry.getKey()).add(entry.getValue());
+    }
+    return launchCache.getLocation(keyBuilder.build(), CDAP_SPARK_JAR, generator).toURI();
   }
 
   /**
@@ -149,6 +149,12 @@ public class SparkHttpServiceServer extends AbstractServiceHttpServer<SparkHttpS
           }
         }
 
+        @Override
+        public void executeReadOnly(ThrowingRunnable runnable) throws Exception {
+          // There is no shared read-only transaction in the Spark driver, hence use a regular transaction
+          execute(runnable, true);
+        }
+
         @Override
         public <T> T execute(Callable<T> callable, boolean transactional) throws Exception {
           if (transactional) {
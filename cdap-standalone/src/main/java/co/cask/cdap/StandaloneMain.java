@@ -35,6 +35,8 @@ import co.cask.cdap.common.guice.LocationRuntimeModule;
 import co.cask.cdap.common.guice.ZKClientModule;
 import co.cask.cdap.common.io.URLConnections;
 import co.cask.cdap.common.logging.common.UncaughtExceptionHandler;
+import co.cask.cdap.common.service.ServiceGraph;
+import co.cask.cdap.common.service.ServiceStartupTimes;
 import co.cask.cdap.common.startup.ConfigurationLogger;
 import co.cask.cdap.common.utils.DirUtils;
 import co.cask.cdap.common.utils.OSDetector;
@@ -220,54 +222,57 @@ public class StandaloneMain {
 
     ConfigurationLogger.logImportantConfig(cConf);
 
+    // Services are started concurrently as soon as the services they depend on are started
+    ServiceGraph.Builder graph = ServiceGraph.builder()
+      .setStartupTimes(injector.getInstance(ServiceStartupTimes.class));
     if (messagingService instanceof Service) {
-      ((Service) messagingService).startAndWait();
+      graph.addService("messaging", (Service) messagingService);
+    } else {
+      graph.addTask("messaging", () -> { });
     }
     // TODO: CDAP-7688, remove next line after the issue is resolved
-    injector.getInstance(MessagingHttpService.class).startAndWait();
-
-    txService.startAndWait();
-    metricsCollectionService.startAndWait();
-    datasetService.startAndWait();
-    serviceStore.startAndWait();
-    streamService.startAndWait();
-
-    // Validate the logging pipeline configuration.
-    // Do it explicitly as Standalone doesn't have a separate master check phase as the distributed does.
-    new LogPipelineLoader(cConf).validate();
-    // It is recommended to initialize log appender after datasetService is started,
-    // since log appender instantiates a dataset.
-    logAppenderInitializer.initialize();
-
-    Service.State state = appFabricServer.startAndWait();
-    if (state != Service.State.RUNNING) {
-      throw new Exception("Failed to start Application Fabric");
-    }
-
-    metricsQueryService.startAndWait();
-    router.startAndWait();
+    graph.addService("messaging.http", injector.getInstance(MessagingHttpService.class), "messaging");
+
+    graph.addService("transaction", txService)
+      .addService("metrics.collection", metricsCollectionService, "messaging")
+      .addService("dataset", datasetService, "transaction", "messaging")
+      .addService("service.store", serviceStore, "dataset")
+      .addService("stream", streamService, "dataset")
+      .addTask("log.appender", () -> {
+        // Validate the logging pipeline configuration.
+        // Do it explicitly as Standalone doesn't have a separate master check phase as the distributed does.
+        new LogPipelineLoader(cConf).validate();
+        // It is recommended to initialize log appender after datasetService is started,
+        // since log appender instantiates a dataset.
+        logAppenderInitializer.initialize();
+      }, "dataset")
+      .addService("app.fabric", appFabricServer, "messaging.http", "metrics.collection",
+                  "service.store", "stream", "log.appender")
+      .addService("metrics.query", metricsQueryService, "dataset")
+      .addService("router", router);
 
     if (userInterfaceService != null) {
-      userInterfaceService.startAndWait();
+      graph.addService("ui", userInterfaceService, "router");
     }
 
     if (securityEnabled) {
-      externalAuthenticationServer.startAndWait();
+      graph.addService("external.authentication", externalAuthenticationServer);
     }
 
     if (exploreExecutorService != null) {
-      exploreExecutorService.startAndWait();
+      graph.addService("explore", exploreExecutorService, "app.fabric");
     }
-    metadataService.startAndWait();
+    graph.addService("metadata", metadataService, "dataset");
 
     if (trackerAppCreationService != null) {
-      trackerAppCreationService.startAndWait();
+      graph.addService("tracker.app.creation", trackerAppCreationService, "app.fabric");
     }
 
-    wranglerAppCreationService.startAndWait();
-    remoteSystemOperationsService.startAndWait();
+    graph.addService("wrangler.app.creation", wranglerAppCreationService, "app.fabric")
+      .addService("remote.system.operations", remoteSystemOperationsService, "dataset")
+      .addService("operational.stats", operationalStatsService);
 
-    operationalStatsService.startAndWait();
+    graph.build().start();
 
     String protocol = sslEnabled ? "https" : "http";
     int dashboardPort = sslEnabled ?
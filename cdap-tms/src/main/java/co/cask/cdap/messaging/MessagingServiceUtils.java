@@ -18,11 +18,15 @@ package co.cask.cdap.messaging;
 
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.messaging.cache.OffHeapMessageCache;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -105,6 +109,57 @@ public final class MessagingServiceUtils {
     return Collections.unmodifiableSet(systemTopics);
   }
 
+  /**
+   * Returns the maximum amount of direct memory in megabytes used by the off-heap message caches, as configured by
+   * the {@link Constants.MessagingSystem#CACHE_SIZE_MB} property, or {@code 0} if off-heap caching is not enabled.
+   */
+  public static int getOffHeapCacheMemoryMB(CConfiguration cConf) {
+    long cacheSize = cConf.getInt(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024L * 1024L;
+    if (cacheSize <= 0 || !cConf.getBoolean(Constants.MessagingSystem.CACHE_OFF_HEAP_ENABLED)) {
+      return 0;
+    }
+    // The cache is evenly distributed among all system topics
+    int topics = getSystemTopics(cConf, true).size();
+    long hardLimit = topics == 0 ? 0L : cacheSize / topics;
+    if (hardLimit <= 0) {
+      return 0;
+    }
+    int segmentSize = cConf.getInt(Constants.MessagingSystem.CACHE_OFF_HEAP_SEGMENT_SIZE_KB) * 1024;
+    long memory = topics * OffHeapMessageCache.getMaxMemory(hardLimit, segmentSize);
+    return (int) ((memory + 1024L * 1024L - 1) / (1024L * 1024L));
+  }
+
+  /**
+   * Returns the number of shards that topics are assigned to, as configured by the
+   * {@link Constants.MessagingSystem#SHARDS} property.
+   */
+  public static int getShardCount(CConfiguration cConf) {
+    return Math.max(1, cConf.getInt(Constants.MessagingSystem.SHARDS, 1));
+  }
+
+  /**
+   * Returns the shard that the given topic belongs to. Topics are assigned to shards by consistent hashing,
+   * so that changing the number of shards only moves a minimal number of topics to a different shard.
+   *
+   * @param topicId the topic to get the shard for
+   * @param shards total number of shards
+   * @return the shard of the topic, which is in the range of {@code [0, shards)}
+   */
+  public static int getShard(TopicId topicId, int shards) {
+    if (shards <= 1) {
+      return 0;
+    }
+    HashCode hashCode = Hashing.murmur3_32().hashBytes(
+      (topicId.getNamespace() + ":" + topicId.getTopic()).getBytes(StandardCharsets.UTF_8));
+    return Hashing.consistentHash(hashCode, shards);
+  }
+
+  /**
+   * Returns the name used for service discovery of the messaging service instance that is serving the given shard.
+   */
+  public static String getShardDiscoverableName(int shard) {
+    return Constants.Service.MESSAGING_SERVICE + ".shard." + shard;
+  }
 
   private MessagingServiceUtils() {
     // no-op
@@ -0,0 +1,639 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.cache;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.messaging.store.MessageFilter;
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MessageCache} that keeps entries serialized in off-heap memory, so that cached messages are not
+ * part of the Java heap that the garbage collector has to trace. Entries are appended in order to a list of
+ * segments, each backed by a direct {@link ByteBuffer} together with an index of entry offsets. Scanning uses binary
+ * search over the segments and their offset indexes to locate the start entry. Entries are decoded by the provided
+ * {@link Codec}, which can return views that read from the segment memory without copying.
+ *
+ * The weight of this cache is the number of bytes of the segments that it holds. Weight reduction removes
+ * whole segments, starting from the oldest one. The segment that is being appended to is only removed by the
+ * publisher or by {@link #clear()}. Each segment is reference counted by the cache and by the open scanners that
+ * returned entries decoded from it. Once a removed segment is no longer referenced, it is put into a bounded
+ * free list and reused by the publisher for new segments, so that direct memory is not allocated on every
+ * segment rollover. Segments that don't fit into the free list are released by the garbage collector.
+ * Because of the reuse, entries returned by a scanner must not be used after the scanner is closed, which
+ * also happens when it is iterated to the end.
+ *
+ * @param <T> type of entry stored in the cache
+ */
+public class OffHeapMessageCache<T> implements MessageCache<T> {
+
+  private static final String METRICS_WEIGHT = "cache.weight";
+  private static final String METRICS_ENTRIES_ADDED = "cache.entries.added";
+  private static final String METRICS_ENTRIES_REMOVED = "cache.entries.removed";
+  private static final String METRICS_ADD_REQUESTS = "cache.add.requests";
+  private static final String METRICS_ADD_REDUCE_WEIGHT = "cache.add.reduce.weight";
+  private static final String METRICS_SCAN_REQUESTS = "cache.scan.requests";
+  private static final String METRICS_SCAN_REDUCE_WEIGHT = "cache.scan.reduce.weight";
+
+  // Maximum number of removed segments kept for reuse
+  private static final int MAX_FREE_SEGMENTS = 4;
+
+  private final Comparator<T> comparator;
+  private final Codec<T> codec;
+  private final int segmentSize;
+  private final AtomicReference<Limits> limits;
+  private final MetricsContext metricsContext;
+  private final AtomicLong currentWeight;
+  private final AtomicBoolean needReduceWeight;
+  private final AtomicBoolean adding;
+  private final ReadWriteLock cacheLock;
+  private final BlockingQueue<Segment> freeSegments;
+
+  // Segments in ascending order of entries. Only replaced while holding the write lock.
+  private volatile Segment[] segments;
+
+  /**
+   * Creates a new instance of the cache.
+   *
+   * @param comparator a {@link Comparator} for ordering cache entries
+   * @param codec a {@link Codec} for encoding and decoding cache entries
+   * @param segmentSize size in bytes of each segment. Entries larger than it are stored in their own segment.
+   * @param limits the limits for maintaining cache weight; see class description for more detail
+   * @param metricsContext a {@link MetricsContext} for emitting metrics about this cache.
+   */
+  public OffHeapMessageCache(Comparator<T> comparator, Codec<T> codec, int segmentSize,
+                             Limits limits, MetricsContext metricsContext) {
+    Preconditions.checkArgument(segmentSize > 0, "Segment size must be positive");
+    this.comparator = comparator;
+    this.codec = codec;
+    this.segmentSize = segmentSize;
+    this.limits = new AtomicReference<>(limits);
+    this.metricsContext = metricsContext;
+    this.currentWeight = new AtomicLong();
+    this.needReduceWeight = new AtomicBoolean();
+    this.adding = new AtomicBoolean();
+    this.cacheLock = new ReentrantReadWriteLock();
+    this.segments = new Segment[0];
+    this.freeSegments = new ArrayBlockingQueue<>(MAX_FREE_SEGMENTS);
+  }
+
+  /**
+   * Returns the maximum number of bytes of direct memory used by a cache with the given hard limit and segment
+   * size. Besides the hard limit, it accounts for the segment appended before weight is reduced and for the
+   * segments kept for reuse. Segments holding entries larger than the segment size are not accounted for.
+   */
+  public static long getMaxMemory(long hardLimit, int segmentSize) {
+    return hardLimit + (long) (MAX_FREE_SEGMENTS + 1) * segmentSize;
+  }
+
+  @Override
+  public Comparator<T> getComparator() {
+    return comparator;
+  }
+
+  @Override
+  public void addAll(Iterator<T> entries) {
+    if (!adding.compareAndSet(false, true)) {
+      // This is to guard against bug, otherwise this shouldn't happen
+      throw new ConcurrentModificationException(
+        "The MessageCache.addAll method shouldn't be called concurrently by multiple threads.");
+    }
+
+    try {
+      T largestEntry = getLastEntry();
+
+      int entriesAdded = 0;
+      while (entries.hasNext()) {
+        T entry = entries.next();
+
+        // Entries must be in strictly increasing order and larger than everything in the cache
+        if (largestEntry != null && comparator.compare(largestEntry, entry) >= 0) {
+          // Clear the cache to reset state. This is just for precaution, as this shouldn't happen,
+          // unless there is bug in the TMS system (from the caller side).
+          clear();
+          throw new IllegalArgumentException("Cache entry must be in strictly increasing order. " +
+                                               "Entry " + entry + " is smaller than or equal to " + largestEntry);
+        }
+
+        append(entry);
+        entriesAdded++;
+        largestEntry = entry;
+      }
+
+      long newWeight = currentWeight.get();
+      metricsContext.increment(METRICS_ADD_REQUESTS, 1L);
+      metricsContext.increment(METRICS_ENTRIES_ADDED, entriesAdded);
+      metricsContext.gauge(METRICS_WEIGHT, newWeight);
+
+      if (newWeight > limits.get().getHardLimit()) {
+        // Only the publisher can remove the segment being appended to
+        reduceWeight(true);
+        metricsContext.increment(METRICS_ADD_REDUCE_WEIGHT, 1L);
+      } else if (newWeight > limits.get().getReduceTrigger()) {
+        needReduceWeight.compareAndSet(false, true);
+      }
+    } finally {
+      adding.set(false);
+    }
+  }
+
+  @Override
+  public Scanner<T> scan(T startEntry, boolean includeStart, int limit, MessageFilter<T> filter) {
+    List<T> entries = new ArrayList<>();
+    final List<Segment> referenced = new ArrayList<>();
+
+    // Acquire the read lock to guard against concurrent update of entries. Entries decoded from a segment
+    // stay valid until the scanner is closed, since the scanner holds a reference to all segments that
+    // the entries are decoded from, hence there is no need to copy them.
+    cacheLock.readLock().lock();
+    T firstInCache;
+    try {
+      Cursor cursor = new Cursor(segments, startEntry, includeStart);
+      Segment firstSegment = cursor.getFirstSegment();
+      firstInCache = firstSegment == null ? null : firstSegment.decode(codec, 0);
+      if (firstSegment != null) {
+        firstSegment.retain();
+        referenced.add(firstSegment);
+      }
+      while (entries.size() < limit && cursor.hasEntry()) {
+        T entry = cursor.getEntry();
+        MessageFilter.Result result = filter.apply(entry);
+        if (result == MessageFilter.Result.ACCEPT) {
+          entries.add(entry);
+          Segment segment = cursor.getSegment();
+          if (referenced.isEmpty() || referenced.get(referenced.size() - 1) != segment) {
+            segment.retain();
+            referenced.add(segment);
+          }
+        } else if (result == MessageFilter.Result.HOLD) {
+          // Hold means not to scan more, so just break
+          break;
+        }
+        cursor.advance();
+      }
+    } finally {
+      cacheLock.readLock().unlock();
+    }
+
+    metricsContext.increment(METRICS_SCAN_REQUESTS, 1L);
+
+    return new AbstractMessageCacheScanner<T>(entries.iterator(), firstInCache) {
+      @Override
+      void doClose() {
+        for (Segment segment : referenced) {
+          release(segment);
+        }
+
+        // Use compareAndSet to check if need to reduce weight. There will only be
+        // one winner to proceed with the reduce weight call.
+        if (needReduceWeight.compareAndSet(true, false)) {
+          reduceWeight(false);
+          metricsContext.increment(METRICS_SCAN_REDUCE_WEIGHT, 1L);
+        }
+      }
+    };
+  }
+
+  @Override
+  public void updateEntries(T startEntry, T endEntry, EntryUpdater<T> updater) {
+    cacheLock.writeLock().lock();
+    try {
+      Cursor cursor = new Cursor(segments, startEntry, true);
+      T lower = cursor.getPrevious();
+      while (cursor.hasEntry()) {
+        T entry = cursor.getEntry();
+        if (comparator.compare(entry, endEntry) > 0) {
+          break;
+        }
+        Segment segment = cursor.getSegment();
+        int index = cursor.getIndex();
+        cursor.advance();
+        T higher = cursor.hasEntry() ? cursor.getEntry() : null;
+
+        try {
+          updater.updateEntry(entry);
+        } catch (RuntimeException e) {
+          clear();
+          throw e;
+        }
+
+        // The updated entry is written back in place, hence it must have the same size.
+        if (codec.getEncodedSize(entry) != segment.getLength(index)) {
+          clear();
+          throw new IllegalStateException("Entry size should not be altered after update.");
+        }
+        codec.encode(entry, segment.buffer, segment.getOffset(index));
+
+        // A quick check that the ordering hasn't been altered.
+        // It doesn't cover all possible case though. This is just a quick catch for bug in the caller.
+        if ((lower != null && comparator.compare(lower, entry) >= 0)
+            || (higher != null && comparator.compare(higher, entry) <= 0)) {
+          // This shouldn't happen, unless there is bug in the caller.
+          clear();
+          throw new IllegalStateException("Entry order should not be altered after update.");
+        }
+
+        lower = entry;
+      }
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    int entriesRemoved = 0;
+    cacheLock.writeLock().lock();
+    try {
+      for (Segment segment : segments) {
+        currentWeight.addAndGet(-1 * segment.getCapacity());
+        entriesRemoved += segment.size;
+        release(segment);
+      }
+      segments = new Segment[0];
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+    metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
+  }
+
+  @Override
+  public void resize(Limits limits) {
+    cacheLock.writeLock().lock();
+    try {
+      this.limits.set(limits);
+      reduceWeight(false);
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Limits getLimits() {
+    return limits.get();
+  }
+
+  @Override
+  public long getCurrentWeight() {
+    return currentWeight.get();
+  }
+
+  /**
+   * Appends an entry to the last segment, or to a new segment if the last one doesn't have enough room.
+   * This method is only called from the {@link #addAll(Iterator)} method.
+   */
+  private void append(T entry) {
+    int encodedSize = codec.getEncodedSize(entry);
+    Segment[] currentSegments = segments;
+    Segment segment = currentSegments.length == 0 ? null : currentSegments[currentSegments.length - 1];
+
+    if (segment == null || !segment.hasRoom(encodedSize)) {
+      segment = newSegment(encodedSize);
+      cacheLock.writeLock().lock();
+      try {
+        // Segments can only be removed from the head by other threads, hence appending to the current
+        // array is safe.
+        Segment[] newSegments = Arrays.copyOf(segments, segments.length + 1);
+        newSegments[newSegments.length - 1] = segment;
+        segments = newSegments;
+      } finally {
+        cacheLock.writeLock().unlock();
+      }
+
+      // It's ok to have the weight goes beyond the hard limit for a short while, since only
+      // sealed segments are removed.
+      if (currentWeight.addAndGet(segment.getCapacity()) > limits.get().getHardLimit()) {
+        reduceWeight(false);
+        metricsContext.increment(METRICS_ADD_REDUCE_WEIGHT, 1L);
+      }
+    }
+
+    segment.append(codec, entry, encodedSize);
+  }
+
+  /**
+   * Returns the largest entry in the cache or {@code null} if the cache is empty.
+   */
+  @Nullable
+  private T getLastEntry() {
+    Segment[] currentSegments = segments;
+    for (int i = currentSegments.length - 1; i >= 0; i--) {
+      int size = currentSegments[i].size;
+      if (size > 0) {
+        return currentSegments[i].decode(codec, size - 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reduces the cache weight. Segments will be removed, starting from the oldest one, until the cache weight
+   * is smaller than the soft limit.
+   *
+   * @param includeLast {@code true} to allow removing the segment that is being appended to. It must only be
+   *                    {@code true} when called from the {@link #addAll(Iterator)} method.
+   */
+  private void reduceWeight(boolean includeLast) {
+    int entriesRemoved = 0;
+    cacheLock.writeLock().lock();
+    try {
+      Segment[] currentSegments = segments;
+      int removable = includeLast ? currentSegments.length : currentSegments.length - 1;
+      long newWeight = currentWeight.get();
+      int removed = 0;
+      while (removed < removable) {
+        Segment segment = currentSegments[removed];
+        // If removing the next segment is smaller than the min weight, we are done with the reduce logic
+        if (newWeight - segment.getCapacity() < limits.get().getMinRetain()) {
+          break;
+        }
+        entriesRemoved += segment.size;
+        newWeight = currentWeight.addAndGet(-1 * segment.getCapacity());
+        removed++;
+      }
+      if (removed > 0) {
+        segments = Arrays.copyOfRange(currentSegments, removed, currentSegments.length);
+        for (int i = 0; i < removed; i++) {
+          release(currentSegments[i]);
+        }
+      }
+    } finally {
+      cacheLock.writeLock().unlock();
+    }
+    metricsContext.increment(METRICS_ENTRIES_REMOVED, entriesRemoved);
+  }
+
+  /**
+   * Returns a segment that can hold the given number of bytes, reusing a free segment if possible.
+   * This method is only called from the {@link #addAll(Iterator)} method.
+   */
+  private Segment newSegment(int encodedSize) {
+    if (encodedSize <= segmentSize) {
+      Segment segment = freeSegments.poll();
+      if (segment != null) {
+        segment.reset();
+        return segment;
+      }
+    }
+    return new Segment(Math.max(segmentSize, encodedSize));
+  }
+
+  /**
+   * Releases a reference to the given segment. Once a segment is no longer referenced, it is put into the
+   * free list for reuse if it has the regular segment size and the free list is not full.
+   */
+  private void release(Segment segment) {
+    if (segment.release() && segment.getCapacity() == segmentSize) {
+      freeSegments.offer(segment);
+    }
+  }
+
+  /**
+   * A codec for storing entries in a {@link ByteBuffer}. Since the same buffer is read by concurrent scans,
+   * implementations must only use the absolute get and put methods of the buffer, or operate on a duplicate of it.
+   *
+   * @param <T> type of the entry
+   */
+  public interface Codec<T> {
+
+    /**
+     * Returns the number of bytes needed to encode the given entry.
+     */
+    int getEncodedSize(T entry);
+
+    /**
+     * Encodes the given entry into the buffer, starting at the given offset. This method is also called
+     * with entries returned by {@link #decode(ByteBuffer, int)} to write back changes made by
+     * {@link EntryUpdater}, in which case the entry has the same size and is written to the same offset.
+     *
+     * @param entry the entry to encode
+     * @param buffer the buffer to write to
+     * @param offset the offset in the buffer to start writing at
+     */
+    void encode(T entry, ByteBuffer buffer, int offset);
+
+    /**
+     * Decodes an entry from the buffer. The returned entry can be a view that reads from the buffer lazily.
+     * The buffer content of an entry is only modified through {@link #encode(Object, ByteBuffer, int)}.
+     *
+     * @param buffer the buffer to read from
+     * @param offset the offset in the buffer where the entry starts
+     * @return the decoded entry
+     */
+    T decode(ByteBuffer buffer, int offset);
+  }
+
+  /**
+   * A segment of the cache, which holds entries encoded in a direct {@link ByteBuffer}.
+   * Entries are appended by a single writer and are visible to readers once the size is updated.
+   * The reference count starts at one for the reference held by the cache. Scanners can only add references
+   * while holding the read lock, during which the cache reference cannot be released.
+   */
+  private static final class Segment {
+
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount;
+    // The offset of the i-th entry is at offsets[i], and offsets[size] is the end of the last entry
+    private int[] offsets;
+    private volatile int size;
+
+    Segment(int capacity) {
+      this.buffer = ByteBuffer.allocateDirect(capacity);
+      this.refCount = new AtomicInteger(1);
+      this.offsets = new int[64];
+    }
+
+    /**
+     * Resets this segment to be empty and referenced by the cache only. It must only be called on a segment
+     * that is no longer referenced.
+     */
+    void reset() {
+      refCount.set(1);
+      size = 0;
+    }
+
+    void retain() {
+      refCount.incrementAndGet();
+    }
+
+    /**
+     * Releases a reference to this segment.
+     *
+     * @return {@code true} if this segment is no longer referenced
+     */
+    boolean release() {
+      return refCount.decrementAndGet() == 0;
+    }
+
+    int getCapacity() {
+      return buffer.capacity();
+    }
+
+    int getOffset(int index) {
+      return offsets[index];
+    }
+
+    int getLength(int index) {
+      return offsets[index + 1] - offsets[index];
+    }
+
+    boolean hasRoom(int encodedSize) {
+      return buffer.capacity() - offsets[size] >= encodedSize;
+    }
+
+    <T> T decode(Codec<T> codec, int index) {
+      return codec.decode(buffer, offsets[index]);
+    }
+
+    <T> void append(Codec<T> codec, T entry, int encodedSize) {
+      int index = size;
+      int offset = offsets[index];
+      codec.encode(entry, buffer, offset);
+
+      if (index + 2 > offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      offsets[index + 1] = offset + encodedSize;
+
+      // Publish the entry to readers
+      size = index + 1;
+    }
+  }
+
+  /**
+   * A cursor for iterating over entries of an array of segments, starting from a given entry.
+   */
+  private final class Cursor {
+
+    private final Segment[] segments;
+    private int segmentIdx;
+    private int entryIdx;
+
+    Cursor(Segment[] segments, T startEntry, boolean includeStart) {
+      this.segments = segments;
+
+      // Binary search for the first segment with the last entry after the start entry
+      int low = 0;
+      int high = segments.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        int size = segments[mid].size;
+        if (size == 0 || isAfterStart(segments[mid].decode(codec, size - 1), startEntry, includeStart)) {
+          high = mid;
+        } else {
+          low = mid + 1;
+        }
+      }
+      this.segmentIdx = low;
+      if (low >= segments.length) {
+        return;
+      }
+
+      // Binary search for the first entry after the start entry within the segment
+      Segment segment = segments[low];
+      low = 0;
+      high = segment.size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (isAfterStart(segment.decode(codec, mid), startEntry, includeStart)) {
+          high = mid;
+        } else {
+          low = mid + 1;
+        }
+      }
+      this.entryIdx = low;
+    }
+
+    /**
+     * Returns the first segment that has entries or {@code null} if there is no entry.
+     */
+    @Nullable
+    Segment getFirstSegment() {
+      for (Segment segment : segments) {
+        if (segment.size > 0) {
+          return segment;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns the entry before the current one or {@code null} if there is none.
+     */
+    @Nullable
+    T getPrevious() {
+      if (segmentIdx < segments.length && entryIdx > 0) {
+        return segments[segmentIdx].decode(codec, entryIdx - 1);
+      }
+      for (int i = Math.min(segmentIdx, segments.length) - 1; i >= 0; i--) {
+        int size = segments[i].size;
+        if (size > 0) {
+          return segments[i].decode(codec, size - 1);
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Returns {@code true} if the cursor is pointing at an entry.
+     */
+    boolean hasEntry() {
+      while (segmentIdx < segments.length && entryIdx >= segments[segmentIdx].size) {
+        segmentIdx++;
+        entryIdx = 0;
+      }
+      return segmentIdx < segments.length;
+    }
+
+    T getEntry() {
+      return segments[segmentIdx].decode(codec, entryIdx);
+    }
+
+    Segment getSegment() {
+      return segments[segmentIdx];
+    }
+
+    int getIndex() {
+      return entryIdx;
+    }
+
+    void advance() {
+      entryIdx++;
+    }
+
+    private boolean isAfterStart(T entry, T startEntry, boolean includeStart) {
+      int cmp = comparator.compare(entry, startEntry);
+      return includeStart ? cmp >= 0 : cmp > 0;
+    }
+  }
+}
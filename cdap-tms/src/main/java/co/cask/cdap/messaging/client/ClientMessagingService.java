@@ -22,11 +22,13 @@ import co.cask.cdap.api.dataset.lib.CloseableIterator;
 import co.cask.cdap.api.messaging.TopicAlreadyExistsException;
 import co.cask.cdap.api.messaging.TopicNotFoundException;
 import co.cask.cdap.common.ServiceUnavailableException;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.http.DefaultHttpRequestConfig;
 import co.cask.cdap.common.internal.remote.RemoteClient;
 import co.cask.cdap.messaging.MessageFetcher;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MessagingServiceUtils;
 import co.cask.cdap.messaging.RollbackDetail;
 import co.cask.cdap.messaging.Schemas;
 import co.cask.cdap.messaging.StoreRequest;
@@ -92,18 +94,38 @@ public final class ClientMessagingService implements MessagingService {
   private static final Type TOPIC_PROPERTY_TYPE = new TypeToken<Map<String, String>>() { }.getType();
   private static final Type TOPIC_LIST_TYPE = new TypeToken<List<String>>() { }.getType();
 
-  private final RemoteClient remoteClient;
+  private final RemoteClient defaultRemoteClient;
+  // Clients for each shard, indexed by the shard. It is empty if topics are not sharded.
+  private final List<RemoteClient> shardClients;
 
   @VisibleForTesting
+  public ClientMessagingService(DiscoveryServiceClient discoveryServiceClient) {
+    this(discoveryServiceClient, 1);
+  }
+
   @Inject
-  public ClientMessagingService(final DiscoveryServiceClient discoveryServiceClient) {
-    this.remoteClient = new RemoteClient(discoveryServiceClient, Constants.Service.MESSAGING_SERVICE,
-                                         HTTP_REQUEST_CONFIG, "/v1/namespaces/");
+  ClientMessagingService(CConfiguration cConf, DiscoveryServiceClient discoveryServiceClient) {
+    this(discoveryServiceClient, MessagingServiceUtils.getShardCount(cConf));
+  }
+
+  @VisibleForTesting
+  public ClientMessagingService(DiscoveryServiceClient discoveryServiceClient, int shards) {
+    this.defaultRemoteClient = new RemoteClient(discoveryServiceClient, Constants.Service.MESSAGING_SERVICE,
+                                                HTTP_REQUEST_CONFIG, "/v1/namespaces/");
+    List<RemoteClient> shardClients = new ArrayList<>();
+    if (shards > 1) {
+      for (int i = 0; i < shards; i++) {
+        shardClients.add(new RemoteClient(discoveryServiceClient, MessagingServiceUtils.getShardDiscoverableName(i),
+                                          HTTP_REQUEST_CONFIG, "/v1/namespaces/"));
+      }
+    }
+    this.shardClients = Collections.unmodifiableList(shardClients);
   }
 
   @Override
   public void createTopic(TopicMetadata topicMetadata) throws TopicAlreadyExistsException, IOException {
     TopicId topicId = topicMetadata.getTopicId();
+    RemoteClient remoteClient = getRemoteClient(topicId);
 
     HttpRequest request = remoteClient.requestBuilder(HttpMethod.PUT, createTopicPath(topicId))
       .withBody(GSON.toJson(topicMetadata.getProperties()))
@@ -119,6 +141,7 @@ public final class ClientMessagingService implements MessagingService {
   @Override
   public void updateTopic(TopicMetadata topicMetadata) throws TopicNotFoundException, IOException {
     TopicId topicId = topicMetadata.getTopicId();
+    RemoteClient remoteClient = getRemoteClient(topicId);
 
     HttpRequest request = remoteClient.requestBuilder(HttpMethod.PUT, createTopicPath(topicId) + "/properties")
       .withBody(GSON.toJson(topicMetadata.getProperties()))
@@ -133,6 +156,7 @@ public final class ClientMessagingService implements MessagingService {
 
   @Override
   public void deleteTopic(TopicId topicId) throws TopicNotFoundException, IOException {
+    RemoteClient remoteClient = getRemoteClient(topicId);
     HttpRequest request = remoteClient.requestBuilder(HttpMethod.DELETE, createTopicPath(topicId)).build();
     HttpResponse response = remoteClient.execute(request);
 
@@ -144,6 +168,7 @@ public final class ClientMessagingService implements MessagingService {
 
   @Override
   public TopicMetadata getTopic(TopicId topicId) throws TopicNotFoundException, IOException {
+    RemoteClient remoteClient = getRemoteClient(topicId);
     HttpRequest request = remoteClient.requestBuilder(HttpMethod.GET, createTopicPath(topicId)).build();
     HttpResponse response = remoteClient.execute(request);
 
@@ -158,8 +183,9 @@ public final class ClientMessagingService implements MessagingService {
 
   @Override
   public List<TopicId> listTopics(NamespaceId namespaceId) throws IOException {
-    HttpRequest request = remoteClient.requestBuilder(HttpMethod.GET, namespaceId.getNamespace() + "/topics").build();
-    HttpResponse response = remoteClient.execute(request);
+    HttpRequest request = defaultRemoteClient.requestBuilder(HttpMethod.GET,
+                                                             namespaceId.getNamespace() + "/topics").build();
+    HttpResponse response = defaultRemoteClient.execute(request);
 
     handleError(response, "Failed to list topics in namespace " + namespaceId);
     List<String> topics = GSON.fromJson(response.getResponseBodyAsString(), TOPIC_LIST_TYPE);
@@ -202,6 +228,7 @@ public final class ClientMessagingService implements MessagingService {
       ? ByteBuffer.wrap(((ClientRollbackDetail) rollbackDetail).getEncoded())
       : encodeRollbackDetail(rollbackDetail);
 
+    RemoteClient remoteClient = getRemoteClient(topicId);
     HttpRequest httpRequest = remoteClient.requestBuilder(HttpMethod.POST, createTopicPath(topicId) + "/rollback")
       .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
       .withBody(requestBody)
@@ -243,6 +270,7 @@ public final class ClientMessagingService implements MessagingService {
     // Make the publish request
     String writeType = publish ? "publish" : "store";
     TopicId topicId = request.getTopicId();
+    RemoteClient remoteClient = getRemoteClient(topicId);
     HttpRequest httpRequest = remoteClient.requestBuilder(HttpMethod.POST, createTopicPath(topicId) + "/" + writeType)
       .addHeader(HttpHeaders.CONTENT_TYPE, "avro/binary")
       .withBody(os.toByteBuffer())
@@ -257,6 +285,16 @@ public final class ClientMessagingService implements MessagingService {
     return response;
   }
 
+  /**
+   * Returns the {@link RemoteClient} for making requests to the messaging service instance serving the given topic.
+   */
+  private RemoteClient getRemoteClient(TopicId topicId) {
+    if (shardClients.isEmpty()) {
+      return defaultRemoteClient;
+    }
+    return shardClients.get(MessagingServiceUtils.getShard(topicId, shardClients.size()));
+  }
+
   /**
    * Creates the URL path for making HTTP requests for the given topic.
    */
@@ -405,7 +443,7 @@ public final class ClientMessagingService implements MessagingService {
 
       // The cask common http library doesn't support read streaming, and we don't want to buffer all messages
       // in memory, hence we use the HttpURLConnection directly instead.
-      URL url = remoteClient.resolve(createTopicPath(topicId) + "/poll");
+      URL url = getRemoteClient(topicId).resolve(createTopicPath(topicId) + "/poll");
       final HttpURLConnection urlConn = (HttpURLConnection)  url.openConnection();
       urlConn.setConnectTimeout(HTTP_REQUEST_CONFIG.getConnectTimeout());
       urlConn.setReadTimeout(HTTP_REQUEST_CONFIG.getReadTimeout());
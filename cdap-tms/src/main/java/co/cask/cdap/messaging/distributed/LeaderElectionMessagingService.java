@@ -176,18 +176,25 @@ public class LeaderElectionMessagingService extends AbstractIdleService implemen
   }
 
   private void upgradeTable() {
-    HBaseTableFactory tableFactory = getHBaseTableFactory(injector.getInstance(TableFactory.class));
+    upgradeTables(injector.getInstance(TableFactory.class), cConf);
+  }
+
+  /**
+   * Upgrades the TMS message and payload tables if they are HBase tables.
+   */
+  static void upgradeTables(TableFactory tableFactory, CConfiguration cConf) {
+    HBaseTableFactory hBaseTableFactory = getHBaseTableFactory(tableFactory);
 
     // Upgrade the TMS Message and Payload Tables
-    if (tableFactory != null) {
+    if (hBaseTableFactory != null) {
       try {
-        tableFactory.upgradeMessageTable(cConf.get(Constants.MessagingSystem.MESSAGE_TABLE_NAME));
+        hBaseTableFactory.upgradeMessageTable(cConf.get(Constants.MessagingSystem.MESSAGE_TABLE_NAME));
       } catch (IOException ex) {
         LOG.warn("Exception while trying to upgrade TMS MessageTable.", ex);
       }
 
       try {
-        tableFactory.upgradePayloadTable(cConf.get(Constants.MessagingSystem.PAYLOAD_TABLE_NAME));
+        hBaseTableFactory.upgradePayloadTable(cConf.get(Constants.MessagingSystem.PAYLOAD_TABLE_NAME));
       } catch (IOException ex) {
         LOG.warn("Exception while trying to upgrade TMS PayloadTable.", ex);
       }
@@ -195,7 +202,7 @@ public class LeaderElectionMessagingService extends AbstractIdleService implemen
   }
 
   @Nullable
-  private HBaseTableFactory getHBaseTableFactory(TableFactory tableFactory) {
+  private static HBaseTableFactory getHBaseTableFactory(TableFactory tableFactory) {
     TableFactory factory = tableFactory;
 
     while (!(factory instanceof HBaseTableFactory) && factory instanceof ForwardingTableFactory) {
@@ -0,0 +1,351 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.distributed;
+
+import co.cask.cdap.api.messaging.TopicAlreadyExistsException;
+import co.cask.cdap.api.messaging.TopicNotFoundException;
+import co.cask.cdap.common.ServiceUnavailableException;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.messaging.MessageFetcher;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MessagingServiceUtils;
+import co.cask.cdap.messaging.RollbackDetail;
+import co.cask.cdap.messaging.StoreRequest;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.cache.MessageCache;
+import co.cask.cdap.messaging.server.MessagingHttpService;
+import co.cask.cdap.messaging.service.CoreMessagingService;
+import co.cask.cdap.messaging.store.MessageTable;
+import co.cask.cdap.messaging.store.TableFactory;
+import co.cask.cdap.messaging.store.cache.MessageTableCacheProvider;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import org.apache.twill.api.ElectionHandler;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryService;
+import org.apache.twill.internal.zookeeper.LeaderElection;
+import org.apache.twill.zookeeper.ZKClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link MessagingService} that assigns topics to a fixed number of shards, with a separate leader election
+ * for each shard. An instance only serves requests for topics in the shards that it is currently the leader of,
+ * and announces itself for each of those shards, so that clients can route requests to the owner of a topic.
+ *
+ * To spread the shards evenly, an instance joins the elections of the shards assigned to it by default right away,
+ * and joins the other elections after a delay, so that it only becomes the leader of those shards if their
+ * default instances are not running.
+ */
+public class ShardedMessagingService extends AbstractIdleService implements MessagingService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShardedMessagingService.class);
+
+  private final Injector injector;
+  private final CConfiguration cConf;
+  private final MessageTableCacheProvider cacheProvider;
+  private final ZKClient zkClient;
+  private final DiscoveryService discoveryService;
+  private final int instanceId;
+  private final int instances;
+  private final Shard[] shards;
+  private boolean tableUpgraded;
+  private CoreMessagingService messagingService;
+  private MessagingHttpService httpService;
+  private ScheduledExecutorService executor;
+
+  @Inject
+  ShardedMessagingService(Injector injector, CConfiguration cConf, MessageTableCacheProvider cacheProvider,
+                          ZKClient zkClient, DiscoveryService discoveryService) {
+    this.injector = injector;
+    this.cConf = cConf;
+    this.cacheProvider = cacheProvider;
+    this.zkClient = zkClient;
+    this.discoveryService = discoveryService;
+    this.instanceId = cConf.getInt(Constants.MessagingSystem.CONTAINER_INSTANCE_ID, 0);
+    this.instances = Math.max(1, cConf.getInt(Constants.MessagingSystem.CONTAINER_INSTANCES, 1));
+    this.shards = new Shard[MessagingServiceUtils.getShardCount(cConf)];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new Shard(i);
+    }
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    executor = Executors.newSingleThreadScheduledExecutor(Threads.createDaemonThreadFactory("messaging-shards"));
+
+    // The core service and the http service always run, so that the instance can take over any shard
+    messagingService = injector.getInstance(CoreMessagingService.class);
+    messagingService.startAndWait();
+    httpService = injector.getInstance(MessagingHttpService.class);
+    httpService.startAndWait();
+
+    long electionDelaySeconds = cConf.getLong(Constants.MessagingSystem.SHARD_ELECTION_DELAY_SECONDS);
+    for (final Shard shard : shards) {
+      Runnable runnable = new Runnable() {
+        @Override
+        public void run() {
+          shard.startElection();
+        }
+      };
+      if (isDefaultInstance(shard.getId())) {
+        runnable.run();
+      } else {
+        executor.schedule(runnable, electionDelaySeconds, TimeUnit.SECONDS);
+      }
+    }
+    LOG.info("Messaging service instance {} running at {} started with {} shards",
+             instanceId, httpService.getBindAddress(), shards.length);
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    try {
+      for (Shard shard : shards) {
+        shard.stop();
+      }
+      executor.shutdownNow();
+      httpService.stopAndWait();
+      messagingService.stopAndWait();
+    } finally {
+      // Clear the table cache on shutting down.
+      cacheProvider.clear();
+    }
+  }
+
+  @Override
+  public void createTopic(TopicMetadata topicMetadata) throws TopicAlreadyExistsException, IOException {
+    getMessagingService(topicMetadata.getTopicId()).createTopic(topicMetadata);
+  }
+
+  @Override
+  public void updateTopic(TopicMetadata topicMetadata) throws TopicNotFoundException, IOException {
+    getMessagingService(topicMetadata.getTopicId()).updateTopic(topicMetadata);
+  }
+
+  @Override
+  public void deleteTopic(TopicId topicId) throws TopicNotFoundException, IOException {
+    getMessagingService(topicId).deleteTopic(topicId);
+  }
+
+  @Override
+  public TopicMetadata getTopic(TopicId topicId) throws TopicNotFoundException, IOException {
+    return getMessagingService(topicId).getTopic(topicId);
+  }
+
+  @Override
+  public List<TopicId> listTopics(NamespaceId namespaceId) throws IOException {
+    // Listing reads from the metadata table directly, hence can be served by any instance
+    if (!isRunning()) {
+      throw new ServiceUnavailableException(Constants.Service.MESSAGING_SERVICE);
+    }
+    return messagingService.listTopics(namespaceId);
+  }
+
+  @Override
+  public MessageFetcher prepareFetch(TopicId topicId) throws TopicNotFoundException, IOException {
+    return getMessagingService(topicId).prepareFetch(topicId);
+  }
+
+  @Override
+  @Nullable
+  public RollbackDetail publish(StoreRequest request) throws TopicNotFoundException, IOException {
+    return getMessagingService(request.getTopicId()).publish(request);
+  }
+
+  @Override
+  public void storePayload(StoreRequest request) throws TopicNotFoundException, IOException {
+    getMessagingService(request.getTopicId()).storePayload(request);
+  }
+
+  @Override
+  public void rollback(TopicId topicId, RollbackDetail rollbackDetail) throws TopicNotFoundException, IOException {
+    getMessagingService(topicId).rollback(topicId, rollbackDetail);
+  }
+
+  /**
+   * Returns {@code true} if this instance is currently serving the given shard.
+   */
+  @VisibleForTesting
+  boolean isServing(int shard) {
+    return shards[shard].isActive();
+  }
+
+  /**
+   * Returns {@code true} if this instance is the one that the given shard is assigned to by default.
+   */
+  private boolean isDefaultInstance(int shard) {
+    return shard % instances == instanceId;
+  }
+
+  /**
+   * Upgrades the messaging tables when this instance becomes leader of a shard for the first time.
+   */
+  private synchronized void upgradeTables() {
+    if (!tableUpgraded) {
+      LeaderElectionMessagingService.upgradeTables(injector.getInstance(TableFactory.class), cConf);
+      tableUpgraded = true;
+    }
+  }
+
+  private MessagingService getMessagingService(TopicId topicId) {
+    int shard = MessagingServiceUtils.getShard(topicId, shards.length);
+    if (!shards[shard].isActive()) {
+      throw new ServiceUnavailableException(Constants.Service.MESSAGING_SERVICE,
+                                            "Messaging service instance is not serving shard " + shard
+                                              + " of topic " + topicId);
+    }
+    return messagingService;
+  }
+
+  /**
+   * Participates in the leader election of one shard, and serves the topics of the shard while being the leader.
+   */
+  private final class Shard implements ElectionHandler {
+
+    private final int id;
+    private volatile boolean active;
+    // Incremented on every leadership change, so that a delayed activation of an old leadership is ignored.
+    private int generation;
+    private boolean stopped;
+    private LeaderElection election;
+    private Cancellable cancelDiscovery;
+
+    Shard(int id) {
+      this.id = id;
+    }
+
+    int getId() {
+      return id;
+    }
+
+    boolean isActive() {
+      return active;
+    }
+
+    synchronized void startElection() {
+      if (stopped) {
+        return;
+      }
+      election = new LeaderElection(zkClient, Constants.Service.MESSAGING_SERVICE + "/shards/" + id, this);
+      election.start();
+    }
+
+    @Override
+    public void leader() {
+      final int leaderGeneration;
+      synchronized (this) {
+        leaderGeneration = ++generation;
+      }
+      LOG.info("Messaging service instance {} becomes leader of shard {}", instanceId, id);
+
+      Runnable runnable = new Runnable() {
+        @Override
+        public void run() {
+          activate(leaderGeneration);
+        }
+      };
+
+      // Fencing so that the previous leader of the shard has stopped serving requests
+      long fencingDelaySeconds = cConf.getLong(Constants.MessagingSystem.HA_FENCING_DELAY_SECONDS);
+      if (fencingDelaySeconds <= 0) {
+        // No-fencing, so just start synchronously. Should only for unit-testing.
+        runnable.run();
+      } else {
+        executor.schedule(runnable, fencingDelaySeconds, TimeUnit.SECONDS);
+      }
+    }
+
+    @Override
+    public synchronized void follower() {
+      generation++;
+      deactivate();
+      LOG.info("Messaging service instance {} becomes follower of shard {}", instanceId, id);
+    }
+
+    void stop() {
+      LeaderElection election;
+      synchronized (this) {
+        stopped = true;
+        generation++;
+        deactivate();
+        election = this.election;
+      }
+      if (election == null) {
+        return;
+      }
+      try {
+        election.stopAndWait();
+      } catch (Exception e) {
+        // It can happen if it is currently disconnected from ZK. There is no harm in just continue the shutdown.
+        LOG.warn("Exception during shutting down leader election of shard {}", id, e);
+      }
+    }
+
+    private synchronized void activate(int leaderGeneration) {
+      if (stopped || leaderGeneration != generation) {
+        return;
+      }
+      upgradeTables();
+
+      // Discard cached states of the topics in this shard, since they could have been modified by the previous leader
+      Predicate<TopicId> inShard = new Predicate<TopicId>() {
+        @Override
+        public boolean apply(TopicId topicId) {
+          return MessagingServiceUtils.getShard(topicId, shards.length) == id;
+        }
+      };
+      messagingService.invalidateTopics(inShard);
+      for (TopicId topicId : MessagingServiceUtils.getSystemTopics(cConf, true)) {
+        if (inShard.apply(topicId)) {
+          MessageCache<MessageTable.Entry> cache = cacheProvider.getMessageCache(topicId);
+          if (cache != null) {
+            cache.clear();
+          }
+        }
+      }
+
+      active = true;
+      cancelDiscovery = discoveryService.register(
+        new Discoverable(MessagingServiceUtils.getShardDiscoverableName(id), httpService.getBindAddress()));
+      LOG.info("Messaging service instance {} starts serving shard {}", instanceId, id);
+    }
+
+    private void deactivate() {
+      active = false;
+      if (cancelDiscovery != null) {
+        cancelDiscovery.cancel();
+        cancelDiscovery = null;
+      }
+    }
+  }
+}
@@ -23,8 +23,10 @@ import co.cask.cdap.data2.util.hbase.HBaseTableUtil;
 import co.cask.cdap.data2.util.hbase.HBaseTableUtilFactory;
 import co.cask.cdap.gateway.handlers.CommonHandlers;
 import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MessagingServiceUtils;
 import co.cask.cdap.messaging.cache.MessageCache;
 import co.cask.cdap.messaging.distributed.LeaderElectionMessagingService;
+import co.cask.cdap.messaging.distributed.ShardedMessagingService;
 import co.cask.cdap.messaging.server.FetchHandler;
 import co.cask.cdap.messaging.server.MessagingHttpService;
 import co.cask.cdap.messaging.server.MetadataHandler;
@@ -42,6 +44,7 @@ import co.cask.http.HttpHandler;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Binder;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.PrivateModule;
 import com.google.inject.Provider;
@@ -83,7 +86,7 @@ public class MessagingServerRuntimeModule extends RuntimeModule {
         // Bind http handlers
         bindHandlers(binder(), Constants.MessagingSystem.HANDLER_BINDING_NAME);
 
-        bind(MessagingService.class).to(LeaderElectionMessagingService.class).in(Scopes.SINGLETON);
+        bind(MessagingService.class).toProvider(DistributedMessagingServiceProvider.class).in(Scopes.SINGLETON);
         expose(MessagingService.class);
       }
     };
@@ -157,4 +160,29 @@ public class MessagingServerRuntimeModule extends RuntimeModule {
       return hBaseTableUtilFactory.get();
     }
   }
+
+  /**
+   * A guice provider for the {@link MessagingService} in distributed mode. It provides
+   * {@link ShardedMessagingService} if more than one shard is configured, otherwise it provides
+   * {@link LeaderElectionMessagingService}.
+   */
+  private static final class DistributedMessagingServiceProvider implements Provider<MessagingService> {
+
+    private final CConfiguration cConf;
+    private final Injector injector;
+
+    @Inject
+    DistributedMessagingServiceProvider(CConfiguration cConf, Injector injector) {
+      this.cConf = cConf;
+      this.injector = injector;
+    }
+
+    @Override
+    public MessagingService get() {
+      if (MessagingServiceUtils.getShardCount(cConf) > 1) {
+        return injector.getInstance(ShardedMessagingService.class);
+      }
+      return injector.getInstance(LeaderElectionMessagingService.class);
+    }
+  }
 }
@@ -40,6 +40,7 @@ import org.apache.twill.discovery.DiscoveryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetSocketAddress;
 import java.util.Set;
 
 /**
@@ -101,6 +102,13 @@ public class MessagingHttpService extends AbstractIdleService {
     LOG.info("Messaging HTTP server started on {}", httpService.getBindAddress());
   }
 
+  /**
+   * Returns the address that the http server is bound to. It is only valid when this service is running.
+   */
+  public InetSocketAddress getBindAddress() {
+    return httpService.getBindAddress();
+  }
+
   @Override
   protected void shutDown() throws Exception {
     try {
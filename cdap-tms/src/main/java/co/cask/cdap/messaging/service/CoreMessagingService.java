@@ -38,13 +38,16 @@ import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.cdap.proto.id.TopicId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.inject.Inject;
 import org.apache.tephra.TxConstants;
@@ -263,6 +266,21 @@ public class CoreMessagingService extends AbstractIdleService implements Messagi
     LOG.info("Core Messaging Service stopped");
   }
 
+  /**
+   * Discards the cached topic metadata and table writers of topics accepted by the given {@link Predicate}.
+   * It should be called when those topics could have been modified through another messaging service instance,
+   * while no request of those topics is being served by this instance.
+   */
+  public void invalidateTopics(Predicate<TopicId> predicate) {
+    invalidate(topicCache, predicate);
+    invalidate(messageTableWriterCache, predicate);
+    invalidate(payloadTableWriterCache, predicate);
+  }
+
+  private void invalidate(LoadingCache<TopicId, ?> cache, Predicate<TopicId> predicate) {
+    cache.invalidateAll(ImmutableList.copyOf(Iterables.filter(cache.asMap().keySet(), predicate)));
+  }
+
   private void ensureValidTxLifetime(long transactionWritePointer) throws IOException {
     long txTimestamp = TxUtils.getTimestamp(transactionWritePointer);
     boolean validLifetime = (txTimestamp + txMaxLifeTimeInMillis) > System.currentTimeMillis();
@@ -156,13 +156,13 @@ final class CachingMessageTable implements MessageTable {
       messageCache.updateEntries(startEntry, endEntry, new MessageCache.EntryUpdater<Entry>() {
         @Override
         public void updateEntry(Entry entry) {
-          if (!(entry instanceof CacheMessageTableEntry)) {
+          if (!(entry instanceof CachedEntry)) {
             // This shouldn't happen
             throw new IllegalStateException("Entries in MessageCache must be of type "
-                                              + CacheMessageTableEntry.class.getName()
+                                              + CachedEntry.class.getName()
                                               + ", but got type " + entry.getClass().getName() + " instead.");
           }
-          ((CacheMessageTableEntry) entry).rollback();
+          ((CachedEntry) entry).rollback();
         }
       });
     }
@@ -225,7 +225,7 @@ final class CachingMessageTable implements MessageTable {
         if (generation != entry.getGeneration()) {
           return Result.SKIP;
         }
-        if (entry instanceof CacheMessageTableEntry && ((CacheMessageTableEntry) entry).isRollback()) {
+        if (entry instanceof CachedEntry && ((CachedEntry) entry).isRollback()) {
           return Result.SKIP;
         }
         return super.apply(entry);
@@ -330,11 +330,28 @@ final class CachingMessageTable implements MessageTable {
   }
 
   /**
-   * A {@link Entry} implementation used for entries in {@link MessageCache}, which allows
-   * altering the transaction write point for rollback purpose of messages that were published transactionally.
+   * A {@link Entry} stored in {@link MessageCache}, which allows marking messages that were published
+   * transactionally as rolled back.
    */
   @VisibleForTesting
-  static final class CacheMessageTableEntry implements Entry {
+  interface CachedEntry extends Entry {
+
+    /**
+     * Marks this entry as rolled back if it is transactional.
+     */
+    void rollback();
+
+    /**
+     * Returns {@code true} if this entry was rolled back.
+     */
+    boolean isRollback();
+  }
+
+  /**
+   * A {@link CachedEntry} implementation used for entries in {@link MessageCache} that keeps entries in the heap.
+   */
+  @VisibleForTesting
+  static final class CacheMessageTableEntry implements CachedEntry {
 
     private final boolean lookupOnly;
     private final TopicId topicId;
@@ -367,12 +384,14 @@ final class CachingMessageTable implements MessageTable {
       this.sequenceId = other.getSequenceId();
     }
 
-    void rollback() {
+    @Override
+    public void rollback() {
       if (isTransactional()) {
         rollback = true;
       }
     }
 
+    @Override
     public boolean isRollback() {
       return rollback;
     }
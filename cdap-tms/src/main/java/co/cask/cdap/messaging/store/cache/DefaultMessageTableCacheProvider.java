@@ -21,7 +21,9 @@ import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.messaging.MessagingServiceUtils;
+import co.cask.cdap.messaging.cache.DefaultMessageCache;
 import co.cask.cdap.messaging.cache.MessageCache;
+import co.cask.cdap.messaging.cache.OffHeapMessageCache;
 import co.cask.cdap.messaging.store.MessageTable;
 import co.cask.cdap.proto.id.TopicId;
 import com.google.common.collect.ImmutableMap;
@@ -63,6 +65,8 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
           long cacheSize = cConf.getInt(Constants.MessagingSystem.CACHE_SIZE_MB) * 1024 * 1024;
           Set<TopicId> systemTopics = MessagingServiceUtils.getSystemTopics(cConf, true);
           if (cacheSize > 0 && !systemTopics.isEmpty()) {
+            boolean offHeap = cConf.getBoolean(Constants.MessagingSystem.CACHE_OFF_HEAP_ENABLED);
+            int segmentSize = cConf.getInt(Constants.MessagingSystem.CACHE_OFF_HEAP_SEGMENT_SIZE_KB) * 1024;
             MessageTableEntryWeigher weigher = new MessageTableEntryWeigher();
             MessageTableEntryComparator comparator = new MessageTableEntryComparator();
 
@@ -76,8 +80,13 @@ public class DefaultMessageTableCacheProvider implements MessageTableCacheProvid
               // In future, it can be adjusted dynamically based on metrics
               MessageCache.Limits limits = new MessageCache.Limits(hardLimit / 2, hardLimit * 7 / 10, hardLimit);
               for (TopicId topic : systemTopics) {
-                caches.put(topic, new MessageCache<>(comparator, weigher, limits,
-                                                     createMetricsContext(cConf, topic, metricsCollectionService)));
+                MetricsContext metricsContext = createMetricsContext(cConf, topic, metricsCollectionService);
+                if (offHeap) {
+                  caches.put(topic, new OffHeapMessageCache<>(comparator, new MessageTableEntryCodec(topic),
+                                                              segmentSize, limits, metricsContext));
+                } else {
+                  caches.put(topic, new DefaultMessageCache<>(comparator, weigher, limits, metricsContext));
+                }
               }
             }
           }
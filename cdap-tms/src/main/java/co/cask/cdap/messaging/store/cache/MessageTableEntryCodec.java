@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.store.cache;
+
+import co.cask.cdap.messaging.cache.OffHeapMessageCache;
+import co.cask.cdap.messaging.store.MessageTable;
+import co.cask.cdap.proto.id.TopicId;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link OffHeapMessageCache.Codec} for {@link MessageTable.Entry} of a given topic. Decoded entries are
+ * views that read from the cache memory, with the payload only copied when it is requested.
+ *
+ * The layout of an encoded entry is:
+ *
+ * <pre>
+ * generation (4) | publish timestamp (8) | sequence id (2) | flags (1) | tx write pointer (8) |
+ * payload length (4) | payload
+ * </pre>
+ */
+final class MessageTableEntryCodec implements OffHeapMessageCache.Codec<MessageTable.Entry> {
+
+  private static final int GENERATION_OFFSET = 0;
+  private static final int PUBLISH_TIMESTAMP_OFFSET = GENERATION_OFFSET + 4;
+  private static final int SEQUENCE_ID_OFFSET = PUBLISH_TIMESTAMP_OFFSET + 8;
+  private static final int FLAGS_OFFSET = SEQUENCE_ID_OFFSET + 2;
+  private static final int WRITE_POINTER_OFFSET = FLAGS_OFFSET + 1;
+  private static final int PAYLOAD_LENGTH_OFFSET = WRITE_POINTER_OFFSET + 8;
+  private static final int PAYLOAD_OFFSET = PAYLOAD_LENGTH_OFFSET + 4;
+
+  private static final byte FLAG_TRANSACTIONAL = 0x01;
+  private static final byte FLAG_ROLLBACK = 0x02;
+  private static final byte FLAG_PAYLOAD = 0x04;
+
+  private final TopicId topicId;
+
+  /**
+   * Creates a codec for entries of the given topic. Since the topic is the same for all entries in a cache,
+   * it is not encoded.
+   */
+  MessageTableEntryCodec(TopicId topicId) {
+    this.topicId = topicId;
+  }
+
+  @Override
+  public int getEncodedSize(MessageTable.Entry entry) {
+    byte[] payload = entry.getPayload();
+    return PAYLOAD_OFFSET + (payload == null ? 0 : payload.length);
+  }
+
+  @Override
+  public void encode(MessageTable.Entry entry, ByteBuffer buffer, int offset) {
+    if (entry instanceof BufferMessageTableEntry && ((BufferMessageTableEntry) entry).isBackedBy(buffer, offset)) {
+      // Changes to a view are written to the buffer directly
+      return;
+    }
+
+    byte[] payload = entry.getPayload();
+    byte flags = 0;
+    if (entry.isTransactional()) {
+      flags |= FLAG_TRANSACTIONAL;
+    }
+    if (entry instanceof CachingMessageTable.CachedEntry && ((CachingMessageTable.CachedEntry) entry).isRollback()) {
+      flags |= FLAG_ROLLBACK;
+    }
+    if (payload != null) {
+      flags |= FLAG_PAYLOAD;
+    }
+
+    buffer.putInt(offset + GENERATION_OFFSET, entry.getGeneration());
+    buffer.putLong(offset + PUBLISH_TIMESTAMP_OFFSET, entry.getPublishTimestamp());
+    buffer.putShort(offset + SEQUENCE_ID_OFFSET, entry.getSequenceId());
+    buffer.put(offset + FLAGS_OFFSET, flags);
+    buffer.putLong(offset + WRITE_POINTER_OFFSET, entry.getTransactionWritePointer());
+    buffer.putInt(offset + PAYLOAD_LENGTH_OFFSET, payload == null ? 0 : payload.length);
+    if (payload != null) {
+      ByteBuffer payloadBuffer = buffer.duplicate();
+      payloadBuffer.position(offset + PAYLOAD_OFFSET);
+      payloadBuffer.put(payload);
+    }
+  }
+
+  @Override
+  public MessageTable.Entry decode(ByteBuffer buffer, int offset) {
+    return new BufferMessageTableEntry(topicId, buffer, offset);
+  }
+
+  /**
+   * A {@link CachingMessageTable.CachedEntry} that reads the entry fields from a {@link ByteBuffer}.
+   */
+  private static final class BufferMessageTableEntry implements CachingMessageTable.CachedEntry {
+
+    private final TopicId topicId;
+    private final ByteBuffer buffer;
+    private final int offset;
+
+    private BufferMessageTableEntry(TopicId topicId, ByteBuffer buffer, int offset) {
+      this.topicId = topicId;
+      this.buffer = buffer;
+      this.offset = offset;
+    }
+
+    boolean isBackedBy(ByteBuffer buffer, int offset) {
+      return this.buffer == buffer && this.offset == offset;
+    }
+
+    @Override
+    public TopicId getTopicId() {
+      return topicId;
+    }
+
+    @Override
+    public int getGeneration() {
+      return buffer.getInt(offset + GENERATION_OFFSET);
+    }
+
+    @Override
+    public boolean isPayloadReference() {
+      return !hasFlag(FLAG_PAYLOAD);
+    }
+
+    @Override
+    public boolean isTransactional() {
+      return hasFlag(FLAG_TRANSACTIONAL);
+    }
+
+    @Override
+    public long getTransactionWritePointer() {
+      return buffer.getLong(offset + WRITE_POINTER_OFFSET);
+    }
+
+    @Nullable
+    @Override
+    public byte[] getPayload() {
+      if (!hasFlag(FLAG_PAYLOAD)) {
+        return null;
+      }
+      byte[] payload = new byte[buffer.getInt(offset + PAYLOAD_LENGTH_OFFSET)];
+      ByteBuffer payloadBuffer = buffer.duplicate();
+      payloadBuffer.position(offset + PAYLOAD_OFFSET);
+      payloadBuffer.get(payload);
+      return payload;
+    }
+
+    @Override
+    public long getPublishTimestamp() {
+      return buffer.getLong(offset + PUBLISH_TIMESTAMP_OFFSET);
+    }
+
+    @Override
+    public short getSequenceId() {
+      return buffer.getShort(offset + SEQUENCE_ID_OFFSET);
+    }
+
+    @Override
+    public void rollback() {
+      if (isTransactional()) {
+        buffer.put(offset + FLAGS_OFFSET, (byte) (buffer.get(offset + FLAGS_OFFSET) | FLAG_ROLLBACK));
+      }
+    }
+
+    @Override
+    public boolean isRollback() {
+      return hasFlag(FLAG_ROLLBACK);
+    }
+
+    private boolean hasFlag(byte flag) {
+      return (buffer.get(offset + FLAGS_OFFSET) & flag) != 0;
+    }
+  }
+}
@@ -0,0 +1,691 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.cache;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.messaging.store.MessageFilter;
+import co.cask.cdap.test.SlowTests;
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit test for {@link OffHeapMessageCache}.
+ */
+public class OffHeapMessageCacheTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OffHeapMessageCacheTest.class);
+  private static final MetricsContext NOOP_METRICS = new NoopMetricsContext();
+
+  @Test
+  public void testNoCache() {
+    // Create a cache with zero limits
+    MessageCache<Integer> cache = new OffHeapMessageCache<>(new IntComparator(), new IntCodec(), 16,
+                                                            new MessageCache.Limits(0, 0, 0), NOOP_METRICS);
+    cache.addAll(Arrays.asList(111, 222, 333).iterator());
+    Assert.assertEquals(0L, cache.getCurrentWeight());
+
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, MessageFilter.<Integer>alwaysAccept())) {
+      Assert.assertNull(scanner.getFirstInCache());
+      Assert.assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testBasic() {
+    // Each segment holds four entries, so that scans have to cross segments
+    MessageCache<Integer> cache = new OffHeapMessageCache<>(new IntComparator(), new IntCodec(), 16,
+                                                            new MessageCache.Limits(100, 140, 200), NOOP_METRICS);
+
+    cache.addAll(Arrays.asList(1, 2, 3, 4, 5, 11, 12, 13, 14, 15).iterator());
+    Assert.assertEquals(48, cache.getCurrentWeight());
+
+    MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    // Scan with a start key that is not in cache
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5, 11, 12, 13, 14, 15), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a limit
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 5, filter)) {
+      Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that is in the cache, inclusive and exclusive
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(4, true, 5, filter)) {
+      Assert.assertEquals(Arrays.asList(4, 5, 11, 12, 13), Lists.newArrayList(scanner));
+    }
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(4, false, 5, filter)) {
+      Assert.assertEquals(Arrays.asList(5, 11, 12, 13, 14), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that is between keys in the cache
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(9, true, 5, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertEquals(Arrays.asList(11, 12, 13, 14, 15), Lists.newArrayList(scanner));
+    }
+
+    // Scan with a start key that is larger than everything in the cache
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(15, false, 5, filter)) {
+      Assert.assertEquals(Integer.valueOf(1), scanner.getFirstInCache());
+      Assert.assertFalse(scanner.hasNext());
+    }
+
+    // Scan with filter that only accept evens
+    MessageFilter<Integer> acceptEvens = new MessageFilter<Integer>() {
+      @Override
+      public Result apply(Integer input) {
+        return input % 2 == 0 ? Result.ACCEPT : Result.SKIP;
+      }
+    };
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 3, acceptEvens)) {
+      Assert.assertEquals(Arrays.asList(2, 4, 12), Lists.newArrayList(scanner));
+    }
+
+    // Scan with filter that hold when number 11
+    MessageFilter<Integer> holdAtEleven = new MessageFilter<Integer>() {
+      @Override
+      public Result apply(Integer input) {
+        return input == 11 ? Result.HOLD : Result.ACCEPT;
+      }
+    };
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, holdAtEleven)) {
+      Assert.assertEquals(Arrays.asList(1, 2, 3, 4, 5), Lists.newArrayList(scanner));
+    }
+  }
+
+  @Test
+  public void testSegmentEviction() {
+    // Segments of 16 bytes, which is four entries. Retain two segments, trigger reduction on more than
+    // two and a half segments and at most four segments.
+    OffHeapMessageCache<Integer> cache = new OffHeapMessageCache<>(new IntComparator(), new IntCodec(), 16,
+                                                                   new MessageCache.Limits(32, 40, 64),
+                                                                   NOOP_METRICS);
+    MessageFilter<Integer> filter = MessageFilter.alwaysAccept();
+
+    // Fill three segments, which goes over the reduce trigger
+    cache.addAll(range(1, 13).iterator());
+    Assert.assertEquals(48, cache.getCurrentWeight());
+
+    // Reduction happens on scanner close, which removes the oldest segment
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, filter)) {
+      Assert.assertEquals(range(1, 13), Lists.newArrayList(scanner));
+    }
+    Assert.assertEquals(32, cache.getCurrentWeight());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, filter)) {
+      Assert.assertEquals(Integer.valueOf(5), scanner.getFirstInCache());
+      Assert.assertEquals(range(5, 13), Lists.newArrayList(scanner));
+    }
+
+    // Adding entries that hit the hard limit. When the fifth segment is needed for entry 21,
+    // segments are removed down to the min retain, without removing the new one.
+    // Then entries 25 to 30 fill up two more segments.
+    cache.addAll(range(13, 31).iterator());
+    Assert.assertEquals(64, cache.getCurrentWeight());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, filter)) {
+      Assert.assertEquals(Integer.valueOf(17), scanner.getFirstInCache());
+      Assert.assertEquals(range(17, 31), Lists.newArrayList(scanner));
+    }
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, filter)) {
+      Assert.assertEquals(Integer.valueOf(25), scanner.getFirstInCache());
+      Assert.assertEquals(range(25, 31), Lists.newArrayList(scanner));
+    }
+
+    // Resize to a smaller limits never removes the segment being appended to
+    cache.resize(new MessageCache.Limits(0, 0, 0));
+    Assert.assertEquals(16, cache.getCurrentWeight());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, filter)) {
+      Assert.assertEquals(range(29, 31), Lists.newArrayList(scanner));
+    }
+
+    cache.clear();
+    Assert.assertEquals(0, cache.getCurrentWeight());
+    cache.resize(new MessageCache.Limits(32, 40, 64));
+    cache.addAll(range(100, 102).iterator());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 100, filter)) {
+      Assert.assertEquals(range(100, 102), Lists.newArrayList(scanner));
+    }
+  }
+
+  @Test
+  public void testSegmentReuse() {
+    // Entries returned from a scanner read from the segment memory, and should stay valid until the scanner is closed,
+    // even if the segment is removed from the cache
+    MessageCache<Message> cache = new OffHeapMessageCache<>(new MessageComparator(), new MessageCodec(), 64,
+                                                            new MessageCache.Limits(256, 256, 256), NOOP_METRICS);
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      messages.add(new HeapMessage(i, Bytes.toBytes("Payload " + i)));
+    }
+    cache.addAll(messages.iterator());
+
+    List<Message> scanned = new ArrayList<>();
+    try (MessageCache.Scanner<Message> scanner = cache.scan(new HeapMessage(0, null), true, 100,
+                                                            MessageFilter.<Message>alwaysAccept())) {
+      for (int i = 0; i < 10; i++) {
+        scanned.add(scanner.next());
+      }
+      Assert.assertTrue(scanned.get(0) instanceof BufferMessage);
+
+      // Segments referenced by an open scanner are not reused for new entries
+      cache.clear();
+      Assert.assertEquals(0, cache.getCurrentWeight());
+      cache.addAll(Collections.<Message>singletonList(new HeapMessage(100, Bytes.toBytes("Payload 100"))).iterator());
+
+      for (int i = 0; i < 10; i++) {
+        Assert.assertEquals(i, scanned.get(i).getId());
+        Assert.assertEquals("Payload " + i, Bytes.toString(scanned.get(i).getPayload()));
+      }
+    }
+
+    // Once the scanner is closed, the removed segments are reused, starting from the oldest one
+    cache.clear();
+    cache.addAll(Collections.<Message>singletonList(new HeapMessage(200, Bytes.toBytes("Payload 200"))).iterator());
+    Assert.assertEquals(200, scanned.get(0).getId());
+    try (MessageCache.Scanner<Message> scanner = cache.scan(new HeapMessage(0, null), true, 100,
+                                                            MessageFilter.<Message>alwaysAccept())) {
+      Message message = scanner.next();
+      Assert.assertEquals(200, message.getId());
+      Assert.assertEquals("Payload 200", Bytes.toString(message.getPayload()));
+      Assert.assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testLargeEntry() {
+    // Entries larger than the segment size are stored in their own segment
+    MessageCache<Entry> cache = new OffHeapMessageCache<>(new EntryComparator(), new EntryCodec(), 32,
+                                                          new MessageCache.Limits(1000, 1000, 1000), NOOP_METRICS);
+    char[] chars = new char[100];
+    Arrays.fill(chars, 'x');
+    String longName = new String(chars);
+    cache.addAll(Arrays.asList(new Entry(1, "a"), new Entry(2, longName), new Entry(3, "b")).iterator());
+    Assert.assertEquals(32 + 108 + 32, cache.getCurrentWeight());
+
+    try (MessageCache.Scanner<Entry> scanner = cache.scan(new Entry(2, null), true, 100,
+                                                          MessageFilter.<Entry>alwaysAccept())) {
+      Assert.assertEquals(longName, scanner.next().getName());
+      Assert.assertEquals("b", scanner.next().getName());
+      Assert.assertFalse(scanner.hasNext());
+    }
+  }
+
+  @Test
+  public void testUpdate() {
+    MessageCache<Entry> cache = new OffHeapMessageCache<>(new EntryComparator(), new EntryCodec(), 32,
+                                                          new MessageCache.Limits(100, 140, 200), NOOP_METRICS);
+
+    // Try update that alter order at different element. Exception should be raised in all cases.
+    for (int i = 0; i < 3; i++) {
+      cache.addAll(Arrays.asList(new Entry(0, "Name"), new Entry(1, "Name"),
+                                 new Entry(2, "Name"), new Entry(3, "Name")).iterator());
+      try {
+        final int idx = i;
+        cache.updateEntries(new Entry(0, null), new Entry(2, null), new MessageCache.EntryUpdater<Entry>() {
+          @Override
+          public void updateEntry(Entry entry) {
+            if (entry.getId() == idx) {
+              entry.setId(entry.getId() + 1);
+            }
+          }
+        });
+        Assert.fail("Expected exception of out of order update in iteration " + i);
+      } catch (IllegalStateException e) {
+        Assert.assertEquals(0, cache.getCurrentWeight());
+      }
+    }
+
+    // Update that changes the entry size is not allowed, since entries are updated in place
+    cache.addAll(Arrays.asList(new Entry(0, "Name"), new Entry(1, "Name")).iterator());
+    try {
+      cache.updateEntries(new Entry(0, null), new Entry(1, null), new MessageCache.EntryUpdater<Entry>() {
+        @Override
+        public void updateEntry(Entry entry) {
+          entry.setName("Longer Name");
+        }
+      });
+      Assert.fail("Expected exception of entry size change");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals(0, cache.getCurrentWeight());
+    }
+
+    // Repopulate the cache and update entries normally, across segments
+    cache.addAll(Arrays.asList(new Entry(0, "Name"), new Entry(1, "Name"),
+                               new Entry(2, "Name"), new Entry(3, "Name"), new Entry(4, "Name")).iterator());
+    cache.updateEntries(new Entry(1, null), new Entry(3, null), new MessageCache.EntryUpdater<Entry>() {
+      @Override
+      public void updateEntry(Entry entry) {
+        entry.setName("Nam" + entry.getId());
+      }
+    });
+
+    try (MessageCache.Scanner<Entry> scanner = cache.scan(new Entry(0, null), true, 10,
+                                                          MessageFilter.<Entry>alwaysAccept())) {
+      List<String> names = new ArrayList<>();
+      while (scanner.hasNext()) {
+        names.add(scanner.next().getName());
+      }
+      Assert.assertEquals(Arrays.asList("Name", "Nam1", "Nam2", "Nam3", "Name"), names);
+    }
+  }
+
+  @Test
+  public void testAddError() {
+    MessageCache<Integer> cache = new OffHeapMessageCache<>(new IntComparator(), new IntCodec(), 16,
+                                                            new MessageCache.Limits(32, 40, 64), NOOP_METRICS);
+
+    // Adding out of order should result in error and the cache should be cleared
+    try {
+      cache.addAll(Arrays.asList(5, 2, 3, 4).iterator());
+      Assert.fail("Expected failure for adding out of order");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(0, cache.getCurrentWeight());
+    }
+
+    // Adding entries that are smaller than or equal to the largest one in the cache
+    cache.addAll(Arrays.asList(5, 6, 7, 8, 9).iterator());
+    try {
+      cache.addAll(Arrays.asList(9, 10).iterator());
+      Assert.fail("Expected failure for adding out of order");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(0, cache.getCurrentWeight());
+    }
+
+    // The cache is usable after the failure
+    cache.addAll(Arrays.asList(1, 2).iterator());
+    try (MessageCache.Scanner<Integer> scanner = cache.scan(0, true, 10, MessageFilter.<Integer>alwaysAccept())) {
+      Assert.assertEquals(Arrays.asList(1, 2), Lists.newArrayList(scanner));
+    }
+  }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testPerformance() throws Exception {
+    int payloadSize = 256;
+    long hardLimit = 64L * 1024 * 1024;
+    MessageCache.Limits limits = new MessageCache.Limits(hardLimit / 2, hardLimit * 7 / 10, hardLimit);
+
+    MessageCache<Message> heapCache = new DefaultMessageCache<>(new MessageComparator(), new MessageWeigher(),
+                                                                limits, NOOP_METRICS);
+    MessageCache<Message> offHeapCache = new OffHeapMessageCache<>(new MessageComparator(), new MessageCodec(),
+                                                                   256 * 1024, limits, NOOP_METRICS);
+
+    // Run each once to warm up, then measure
+    runWorkload(heapCache, payloadSize, 100000);
+    runWorkload(offHeapCache, payloadSize, 100000);
+    heapCache.clear();
+    offHeapCache.clear();
+
+    WorkloadResult heapResult = runWorkload(heapCache, payloadSize, 1000000);
+    long heapFullGCMillis = measureFullGC();
+    heapCache.clear();
+
+    WorkloadResult offHeapResult = runWorkload(offHeapCache, payloadSize, 1000000);
+    long offHeapFullGCMillis = measureFullGC();
+    offHeapCache.clear();
+
+    LOG.info("Heap cache: {}, full GC with filled cache took {} ms", heapResult, heapFullGCMillis);
+    LOG.info("Off-heap cache: {}, full GC with filled cache took {} ms", offHeapResult, offHeapFullGCMillis);
+  }
+
+  /**
+   * Publishes messages to the cache from one thread while scanning it from multiple threads.
+   */
+  private WorkloadResult runWorkload(final MessageCache<Message> cache,
+                                     int payloadSize, final int messages) throws Exception {
+    final byte[] payload = new byte[payloadSize];
+    final int batchSize = 100;
+    final AtomicLong published = new AtomicLong();
+    final AtomicBoolean stopped = new AtomicBoolean();
+    final AtomicLong scanned = new AtomicLong();
+    final long startId = System.nanoTime();
+
+    int readers = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(readers);
+    long gcCount = getGCCount();
+    long gcMillis = getGCMillis();
+    Stopwatch stopwatch = new Stopwatch().start();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < readers; i++) {
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            long total = 0;
+            long checksum = 0;
+            while (!stopped.get()) {
+              // Scan from a position behind the publisher, as consumers usually do
+              long from = startId + Math.max(0L, published.get() - 10 * batchSize);
+              try (MessageCache.Scanner<Message> scanner = cache.scan(new HeapMessage(from, null), true, batchSize,
+                                                                      MessageFilter.<Message>alwaysAccept())) {
+                while (scanner.hasNext()) {
+                  checksum += scanner.next().getPayload().length;
+                  total++;
+                }
+              }
+            }
+            scanned.addAndGet(total);
+            LOG.trace("Checksum {}", checksum);
+          }
+        }));
+      }
+
+      for (int i = 0; i < messages; i += batchSize) {
+        List<Message> batch = new ArrayList<>(batchSize);
+        for (int j = 0; j < batchSize; j++) {
+          batch.add(new HeapMessage(startId + i + j, payload));
+        }
+        cache.addAll(batch.iterator());
+        published.addAndGet(batchSize);
+      }
+      stopped.set(true);
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    long elapsedMillis = Math.max(1L, stopwatch.elapsedMillis());
+    return new WorkloadResult(messages * 1000L / elapsedMillis, scanned.get() * 1000L / elapsedMillis,
+                              getGCCount() - gcCount, getGCMillis() - gcMillis);
+  }
+
+  private long measureFullGC() {
+    Stopwatch stopwatch = new Stopwatch().start();
+    System.gc();
+    return stopwatch.elapsedMillis();
+  }
+
+  private long getGCCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0L, bean.getCollectionCount());
+    }
+    return count;
+  }
+
+  private long getGCMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0L, bean.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private List<Integer> range(int start, int end) {
+    List<Integer> result = new ArrayList<>();
+    for (int i = start; i < end; i++) {
+      result.add(i);
+    }
+    return result;
+  }
+
+  /**
+   * Result of a cache workload run.
+   */
+  private static final class WorkloadResult {
+    private final long publishRate;
+    private final long scanRate;
+    private final long gcCount;
+    private final long gcMillis;
+
+    WorkloadResult(long publishRate, long scanRate, long gcCount, long gcMillis) {
+      this.publishRate = publishRate;
+      this.scanRate = scanRate;
+      this.gcCount = gcCount;
+      this.gcMillis = gcMillis;
+    }
+
+    @Override
+    public String toString() {
+      return "publish " + publishRate + " messages/sec, scan " + scanRate + " messages/sec, "
+        + gcCount + " GCs taking " + gcMillis + " ms";
+    }
+  }
+
+  /**
+   * A {@link Comparator} for {@link Integer}.
+   */
+  private static final class IntComparator implements Comparator<Integer> {
+
+    @Override
+    public int compare(Integer o1, Integer o2) {
+      return o1.compareTo(o2);
+    }
+  }
+
+  /**
+   * A {@link OffHeapMessageCache.Codec} for {@link Integer}.
+   */
+  private static final class IntCodec implements OffHeapMessageCache.Codec<Integer> {
+
+    @Override
+    public int getEncodedSize(Integer entry) {
+      return 4;
+    }
+
+    @Override
+    public void encode(Integer entry, ByteBuffer buffer, int offset) {
+      buffer.putInt(offset, entry);
+    }
+
+    @Override
+    public Integer decode(ByteBuffer buffer, int offset) {
+      return buffer.getInt(offset);
+    }
+  }
+
+  /**
+   * A cache entry for testing.
+   */
+  private static final class Entry {
+    private int id;
+    private String name;
+
+    Entry(int id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    int getId() {
+      return id;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    void setId(int id) {
+      this.id = id;
+    }
+
+    void setName(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * A {@link Comparator} for {@link Entry} that only compare with the id.
+   */
+  private static final class EntryComparator implements Comparator<Entry> {
+
+    @Override
+    public int compare(Entry entry1, Entry entry2) {
+      return Integer.compare(entry1.getId(), entry2.getId());
+    }
+  }
+
+  /**
+   * A {@link OffHeapMessageCache.Codec} for {@link Entry}, which decodes to a copy of the entry.
+   */
+  private static final class EntryCodec implements OffHeapMessageCache.Codec<Entry> {
+
+    @Override
+    public int getEncodedSize(Entry entry) {
+      return 8 + entry.getName().getBytes(Charsets.UTF_8).length;
+    }
+
+    @Override
+    public void encode(Entry entry, ByteBuffer buffer, int offset) {
+      byte[] name = entry.getName().getBytes(Charsets.UTF_8);
+      buffer.putInt(offset, entry.getId());
+      buffer.putInt(offset + 4, name.length);
+      ByteBuffer nameBuffer = buffer.duplicate();
+      nameBuffer.position(offset + 8);
+      nameBuffer.put(name);
+    }
+
+    @Override
+    public Entry decode(ByteBuffer buffer, int offset) {
+      byte[] name = new byte[buffer.getInt(offset + 4)];
+      ByteBuffer nameBuffer = buffer.duplicate();
+      nameBuffer.position(offset + 8);
+      nameBuffer.get(name);
+      return new Entry(buffer.getInt(offset), new String(name, Charsets.UTF_8));
+    }
+  }
+
+  /**
+   * A message with an id and a payload.
+   */
+  private abstract static class Message {
+    abstract long getId();
+    abstract byte[] getPayload();
+  }
+
+  /**
+   * A {@link Message} in the heap.
+   */
+  private static final class HeapMessage extends Message {
+    private final long id;
+    private final byte[] payload;
+
+    HeapMessage(long id, byte[] payload) {
+      this.id = id;
+      this.payload = payload;
+    }
+
+    @Override
+    long getId() {
+      return id;
+    }
+
+    @Override
+    byte[] getPayload() {
+      return payload;
+    }
+  }
+
+  /**
+   * A {@link Message} that reads from a {@link ByteBuffer}, with the payload copied on demand.
+   */
+  private static final class BufferMessage extends Message {
+    private final ByteBuffer buffer;
+    private final int offset;
+
+    BufferMessage(ByteBuffer buffer, int offset) {
+      this.buffer = buffer;
+      this.offset = offset;
+    }
+
+    @Override
+    long getId() {
+      return buffer.getLong(offset);
+    }
+
+    @Override
+    byte[] getPayload() {
+      byte[] payload = new byte[buffer.getInt(offset + 8)];
+      ByteBuffer payloadBuffer = buffer.duplicate();
+      payloadBuffer.position(offset + 12);
+      payloadBuffer.get(payload);
+      return payload;
+    }
+  }
+
+  /**
+   * A {@link Comparator} for {@link Message} that compares with the id.
+   */
+  private static final class MessageComparator implements Comparator<Message> {
+
+    @Override
+    public int compare(Message message1, Message message2) {
+      return Long.compare(message1.getId(), message2.getId());
+    }
+  }
+
+  /**
+   * A {@link MessageCache.Weigher} for {@link Message}, which uses the same estimate as the message table cache.
+   */
+  private static final class MessageWeigher implements MessageCache.Weigher<Message> {
+
+    @Override
+    public int weight(Message entry) {
+      return 40 + entry.getPayload().length;
+    }
+  }
+
+  /**
+   * A {@link OffHeapMessageCache.Codec} for {@link Message}.
+   */
+  private static final class MessageCodec implements OffHeapMessageCache.Codec<Message> {
+
+    @Override
+    public int getEncodedSize(Message entry) {
+      return 12 + entry.getPayload().length;
+    }
+
+    @Override
+    public void encode(Message entry, ByteBuffer buffer, int offset) {
+      byte[] payload = entry.getPayload();
+      buffer.putLong(offset, entry.getId());
+      buffer.putInt(offset + 8, payload.length);
+      ByteBuffer payloadBuffer = buffer.duplicate();
+      payloadBuffer.position(offset + 12);
+      payloadBuffer.put(payload);
+    }
+
+    @Override
+    public Message decode(ByteBuffer buffer, int offset) {
+      return new BufferMessage(buffer, offset);
+    }
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.distributed;
+
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.messaging.TopicAlreadyExistsException;
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.guice.ConfigModule;
+import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
+import co.cask.cdap.common.guice.LocationRuntimeModule;
+import co.cask.cdap.common.guice.ZKClientModule;
+import co.cask.cdap.common.metrics.NoOpMetricsCollectionService;
+import co.cask.cdap.common.namespace.InMemoryNamespaceClient;
+import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
+import co.cask.cdap.common.service.Retries;
+import co.cask.cdap.common.service.RetryStrategies;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.messaging.MessagingService;
+import co.cask.cdap.messaging.MessagingServiceUtils;
+import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.client.ClientMessagingService;
+import co.cask.cdap.messaging.client.StoreRequestBuilder;
+import co.cask.cdap.messaging.data.RawMessage;
+import co.cask.cdap.messaging.guice.MessagingServerRuntimeModule;
+import co.cask.cdap.messaging.store.TableFactory;
+import co.cask.cdap.messaging.store.cache.CachingTableFactory;
+import co.cask.cdap.messaging.store.cache.DefaultMessageTableCacheProvider;
+import co.cask.cdap.messaging.store.cache.MessageTableCacheProvider;
+import co.cask.cdap.messaging.store.leveldb.LevelDBTableFactory;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.cdap.proto.id.TopicId;
+import co.cask.cdap.test.SlowTests;
+import com.google.common.base.Stopwatch;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.PrivateModule;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.apache.twill.internal.zookeeper.InMemoryZKServer;
+import org.apache.twill.zookeeper.ZKClientService;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test for {@link ShardedMessagingService}.
+ */
+public class ShardedMessagingServiceTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShardedMessagingServiceTest.class);
+  private static final int SHARDS = 4;
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static InMemoryZKServer zkServer;
+  private static CConfiguration cConf;
+  private static NamespaceQueryAdmin namespaceQueryAdmin;
+  private static LevelDBTableFactory levelDBTableFactory;
+
+  @BeforeClass
+  public static void init() throws IOException {
+    zkServer = InMemoryZKServer.builder().setDataDir(TEMP_FOLDER.newFolder()).build();
+    zkServer.startAndWait();
+
+    cConf = CConfiguration.create();
+    cConf.set(Constants.Zookeeper.QUORUM, zkServer.getConnectionStr());
+    cConf.setInt(Constants.Zookeeper.CFG_SESSION_TIMEOUT_MILLIS, 2000);
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
+    cConf.set(Constants.MessagingSystem.HTTP_SERVER_BIND_ADDRESS, InetAddress.getLocalHost().getHostName());
+    cConf.set(Constants.MessagingSystem.SYSTEM_TOPICS, "topic");
+    cConf.setLong(Constants.MessagingSystem.HA_FENCING_DELAY_SECONDS, 0L);
+    cConf.setInt(Constants.MessagingSystem.SHARDS, SHARDS);
+    cConf.setLong(Constants.MessagingSystem.SHARD_ELECTION_DELAY_SECONDS, 2L);
+
+    namespaceQueryAdmin = new InMemoryNamespaceClient();
+    levelDBTableFactory = new LevelDBTableFactory(cConf);
+  }
+
+  @AfterClass
+  public static void finish() {
+    zkServer.stopAndWait();
+  }
+
+  @Test
+  public void testShardOwnership() throws Throwable {
+    Injector injector1 = createInjector(0, 2);
+    Injector injector2 = createInjector(1, 2);
+
+    ZKClientService zkClient1 = injector1.getInstance(ZKClientService.class);
+    zkClient1.startAndWait();
+    ZKClientService zkClient2 = injector2.getInstance(ZKClientService.class);
+    zkClient2.startAndWait();
+
+    final ShardedMessagingService service1 = (ShardedMessagingService) injector1.getInstance(MessagingService.class);
+    final ShardedMessagingService service2 = (ShardedMessagingService) injector2.getInstance(MessagingService.class);
+    service1.startAndWait();
+    service2.startAndWait();
+
+    // Each instance should be serving the shards assigned to it by default
+    Tasks.waitFor(true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        for (int i = 0; i < SHARDS; i++) {
+          if (service1.isServing(i) != (i % 2 == 0) || service2.isServing(i) != (i % 2 == 1)) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+
+    // Topics should be served by the instance owning the shard of the topic
+    final List<TopicId> topics = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      topics.add(NamespaceId.DEFAULT.topic("topic" + i));
+    }
+    final ClientMessagingService client = new ClientMessagingService(
+      injector1.getInstance(DiscoveryServiceClient.class), SHARDS);
+    for (TopicId topicId : topics) {
+      createTopic(client, topicId);
+      client.publish(StoreRequestBuilder.of(topicId).addPayloads("Testing1").build());
+
+      ShardedMessagingService owner = MessagingServiceUtils.getShard(topicId, SHARDS) % 2 == 0 ? service1 : service2;
+      Assert.assertEquals(Collections.singletonList("Testing1"), fetch(owner, topicId));
+    }
+
+    // Stop the second instance. The first instance should take over all the shards.
+    service2.stopAndWait();
+    zkClient2.stopAndWait();
+
+    for (final TopicId topicId : topics) {
+      List<String> messages = Retries.callWithRetries(new Retries.Callable<List<String>, Throwable>() {
+        @Override
+        public List<String> call() throws Throwable {
+          client.publish(StoreRequestBuilder.of(topicId).addPayloads("Testing2").build());
+          return fetch(client, topicId);
+        }
+      }, RetryStrategies.timeLimit(20, TimeUnit.SECONDS, RetryStrategies.fixDelay(500, TimeUnit.MILLISECONDS)));
+      Assert.assertEquals("Testing1", messages.get(0));
+      Assert.assertEquals("Testing2", messages.get(messages.size() - 1));
+    }
+    for (int i = 0; i < SHARDS; i++) {
+      Assert.assertTrue(service1.isServing(i));
+    }
+
+    service1.stopAndWait();
+    zkClient1.stopAndWait();
+  }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testThroughputScaling() throws Exception {
+    List<TopicId> topics = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      topics.add(NamespaceId.DEFAULT.topic("throughput" + i));
+    }
+    long singleInstanceRate = measurePublishRate(1, topics);
+    long multiInstanceRate = measurePublishRate(2, topics);
+
+    // Instances in this test share the CPU and the LevelDB store of the same process,
+    // hence the rates are only indicative of the relative gain from spreading the shards.
+    LOG.info("Aggregate publish throughput with {} shards: {} messages/sec with 1 instance, " +
+               "{} messages/sec with 2 instances", SHARDS, singleInstanceRate, multiInstanceRate);
+  }
+
+  /**
+   * Starts the given number of messaging service instances and publishes messages to the given topics concurrently
+   * through the {@link ClientMessagingService}.
+   *
+   * @return the aggregated number of messages published per second
+   */
+  private long measurePublishRate(final int instances, List<TopicId> topics) throws Exception {
+    List<Injector> injectors = new ArrayList<>();
+    List<ShardedMessagingService> services = new ArrayList<>();
+    for (int i = 0; i < instances; i++) {
+      Injector injector = createInjector(i, instances);
+      injector.getInstance(ZKClientService.class).startAndWait();
+      ShardedMessagingService service = (ShardedMessagingService) injector.getInstance(MessagingService.class);
+      service.startAndWait();
+      injectors.add(injector);
+      services.add(service);
+    }
+
+    // Wait for all the shards to be served by their default instances
+    final List<ShardedMessagingService> finalServices = services;
+    Tasks.waitFor(true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        for (int i = 0; i < SHARDS; i++) {
+          if (!finalServices.get(i % instances).isServing(i)) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+
+    final MessagingService client = new ClientMessagingService(
+      injectors.get(0).getInstance(DiscoveryServiceClient.class), SHARDS);
+    for (TopicId topicId : topics) {
+      createTopic(client, topicId);
+    }
+
+    final int messagesPerTopic = 2000;
+    ExecutorService executor = Executors.newFixedThreadPool(topics.size());
+    try {
+      Stopwatch stopwatch = new Stopwatch().start();
+      List<Future<?>> futures = new ArrayList<>();
+      for (final TopicId topicId : topics) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < messagesPerTopic; i++) {
+              client.publish(StoreRequestBuilder.of(topicId).addPayloads("Message" + i).build());
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      long elapsedMillis = Math.max(1L, stopwatch.elapsedMillis());
+      return topics.size() * messagesPerTopic * 1000L / elapsedMillis;
+    } finally {
+      executor.shutdownNow();
+      for (int i = 0; i < instances; i++) {
+        services.get(i).stopAndWait();
+        injectors.get(i).getInstance(ZKClientService.class).stopAndWait();
+      }
+    }
+  }
+
+  private void createTopic(MessagingService messagingService, TopicId topicId) throws Exception {
+    try {
+      messagingService.createTopic(new TopicMetadata(topicId));
+    } catch (TopicAlreadyExistsException e) {
+      // Topic may exist from another test
+    }
+  }
+
+  private List<String> fetch(MessagingService messagingService, TopicId topicId) throws Exception {
+    List<String> messages = new ArrayList<>();
+    try (CloseableIterator<RawMessage> iterator = messagingService.prepareFetch(topicId).fetch()) {
+      while (iterator.hasNext()) {
+        messages.add(new String(iterator.next().getPayload(), StandardCharsets.UTF_8));
+      }
+    }
+    return messages;
+  }
+
+  private Injector createInjector(int instanceId, int instances) {
+    CConfiguration cConf = CConfiguration.copy(ShardedMessagingServiceTest.cConf);
+    cConf.setInt(Constants.MessagingSystem.CONTAINER_INSTANCE_ID, instanceId);
+    cConf.setInt(Constants.MessagingSystem.CONTAINER_INSTANCES, instances);
+
+    return Guice.createInjector(
+      new ConfigModule(cConf),
+      new ZKClientModule(),
+      new DiscoveryRuntimeModule().getDistributedModules(),
+      new LocationRuntimeModule().getDistributedModules(),
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          // Bindings to services for testing only
+          bind(MetricsCollectionService.class).to(NoOpMetricsCollectionService.class);
+
+          // Use the same in memory client across all injectors.
+          bind(NamespaceQueryAdmin.class).toInstance(namespaceQueryAdmin);
+        }
+      },
+      new PrivateModule() {
+        @Override
+        protected void configure() {
+          // This is very similar to bindings in distributed mode, except we bind to level db instead of HBase
+          // Also the level DB has to be one instance since unit-test runs in the same process.
+          bind(TableFactory.class)
+            .annotatedWith(Names.named(CachingTableFactory.DELEGATE_TABLE_FACTORY))
+            .toInstance(levelDBTableFactory);
+
+          // The cache must be in singleton scope
+          bind(MessageTableCacheProvider.class).to(DefaultMessageTableCacheProvider.class).in(Scopes.SINGLETON);
+          bind(TableFactory.class).to(CachingTableFactory.class);
+
+          // Bind http handlers
+          MessagingServerRuntimeModule.bindHandlers(binder(), Constants.MessagingSystem.HANDLER_BINDING_NAME);
+
+          bind(MessagingService.class).to(ShardedMessagingService.class).in(Scopes.SINGLETON);
+          expose(MessagingService.class);
+        }
+      }
+    );
+  }
+}
@@ -23,6 +23,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.utils.TimeProvider;
 import co.cask.cdap.messaging.MessagingUtils;
 import co.cask.cdap.messaging.TopicMetadata;
+import co.cask.cdap.messaging.cache.DefaultMessageCache;
 import co.cask.cdap.messaging.cache.MessageCache;
 import co.cask.cdap.messaging.data.MessageId;
 import co.cask.cdap.messaging.store.ImmutableMessageTableEntry;
@@ -51,10 +52,24 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class CachingMessageTableTest extends LevelDBMessageTableTest {
 
-  private static MessageTableCacheProvider cacheProvider;
+  static MessageTableCacheProvider cacheProvider;
 
   @BeforeClass
   public static void initCache() {
+    cacheProvider = createCacheProvider(new CacheLoader<TopicId, MessageCache<MessageTable.Entry>>() {
+      @Override
+      public MessageCache<MessageTable.Entry> load(TopicId key) throws Exception {
+        return new DefaultMessageCache<>(new MessageTableEntryComparator(), new MessageTableEntryWeigher(),
+                                         new MessageCache.Limits(500, 700, 1000), new NoopMetricsContext());
+      }
+    });
+  }
+
+  /**
+   * Creates a {@link MessageTableCacheProvider} that creates {@link MessageCache} with the given loader.
+   */
+  static MessageTableCacheProvider createCacheProvider(
+    CacheLoader<TopicId, MessageCache<MessageTable.Entry>> cacheLoader) {
     final LoadingCache<TopicId, MessageCache<MessageTable.Entry>> caches = CacheBuilder
       .newBuilder()
       .removalListener(new RemovalListener<TopicId, MessageCache<MessageTable.Entry>>() {
@@ -66,15 +81,9 @@ public class CachingMessageTableTest extends LevelDBMessageTableTest {
           }
         }
       })
-      .build(new CacheLoader<TopicId, MessageCache<MessageTable.Entry>>() {
-        @Override
-        public MessageCache<MessageTable.Entry> load(TopicId key) throws Exception {
-          return new MessageCache<>(new MessageTableEntryComparator(), new MessageTableEntryWeigher(),
-                                    new MessageCache.Limits(500, 700, 1000), new NoopMetricsContext());
-        }
-      });
+      .build(cacheLoader);
 
-    cacheProvider = new MessageTableCacheProvider() {
+    return new MessageTableCacheProvider() {
       @Override
       public MessageCache<MessageTable.Entry> getMessageCache(TopicId topicId) {
         return caches.getUnchecked(topicId);
@@ -132,7 +141,7 @@ public class CachingMessageTableTest extends LevelDBMessageTableTest {
       Assert.assertEquals(10, entries.size());
       // All entries must be from the cache
       for (MessageTable.Entry entry : entries) {
-        Assert.assertTrue(entry instanceof CachingMessageTable.CacheMessageTableEntry);
+        Assert.assertTrue(entry instanceof CachingMessageTable.CachedEntry);
       }
     }
 
@@ -148,9 +157,9 @@ public class CachingMessageTableTest extends LevelDBMessageTableTest {
       // The first entry should be from the table, while the last two entries (timestamp 8 and 9) should be
       // from cache (current time = 11, grace period = 3)
       Iterator<MessageTable.Entry> iterator = entries.iterator();
-      Assert.assertFalse(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
-      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
-      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
+      Assert.assertFalse(iterator.next() instanceof CachingMessageTable.CachedEntry);
+      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CachedEntry);
+      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CachedEntry);
     }
 
     // Fetch with a transaction, with start messageId publish time older than tx grace period / 2
@@ -166,9 +175,9 @@ public class CachingMessageTableTest extends LevelDBMessageTableTest {
       // The first entry should be from the table, while the last two entries (timestamp 8 and 9) should be
       // from cache (current time = 11, grace period = 3)
       Iterator<MessageTable.Entry> iterator = entries.iterator();
-      Assert.assertFalse(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
-      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
-      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CacheMessageTableEntry);
+      Assert.assertFalse(iterator.next() instanceof CachingMessageTable.CachedEntry);
+      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CachedEntry);
+      Assert.assertTrue(iterator.next() instanceof CachingMessageTable.CachedEntry);
     }
   }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.messaging.store.cache;
+
+import co.cask.cdap.api.metrics.NoopMetricsContext;
+import co.cask.cdap.messaging.cache.MessageCache;
+import co.cask.cdap.messaging.cache.OffHeapMessageCache;
+import co.cask.cdap.messaging.store.MessageTable;
+import co.cask.cdap.proto.id.TopicId;
+import com.google.common.cache.CacheLoader;
+import org.junit.BeforeClass;
+
+/**
+ * Unit test for {@link CachingMessageTable} with {@link OffHeapMessageCache}.
+ */
+public class OffHeapCachingMessageTableTest extends CachingMessageTableTest {
+
+  @BeforeClass
+  public static void initOffHeapCache() {
+    // Replace the cache provider created by the parent class
+    cacheProvider = createCacheProvider(new CacheLoader<TopicId, MessageCache<MessageTable.Entry>>() {
+      @Override
+      public MessageCache<MessageTable.Entry> load(TopicId key) throws Exception {
+        return new OffHeapMessageCache<>(new MessageTableEntryComparator(), new MessageTableEntryCodec(key), 256,
+                                         new MessageCache.Limits(500, 700, 1000), new NoopMetricsContext());
+      }
+    });
+  }
+}
@@ -45,6 +45,8 @@ import co.cask.cdap.common.guice.DiscoveryRuntimeModule;
 import co.cask.cdap.common.guice.IOModule;
 import co.cask.cdap.common.guice.LocationRuntimeModule;
 import co.cask.cdap.common.namespace.NamespaceAdmin;
+import co.cask.cdap.common.service.ServiceGraph;
+import co.cask.cdap.common.service.ServiceStartupTimes;
 import co.cask.cdap.common.test.TestRunner;
 import co.cask.cdap.common.utils.OSDetector;
 import co.cask.cdap.data.runtime.DataFabricModules;
@@ -291,42 +293,56 @@ public class TestBase {
     );
 
     messagingService = injector.getInstance(MessagingService.class);
-    if (messagingService instanceof Service) {
-      ((Service) messagingService).startAndWait();
-    }
-
     txService = injector.getInstance(TransactionManager.class);
-    txService.startAndWait();
     dsOpService = injector.getInstance(DatasetOpExecutor.class);
-    dsOpService.startAndWait();
     datasetService = injector.getInstance(DatasetService.class);
-    datasetService.startAndWait();
     metricsQueryService = injector.getInstance(MetricsQueryService.class);
-    metricsQueryService.startAndWait();
     metricsCollectionService = injector.getInstance(MetricsCollectionService.class);
-    metricsCollectionService.startAndWait();
     programNotificationSubscriberService = injector.getInstance(ProgramNotificationSubscriberService.class);
-    programNotificationSubscriberService.startAndWait();
     scheduler = injector.getInstance(Scheduler.class);
-    if (scheduler instanceof Service) {
-      ((Service) scheduler).startAndWait();
-    }
-    if (scheduler instanceof CoreSchedulerService) {
-      ((CoreSchedulerService) scheduler).waitUntilFunctional(10, TimeUnit.SECONDS);
+    streamCoordinatorClient = injector.getInstance(StreamCoordinatorClient.class);
+
+    // Services are started concurrently as soon as the services they depend on are started
+    ServiceGraph.Builder graph = ServiceGraph.builder()
+      .setStartupTimes(injector.getInstance(ServiceStartupTimes.class));
+    if (messagingService instanceof Service) {
+      graph.addService("messaging", (Service) messagingService);
+    } else {
+      graph.addTask("messaging", () -> { });
     }
+    graph.addService("transaction", txService)
+      .addService("dataset.op.executor", dsOpService, "transaction")
+      .addService("dataset", datasetService, "dataset.op.executor", "messaging")
+      .addService("metrics.query", metricsQueryService, "dataset")
+      .addService("metrics.collection", metricsCollectionService, "messaging")
+      .addService("program.notification.subscriber", programNotificationSubscriberService, "dataset")
+      .addTask("scheduler", () -> {
+        if (scheduler instanceof Service) {
+          ((Service) scheduler).startAndWait();
+        }
+        if (scheduler instanceof CoreSchedulerService) {
+          ((CoreSchedulerService) scheduler).waitUntilFunctional(10, TimeUnit.SECONDS);
+        }
+      }, "dataset")
+      .addService("stream.coordinator", streamCoordinatorClient, "dataset");
+
     if (cConf.getBoolean(Constants.Explore.EXPLORE_ENABLED)) {
       exploreExecutorService = injector.getInstance(ExploreExecutorService.class);
-      exploreExecutorService.startAndWait();
-      // wait for explore service to be discoverable
-      DiscoveryServiceClient discoveryService = injector.getInstance(DiscoveryServiceClient.class);
-      EndpointStrategy endpointStrategy = new RandomEndpointStrategy(
-        discoveryService.discover(Constants.Service.EXPLORE_HTTP_USER_SERVICE));
-      Preconditions.checkNotNull(endpointStrategy.pick(5, TimeUnit.SECONDS),
-                                 "%s service is not up after 5 seconds", Constants.Service.EXPLORE_HTTP_USER_SERVICE);
+      graph.addTask("explore", () -> {
+        exploreExecutorService.startAndWait();
+        // wait for explore service to be discoverable
+        DiscoveryServiceClient discoveryService = injector.getInstance(DiscoveryServiceClient.class);
+        EndpointStrategy endpointStrategy = new RandomEndpointStrategy(
+          discoveryService.discover(Constants.Service.EXPLORE_HTTP_USER_SERVICE));
+        Preconditions.checkNotNull(endpointStrategy.pick(5, TimeUnit.SECONDS),
+                                   "%s service is not up after 5 seconds", Constants.Service.EXPLORE_HTTP_USER_SERVICE);
+      }, "dataset");
+    }
+    graph.build().start();
+
+    if (cConf.getBoolean(Constants.Explore.EXPLORE_ENABLED)) {
       exploreClient = injector.getInstance(ExploreClient.class);
     }
-    streamCoordinatorClient = injector.getInstance(StreamCoordinatorClient.class);
-    streamCoordinatorClient.startAndWait();
     programScheduler = injector.getInstance(Scheduler.class);
     if (programScheduler instanceof Service) {
       ((Service) programScheduler).startAndWait();
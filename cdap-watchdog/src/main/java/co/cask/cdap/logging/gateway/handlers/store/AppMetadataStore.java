@@ -19,12 +19,17 @@ package co.cask.cdap.logging.gateway.handlers.store;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.app.RunIds;
 import co.cask.cdap.data2.dataset2.lib.table.MDSKey;
+import co.cask.cdap.data2.dataset2.lib.table.MDSValueCodec;
 import co.cask.cdap.data2.dataset2.lib.table.MetadataStoreDataset;
 import co.cask.cdap.internal.app.store.RunRecordMeta;
+import co.cask.cdap.internal.io.ASMDatumWriterFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.ReflectionDatumReaderFactory;
 import co.cask.cdap.proto.id.ApplicationId;
 import co.cask.cdap.proto.id.ProgramId;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.gson.Gson;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -39,8 +44,14 @@ public class AppMetadataStore extends MetadataStoreDataset {
   public static final String TYPE_RUN_RECORD_COMPLETED = "runRecordCompleted";
   public static final String TYPE_RUN_RECORD_SUSPENDED = "runRecordSuspended";
 
+  // Must be able to decode the run records stored in binary format by the cdap-app-fabric AppMetadataStore
+  private static final MDSValueCodec VALUE_CODEC =
+    MDSValueCodec.builder(new ASMDatumWriterFactory(new ASMFieldAccessorFactory()), new ReflectionDatumReaderFactory())
+      .add(RunRecordMeta.class, RunRecordMeta.SCHEMAS)
+      .build();
+
   public AppMetadataStore(Table table) {
-    super(table);
+    super(table, new Gson(), VALUE_CODEC);
   }
 
   // TODO: getRun is duplicated from cdap-app-fabric AppMetadataStore class.
@@ -21,9 +21,8 @@ import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.common.ServiceUnavailableException;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
-import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.ByteArrayBinaryEncoder;
 import co.cask.cdap.common.io.DatumWriter;
-import co.cask.cdap.common.io.Encoder;
 import co.cask.cdap.common.service.RetryStrategies;
 import co.cask.cdap.common.service.RetryStrategy;
 import co.cask.cdap.messaging.MessagingService;
@@ -38,7 +37,6 @@ import com.google.inject.name.Named;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -58,8 +56,7 @@ public class MessagingMetricsCollectionService extends AggregatedMetricsCollecti
 
   private final MessagingService messagingService;
   private final DatumWriter<MetricValues> recordWriter;
-  private final ByteArrayOutputStream encoderOutputStream;
-  private final Encoder encoder;
+  private final ByteArrayBinaryEncoder encoder;
   private final Map<Integer, TopicPayload> topicPayloads;
 
   @Inject
@@ -73,8 +70,7 @@ public class MessagingMetricsCollectionService extends AggregatedMetricsCollecti
     this.recordWriter = recordWriter;
 
     // Parent guarantees the publish method would not get called concurrently, hence safe to reuse the same instances.
-    this.encoderOutputStream = new ByteArrayOutputStream(1024);
-    this.encoder = new BinaryEncoder(encoderOutputStream);
+    this.encoder = new ByteArrayBinaryEncoder(1024);
 
     RetryStrategy retryStrategy = RetryStrategies.fromConfiguration(cConf, "system.metrics.");
     this.topicPayloads = new LinkedHashMap<>(totalTopicNum);
@@ -87,14 +83,14 @@ public class MessagingMetricsCollectionService extends AggregatedMetricsCollecti
   protected void publish(Iterator<MetricValues> metrics) throws Exception {
     int size = topicPayloads.size();
     while (metrics.hasNext()) {
-      encoderOutputStream.reset();
+      encoder.reset();
       MetricValues metricValues = metrics.next();
       // Encode MetricValues into bytes
       recordWriter.encode(metricValues, encoder);
       TopicPayload topicPayload = topicPayloads.get(Math.abs(metricValues.getTags().hashCode() % size));
       // Calculate the topic number with the hashcode of MetricValues' tags and store the encoded payload in the
       // corresponding list of the topic number
-      topicPayload.addPayload(encoderOutputStream.toByteArray(), metricValues.getTags(),
+      topicPayload.addPayload(encoder.toByteArray(), metricValues.getTags(),
                               metricValues.getMetrics().size());
     }
     publishMetric(topicPayloads.values());
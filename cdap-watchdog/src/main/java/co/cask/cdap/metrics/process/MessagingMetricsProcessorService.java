@@ -30,7 +30,7 @@ import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.ServiceUnavailableException;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
-import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.ByteBufferBinaryDecoder;
 import co.cask.cdap.common.io.DatumReader;
 import co.cask.cdap.common.logging.LogSamplers;
 import co.cask.cdap.common.logging.Loggers;
@@ -57,9 +57,9 @@ import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -70,6 +70,7 @@ import java.util.Set;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
@@ -111,6 +112,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
   private MetricsConsumerMetaTable metaTable;
   private ScheduledExecutorService metricsTableDeleterExecutor;
+  private ExecutorService metricsIndexBuilderExecutor;
   private DataMigrator metricsDataMigrator;
 
   private volatile boolean stopping;
@@ -267,6 +269,12 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
     }
 
     if (instanceId == 0) {
+      // build the index of metrics written before the index existed, it is a no-op once the index is built
+      metricsIndexBuilderExecutor =
+        Executors.newSingleThreadExecutor(Threads.createDaemonThreadFactory("metrics-index-builder"));
+      metricsIndexBuilderExecutor.execute(
+        new MetricsIndexBuilder(metricDatasetFactory, Arrays.asList(Integer.MAX_VALUE, 3600, 60, 1)));
+
       if (!skipMigration) {
         List<Integer> resolutions = new ArrayList<>();
         resolutions.add(Integer.MAX_VALUE);
@@ -334,6 +342,10 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       metricsTableDeleterExecutor.shutdownNow();
       metricsTableDeleterExecutor = null;
     }
+    if (metricsIndexBuilderExecutor != null) {
+      metricsIndexBuilderExecutor.shutdownNow();
+      metricsIndexBuilderExecutor = null;
+    }
     if (metricsDataMigrator != null) {
       metricsDataMigrator.requestStop();
       metricsDataMigrator.interrupt();
@@ -406,8 +418,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
 
   private class ProcessMetricsThread extends Thread {
     private final TopicIdMetaKey topicIdMetaKey;
-    private final PayloadInputStream payloadInput;
-    private final BinaryDecoder decoder;
+    private final ByteBufferBinaryDecoder decoder;
     private final String oldestTsMetricName;
     private final String latestTsMetricName;
     private long lastMetricTimeSecs;
@@ -432,8 +443,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
                                                      oldestTsMetricName, latestTsMetricName));
       }
       this.topicIdMetaKey = topicIdMetaKey;
-      this.payloadInput = new PayloadInputStream();
-      this.decoder = new BinaryDecoder(payloadInput);
+      this.decoder = new ByteBufferBinaryDecoder();
     }
 
     @Override
@@ -490,7 +500,7 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
           while (iterator.hasNext() && isRunning()) {
             RawMessage input = iterator.next();
             try {
-              payloadInput.reset(input.getPayload());
+              decoder.reset(input.getPayload());
               MetricValues metricValues = metricReader.read(decoder, metricSchema);
               if (!metricsFromAllTopics.offer(metricValues)) {
                 break;
@@ -565,18 +575,4 @@ public class MessagingMetricsProcessorService extends AbstractExecutionThreadSer
       }
     }
   }
-
-  private class PayloadInputStream extends ByteArrayInputStream {
-
-    PayloadInputStream() {
-      super(Bytes.EMPTY_BYTE_ARRAY);
-    }
-
-    void reset(byte[] buf) {
-      this.buf = buf;
-      this.pos = 0;
-      this.count = buf.length;
-      this.mark = 0;
-    }
-  }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.metrics.process;
+
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import co.cask.cdap.metrics.store.MetricDatasetFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Builds the dimension value and measure name index of the metrics tables, for the metrics written before the
+ * index existed. Searching metrics scans the tables until their index is built.
+ */
+public class MetricsIndexBuilder implements Runnable {
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsIndexBuilder.class);
+
+  private final MetricDatasetFactory metricDatasetFactory;
+  private final List<Integer> resolutions;
+
+  /**
+   * @param metricDatasetFactory factory for getting the metrics tables
+   * @param resolutions resolutions of the metrics tables to build the index of
+   */
+  public MetricsIndexBuilder(MetricDatasetFactory metricDatasetFactory, List<Integer> resolutions) {
+    this.metricDatasetFactory = metricDatasetFactory;
+    this.resolutions = resolutions;
+  }
+
+  @Override
+  public void run() {
+    for (int resolution : resolutions) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      try (FactTable factTable = metricDatasetFactory.getOrCreateFactTable(resolution)) {
+        factTable.buildIndex();
+      } catch (Exception e) {
+        LOG.error("Exception while building the index of metrics table with resolution {}", resolution, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.query;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.utils.TimeProvider;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A cache for time series queries to the {@link MetricStore}. Dashboards repeatedly issue the same query for a time
+ * window that slides with the current time. The values of a time bucket no longer change once the bucket is
+ * complete, hence only the values of the buckets that are not complete yet are read from the {@link MetricStore} on
+ * each query, and the values of complete buckets are served from the cache.
+ *
+ * A bucket is considered complete when {@link Constants.Metrics.Query#CACHE_BUCKET_CLOSE_DELAY_SECONDS} has passed
+ * since the end of the bucket, to allow for the delay of metrics processing. Queries for totals and queries with
+ * interpolation are not cached.
+ */
+public class MetricsQueryCache {
+
+  private final MetricStore metricStore;
+  private final TimeProvider timeProvider;
+  private final long closeDelaySeconds;
+  @Nullable
+  private final LoadingCache<CacheKey, CachedQuery> cache;
+
+  @Inject
+  MetricsQueryCache(CConfiguration cConf, MetricStore metricStore) {
+    this(metricStore, cConf.getInt(Constants.Metrics.Query.CACHE_MAX_SIZE),
+         cConf.getLong(Constants.Metrics.Query.CACHE_BUCKET_CLOSE_DELAY_SECONDS), TimeProvider.SYSTEM_TIME);
+  }
+
+  @VisibleForTesting
+  MetricsQueryCache(MetricStore metricStore, int maxSize, long closeDelaySeconds, TimeProvider timeProvider) {
+    this.metricStore = metricStore;
+    this.timeProvider = timeProvider;
+    this.closeDelaySeconds = closeDelaySeconds;
+    this.cache = maxSize <= 0 ? null : CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .build(new CacheLoader<CacheKey, CachedQuery>() {
+        @Override
+        public CachedQuery load(CacheKey key) {
+          return new CachedQuery();
+        }
+      });
+  }
+
+  /**
+   * Executes the given query, using the cached values of complete time buckets if possible.
+   *
+   * @see MetricStore#query(MetricDataQuery)
+   */
+  public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+    if (cache == null || !isCacheable(query)) {
+      return metricStore.query(query);
+    }
+
+    // Buckets starting before this timestamp are complete
+    long nowInSeconds = TimeUnit.MILLISECONDS.toSeconds(timeProvider.currentTimeMillis());
+    long closedBoundary = (nowInSeconds - closeDelaySeconds) / query.getResolution() * query.getResolution();
+
+    CachedQuery cachedQuery = cache.getUnchecked(new CacheKey(query));
+    // Concurrent requests of the same query wait for each other, so that only one of them reads the new buckets
+    synchronized (cachedQuery) {
+      return cachedQuery.query(query, closedBoundary);
+    }
+  }
+
+  private boolean isCacheable(MetricDataQuery query) {
+    return query.getResolution() != Integer.MAX_VALUE
+      && query.getInterpolator() == null
+      && query.getStartTs() <= query.getEndTs();
+  }
+
+  /**
+   * The cached values of complete time buckets of one query.
+   */
+  private final class CachedQuery {
+
+    private final Map<SeriesKey, NavigableMap<Long, Long>> series = new HashMap<>();
+    // All complete buckets in the range of [coveredStart, coveredEnd) are cached
+    private long coveredStart;
+    private long coveredEnd = -1L;
+
+    Collection<MetricTimeSeries> query(MetricDataQuery query, long closedBoundary) {
+      long startTs = query.getStartTs();
+      long endTs = query.getEndTs();
+      int resolution = query.getResolution();
+
+      long readStart = startTs;
+      if (coveredStart <= startTs && startTs <= coveredEnd) {
+        readStart = coveredEnd;
+      } else {
+        series.clear();
+      }
+      // Buckets before the start of the query window are not needed anymore, since the window only moves forward
+      removeBefore(startTs);
+      coveredStart = startTs;
+
+      Map<SeriesKey, NavigableMap<Long, Long>> result = new HashMap<>();
+      for (Map.Entry<SeriesKey, NavigableMap<Long, Long>> entry : series.entrySet()) {
+        NavigableMap<Long, Long> values = entry.getValue().headMap(endTs, true);
+        if (!values.isEmpty()) {
+          result.put(entry.getKey(), new TreeMap<>(values));
+        }
+      }
+
+      if (readStart <= endTs) {
+        // Read all values of the buckets not cached, the limit is applied when returning the result
+        MetricDataQuery tailQuery = new MetricDataQuery(readStart, endTs, resolution, Integer.MAX_VALUE,
+                                                        query.getMetrics(), query.getSliceByTags(),
+                                                        query.getGroupByTags(), null);
+        for (MetricTimeSeries timeSeries : metricStore.query(tailQuery)) {
+          SeriesKey key = new SeriesKey(timeSeries.getMetricName(), timeSeries.getTagValues());
+          for (TimeValue timeValue : timeSeries.getTimeValues()) {
+            getValues(result, key).put(timeValue.getTimestamp(), timeValue.getValue());
+            if (timeValue.getTimestamp() < closedBoundary) {
+              getValues(series, key).put(timeValue.getTimestamp(), timeValue.getValue());
+            }
+          }
+        }
+        coveredEnd = Math.max(readStart, Math.min(closedBoundary, endTs / resolution * resolution + resolution));
+      }
+
+      List<MetricTimeSeries> timeSeries = new ArrayList<>(result.size());
+      for (Map.Entry<SeriesKey, NavigableMap<Long, Long>> entry : result.entrySet()) {
+        timeSeries.add(new MetricTimeSeries(entry.getKey().metricName, entry.getKey().tagValues,
+                                            toTimeValues(entry.getValue(), query.getLimit())));
+      }
+      return timeSeries;
+    }
+
+    private void removeBefore(long timestamp) {
+      Iterator<NavigableMap<Long, Long>> iterator = series.values().iterator();
+      while (iterator.hasNext()) {
+        NavigableMap<Long, Long> values = iterator.next();
+        values.headMap(timestamp, false).clear();
+        if (values.isEmpty()) {
+          iterator.remove();
+        }
+      }
+    }
+
+    private NavigableMap<Long, Long> getValues(Map<SeriesKey, NavigableMap<Long, Long>> seriesMap, SeriesKey key) {
+      NavigableMap<Long, Long> values = seriesMap.get(key);
+      if (values == null) {
+        values = new TreeMap<>();
+        seriesMap.put(key, values);
+      }
+      return values;
+    }
+
+    /**
+     * Converts the values to a list of {@link TimeValue}, limiting the number of values the same way as the
+     * {@link MetricStore} does, which returns at least one value.
+     */
+    private List<TimeValue> toTimeValues(NavigableMap<Long, Long> values, int limit) {
+      List<TimeValue> timeValues = new ArrayList<>();
+      for (Map.Entry<Long, Long> entry : values.entrySet()) {
+        timeValues.add(new TimeValue(entry.getKey(), entry.getValue()));
+        if (timeValues.size() >= limit) {
+          break;
+        }
+      }
+      return timeValues;
+    }
+  }
+
+  /**
+   * Identifies a query regardless of the position of its time window, so that the same query for a window
+   * that slides with the current time shares the same cached values.
+   */
+  private static final class CacheKey {
+    private final long windowSize;
+    private final int resolution;
+    private final int limit;
+    private final Map<String, AggregationFunction> metrics;
+    private final Map<String, String> sliceByTags;
+    private final List<String> groupByTags;
+
+    CacheKey(MetricDataQuery query) {
+      this.windowSize = query.getEndTs() - query.getStartTs();
+      this.resolution = query.getResolution();
+      this.limit = query.getLimit();
+      this.metrics = ImmutableMap.copyOf(query.getMetrics());
+      this.sliceByTags = new HashMap<>(query.getSliceByTags());
+      this.groupByTags = ImmutableList.copyOf(query.getGroupByTags());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return windowSize == other.windowSize
+        && resolution == other.resolution
+        && limit == other.limit
+        && metrics.equals(other.metrics)
+        && sliceByTags.equals(other.sliceByTags)
+        && groupByTags.equals(other.groupByTags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(windowSize, resolution, limit, metrics, sliceByTags, groupByTags);
+    }
+  }
+
+  /**
+   * Identifies a time series in the query result.
+   */
+  private static final class SeriesKey {
+    private final String metricName;
+    private final Map<String, String> tagValues;
+
+    SeriesKey(String metricName, Map<String, String> tagValues) {
+      this.metricName = metricName;
+      this.tagValues = tagValues;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      SeriesKey other = (SeriesKey) o;
+      return metricName.equals(other.metricName) && tagValues.equals(other.tagValues);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(metricName, tagValues);
+    }
+  }
+}
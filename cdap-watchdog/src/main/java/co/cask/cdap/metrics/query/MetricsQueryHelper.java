@@ -72,6 +72,7 @@ public class MetricsQueryHelper {
   private static final String ANY_TAG_VALUE = "*";
 
   private final MetricStore metricStore;
+  private final MetricsQueryCache queryCache;
 
   private static final Map<String, String> tagNameToHuman;
   private static final Map<String, String> humanToTagName;
@@ -116,8 +117,9 @@ public class MetricsQueryHelper {
   }
 
   @Inject
-  public MetricsQueryHelper(MetricStore metricStore) {
+  public MetricsQueryHelper(MetricStore metricStore, MetricsQueryCache queryCache) {
     this.metricStore = metricStore;
+    this.queryCache = queryCache;
   }
 
   public List<MetricTagValue> searchTags(List<String> tags) throws Exception {
@@ -317,7 +319,7 @@ public class MetricsQueryHelper {
                                                 timeRange.getCount(), toMetrics(queryRequest.getMetrics()),
                                                 tagsSliceBy, transformGroupByTags(queryRequest.getGroupBy()),
                                                 timeRange.getInterpolate());
-    Collection<MetricTimeSeries> queryResult = metricStore.query(query);
+    Collection<MetricTimeSeries> queryResult = queryCache.query(query);
 
     long endTime = timeRange.getEnd();
     if (timeRange.getResolutionInSeconds() == Integer.MAX_VALUE && endTime == 0) {
@@ -0,0 +1,257 @@
+/*
+ * Copyright © 2017 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.metrics.query;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.Interpolators;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricDeleteQuery;
+import co.cask.cdap.api.metrics.MetricSearchQuery;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.MetricsProcessorStatus;
+import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.utils.TimeProvider;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link MetricsQueryCache}.
+ */
+public class MetricsQueryCacheTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MetricsQueryCacheTest.class);
+
+  private static final String METRIC = "system.process.events";
+  private static final int RESOLUTION = 60;
+  private static final long WINDOW = TimeUnit.DAYS.toSeconds(1);
+
+  @Test
+  public void testSlidingWindow() {
+    // Simulates a dashboard querying the last 24 hours in 60 seconds resolution every 10 seconds for 2 hours,
+    // while new metrics are emitted to the current bucket
+    InMemoryMetricStore metricStore = new InMemoryMetricStore();
+    ManualTimeProvider timeProvider = new ManualTimeProvider(TimeUnit.DAYS.toMillis(10));
+    MetricsQueryCache cache = new MetricsQueryCache(metricStore, 100, 60, timeProvider);
+
+    // one day of existing metrics
+    long now = timeProvider.getSeconds();
+    for (long ts = now - WINDOW; ts <= now; ts += 10) {
+      metricStore.emit(ts, 1);
+    }
+
+    long uncachedScanned = 0;
+    long cachedScanned = 0;
+    for (int i = 0; i < 720; i++) {
+      timeProvider.advance(10);
+      now = timeProvider.getSeconds();
+      metricStore.emit(now, 1);
+      // metrics are emitted with a delay, to the bucket that was not complete yet
+      metricStore.emit(now - 30, 1);
+
+      MetricDataQuery query = createQuery(now - WINDOW, now, Integer.MAX_VALUE);
+
+      long scanned = metricStore.getScannedBuckets();
+      Collection<MetricTimeSeries> expected = metricStore.query(query);
+      uncachedScanned += metricStore.getScannedBuckets() - scanned;
+
+      scanned = metricStore.getScannedBuckets();
+      Collection<MetricTimeSeries> actual = cache.query(query);
+      cachedScanned += metricStore.getScannedBuckets() - scanned;
+
+      Assert.assertEquals(expected, actual);
+    }
+
+    LOG.info("Buckets scanned for a 24h/60s dashboard: {} without cache, {} with cache",
+             uncachedScanned, cachedScanned);
+    Assert.assertTrue(cachedScanned * 100 < uncachedScanned);
+  }
+
+  @Test
+  public void testLimit() {
+    InMemoryMetricStore metricStore = new InMemoryMetricStore();
+    ManualTimeProvider timeProvider = new ManualTimeProvider(TimeUnit.DAYS.toMillis(10));
+    MetricsQueryCache cache = new MetricsQueryCache(metricStore, 100, 60, timeProvider);
+
+    long now = timeProvider.getSeconds();
+    for (long ts = now - 3600; ts <= now; ts += RESOLUTION) {
+      metricStore.emit(ts, 1);
+    }
+
+    for (int limit : new int[] { -1, 1, 10, 100 }) {
+      MetricDataQuery query = createQuery(now - 3600, now, limit);
+      // query twice, so that the second time is served from the cache
+      Assert.assertEquals(metricStore.query(query), cache.query(query));
+      Assert.assertEquals(metricStore.query(query), cache.query(query));
+    }
+  }
+
+  @Test
+  public void testNotCached() {
+    InMemoryMetricStore metricStore = new InMemoryMetricStore();
+    ManualTimeProvider timeProvider = new ManualTimeProvider(TimeUnit.DAYS.toMillis(10));
+    long now = timeProvider.getSeconds();
+    metricStore.emit(now - 3600, 1);
+
+    // queries with interpolation are not cached
+    MetricsQueryCache cache = new MetricsQueryCache(metricStore, 100, 60, timeProvider);
+    MetricDataQuery query = new MetricDataQuery(now - 3600, now, RESOLUTION, Integer.MAX_VALUE,
+                                                ImmutableMap.of(METRIC, AggregationFunction.SUM),
+                                                Collections.<String, String>emptyMap(),
+                                                Collections.<String>emptyList(), new Interpolators.Step());
+    cache.query(query);
+    long scanned = metricStore.getScannedBuckets();
+    cache.query(query);
+    Assert.assertEquals(scanned * 2, metricStore.getScannedBuckets());
+
+    // nothing is cached if the cache is disabled
+    cache = new MetricsQueryCache(metricStore, 0, 60, timeProvider);
+    query = createQuery(now - 3600, now, Integer.MAX_VALUE);
+    cache.query(query);
+    scanned = metricStore.getScannedBuckets();
+    cache.query(query);
+    Assert.assertEquals(scanned + 61, metricStore.getScannedBuckets());
+  }
+
+  private MetricDataQuery createQuery(long startTs, long endTs, int limit) {
+    return new MetricDataQuery(startTs, endTs, RESOLUTION, limit,
+                               ImmutableMap.of(METRIC, AggregationFunction.SUM),
+                               Collections.<String, String>emptyMap(), Collections.<String>emptyList(), null);
+  }
+
+  /**
+   * A {@link TimeProvider} that only advances when told to.
+   */
+  private static final class ManualTimeProvider implements TimeProvider {
+    private long currentTimeMillis;
+
+    ManualTimeProvider(long currentTimeMillis) {
+      this.currentTimeMillis = currentTimeMillis;
+    }
+
+    void advance(long seconds) {
+      currentTimeMillis += TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    long getSeconds() {
+      return TimeUnit.MILLISECONDS.toSeconds(currentTimeMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+      return currentTimeMillis;
+    }
+  }
+
+  /**
+   * A {@link MetricStore} of a single metric, which counts the number of time buckets scanned by queries.
+   */
+  private static final class InMemoryMetricStore implements MetricStore {
+    private final NavigableMap<Long, Long> values = new TreeMap<>();
+    private long scannedBuckets;
+
+    void emit(long timestamp, long value) {
+      long ts = timestamp / RESOLUTION * RESOLUTION;
+      Long current = values.get(ts);
+      values.put(ts, current == null ? value : current + value);
+    }
+
+    long getScannedBuckets() {
+      return scannedBuckets;
+    }
+
+    @Override
+    public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+      Assert.assertEquals(METRIC, Iterables.getOnlyElement(query.getMetrics().keySet()));
+      scannedBuckets += query.getEndTs() / RESOLUTION - (query.getStartTs() + RESOLUTION - 1) / RESOLUTION + 1;
+
+      List<TimeValue> timeValues = new ArrayList<>();
+      for (Map.Entry<Long, Long> entry : values.subMap(query.getStartTs(), true, query.getEndTs(), true).entrySet()) {
+        timeValues.add(new TimeValue(entry.getKey(), entry.getValue()));
+        if (timeValues.size() >= query.getLimit()) {
+          break;
+        }
+      }
+      if (timeValues.isEmpty()) {
+        return ImmutableList.of();
+      }
+      return ImmutableList.of(new MetricTimeSeries(METRIC, Collections.<String, String>emptyMap(), timeValues));
+    }
+
+    @Override
+    public void setMetricsContext(MetricsContext metricsContext) {
+      // no-op
+    }
+
+    @Override
+    public void add(MetricValues metricValues) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(Collection<? extends MetricValues> metricValues) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteBefore(long timestamp) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(MetricDeleteQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteAll() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<TagValue> findNextAvailableTags(MetricSearchQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<String> findMetricNames(MetricSearchQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<String, MetricsProcessorStatus> getMetricsProcessorStats() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}